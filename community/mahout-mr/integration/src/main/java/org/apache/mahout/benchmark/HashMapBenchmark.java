@@ -0,0 +1,309 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.mahout.benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
+import org.apache.commons.cli2.CommandLine;
+import org.apache.commons.cli2.Group;
+import org.apache.commons.cli2.Option;
+import org.apache.commons.cli2.OptionException;
+import org.apache.commons.cli2.builder.ArgumentBuilder;
+import org.apache.commons.cli2.builder.DefaultOptionBuilder;
+import org.apache.commons.cli2.builder.GroupBuilder;
+import org.apache.commons.cli2.commandline.Parser;
+import org.apache.mahout.common.CommandLineUtil;
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.common.commandline.DefaultOptionCreator;
+import org.apache.mahout.math.map.LinearProbingIntDoubleHashMap;
+import org.apache.mahout.math.map.OpenIntDoubleHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares {@link OpenIntDoubleHashMap} (double hashing with a state array), {@link LinearProbingIntDoubleHashMap}
+ * (linear probing with backward-shift deletion) and fastutil's {@link Int2DoubleOpenHashMap}: inserts, successful
+ * and failed lookups, lookups after removal churn, and counting with {@code adjustOrPutValue}. Each map runs its own
+ * copy of the loops so that calls stay monomorphic. Reports the best time per operation over all rounds.
+ */
+public final class HashMapBenchmark {
+
+  private static final Logger log = LoggerFactory.getLogger(HashMapBenchmark.class);
+
+  private static final String[] PHASES = {"put", "get hit", "get miss", "churn", "get after churn", "adjust"};
+
+  private final int[] keys;
+  private final int[] missingKeys;
+  private final int[] counted;
+  private final int[] replacements;
+
+  public HashMapBenchmark(int numKeys) {
+    Random random = RandomUtils.getRandom();
+    keys = new int[numKeys];
+    missingKeys = new int[numKeys];
+    replacements = new int[numKeys / 2];
+    // even keys are inserted, odd keys are never present
+    for (int i = 0; i < numKeys; i++) {
+      keys[i] = random.nextInt(Integer.MAX_VALUE / 2) * 2;
+      missingKeys[i] = keys[i] + 1;
+    }
+    for (int i = 0; i < replacements.length; i++) {
+      replacements[i] = random.nextInt(Integer.MAX_VALUE / 2) * 2;
+    }
+    // skewed stream of term ids, as when counting term frequencies
+    counted = new int[numKeys];
+    for (int i = 0; i < numKeys; i++) {
+      counted[i] = (int) Math.min(numKeys, Math.floor(Math.exp(random.nextDouble() * Math.log(numKeys))));
+    }
+  }
+
+  private abstract static class MapUnderTest {
+    abstract String name();
+
+    abstract void create();
+
+    abstract void putAll(int[] keys);
+
+    abstract double getAll(int[] keys);
+
+    abstract void removeAll(int[] keys, int from, int to);
+
+    abstract double adjustAll(int[] keys);
+  }
+
+  private static final class OpenMap extends MapUnderTest {
+    private OpenIntDoubleHashMap map;
+
+    @Override
+    String name() {
+      return "OpenIntDoubleHashMap";
+    }
+
+    @Override
+    void create() {
+      map = new OpenIntDoubleHashMap();
+    }
+
+    @Override
+    void putAll(int[] keys) {
+      for (int key : keys) {
+        map.put(key, key);
+      }
+    }
+
+    @Override
+    double getAll(int[] keys) {
+      double sum = 0;
+      for (int key : keys) {
+        sum += map.get(key);
+      }
+      return sum;
+    }
+
+    @Override
+    void removeAll(int[] keys, int from, int to) {
+      for (int i = from; i < to; i++) {
+        map.removeKey(keys[i]);
+      }
+    }
+
+    @Override
+    double adjustAll(int[] keys) {
+      double sum = 0;
+      for (int key : keys) {
+        sum += map.adjustOrPutValue(key, 1, 1);
+      }
+      return sum;
+    }
+  }
+
+  private static final class LinearProbingMap extends MapUnderTest {
+    private LinearProbingIntDoubleHashMap map;
+
+    @Override
+    String name() {
+      return "LinearProbingIntDoubleHashMap";
+    }
+
+    @Override
+    void create() {
+      map = new LinearProbingIntDoubleHashMap();
+    }
+
+    @Override
+    void putAll(int[] keys) {
+      for (int key : keys) {
+        map.put(key, key);
+      }
+    }
+
+    @Override
+    double getAll(int[] keys) {
+      double sum = 0;
+      for (int key : keys) {
+        sum += map.get(key);
+      }
+      return sum;
+    }
+
+    @Override
+    void removeAll(int[] keys, int from, int to) {
+      for (int i = from; i < to; i++) {
+        map.removeKey(keys[i]);
+      }
+    }
+
+    @Override
+    double adjustAll(int[] keys) {
+      double sum = 0;
+      for (int key : keys) {
+        sum += map.adjustOrPutValue(key, 1, 1);
+      }
+      return sum;
+    }
+  }
+
+  private static final class FastutilMap extends MapUnderTest {
+    private Int2DoubleOpenHashMap map;
+
+    @Override
+    String name() {
+      return "Int2DoubleOpenHashMap";
+    }
+
+    @Override
+    void create() {
+      map = new Int2DoubleOpenHashMap();
+    }
+
+    @Override
+    void putAll(int[] keys) {
+      for (int key : keys) {
+        map.put(key, key);
+      }
+    }
+
+    @Override
+    double getAll(int[] keys) {
+      double sum = 0;
+      for (int key : keys) {
+        sum += map.get(key);
+      }
+      return sum;
+    }
+
+    @Override
+    void removeAll(int[] keys, int from, int to) {
+      for (int i = from; i < to; i++) {
+        map.remove(keys[i]);
+      }
+    }
+
+    @Override
+    double adjustAll(int[] keys) {
+      double sum = 0;
+      for (int key : keys) {
+        sum += map.addTo(key, 1) + 1;
+      }
+      return sum;
+    }
+  }
+
+  private void benchmark(MapUnderTest map, int numRounds) {
+    double[] best = new double[PHASES.length];
+    Arrays.fill(best, Double.MAX_VALUE);
+    double check = 0;
+    int n = keys.length;
+    for (int round = 0; round < numRounds; round++) {
+      long[] times = new long[PHASES.length + 1];
+      map.create();
+      times[0] = System.nanoTime();
+      map.putAll(keys);
+      times[1] = System.nanoTime();
+      check += map.getAll(keys);
+      times[2] = System.nanoTime();
+      check += map.getAll(missingKeys);
+      times[3] = System.nanoTime();
+      // replace half of the keys twice, which leaves removed slots behind in tables using tombstones
+      map.removeAll(keys, 0, n / 2);
+      map.putAll(replacements);
+      map.removeAll(replacements, 0, replacements.length);
+      map.putAll(Arrays.copyOf(keys, n / 2));
+      times[4] = System.nanoTime();
+      check += map.getAll(keys);
+      times[5] = System.nanoTime();
+      map.create();
+      check += map.adjustAll(counted);
+      times[6] = System.nanoTime();
+
+      for (int i = 0; i < PHASES.length; i++) {
+        int ops = i == 3 ? 2 * n : n;
+        best[i] = Math.min(best[i], (times[i + 1] - times[i]) / (double) ops);
+      }
+    }
+    StringBuilder line = new StringBuilder(String.format("%-30s", map.name()));
+    for (int i = 0; i < PHASES.length; i++) {
+      line.append(String.format("  %s %6.1fns", PHASES[i], best[i]));
+    }
+    log.info("{} (checksum {})", line, check);
+  }
+
+  public static void main(String[] args) {
+    DefaultOptionBuilder obuilder = new DefaultOptionBuilder();
+    ArgumentBuilder abuilder = new ArgumentBuilder();
+    GroupBuilder gbuilder = new GroupBuilder();
+
+    Option numKeysOpt = obuilder
+        .withLongName("numKeys")
+        .withRequired(false)
+        .withArgument(abuilder.withName("nk").withDefault(1000000).create())
+        .withDescription("Number of distinct keys. Default: 1000000").withShortName("nk").create();
+    Option numRoundsOpt = obuilder
+        .withLongName("numRounds")
+        .withRequired(false)
+        .withArgument(abuilder.withName("nr").withDefault(10).create())
+        .withDescription("Number of rounds per map, the best is reported. Default: 10").withShortName("nr").create();
+
+    Option helpOpt = DefaultOptionCreator.helpOption();
+
+    Group group = gbuilder.withName("Options").withOption(numKeysOpt).withOption(numRoundsOpt).withOption(helpOpt)
+        .create();
+
+    try {
+      Parser parser = new Parser();
+      parser.setGroup(group);
+      CommandLine cmdLine = parser.parse(args);
+
+      if (cmdLine.hasOption(helpOpt)) {
+        CommandLineUtil.printHelpWithGenericOptions(group);
+        return;
+      }
+
+      int numKeys = cmdLine.hasOption(numKeysOpt) ? Integer.parseInt((String) cmdLine.getValue(numKeysOpt)) : 1000000;
+      int numRounds = cmdLine.hasOption(numRoundsOpt) ? Integer.parseInt((String) cmdLine.getValue(numRoundsOpt)) : 10;
+
+      HashMapBenchmark mark = new HashMapBenchmark(numKeys);
+      mark.benchmark(new OpenMap(), numRounds);
+      mark.benchmark(new LinearProbingMap(), numRounds);
+      mark.benchmark(new FastutilMap(), numRounds);
+    } catch (OptionException e) {
+      CommandLineUtil.printHelp(group);
+    }
+  }
+}
@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.benchmark;
+
+import java.util.List;
+import java.util.Random;
+
+import com.google.common.collect.Lists;
+import org.apache.commons.cli2.CommandLine;
+import org.apache.commons.cli2.Group;
+import org.apache.commons.cli2.Option;
+import org.apache.commons.cli2.OptionException;
+import org.apache.commons.cli2.builder.ArgumentBuilder;
+import org.apache.commons.cli2.builder.DefaultOptionBuilder;
+import org.apache.commons.cli2.builder.GroupBuilder;
+import org.apache.commons.cli2.commandline.Parser;
+import org.apache.mahout.common.CommandLineUtil;
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.common.commandline.DefaultOptionCreator;
+import org.apache.mahout.common.distance.DistanceMeasure;
+import org.apache.mahout.common.distance.EuclideanDistanceMeasure;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.neighborhood.BruteSearch;
+import org.apache.mahout.math.neighborhood.FastProjectionSearch;
+import org.apache.mahout.math.neighborhood.HnswSearch;
+import org.apache.mahout.math.neighborhood.LocalitySensitiveHashSearch;
+import org.apache.mahout.math.neighborhood.ProjectionSearch;
+import org.apache.mahout.math.neighborhood.Searcher;
+import org.apache.mahout.math.random.WeightedThing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares nearest neighbor searchers on clustered gaussian data: build time, queries per second and recall@k
+ * against exact {@link BruteSearch} results. A result counts as a hit if it is no further from the query than the
+ * true k-th neighbor.
+ */
+public final class SearcherBenchmark {
+
+  private static final Logger log = LoggerFactory.getLogger(SearcherBenchmark.class);
+
+  private static final int NUM_PROJECTIONS = 3;
+
+  private final List<Vector> data;
+  private final List<Vector> queries;
+  private final int numResults;
+  private final List<List<WeightedThing<Vector>>> reference;
+
+  public SearcherBenchmark(int numVectors, int numDimensions, int numClusters, int numQueries, int numResults) {
+    Random random = RandomUtils.getRandom();
+    List<Vector> centers = Lists.newArrayListWithCapacity(numClusters);
+    for (int i = 0; i < numClusters; i++) {
+      centers.add(gaussian(random, numDimensions, 10));
+    }
+    data = Lists.newArrayListWithCapacity(numVectors);
+    for (int i = 0; i < numVectors; i++) {
+      data.add(gaussian(random, numDimensions, 1).plus(centers.get(random.nextInt(numClusters))));
+    }
+    queries = Lists.newArrayListWithCapacity(numQueries);
+    for (int i = 0; i < numQueries; i++) {
+      queries.add(gaussian(random, numDimensions, 1).plus(centers.get(random.nextInt(numClusters))));
+    }
+    this.numResults = numResults;
+
+    Searcher brute = new BruteSearch(new EuclideanDistanceMeasure());
+    brute.addAll(data);
+    reference = brute.searchBatch(queries, numResults, Runtime.getRuntime().availableProcessors());
+  }
+
+  private static Vector gaussian(Random random, int numDimensions, double scale) {
+    Vector v = new DenseVector(numDimensions);
+    for (int i = 0; i < numDimensions; i++) {
+      v.setQuick(i, scale * random.nextGaussian());
+    }
+    return v;
+  }
+
+  public void benchmark(Searcher searcher) {
+    long start = System.nanoTime();
+    searcher.addAll(data);
+    double buildSeconds = (System.nanoTime() - start) * 1.0e-9;
+
+    start = System.nanoTime();
+    List<List<WeightedThing<Vector>>> results = Lists.newArrayListWithCapacity(queries.size());
+    for (Vector query : queries) {
+      results.add(searcher.search(query, numResults));
+    }
+    double searchSeconds = (System.nanoTime() - start) * 1.0e-9;
+
+    int hits = 0;
+    for (int i = 0; i < queries.size(); i++) {
+      List<WeightedThing<Vector>> exact = reference.get(i);
+      double kthDistance = exact.get(exact.size() - 1).getWeight();
+      for (WeightedThing<Vector> result : results.get(i)) {
+        if (result.getWeight() <= kthDistance) {
+          hits++;
+        }
+      }
+    }
+
+    log.info(String.format("%-30s build %8.3fs  %10.1f queries/s  recall@%d %.4f",
+        searcher.getClass().getSimpleName(), buildSeconds, queries.size() / searchSeconds, numResults,
+        hits / (double) (queries.size() * numResults)));
+  }
+
+  public static void main(String[] args) {
+    DefaultOptionBuilder obuilder = new DefaultOptionBuilder();
+    ArgumentBuilder abuilder = new ArgumentBuilder();
+    GroupBuilder gbuilder = new GroupBuilder();
+
+    Option numVectorsOpt = obuilder
+        .withLongName("numVectors")
+        .withRequired(false)
+        .withArgument(abuilder.withName("nv").withDefault(100000).create())
+        .withDescription("Number of vectors to search. Default: 100000").withShortName("nv").create();
+    Option numDimensionsOpt = obuilder
+        .withLongName("numDimensions")
+        .withRequired(false)
+        .withArgument(abuilder.withName("nd").withDefault(50).create())
+        .withDescription("Dimension of the vectors. Default: 50").withShortName("nd").create();
+    Option numClustersOpt = obuilder
+        .withLongName("numClusters")
+        .withRequired(false)
+        .withArgument(abuilder.withName("nc").withDefault(100).create())
+        .withDescription("Number of gaussian clusters the data is drawn from. Default: 100").withShortName("nc")
+        .create();
+    Option numQueriesOpt = obuilder
+        .withLongName("numQueries")
+        .withRequired(false)
+        .withArgument(abuilder.withName("nq").withDefault(1000).create())
+        .withDescription("Number of queries. Default: 1000").withShortName("nq").create();
+    Option numResultsOpt = obuilder
+        .withLongName("numResults")
+        .withRequired(false)
+        .withArgument(abuilder.withName("k").withDefault(10).create())
+        .withDescription("Number of neighbors per query. Default: 10").withShortName("k").create();
+    Option searchSizeOpt = obuilder
+        .withLongName("searchSize")
+        .withRequired(false)
+        .withArgument(abuilder.withName("ss").withDefault(30).create())
+        .withDescription("Search size of the approximate searchers. Default: 30").withShortName("ss").create();
+
+    Option helpOpt = DefaultOptionCreator.helpOption();
+
+    Group group = gbuilder.withName("Options").withOption(numVectorsOpt).withOption(numDimensionsOpt)
+        .withOption(numClustersOpt).withOption(numQueriesOpt).withOption(numResultsOpt).withOption(searchSizeOpt)
+        .withOption(helpOpt).create();
+
+    try {
+      Parser parser = new Parser();
+      parser.setGroup(group);
+      CommandLine cmdLine = parser.parse(args);
+
+      if (cmdLine.hasOption(helpOpt)) {
+        CommandLineUtil.printHelpWithGenericOptions(group);
+        return;
+      }
+
+      int numVectors = intValue(cmdLine, numVectorsOpt, 100000);
+      int numDimensions = intValue(cmdLine, numDimensionsOpt, 50);
+      int numClusters = intValue(cmdLine, numClustersOpt, 100);
+      int numQueries = intValue(cmdLine, numQueriesOpt, 1000);
+      int numResults = intValue(cmdLine, numResultsOpt, 10);
+      int searchSize = intValue(cmdLine, searchSizeOpt, 30);
+
+      SearcherBenchmark mark =
+          new SearcherBenchmark(numVectors, numDimensions, numClusters, numQueries, numResults);
+      DistanceMeasure measure = new EuclideanDistanceMeasure();
+      mark.benchmark(new BruteSearch(measure));
+      mark.benchmark(new ProjectionSearch(measure, NUM_PROJECTIONS, searchSize));
+      mark.benchmark(new FastProjectionSearch(measure, NUM_PROJECTIONS, searchSize));
+      mark.benchmark(new LocalitySensitiveHashSearch(measure, searchSize));
+      mark.benchmark(new HnswSearch(measure, searchSize));
+    } catch (OptionException e) {
+      CommandLineUtil.printHelp(group);
+    }
+  }
+
+  private static int intValue(CommandLine cmdLine, Option option, int defaultValue) {
+    return cmdLine.hasOption(option) ? Integer.parseInt((String) cmdLine.getValue(option)) : defaultValue;
+  }
+}
@@ -0,0 +1,294 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.classifier;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.mahout.classifier.naivebayes.ComplementaryNaiveBayesClassifier;
+import org.apache.mahout.classifier.naivebayes.NaiveBayesModel;
+import org.apache.mahout.classifier.naivebayes.StandardNaiveBayesClassifier;
+import org.apache.mahout.classifier.sgd.AbstractOnlineLogisticRegression;
+import org.apache.mahout.classifier.sgd.AdaptiveLogisticRegression;
+import org.apache.mahout.classifier.sgd.CrossFoldLearner;
+import org.apache.mahout.classifier.sgd.OnlineLogisticRegression;
+import org.apache.mahout.ep.State;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.Vector.Element;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Read-only copy of a trained linear classifier, compiled into one flat array for fast scoring.
+ * <p/>
+ * The weights of all categories (and of all folds of a {@link CrossFoldLearner}) for a feature are adjacent, so
+ * scoring an instance reads one contiguous run of weights per non-zero feature. Naive Bayes weights are computed
+ * once for every label and feature at compile time rather than on every lookup.
+ * <p/>
+ * {@link #scoreFull(Vector, double[])} and {@link #scoreFull(List, double[])} write into caller-provided arrays and
+ * allocate nothing beyond the iterator over the non-zeroes of sparse instances. Scores are those of
+ * {@link AbstractVectorClassifier#classifyFull(Vector)} on the original model: probabilities for logistic
+ * regression and raw scores for Naive Bayes. The weights are never modified after compilation, so a frozen
+ * classifier can be shared by any number of scoring threads.
+ */
+public final class FrozenClassifier extends AbstractVectorClassifier {
+
+  private final int numCategories;
+  private final int numFeatures;
+  // number of linear scores per model: numCategories - 1 in 1 of n-1 coding, numCategories otherwise
+  private final int numScores;
+  private final int numModels;
+  private final boolean logistic;
+
+  // numFeatures x numModels x numScores
+  private final double[] weights;
+
+  private final ThreadLocal<double[]> buffers = new ThreadLocal<double[]>() {
+    @Override
+    protected double[] initialValue() {
+      return new double[numModels * numScores];
+    }
+  };
+
+  private FrozenClassifier(int numCategories, int numFeatures, int numModels, boolean logistic) {
+    this.numCategories = numCategories;
+    this.numFeatures = numFeatures;
+    this.numScores = logistic ? numCategories - 1 : numCategories;
+    this.numModels = numModels;
+    this.logistic = logistic;
+    Preconditions.checkArgument((long) numFeatures * numModels * numScores <= Integer.MAX_VALUE,
+        "Too many weights for a single array");
+    this.weights = new double[numFeatures * numModels * numScores];
+  }
+
+  /**
+   * Compiles a logistic regression. Pending regularization is applied first, which closes the model.
+   */
+  public static FrozenClassifier compile(OnlineLogisticRegression model) {
+    return compile(ImmutableList.of(model));
+  }
+
+  /**
+   * Compiles all folds of a cross fold learner, scored as the average of their probabilities.
+   */
+  public static FrozenClassifier compile(CrossFoldLearner learner) {
+    return compile(learner.getModels());
+  }
+
+  /**
+   * Compiles the best learner found so far by an adaptive logistic regression.
+   */
+  public static FrozenClassifier compile(AdaptiveLogisticRegression model) {
+    State<AdaptiveLogisticRegression.Wrapper, CrossFoldLearner> best = model.getBest();
+    Preconditions.checkState(best != null, "No best learner yet, the model has to be trained first");
+    return compile(best.getPayload().getLearner());
+  }
+
+  private static FrozenClassifier compile(List<OnlineLogisticRegression> models) {
+    Preconditions.checkArgument(!models.isEmpty(), "Nothing to compile");
+    AbstractOnlineLogisticRegression first = models.get(0);
+    FrozenClassifier frozen = new FrozenClassifier(first.numCategories(), first.numFeatures(), models.size(), true);
+    for (int m = 0; m < models.size(); m++) {
+      Matrix beta = models.get(m).getBeta();
+      Preconditions.checkArgument(beta.numRows() == frozen.numScores && beta.numCols() == frozen.numFeatures,
+          "All models must have the same number of categories and features");
+      for (int j = 0; j < frozen.numFeatures; j++) {
+        for (int i = 0; i < frozen.numScores; i++) {
+          frozen.weights[frozen.index(j, m, i)] = beta.getQuick(i, j);
+        }
+      }
+    }
+    return frozen;
+  }
+
+  /**
+   * Compiles a Naive Bayes model, standard or complementary depending on how it was trained.
+   */
+  public static FrozenClassifier compile(NaiveBayesModel model) {
+    StandardNaiveBayesClassifier standard = model.isComplemtary() ? null : new StandardNaiveBayesClassifier(model);
+    ComplementaryNaiveBayesClassifier complementary =
+        model.isComplemtary() ? new ComplementaryNaiveBayesClassifier(model) : null;
+    FrozenClassifier frozen = new FrozenClassifier(model.numLabels(), model.cardinality(), 1, false);
+    for (int j = 0; j < frozen.numFeatures; j++) {
+      for (int label = 0; label < frozen.numCategories; label++) {
+        frozen.weights[frozen.index(j, 0, label)] = standard != null
+            ? standard.getScoreForLabelFeature(label, j)
+            : complementary.getScoreForLabelFeature(label, j);
+      }
+    }
+    return frozen;
+  }
+
+  private int index(int feature, int model, int score) {
+    return (feature * numModels + model) * numScores + score;
+  }
+
+  @Override
+  public int numCategories() {
+    return numCategories;
+  }
+
+  public int numFeatures() {
+    return numFeatures;
+  }
+
+  /**
+   * Writes the {@code numCategories()} scores of {@code instance} to the start of {@code scores}.
+   *
+   * @return scores
+   */
+  public double[] scoreFull(Vector instance, double[] scores) {
+    scoreFull(instance, scores, 0);
+    return scores;
+  }
+
+  /**
+   * Scores all instances, writing the {@code numCategories()} scores of instance {@code i} to
+   * {@code scores[i * numCategories()]} onwards.
+   *
+   * @return scores
+   */
+  public double[] scoreFull(List<? extends Vector> instances, double[] scores) {
+    Preconditions.checkArgument(scores.length >= instances.size() * numCategories,
+        "scores must hold numCategories scores per instance");
+    for (int n = 0; n < instances.size(); n++) {
+      scoreFull(instances.get(n), scores, n * numCategories);
+    }
+    return scores;
+  }
+
+  private void scoreFull(Vector instance, double[] scores, int offset) {
+    if (instance.size() != numFeatures) {
+      throw new IllegalArgumentException("instance must have " + numFeatures + " features");
+    }
+    if (!logistic) {
+      linear(instance, scores, offset);
+      return;
+    }
+
+    if (numModels == 1) {
+      // the linear scores go right where the probabilities end up
+      linear(instance, scores, offset + 1);
+      link(scores, offset + 1);
+    } else {
+      double[] buffer = buffers.get();
+      linear(instance, buffer, 0);
+      Arrays.fill(scores, offset + 1, offset + numCategories, 0);
+      double scale = 1.0 / numModels;
+      for (int m = 0; m < numModels; m++) {
+        int start = m * numScores;
+        link(buffer, start);
+        for (int i = 0; i < numScores; i++) {
+          scores[offset + 1 + i] += buffer[start + i] * scale;
+        }
+      }
+    }
+
+    double sum = 0;
+    for (int i = 1; i < numCategories; i++) {
+      sum += scores[offset + i];
+    }
+    scores[offset] = 1.0 - sum;
+  }
+
+  /**
+   * Adds up the weights of all non-zero features of the instance into {@code numModels * numScores} scores.
+   */
+  private void linear(Vector instance, double[] scores, int offset) {
+    int width = numModels * numScores;
+    Arrays.fill(scores, offset, offset + width, 0);
+    if (instance.isDense()) {
+      for (int j = 0; j < numFeatures; j++) {
+        double x = instance.getQuick(j);
+        if (x != 0) {
+          add(x, j * width, scores, offset, width);
+        }
+      }
+    } else {
+      for (Element element : instance.nonZeroes()) {
+        add(element.get(), element.index() * width, scores, offset, width);
+      }
+    }
+  }
+
+  private void add(double x, int base, double[] scores, int offset, int width) {
+    for (int i = 0; i < width; i++) {
+      scores[offset + i] += x * weights[base + i];
+    }
+  }
+
+  /**
+   * Turns {@code numScores} linear scores into probabilities in place, as
+   * {@link AbstractOnlineLogisticRegression#link(Vector)}.
+   */
+  private void link(double[] v, int offset) {
+    if (numScores == 1) {
+      v[offset] = AbstractOnlineLogisticRegression.link(v[offset]);
+      return;
+    }
+    double max = Double.NEGATIVE_INFINITY;
+    for (int i = offset; i < offset + numScores; i++) {
+      max = Math.max(max, v[i]);
+    }
+    // if max >= 40, 1 + sum(exp(v)) = sum(exp(v)) to within round-off
+    double shift = max >= 40 ? max : 0;
+    double sum = max >= 40 ? 0 : 1;
+    for (int i = offset; i < offset + numScores; i++) {
+      v[i] = Math.exp(v[i] - shift);
+      sum += v[i];
+    }
+    for (int i = offset; i < offset + numScores; i++) {
+      v[i] /= sum;
+    }
+  }
+
+  @Override
+  public Vector classifyFull(Vector r, Vector instance) {
+    double[] scores = scoreFull(instance, new double[numCategories]);
+    for (int i = 0; i < numCategories; i++) {
+      r.setQuick(i, scores[i]);
+    }
+    return r;
+  }
+
+  @Override
+  public Vector classify(Vector instance) {
+    if (!logistic) {
+      throw new UnsupportedOperationException("probabilites not supported in Naive Bayes");
+    }
+    return new DenseVector(scoreFull(instance, new double[numCategories]), true).viewPart(1, numCategories - 1);
+  }
+
+  /**
+   * Scores a two category logistic regression without any allocation for dense instances.
+   */
+  @Override
+  public double classifyScalar(Vector instance) {
+    Preconditions.checkArgument(numCategories == 2 && logistic, "Can only call classifyScalar with two categories");
+    double[] buffer = buffers.get();
+    linear(instance, buffer, 0);
+    double r = 0;
+    for (int m = 0; m < numModels; m++) {
+      r += AbstractOnlineLogisticRegression.link(buffer[m]);
+    }
+    return r / numModels;
+  }
+}
@@ -0,0 +1,414 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.classifier.df.builder;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+import org.apache.mahout.classifier.df.data.BinnedData;
+import org.apache.mahout.classifier.df.data.DataUtils;
+import org.apache.mahout.classifier.df.data.Dataset;
+import org.apache.mahout.classifier.df.node.CategoricalNode;
+import org.apache.mahout.classifier.df.node.Leaf;
+import org.apache.mahout.classifier.df.node.Node;
+import org.apache.mahout.classifier.df.node.NumericalNode;
+import org.apache.mahout.classifier.df.split.HistogramSplit;
+import org.apache.mahout.classifier.df.split.Split;
+import org.apache.mahout.common.RandomUtils;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Builds a classification or regression tree from {@link BinnedData}, finding splits with {@link HistogramSplit}
+ * instead of scanning the raw instances for every attribute at every node. Grows the same kind of tree as
+ * {@link DecisionTreeBuilder}: {@code m} attributes drawn at random per node, CATEGORICAL attributes used at most
+ * once per path, multiway CATEGORICAL splits, and the same stopping rules.
+ * <p/>
+ * When this node is the larger child of a binary split, the histogram of an attribute that its parent evaluated
+ * as well is the parent histogram minus the histogram of the smaller sibling. So the larger child never scans its
+ * own instances for that attribute. Every node draws the seeds of its children up front, which makes the tree only
+ * depend on the seed of the root.
+ * <p/>
+ * When called from a {@link java.util.concurrent.ForkJoinPool}, large nodes evaluate their attributes and build their
+ * children as parallel tasks of that pool; otherwise everything runs on the calling thread. The configuration must
+ * not be changed while trees are built, but any number of trees may be built concurrently.
+ */
+@Deprecated
+public class HistogramTreeBuilder {
+
+  private static final double EPSILON = 1.0e-6;
+
+  /**
+   * Nodes with fewer instances times attributes than this aren't worth forking
+   */
+  private static final int PARALLEL_THRESHOLD = 1 << 15;
+
+  private final BinnedData data;
+  private final Dataset dataset;
+  private final boolean regression;
+  private final int stride;
+
+  /**
+   * number of attributes to select randomly at each node
+   */
+  private int m;
+  /**
+   * tree is complemented
+   */
+  private boolean complemented = true;
+  /**
+   * minimum number for split
+   */
+  private double minSplitNum = 2.0;
+  /**
+   * minimum proportion of the total variance for split
+   */
+  private double minVarianceProportion = 1.0e-3;
+
+  public HistogramTreeBuilder(BinnedData data) {
+    this.data = data;
+    this.dataset = data.getDataset();
+    this.regression = dataset.isNumerical(dataset.getLabelId());
+    this.stride = HistogramSplit.stride(dataset);
+  }
+
+  public void setM(int m) {
+    this.m = m;
+  }
+
+  public void setComplemented(boolean complemented) {
+    this.complemented = complemented;
+  }
+
+  public void setMinSplitNum(int minSplitNum) {
+    this.minSplitNum = minSplitNum;
+  }
+
+  public void setMinVarianceProportion(double minVarianceProportion) {
+    this.minVarianceProportion = minVarianceProportion;
+  }
+
+  public BinnedData getData() {
+    return data;
+  }
+
+  /**
+   * Builds a tree using all the instances
+   */
+  public Node build(Random rng) {
+    int[] rows = new int[data.size()];
+    for (int index = 0; index < rows.length; index++) {
+      rows[index] = index;
+    }
+    return build(rng, rows);
+  }
+
+  /**
+   * Builds a tree using the given instances
+   *
+   * @param rng
+   *          random-numbers generator
+   * @param rows
+   *          indices of the training instances, may contain the same instance more than once (bagging)
+   * @return root Node
+   */
+  public Node build(Random rng, int[] rows) {
+    if (rows.length == 0) {
+      return new Leaf(Double.NaN);
+    }
+
+    double e = dataset.nbAttributes() - 1;
+    int nbSelect = m;
+    if (nbSelect == 0) {
+      nbSelect = regression ? (int) Math.ceil(e / 3.0) : (int) Math.ceil(Math.sqrt(e));
+    }
+
+    double minVariance = Double.NaN;
+    if (regression) {
+      double sum = 0.0;
+      double sumSquared = 0.0;
+      for (int row : rows) {
+        double label = data.getLabel(row);
+        sum += label;
+        sumSquared += label * label;
+      }
+      minVariance = (sumSquared - sum * sum / rows.length) / rows.length * minVarianceProportion;
+    }
+
+    boolean[] used = new boolean[dataset.nbAttributes()];
+    used[dataset.getLabelId()] = true;
+    return new NodeTask(new TreeParams(nbSelect, minVariance), rng.nextLong(), rows, used, null, null).compute();
+  }
+
+  private static final class TreeParams {
+    private final int m;
+    private final double minVariance;
+
+    TreeParams(int m, double minVariance) {
+      this.m = m;
+      this.minVariance = minVariance;
+    }
+  }
+
+  /**
+   * Builds the subtree of a node.
+   */
+  private final class NodeTask extends RecursiveTask<Node> {
+
+    private final TreeParams params;
+    private final long seed;
+    private final int[] rows;
+    // attributes that can't be selected anymore: the label and the CATEGORICAL attributes of the parents
+    private final boolean[] used;
+    // histograms of the parent, indexed by attribute, if this node is the larger child of a binary split
+    private final double[][] parentHistograms;
+    private final int[] siblingRows;
+
+    NodeTask(TreeParams params, long seed, int[] rows, boolean[] used, double[][] parentHistograms,
+             int[] siblingRows) {
+      this.params = params;
+      this.seed = seed;
+      this.rows = rows;
+      this.used = used;
+      this.parentHistograms = parentHistograms;
+      this.siblingRows = siblingRows;
+    }
+
+    @Override
+    protected Node compute() {
+      Random rng = RandomUtils.getRandom(seed);
+      int size = rows.length;
+      if (size == 0) {
+        return new Leaf(Double.NaN);
+      }
+
+      int[] labelCounts = null;
+      double sum = 0.0;
+      if (regression) {
+        double sumSquared = 0.0;
+        for (int row : rows) {
+          double label = data.getLabel(row);
+          sum += label;
+          sumSquared += label * label;
+        }
+        double var = sumSquared - sum * sum / size;
+        if (var / size < params.minVariance) {
+          return new Leaf(sum / size);
+        }
+      } else {
+        labelCounts = new int[dataset.nblabels()];
+        for (int row : rows) {
+          labelCounts[(int) data.getLabel(row)]++;
+        }
+        for (int count : labelCounts) {
+          if (count == size) {
+            return new Leaf(data.getLabel(rows[0]));
+          }
+        }
+      }
+      double leafLabel = regression ? sum / size : DataUtils.maxindex(rng, labelCounts);
+
+      int[] attributes = randomAttributes(rng, used, params.m);
+      if (attributes.length == 0) {
+        return new Leaf(leafLabel);
+      }
+
+      double[][] histograms = histograms(attributes);
+
+      Split best = null;
+      for (int attr : attributes) {
+        Split split = HistogramSplit.computeSplit(data, attr, histograms[attr]);
+        if (best == null || best.getIg() < split.getIg()) {
+          best = split;
+        }
+      }
+      if (best.getIg() < EPSILON) {
+        return new Leaf(leafLabel);
+      }
+
+      int attr = best.getAttr();
+      short[] bins = data.bins(attr);
+      if (dataset.isNumerical(attr)) {
+        int hiBin = data.bin(attr, best.getSplit());
+        int nbLo = 0;
+        for (int row : rows) {
+          if (bins[row] < hiBin) {
+            nbLo++;
+          }
+        }
+        if (nbLo < minSplitNum || size - nbLo < minSplitNum) {
+          return new Leaf(leafLabel);
+        }
+        int[] lo = new int[nbLo];
+        int[] hi = new int[size - nbLo];
+        int loIndex = 0;
+        int hiIndex = 0;
+        for (int row : rows) {
+          if (bins[row] < hiBin) {
+            lo[loIndex++] = row;
+          } else {
+            hi[hiIndex++] = row;
+          }
+        }
+
+        boolean loSmaller = lo.length <= hi.length;
+        NodeTask loTask = new NodeTask(params, rng.nextLong(), lo, used, loSmaller ? null : histograms,
+            loSmaller ? null : hi);
+        NodeTask hiTask = new NodeTask(params, rng.nextLong(), hi, used, loSmaller ? histograms : null,
+            loSmaller ? lo : null);
+        List<Node> children = runAll(Arrays.asList(loTask, hiTask), size);
+        return new NumericalNode(attr, best.getSplit(), children.get(0), children.get(1));
+      }
+
+      // CATEGORICAL attribute
+      int nbValues = data.nbBins(attr);
+      int[] categorySizes = new int[nbValues];
+      for (int row : rows) {
+        categorySizes[bins[row]]++;
+      }
+      int cnt = 0;
+      int nbValuesKept = 0;
+      for (int category = 0; category < nbValues; category++) {
+        if (categorySizes[category] >= minSplitNum) {
+          cnt++;
+        }
+        if (complemented ? data.isPresent(attr, category) : categorySizes[category] > 0) {
+          nbValuesKept++;
+        }
+      }
+      if (cnt < 2) {
+        return new Leaf(leafLabel);
+      }
+
+      int[][] subsets = new int[nbValues][];
+      for (int category = 0; category < nbValues; category++) {
+        subsets[category] = new int[categorySizes[category]];
+        categorySizes[category] = 0;
+      }
+      for (int row : rows) {
+        int category = bins[row];
+        subsets[category][categorySizes[category]++] = row;
+      }
+
+      boolean[] childUsed = used.clone();
+      childUsed[attr] = true;
+      double[] values = new double[nbValuesKept];
+      List<NodeTask> tasks = Lists.newArrayList();
+      int valueIndex = 0;
+      for (int category = 0; category < nbValues; category++) {
+        if (complemented ? data.isPresent(attr, category) : categorySizes[category] > 0) {
+          values[valueIndex++] = category;
+          if (categorySizes[category] > 0) {
+            tasks.add(new NodeTask(params, rng.nextLong(), subsets[category], childUsed, null, null));
+          }
+        }
+      }
+
+      List<Node> built = runAll(tasks, size);
+      Node[] children = new Node[nbValuesKept];
+      int taskIndex = 0;
+      valueIndex = 0;
+      for (int category = 0; category < nbValues; category++) {
+        if (complemented ? data.isPresent(attr, category) : categorySizes[category] > 0) {
+          // tree is complemented: categories absent from this node get the label of the node
+          children[valueIndex++] = categorySizes[category] > 0 ? built.get(taskIndex++) : new Leaf(leafLabel);
+        }
+      }
+      return new CategoricalNode(attr, values, children);
+    }
+
+    /**
+     * Histograms of the given attributes, indexed by attribute
+     */
+    private double[][] histograms(int[] attributes) {
+      final double[][] histograms = new double[dataset.nbAttributes()][];
+      List<RecursiveAction> tasks = Lists.newArrayListWithCapacity(attributes.length);
+      for (final int attr : attributes) {
+        tasks.add(new RecursiveAction() {
+          @Override
+          protected void compute() {
+            double[] histogram = new double[data.nbBins(attr) * stride];
+            if (parentHistograms != null && parentHistograms[attr] != null) {
+              HistogramSplit.fill(data, attr, siblingRows, histogram);
+              HistogramSplit.subtract(parentHistograms[attr], histogram);
+            } else {
+              HistogramSplit.fill(data, attr, rows, histogram);
+            }
+            histograms[attr] = histogram;
+          }
+        });
+      }
+      runAll(tasks, (long) rows.length * attributes.length);
+      return histograms;
+    }
+  }
+
+  /**
+   * Runs the tasks in parallel if the work is large enough and we are in a fork-join pool, in order otherwise.
+   */
+  private static <T> List<T> runAll(List<? extends ForkJoinTask<T>> tasks, long work) {
+    if (work >= PARALLEL_THRESHOLD && ForkJoinTask.inForkJoinPool()) {
+      ForkJoinTask.invokeAll(tasks);
+    } else {
+      for (ForkJoinTask<T> task : tasks) {
+        task.invoke();
+      }
+    }
+    List<T> results = Lists.newArrayListWithCapacity(tasks.size());
+    for (ForkJoinTask<T> task : tasks) {
+      results.add(task.join());
+    }
+    return results;
+  }
+
+  /**
+   * Randomly selects m attributes among the ones not used yet
+   *
+   * @return indices of the selected attributes, empty if all attributes have been used
+   */
+  private static int[] randomAttributes(Random rng, boolean[] used, int m) {
+    int nbAvailable = 0;
+    for (boolean u : used) {
+      if (!u) {
+        nbAvailable++;
+      }
+    }
+    int[] available = new int[nbAvailable];
+    int index = 0;
+    for (int attr = 0; attr < used.length; attr++) {
+      if (!used[attr]) {
+        available[index++] = attr;
+      }
+    }
+    if (nbAvailable <= m) {
+      return available;
+    }
+    // partial Fisher-Yates shuffle
+    for (int i = 0; i < m; i++) {
+      int j = i + rng.nextInt(nbAvailable - i);
+      int tmp = available[i];
+      available[i] = available[j];
+      available[j] = tmp;
+    }
+    return Arrays.copyOf(available, m);
+  }
+}
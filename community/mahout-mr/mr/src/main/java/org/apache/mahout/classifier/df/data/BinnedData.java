@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.classifier.df.data;
+
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Column-wise, quantized copy of a {@link Data}, built once and shared by all the trees of a forest.
+ * <p/>
+ * Every attribute value is replaced by a small bin number. For a CATEGORICAL attribute the bin is the category
+ * itself. For a NUMERICAL attribute at most {@code maxBins} bins are delimited by cut points, chosen between
+ * consecutive distinct values so that bins hold about as many instances each; an instance is in bin {@code b} or
+ * below iff its value is lesser than {@link #cut(int, int) cut(attr, b)}. Attributes with no more distinct values
+ * than bins keep all their possible splits.
+ */
+@Deprecated
+public class BinnedData {
+
+  public static final int DEFAULT_MAX_BINS = 256;
+
+  private final Dataset dataset;
+  private final int size;
+
+  // bins[attr][instance], null for the label
+  private final short[][] bins;
+  // cuts[attr], null for CATEGORICAL attributes and the label
+  private final double[][] cuts;
+  private final int[] nbBins;
+  // categories that appear at least once, null for NUMERICAL attributes and the label
+  private final boolean[][] present;
+
+  private final double[] labels;
+
+  public BinnedData(Data data) {
+    this(data, DEFAULT_MAX_BINS);
+  }
+
+  public BinnedData(Data data, int maxBins) {
+    Preconditions.checkArgument(maxBins > 1 && maxBins <= Short.MAX_VALUE,
+        "maxBins must be in [2, " + Short.MAX_VALUE + ']');
+    dataset = data.getDataset();
+    size = data.size();
+    int nbAttributes = dataset.nbAttributes();
+    bins = new short[nbAttributes][];
+    cuts = new double[nbAttributes][];
+    nbBins = new int[nbAttributes];
+    present = new boolean[nbAttributes][];
+
+    labels = data.extractLabels();
+
+    double[] column = new double[size];
+    for (int attr = 0; attr < nbAttributes; attr++) {
+      if (attr == dataset.getLabelId()) {
+        continue;
+      }
+      for (int index = 0; index < size; index++) {
+        column[index] = data.get(index).get(attr);
+      }
+      short[] attrBins = new short[size];
+      if (dataset.isNumerical(attr)) {
+        double[] attrCuts = chooseCuts(column.clone(), maxBins);
+        for (int index = 0; index < size; index++) {
+          attrBins[index] = (short) bin(attrCuts, column[index]);
+        }
+        cuts[attr] = attrCuts;
+        nbBins[attr] = attrCuts.length + 1;
+      } else {
+        Preconditions.checkArgument(dataset.nbValues(attr) <= Short.MAX_VALUE,
+            "Too many categories for attribute %s", attr);
+        boolean[] attrPresent = new boolean[dataset.nbValues(attr)];
+        for (int index = 0; index < size; index++) {
+          int category = (int) column[index];
+          attrBins[index] = (short) category;
+          attrPresent[category] = true;
+        }
+        present[attr] = attrPresent;
+        nbBins[attr] = attrPresent.length;
+      }
+      bins[attr] = attrBins;
+    }
+  }
+
+  /**
+   * Cut points halfway between consecutive distinct values, at (about) evenly spaced ranks of the sorted values.
+   */
+  private static double[] chooseCuts(double[] values, int maxBins) {
+    Arrays.sort(values);
+    int nbDistinct = values.length == 0 ? 0 : 1;
+    for (int index = 1; index < values.length; index++) {
+      if (values[index] != values[index - 1]) {
+        nbDistinct++;
+      }
+    }
+
+    double[] cuts = new double[Math.max(0, Math.min(nbDistinct, maxBins) - 1)];
+    int nbCuts = 0;
+    if (nbDistinct <= maxBins) {
+      for (int index = 1; index < values.length; index++) {
+        if (values[index] != values[index - 1]) {
+          cuts[nbCuts++] = (values[index] + values[index - 1]) / 2.0;
+        }
+      }
+    } else {
+      for (int b = 1; b < maxBins; b++) {
+        // first instance of the next bin, moved forward to the start of a run of equal values
+        int index = (int) ((long) b * values.length / maxBins);
+        while (index < values.length && values[index] == values[index - 1]) {
+          index++;
+        }
+        if (index == values.length) {
+          break;
+        }
+        double cut = (values[index] + values[index - 1]) / 2.0;
+        if (nbCuts == 0 || cut > cuts[nbCuts - 1]) {
+          cuts[nbCuts++] = cut;
+        }
+      }
+    }
+    return nbCuts == cuts.length ? cuts : Arrays.copyOf(cuts, nbCuts);
+  }
+
+  /**
+   * @return number of cuts lesser or equal to value
+   */
+  private static int bin(double[] cuts, double value) {
+    int lo = 0;
+    int hi = cuts.length;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (cuts[mid] <= value) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  public Dataset getDataset() {
+    return dataset;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return bins of all the instances for the given attribute, not to be modified
+   */
+  public short[] bins(int attr) {
+    return bins[attr];
+  }
+
+  public int nbBins(int attr) {
+    return nbBins[attr];
+  }
+
+  /**
+   * @return value separating bin {@code bin} from bin {@code bin + 1} of a NUMERICAL attribute
+   */
+  public double cut(int attr, int bin) {
+    return cuts[attr][bin];
+  }
+
+  /**
+   * @return bin of a value of a NUMERICAL attribute
+   */
+  public int bin(int attr, double value) {
+    return bin(cuts[attr], value);
+  }
+
+  /**
+   * @return true if at least one instance has the given category
+   */
+  public boolean isPresent(int attr, int category) {
+    return present[attr][category];
+  }
+
+  public double getLabel(int index) {
+    return labels[index];
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.classifier.df.ref;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.apache.mahout.classifier.df.DecisionForest;
+import org.apache.mahout.classifier.df.builder.HistogramTreeBuilder;
+import org.apache.mahout.classifier.df.node.Node;
+import org.apache.mahout.common.RandomUtils;
+
+/**
+ * Builds a Random Decision Forest in memory using several threads, growing bagged trees with a
+ * {@link HistogramTreeBuilder}. Trees are built concurrently and large nodes are split across the same threads, so
+ * a small forest still keeps all the threads busy. Each tree gets its own seed, taken from the given generator
+ * before any tree is built, so the forest doesn't depend on the number of threads.
+ */
+@Deprecated
+public class ParallelBuilder {
+
+  private final Random rng;
+
+  private final HistogramTreeBuilder treeBuilder;
+
+  private final int numThreads;
+
+  /**
+   * Constructor
+   *
+   * @param rng
+   *          random-numbers generator
+   * @param treeBuilder
+   *          tree builder, its training data is used to grow all the trees
+   * @param numThreads
+   *          number of threads
+   */
+  public ParallelBuilder(Random rng, HistogramTreeBuilder treeBuilder, int numThreads) {
+    Preconditions.checkArgument(numThreads > 0, "numThreads must be greater then 0!");
+    this.rng = rng;
+    this.treeBuilder = treeBuilder;
+    this.numThreads = numThreads;
+  }
+
+  public DecisionForest build(int nbTrees) {
+    final int size = treeBuilder.getData().size();
+    ForkJoinPool pool = new ForkJoinPool(numThreads);
+    try {
+      List<Future<Node>> futures = Lists.newArrayListWithCapacity(nbTrees);
+      for (int treeId = 0; treeId < nbTrees; treeId++) {
+        final long seed = rng.nextLong();
+        futures.add(pool.submit(new Callable<Node>() {
+          @Override
+          public Node call() {
+            Random treeRng = RandomUtils.getRandom(seed);
+            int[] bag = new int[size];
+            for (int i = 0; i < size; i++) {
+              bag[i] = treeRng.nextInt(size);
+            }
+            return treeBuilder.build(treeRng, bag);
+          }
+        }));
+      }
+
+      List<Node> trees = Lists.newArrayListWithCapacity(nbTrees);
+      for (Future<Node> future : futures) {
+        trees.add(future.get());
+      }
+      return new DecisionForest(trees);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+}
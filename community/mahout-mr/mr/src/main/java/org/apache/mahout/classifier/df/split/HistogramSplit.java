@@ -0,0 +1,191 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.classifier.df.split;
+
+import org.apache.mahout.classifier.df.data.BinnedData;
+import org.apache.mahout.classifier.df.data.Dataset;
+
+/**
+ * Computes the best split of an attribute from a histogram of its bins, see {@link BinnedData}.
+ * <p/>
+ * A histogram holds {@link #stride(Dataset)} values per bin: the count of every label for classification, or the
+ * count, sum and sum of squares of the label for regression. Since histograms add up, the histogram of one child of a
+ * node is the histogram of the node minus the histogram of the other child, which is computed by scanning the
+ * smaller child only ({@link #subtract(double[], double[])}).
+ * <p/>
+ * Classification splits maximize the information gain like {@link DefaultIgSplit}; regression splits maximize the
+ * reduction of the sum of squared deviations, which is the gain reported by {@link RegressionSplit}. For a NUMERICAL
+ * attribute every cut between two bins is a candidate, for a CATEGORICAL attribute the split has one branch per
+ * category.
+ */
+@Deprecated
+public final class HistogramSplit {
+
+  private HistogramSplit() {
+  }
+
+  /**
+   * @return number of values per bin in a histogram of the given dataset
+   */
+  public static int stride(Dataset dataset) {
+    return isRegression(dataset) ? 3 : dataset.nblabels();
+  }
+
+  private static boolean isRegression(Dataset dataset) {
+    return dataset.isNumerical(dataset.getLabelId());
+  }
+
+  /**
+   * Adds the given instances to the histogram of an attribute.
+   *
+   * @param rows indices of the instances, possibly repeated
+   * @param histogram {@code nbBins(attr) * stride} values
+   */
+  public static void fill(BinnedData data, int attr, int[] rows, double[] histogram) {
+    short[] bins = data.bins(attr);
+    if (isRegression(data.getDataset())) {
+      for (int row : rows) {
+        int offset = 3 * bins[row];
+        double label = data.getLabel(row);
+        histogram[offset]++;
+        histogram[offset + 1] += label;
+        histogram[offset + 2] += label * label;
+      }
+    } else {
+      int stride = data.getDataset().nblabels();
+      for (int row : rows) {
+        histogram[bins[row] * stride + (int) data.getLabel(row)]++;
+      }
+    }
+  }
+
+  /**
+   * child = parent - child
+   */
+  public static void subtract(double[] parent, double[] child) {
+    for (int index = 0; index < child.length; index++) {
+      child[index] = parent[index] - child[index];
+    }
+  }
+
+  /**
+   * Computes the best split of an attribute given the histogram of the node. The split value of NUMERICAL
+   * attributes is the cut point, instances with lesser values go to the first branch.
+   */
+  public static Split computeSplit(BinnedData data, int attr, double[] histogram) {
+    Dataset dataset = data.getDataset();
+    int stride = stride(dataset);
+    int nbBins = data.nbBins(attr);
+    boolean regression = isRegression(dataset);
+
+    double[] total = new double[stride];
+    for (int bin = 0; bin < nbBins; bin++) {
+      for (int k = 0; k < stride; k++) {
+        total[k] += histogram[bin * stride + k];
+      }
+    }
+    double size = regression ? total[0] : sum(total, 0, stride);
+    double impurity = regression ? sumSquares(total, 0) : entropy(total, 0, stride, size);
+
+    if (!dataset.isNumerical(attr)) {
+      double ig = impurity;
+      for (int bin = 0; bin < nbBins; bin++) {
+        int offset = bin * stride;
+        if (regression) {
+          ig -= sumSquares(histogram, offset);
+        } else {
+          double binSize = sum(histogram, offset, stride);
+          ig -= binSize / size * entropy(histogram, offset, stride, binSize);
+        }
+      }
+      return new Split(attr, ig);
+    }
+
+    double[] less = new double[stride];
+    double[] greater = new double[stride];
+    int best = -1;
+    double bestIg = 0.0;
+    for (int bin = 0; bin < nbBins - 1; bin++) {
+      int offset = bin * stride;
+      for (int k = 0; k < stride; k++) {
+        less[k] += histogram[offset + k];
+        greater[k] = total[k] - less[k];
+      }
+      double lessSize = regression ? less[0] : sum(less, 0, stride);
+      if (lessSize == 0) {
+        continue;
+      }
+      double greaterSize = size - lessSize;
+      if (greaterSize <= 0) {
+        break;
+      }
+
+      double ig;
+      if (regression) {
+        ig = impurity - sumSquares(less, 0) - sumSquares(greater, 0);
+      } else {
+        ig = impurity - lessSize / size * entropy(less, 0, stride, lessSize)
+            - greaterSize / size * entropy(greater, 0, stride, greaterSize);
+      }
+      if (best == -1 || ig > bestIg) {
+        best = bin;
+        bestIg = ig;
+      }
+    }
+
+    if (best == -1) {
+      // all the instances are in the same bin
+      return new Split(attr, 0.0);
+    }
+    return new Split(attr, bestIg, data.cut(attr, best));
+  }
+
+  private static double sum(double[] values, int offset, int length) {
+    double sum = 0.0;
+    for (int k = offset; k < offset + length; k++) {
+      sum += values[k];
+    }
+    return sum;
+  }
+
+  /**
+   * Sum of squared deviations from the mean of the (count, sum, sum of squares) at offset
+   */
+  private static double sumSquares(double[] values, int offset) {
+    double count = values[offset];
+    if (count <= 0) {
+      return 0.0;
+    }
+    double sum = values[offset + 1];
+    return Math.max(0.0, values[offset + 2] - sum * sum / count);
+  }
+
+  private static double entropy(double[] counts, int offset, int length, double size) {
+    if (size <= 0) {
+      return 0.0;
+    }
+    double entropy = 0.0;
+    for (int k = offset; k < offset + length; k++) {
+      if (counts[k] > 0) {
+        double p = counts[k] / size;
+        entropy -= p * Math.log(p);
+      }
+    }
+    return entropy / IgSplit.LOG2;
+  }
+}
@@ -21,6 +21,7 @@ import org.apache.mahout.common.RandomUtils;
 import org.apache.mahout.math.DenseMatrix;
 import org.apache.mahout.math.Matrix;
 import org.apache.mahout.math.list.DoubleArrayList;
+import org.apache.mahout.math.stats.OnlineSummarizer;
 
 import com.google.common.base.Preconditions;
 
@@ -38,6 +39,7 @@ public class Auc {
 
   private int maxBufferSize = 10000;
   private final DoubleArrayList[] scores = {new DoubleArrayList(), new DoubleArrayList()};
+  private final OnlineSummarizer[] summaries = {new OnlineSummarizer(), new OnlineSummarizer()};
   private final Random rand;
   private int samples;
   private final double threshold;
@@ -87,6 +89,8 @@ public class Auc {
       entropy.set(trueValue, 1, (Math.log(limited) - v1) / samples + v1);
     }
 
+    summaries[trueValue].add(score);
+
     // add to buffers
     DoubleArrayList buf = scores[trueValue];
     if (buf.size() >= maxBufferSize) {
@@ -219,6 +223,18 @@ public class Auc {
     return entropy;
   }
 
+  /**
+   * Returns a summary of all scores added for examples of one true class.  Unlike the buffers
+   * used for AUC, the quantiles of this summary take every score into account.
+   *
+   * @param trueValue 0 or 1
+   * @return The summary of scores, including quantiles such as the 99th percentile.
+   */
+  public OnlineSummarizer scoreSummary(int trueValue) {
+    Preconditions.checkArgument(trueValue == 0 || trueValue == 1, "True value must be 0 or 1");
+    return summaries[trueValue];
+  }
+
   public void setMaxBufferSize(int maxBufferSize) {
     this.maxBufferSize = maxBufferSize;
   }
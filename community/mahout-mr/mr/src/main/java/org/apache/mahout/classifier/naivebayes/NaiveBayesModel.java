@@ -90,6 +90,11 @@ public class NaiveBayesModel {
     return weightsPerLabel.size();
   }
 
+  /** Cardinality of the instances to score, as opposed to {@link #numFeatures()} which counts features seen. */
+  public int cardinality() {
+    return weightsPerFeature.size();
+  }
+
   public Vector createScoringVector() {
     return weightsPerLabel.like();
   }
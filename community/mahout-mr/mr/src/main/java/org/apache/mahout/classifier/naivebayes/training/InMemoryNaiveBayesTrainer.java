@@ -0,0 +1,248 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.classifier.naivebayes.training;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.apache.mahout.classifier.naivebayes.ComplementaryNaiveBayesClassifier;
+import org.apache.mahout.classifier.naivebayes.NaiveBayesModel;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.RandomAccessSparseVector;
+import org.apache.mahout.math.SparseMatrix;
+import org.apache.mahout.math.Vector;
+
+/**
+ * Trains a {@link NaiveBayesModel} inside this JVM using several threads, for training sets that fit in memory.
+ * It computes what the stages of {@link TrainNaiveBayesJob} compute:
+ * <ul>
+ * <li>the instances are summed per label as by {@link IndexInstancesMapper}. Every thread sums a contiguous range of
+ * the instances into its own sparse accumulators, which are then merged per label in thread order,</li>
+ * <li>the per feature and per label weights are computed from the sums as by {@link WeightsMapper},</li>
+ * <li>for complementary models, the theta normalizer of each label is computed as by {@link ThetaMapper}. The terms
+ * are added in the same order as {@link ComplementaryThetaTrainer} adds them, but from dense copies of the weights
+ * instead of looking them up in sparse vectors.</li>
+ * </ul>
+ * The sums may differ from those of the jobs in the last bits, since they are added in a different order.
+ */
+public final class InMemoryNaiveBayesTrainer {
+
+  private final float alphaI;
+  private final boolean trainComplementary;
+  private final int numThreads;
+
+  /**
+   * @param alphaI smoothing parameter
+   * @param trainComplementary whether to compute the theta normalizers of a complementary model
+   * @param numThreads number of threads to use
+   */
+  public InMemoryNaiveBayesTrainer(float alphaI, boolean trainComplementary, int numThreads) {
+    Preconditions.checkArgument(alphaI > 0, "alphaI has to be greater than 0!");
+    Preconditions.checkArgument(numThreads > 0, "numThreads must be greater then 0!");
+    this.alphaI = alphaI;
+    this.trainComplementary = trainComplementary;
+    this.numThreads = numThreads;
+  }
+
+  /**
+   * @param instances the training instances, all of the same cardinality
+   * @param labels the label index of each instance
+   * @param numLabels the number of labels, every label has to be in {@code [0, numLabels)}
+   * @return the model, which is not validated
+   */
+  public NaiveBayesModel train(final List<? extends Vector> instances, final int[] labels, final int numLabels) {
+    Preconditions.checkArgument(!instances.isEmpty(), "No instances to train on!");
+    Preconditions.checkArgument(instances.size() == labels.length,
+        "Got " + instances.size() + " instances but " + labels.length + " labels");
+    Preconditions.checkArgument(numLabels > 0, "Wrong numLabels: " + numLabels + ". Must be > 0!");
+    final int cardinality = instances.get(0).size();
+    for (int i = 0; i < labels.length; i++) {
+      Preconditions.checkArgument(labels[i] >= 0 && labels[i] < numLabels, "Unknown label: " + labels[i]);
+      Preconditions.checkArgument(instances.get(i).size() == cardinality,
+          "Instance " + i + " has cardinality " + instances.get(i).size() + ", expected " + cardinality);
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      // per thread sums of the instances of each label
+      int numParts = Math.min(numThreads, instances.size());
+      List<Callable<Vector[]>> sumParts = Lists.newArrayList();
+      for (int part = 0; part < numParts; part++) {
+        final int from = (int) ((long) instances.size() * part / numParts);
+        final int to = (int) ((long) instances.size() * (part + 1) / numParts);
+        sumParts.add(new Callable<Vector[]>() {
+          @Override
+          public Vector[] call() {
+            return sumPerLabel(instances, labels, from, to, numLabels, cardinality);
+          }
+        });
+      }
+      final List<Vector[]> partialSums = getAll(executor, sumParts);
+
+      // merge the partial sums of each label
+      List<Callable<Vector>> merges = Lists.newArrayList();
+      for (int label = 0; label < numLabels; label++) {
+        final int theLabel = label;
+        merges.add(new Callable<Vector>() {
+          @Override
+          public Vector call() {
+            return merge(partialSums, theLabel);
+          }
+        });
+      }
+      final List<Vector> summedObservations = getAll(executor, merges);
+      partialSums.clear();
+
+      final Vector weightsPerLabel = new DenseVector(numLabels);
+      Vector weightsPerFeature = new RandomAccessSparseVector(cardinality);
+      Matrix weightsPerLabelAndFeature = new SparseMatrix(numLabels, cardinality);
+      for (int label = 0; label < numLabels; label++) {
+        Vector summed = summedObservations.get(label);
+        if (summed != null) {
+          weightsPerLabel.setQuick(label, summed.zSum());
+          for (Vector.Element e : summed.nonZeroes()) {
+            weightsPerFeature.incrementQuick(e.index(), e.get());
+          }
+          weightsPerLabelAndFeature.assignRow(label, summed);
+        }
+      }
+      weightsPerFeature = withoutZeros(weightsPerFeature);
+
+      Vector perLabelThetaNormalizer = null;
+      if (trainComplementary) {
+        final double[] featureWeights = toArray(weightsPerFeature);
+        final double totalWeightSum = weightsPerLabel.zSum();
+        final double numFeatures = weightsPerFeature.getNumNondefaultElements();
+        List<Callable<Double>> thetas = Lists.newArrayList();
+        for (int label = 0; label < numLabels; label++) {
+          final int theLabel = label;
+          thetas.add(new Callable<Double>() {
+            @Override
+            public Double call() {
+              Vector summed = summedObservations.get(theLabel);
+              return summed == null ? 0.0 : thetaNormalizer(toArray(summed), featureWeights, totalWeightSum,
+                  weightsPerLabel.getQuick(theLabel), numFeatures);
+            }
+          });
+        }
+        List<Double> normalizers = getAll(executor, thetas);
+        perLabelThetaNormalizer = weightsPerLabel.like();
+        for (int label = 0; label < numLabels; label++) {
+          perLabelThetaNormalizer.setQuick(label, normalizers.get(label));
+        }
+      }
+
+      return new NaiveBayesModel(weightsPerLabelAndFeature, weightsPerFeature, weightsPerLabel,
+          perLabelThetaNormalizer, alphaI, trainComplementary);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static Vector[] sumPerLabel(List<? extends Vector> instances, int[] labels, int from, int to,
+                                      int numLabels, int cardinality) {
+    Vector[] sums = new Vector[numLabels];
+    for (int i = from; i < to; i++) {
+      int label = labels[i];
+      Vector instance = instances.get(i);
+      if (sums[label] == null) {
+        sums[label] = new RandomAccessSparseVector(cardinality, instance.getNumNondefaultElements());
+      }
+      Vector sum = sums[label];
+      for (Vector.Element e : instance.nonZeroes()) {
+        sum.incrementQuick(e.index(), e.get());
+      }
+    }
+    return sums;
+  }
+
+  /** @return the sum of the partial sums of the label, null if the label has no instances */
+  private static Vector merge(List<Vector[]> partialSums, int label) {
+    Vector merged = null;
+    for (Vector[] sums : partialSums) {
+      Vector sum = sums[label];
+      if (sum == null) {
+        continue;
+      }
+      if (merged == null) {
+        merged = sum;
+      } else {
+        for (Vector.Element e : sum.nonZeroes()) {
+          merged.incrementQuick(e.index(), e.get());
+        }
+      }
+    }
+    return merged == null ? null : withoutZeros(merged);
+  }
+
+  /** Accumulators keep entries that sum up to zero, the vectors of the jobs do not. */
+  private static Vector withoutZeros(Vector sum) {
+    Vector result = new RandomAccessSparseVector(sum.size(), sum.getNumNondefaultElements());
+    for (Vector.Element e : sum.nonZeroes()) {
+      if (e.get() != 0.0) {
+        result.setQuick(e.index(), e.get());
+      }
+    }
+    return result;
+  }
+
+  private static double[] toArray(Vector v) {
+    double[] values = new double[v.size()];
+    for (Vector.Element e : v.nonZeroes()) {
+      values[e.index()] = e.get();
+    }
+    return values;
+  }
+
+  /** Same as {@link ComplementaryThetaTrainer#train(int, Vector)} for a single label. */
+  private double thetaNormalizer(double[] perLabelWeight, double[] featureWeights, double totalWeightSum,
+                                 double labelWeight, double numFeatures) {
+    double normalizer = 0;
+    for (int i = 0; i < perLabelWeight.length; i++) {
+      normalizer += Math.abs(ComplementaryNaiveBayesClassifier.computeWeight(featureWeights[i], perLabelWeight[i],
+          totalWeightSum, labelWeight, alphaI, numFeatures));
+    }
+    return normalizer;
+  }
+
+  private static <T> List<T> getAll(ExecutorService executor, List<Callable<T>> tasks) {
+    List<Future<T>> futures = Lists.newArrayListWithCapacity(tasks.size());
+    for (Callable<T> task : tasks) {
+      futures.add(executor.submit(task));
+    }
+    List<T> results = Lists.newArrayListWithCapacity(tasks.size());
+    try {
+      for (Future<T> future : futures) {
+        results.add(future.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+    return results;
+  }
+}
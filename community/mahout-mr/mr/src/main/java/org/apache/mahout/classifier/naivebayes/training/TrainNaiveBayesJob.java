@@ -20,6 +20,7 @@ package org.apache.mahout.classifier.naivebayes.training;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
@@ -39,9 +40,13 @@ import org.apache.mahout.common.iterator.sequencefile.PathFilters;
 import org.apache.mahout.common.iterator.sequencefile.PathType;
 import org.apache.mahout.common.iterator.sequencefile.SequenceFileDirIterable;
 import org.apache.mahout.common.mapreduce.VectorSumReducer;
+import org.apache.mahout.math.Vector;
 import org.apache.mahout.math.VectorWritable;
+import org.apache.mahout.math.list.IntArrayList;
+import org.apache.mahout.math.map.OpenObjectIntHashMap;
 
 import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
 
 /** Trains a Naive Bayes Classifier (parameters for both Naive Bayes and Complementary Naive Bayes) */
 public final class TrainNaiveBayesJob extends AbstractJob {
@@ -55,6 +60,8 @@ public final class TrainNaiveBayesJob extends AbstractJob {
   public static final String WEIGHTS = "weights";
   public static final String THETAS = "thetas";
 
+  private static final Pattern SLASH = Pattern.compile("/");
+
   public static void main(String[] args) throws Exception {
     ToolRunner.run(new Configuration(), new TrainNaiveBayesJob(), args);
   }
@@ -69,6 +76,8 @@ public final class TrainNaiveBayesJob extends AbstractJob {
     addOption(buildOption(TRAIN_COMPLEMENTARY, "c", "train complementary?", false, false, String.valueOf(false)));
     addOption(LABEL_INDEX, "li", "The path to store the label index in", false);
     addOption(DefaultOptionCreator.overwriteOption().create());
+    addFlag("inMemory", "im", "train inside this JVM using all cores instead of running map/reduce jobs, "
+        + "the training set has to fit into memory");
 
     Map<String, List<String>> parsedArgs = parseArguments(args);
     if (parsedArgs == null) {
@@ -89,6 +98,13 @@ public final class TrainNaiveBayesJob extends AbstractJob {
     float alphaI = Float.parseFloat(getOption(ALPHA_I));
     boolean trainComplementary = hasOption(TRAIN_COMPLEMENTARY);
 
+    if (hasOption("inMemory")) {
+      NaiveBayesModel naiveBayesModel = trainInMemory(labPath, (int) labelSize, alphaI, trainComplementary);
+      naiveBayesModel.validate();
+      naiveBayesModel.serialize(getOutputPath(), getConf());
+      return 0;
+    }
+
     HadoopUtil.setSerializations(getConf());
     HadoopUtil.cacheFiles(labPath, getConf());
 
@@ -174,4 +190,27 @@ public final class TrainNaiveBayesJob extends AbstractJob {
     labelSize = BayesUtils.writeLabelIndex(getConf(), labPath, iterable);
     return labelSize;
   }
+
+  private NaiveBayesModel trainInMemory(Path labPath, int labelSize, float alphaI, boolean trainComplementary) {
+    OpenObjectIntHashMap<String> labelIndex = new OpenObjectIntHashMap<>();
+    for (Map.Entry<Integer, String> entry : BayesUtils.readLabelIndex(getConf(), labPath).entrySet()) {
+      labelIndex.put(entry.getValue(), entry.getKey());
+    }
+
+    // Same mapping of the labels as done by IndexInstancesMapper
+    List<Vector> instances = Lists.newArrayList();
+    IntArrayList labels = new IntArrayList();
+    for (Pair<Text,VectorWritable> record : new SequenceFileDirIterable<Text,VectorWritable>(getInputPath(),
+        PathType.LIST, PathFilters.logsCRCFilter(), getConf())) {
+      String label = SLASH.split(record.getFirst().toString())[1];
+      if (labelIndex.containsKey(label)) {
+        instances.add(record.getSecond().get());
+        labels.add(labelIndex.get(label));
+      }
+    }
+    labels.trimToSize();
+
+    return new InMemoryNaiveBayesTrainer(alphaI, trainComplementary, Runtime.getRuntime().availableProcessors())
+        .train(instances, labels.elements(), labelSize);
+  }
 }
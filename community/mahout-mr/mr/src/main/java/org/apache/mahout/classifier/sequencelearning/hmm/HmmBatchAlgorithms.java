@@ -0,0 +1,457 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.classifier.sequencelearning.hmm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Preconditions;
+import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.Vector;
+
+/**
+ * Forward-backward and Viterbi over many sequences at once. The model is copied into flat arrays (transitions by
+ * row, emissions by output state so that the emission probabilities of one observation are contiguous) and the
+ * recursions are rescaled at every step instead of computed in log space, so the inner loops are plain multiply-adds.
+ * Sequences are handed out to the threads in small batches, and each thread keeps its own workspace and expected
+ * counts.
+ */
+final class HmmBatchAlgorithms {
+
+  /** Number of sequences a thread takes at a time. */
+  private static final int BATCH_SIZE = 64;
+
+  private final int nrOfHiddenStates;
+  private final int nrOfOutputStates;
+  private final double[] initial;
+  private final double[] transitions;
+  /** Transitions by column, for Viterbi. */
+  private final double[] incomingTransitions;
+  private final double[] emissions;
+
+  HmmBatchAlgorithms(HmmModel model) {
+    nrOfHiddenStates = model.getNrOfHiddenStates();
+    nrOfOutputStates = model.getNrOfOutputStates();
+    int n = nrOfHiddenStates;
+    initial = new double[n];
+    transitions = new double[n * n];
+    incomingTransitions = new double[n * n];
+    emissions = new double[nrOfOutputStates * n];
+    Vector ip = model.getInitialProbabilities();
+    Matrix a = model.getTransitionMatrix();
+    Matrix b = model.getEmissionMatrix();
+    for (int i = 0; i < n; i++) {
+      initial[i] = ip.getQuick(i);
+      for (int j = 0; j < n; j++) {
+        transitions[i * n + j] = a.getQuick(i, j);
+        incomingTransitions[j * n + i] = a.getQuick(i, j);
+      }
+      for (int o = 0; o < nrOfOutputStates; o++) {
+        emissions[o * n + i] = b.getQuick(i, o);
+      }
+    }
+  }
+
+  /**
+   * Expected counts of initial states, transitions and emissions, summed over sequences.
+   */
+  static final class ExpectedCounts {
+    private final int nrOfHiddenStates;
+    private final double[] initial;
+    private final double[] transitions;
+    private final double[] emissions;
+    private double logLikelihood;
+
+    ExpectedCounts(int nrOfHiddenStates, int nrOfOutputStates) {
+      this.nrOfHiddenStates = nrOfHiddenStates;
+      initial = new double[nrOfHiddenStates];
+      transitions = new double[nrOfHiddenStates * nrOfHiddenStates];
+      emissions = new double[nrOfOutputStates * nrOfHiddenStates];
+    }
+
+    void add(ExpectedCounts other) {
+      for (int i = 0; i < initial.length; i++) {
+        initial[i] += other.initial[i];
+      }
+      for (int i = 0; i < transitions.length; i++) {
+        transitions[i] += other.transitions[i];
+      }
+      for (int i = 0; i < emissions.length; i++) {
+        emissions[i] += other.emissions[i];
+      }
+      logLikelihood += other.logLikelihood;
+    }
+
+    /**
+     * @return the sum of the log likelihoods of the sequences under the model the counts were computed with
+     */
+    double getLogLikelihood() {
+      return logLikelihood;
+    }
+
+    /**
+     * Writes the normalized counts into the given model. States without any expected visits keep their current
+     * parameters.
+     */
+    void assignTo(HmmModel model) {
+      int n = nrOfHiddenStates;
+      Vector ip = model.getInitialProbabilities();
+      Matrix a = model.getTransitionMatrix();
+      Matrix b = model.getEmissionMatrix();
+      int nrOfOutputStates = model.getNrOfOutputStates();
+
+      double sum = 0;
+      for (double count : initial) {
+        sum += count;
+      }
+      if (sum > 0) {
+        for (int i = 0; i < n; i++) {
+          ip.setQuick(i, initial[i] / sum);
+        }
+      }
+      for (int i = 0; i < n; i++) {
+        sum = 0;
+        for (int j = 0; j < n; j++) {
+          sum += transitions[i * n + j];
+        }
+        if (sum > 0) {
+          for (int j = 0; j < n; j++) {
+            a.setQuick(i, j, transitions[i * n + j] / sum);
+          }
+        }
+        sum = 0;
+        for (int o = 0; o < nrOfOutputStates; o++) {
+          sum += emissions[o * n + i];
+        }
+        if (sum > 0) {
+          for (int o = 0; o < nrOfOutputStates; o++) {
+            b.setQuick(i, o, emissions[o * n + i] / sum);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Per thread scratch space, grown to the longest sequence seen.
+   */
+  private final class Workspace {
+    private double[] alpha = new double[0];
+    private double[] beta = new double[0];
+    private double[] scale = new double[0];
+    private int[] phi = new int[0];
+    private final double[] next = new double[nrOfHiddenStates];
+
+    void ensure(int length) {
+      if (scale.length < length) {
+        int capacity = Math.max(length, 2 * scale.length);
+        alpha = new double[capacity * nrOfHiddenStates];
+        beta = new double[capacity * nrOfHiddenStates];
+        scale = new double[capacity];
+        phi = new int[capacity * nrOfHiddenStates];
+      }
+    }
+  }
+
+  /**
+   * Runs the scaled forward-backward algorithm on one sequence and adds its expected counts.
+   *
+   * @return false if the sequence has zero probability under the model, in which case nothing is counted
+   */
+  private boolean expect(int[] observations, Workspace w, ExpectedCounts counts) {
+    int n = nrOfHiddenStates;
+    int length = observations.length;
+    w.ensure(length);
+    double[] alpha = w.alpha;
+    double[] beta = w.beta;
+    double[] scale = w.scale;
+
+    // forward, each alpha_t normalized to sum 1 and its normalizer kept in scale[t]
+    int o = observations[0] * n;
+    double sum = 0;
+    for (int i = 0; i < n; i++) {
+      alpha[i] = initial[i] * emissions[o + i];
+      sum += alpha[i];
+    }
+    if (!(sum > 0)) {
+      return false;
+    }
+    scale[0] = sum;
+    for (int i = 0; i < n; i++) {
+      alpha[i] /= sum;
+    }
+    for (int t = 1; t < length; t++) {
+      int previous = (t - 1) * n;
+      int current = t * n;
+      Arrays.fill(alpha, current, current + n, 0);
+      for (int i = 0; i < n; i++) {
+        double ai = alpha[previous + i];
+        if (ai != 0) {
+          int row = i * n;
+          for (int j = 0; j < n; j++) {
+            alpha[current + j] += ai * transitions[row + j];
+          }
+        }
+      }
+      o = observations[t] * n;
+      sum = 0;
+      for (int j = 0; j < n; j++) {
+        alpha[current + j] *= emissions[o + j];
+        sum += alpha[current + j];
+      }
+      if (!(sum > 0)) {
+        return false;
+      }
+      scale[t] = sum;
+      for (int j = 0; j < n; j++) {
+        alpha[current + j] /= sum;
+      }
+    }
+
+    // backward with the same normalizers, so that alpha_t(i) beta_t(i) is the posterior of state i at time t
+    int last = (length - 1) * n;
+    Arrays.fill(beta, last, last + n, 1);
+    for (int t = length - 2; t >= 0; t--) {
+      int current = t * n;
+      int following = current + n;
+      o = observations[t + 1] * n;
+      double[] next = w.next;
+      for (int j = 0; j < n; j++) {
+        next[j] = emissions[o + j] * beta[following + j];
+      }
+      double inverseScale = 1 / scale[t + 1];
+      for (int i = 0; i < n; i++) {
+        int row = i * n;
+        double s = 0;
+        for (int j = 0; j < n; j++) {
+          s += transitions[row + j] * next[j];
+        }
+        beta[current + i] = s * inverseScale;
+      }
+    }
+
+    // expected counts
+    double logLikelihood = 0;
+    for (int t = 0; t < length; t++) {
+      logLikelihood += Math.log(scale[t]);
+    }
+    counts.logLikelihood += logLikelihood;
+    for (int i = 0; i < n; i++) {
+      counts.initial[i] += alpha[i] * beta[i];
+    }
+    for (int t = 0; t < length; t++) {
+      int current = t * n;
+      o = observations[t] * n;
+      for (int i = 0; i < n; i++) {
+        counts.emissions[o + i] += alpha[current + i] * beta[current + i];
+      }
+    }
+    for (int t = 0; t < length - 1; t++) {
+      int current = t * n;
+      int following = current + n;
+      o = observations[t + 1] * n;
+      double[] next = w.next;
+      double inverseScale = 1 / scale[t + 1];
+      for (int j = 0; j < n; j++) {
+        next[j] = emissions[o + j] * beta[following + j] * inverseScale;
+      }
+      for (int i = 0; i < n; i++) {
+        double ai = alpha[current + i];
+        if (ai != 0) {
+          int row = i * n;
+          for (int j = 0; j < n; j++) {
+            counts.transitions[row + j] += ai * transitions[row + j] * next[j];
+          }
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Viterbi with every delta_t divided by its maximum, which leaves the arg max unchanged and avoids both underflow
+   * and logarithms.
+   */
+  private void viterbi(int[] observations, Workspace w, int[] sequence) {
+    int n = nrOfHiddenStates;
+    int length = observations.length;
+    w.ensure(length);
+    double[] delta = w.alpha;
+    int[] phi = w.phi;
+
+    int o = observations[0] * n;
+    double max = 0;
+    for (int i = 0; i < n; i++) {
+      delta[i] = initial[i] * emissions[o + i];
+      max = Math.max(max, delta[i]);
+    }
+    normalize(delta, 0, n, max);
+    for (int t = 1; t < length; t++) {
+      int previous = (t - 1) * n;
+      int current = t * n;
+      o = observations[t] * n;
+      max = 0;
+      for (int i = 0; i < n; i++) {
+        int column = i * n;
+        int maxState = 0;
+        double maxProb = delta[previous] * incomingTransitions[column];
+        for (int j = 1; j < n; j++) {
+          double prob = delta[previous + j] * incomingTransitions[column + j];
+          if (prob > maxProb) {
+            maxProb = prob;
+            maxState = j;
+          }
+        }
+        delta[current + i] = maxProb * emissions[o + i];
+        phi[current + i] = maxState;
+        max = Math.max(max, delta[current + i]);
+      }
+      normalize(delta, current, n, max);
+    }
+
+    int last = (length - 1) * n;
+    int state = 0;
+    for (int i = 1; i < n; i++) {
+      if (delta[last + i] > delta[last + state]) {
+        state = i;
+      }
+    }
+    sequence[length - 1] = state;
+    for (int t = length - 1; t > 0; t--) {
+      state = phi[t * n + state];
+      sequence[t - 1] = state;
+    }
+  }
+
+  private static void normalize(double[] values, int offset, int n, double max) {
+    if (max > 0) {
+      for (int i = offset; i < offset + n; i++) {
+        values[i] /= max;
+      }
+    }
+  }
+
+  /**
+   * @return the expected counts of all sequences under the given model, computed by numThreads threads
+   */
+  static ExpectedCounts expectedCounts(HmmModel model, final List<int[]> sequences, int numThreads) {
+    final HmmBatchAlgorithms algorithms = new HmmBatchAlgorithms(model);
+    List<ExpectedCounts> perThread = forEachSequence(sequences, numThreads, new SequenceTask<ExpectedCounts>() {
+      @Override
+      public ExpectedCounts newState() {
+        return new ExpectedCounts(algorithms.nrOfHiddenStates, algorithms.nrOfOutputStates);
+      }
+
+      @Override
+      public void apply(int index, Workspace workspace, ExpectedCounts counts) {
+        int[] sequence = sequences.get(index);
+        if (sequence.length > 0) {
+          algorithms.expect(sequence, workspace, counts);
+        }
+      }
+    }, algorithms);
+    ExpectedCounts total = perThread.get(0);
+    for (int i = 1; i < perThread.size(); i++) {
+      total.add(perThread.get(i));
+    }
+    return total;
+  }
+
+  /**
+   * @return the most likely hidden sequence for each of the observed sequences, computed by numThreads threads
+   */
+  static List<int[]> decode(HmmModel model, final List<int[]> sequences, int numThreads) {
+    final HmmBatchAlgorithms algorithms = new HmmBatchAlgorithms(model);
+    final int[][] decoded = new int[sequences.size()][];
+    forEachSequence(sequences, numThreads, new SequenceTask<Void>() {
+      @Override
+      public Void newState() {
+        return null;
+      }
+
+      @Override
+      public void apply(int index, Workspace workspace, Void state) {
+        int[] observations = sequences.get(index);
+        decoded[index] = new int[observations.length];
+        if (observations.length > 0) {
+          algorithms.viterbi(observations, workspace, decoded[index]);
+        }
+      }
+    }, algorithms);
+    return Arrays.asList(decoded);
+  }
+
+  private interface SequenceTask<T> {
+    T newState();
+
+    void apply(int index, Workspace workspace, T state);
+  }
+
+  /**
+   * Runs the task on every sequence. Each thread has its own workspace and state and takes the next batch of
+   * sequences when it is done with the previous one, so that long and short sequences even out.
+   *
+   * @return the state of every thread
+   */
+  private static <T> List<T> forEachSequence(List<int[]> sequences, int numThreads, final SequenceTask<T> task,
+                                             final HmmBatchAlgorithms algorithms) {
+    Preconditions.checkArgument(numThreads > 0, "numThreads must be greater then 0!");
+    final int size = sequences.size();
+    final AtomicInteger nextBatch = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      List<Future<T>> futures = new ArrayList<>(numThreads);
+      for (int thread = 0; thread < numThreads; thread++) {
+        futures.add(executor.submit(new Callable<T>() {
+          @Override
+          public T call() {
+            T state = task.newState();
+            Workspace workspace = algorithms.new Workspace();
+            int start;
+            while ((start = nextBatch.getAndAdd(BATCH_SIZE)) < size) {
+              int end = Math.min(start + BATCH_SIZE, size);
+              for (int i = start; i < end; i++) {
+                task.apply(i, workspace, state);
+              }
+            }
+            return state;
+          }
+        }));
+      }
+      List<T> states = new ArrayList<>(numThreads);
+      for (Future<T> future : futures) {
+        states.add(future.get());
+      }
+      return states;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
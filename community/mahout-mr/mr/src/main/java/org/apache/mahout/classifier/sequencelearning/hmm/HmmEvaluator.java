@@ -17,6 +17,7 @@
 
 package org.apache.mahout.classifier.sequencelearning.hmm;
 
+import java.util.List;
 import java.util.Random;
 
 import org.apache.mahout.common.RandomUtils;
@@ -191,4 +192,17 @@ public final class HmmEvaluator {
     return HmmAlgorithms.viterbiAlgorithm(model, observations, scaled);
   }
 
+  /**
+   * Decodes a batch of observation sequences with the Viterbi algorithm on numThreads threads. Probabilities are
+   * rescaled at every step instead of taken to log space, so this is as stable as the log-scaled version.
+   *
+   * @param model                model to use for decoding.
+   * @param observationSequences sequences of observed state IDs
+   * @param numThreads           number of threads to use
+   * @return for each observed sequence, in the same order, the most likely sequence of hidden state IDs
+   */
+  public static List<int[]> decode(HmmModel model, List<int[]> observationSequences, int numThreads) {
+    return HmmBatchAlgorithms.decode(model, observationSequences, numThreads);
+  }
+
 }
@@ -17,8 +17,10 @@
 
 package org.apache.mahout.classifier.sequencelearning.hmm;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 
 import org.apache.mahout.math.DenseMatrix;
 import org.apache.mahout.math.DenseVector;
@@ -360,6 +362,35 @@ public final class HmmTrainer {
     return iteration;
   }
 
+  /**
+   * Iteratively train the parameters of the given initial model wrt a collection of observed sequences using
+   * Baum-Welch training. The expected counts of each iteration are computed for many sequences in parallel, with
+   * forward and backward factors rescaled at every step rather than kept in log space, so long sequences are
+   * handled as well.
+   *
+   * @param initialModel      The initial model that gets iterated
+   * @param observedSequences The sequences of observed states
+   * @param epsilon           Convergence criteria
+   * @param maxIterations     The maximum number of training iterations
+   * @param numThreads        Number of threads computing expected counts
+   * @return The iterated model
+   */
+  public static HmmModel trainBaumWelch(HmmModel initialModel, Collection<int[]> observedSequences, double epsilon,
+                                        int maxIterations, int numThreads) {
+    List<int[]> sequences = observedSequences instanceof List
+        ? (List<int[]>) observedSequences : new ArrayList<>(observedSequences);
+    HmmModel lastIteration = initialModel.clone();
+    HmmModel iteration = initialModel.clone();
+    for (int it = 0; it < maxIterations; ++it) {
+      HmmBatchAlgorithms.expectedCounts(lastIteration, sequences, numThreads).assignTo(iteration);
+      if (checkConvergence(lastIteration, iteration, epsilon)) {
+        break;
+      }
+      lastIteration.assign(iteration);
+    }
+    return iteration;
+  }
+
   private static void unscaledBaumWelch(int[] observedSequence, HmmModel iteration, Matrix alpha, Matrix beta) {
     Vector initialProbabilities = iteration.getInitialProbabilities();
     Matrix emissionMatrix = iteration.getEmissionMatrix();
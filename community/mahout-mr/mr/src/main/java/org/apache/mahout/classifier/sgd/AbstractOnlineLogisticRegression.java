@@ -234,6 +234,10 @@ public abstract class AbstractOnlineLogisticRegression extends AbstractVectorCla
     this.gradient = gradient;
   }
 
+  Gradient getGradient() {
+    return gradient;
+  }
+
   public PriorFunction getPrior() {
     return prior;
   }
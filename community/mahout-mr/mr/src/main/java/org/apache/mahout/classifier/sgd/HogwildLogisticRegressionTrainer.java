@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.classifier.sgd;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.Vector.Element;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Hogwild trainer for {@link OnlineLogisticRegression}, following the same learning law, annealing schedules and
+ * lazy regularization as {@link AbstractOnlineLogisticRegression#train(long, String, int, Vector)}.
+ * <p/>
+ * Every example gets its own step. The prior is applied lazily to the coefficients of a feature when an example
+ * containing it comes by, for all the steps missed since the feature was last seen. The step at which each feature
+ * was regularized is advanced with a compare and set, so that missed steps are only made up for once even if
+ * several threads see the feature at the same time.
+ * <p/>
+ * Only the default logistic gradient is supported.
+ */
+public class HogwildLogisticRegressionTrainer extends HogwildTrainer {
+
+  private final OnlineLogisticRegression model;
+  private final PriorFunction prior;
+  private final double lambda;
+
+  private final AtomicInteger step;
+  private final AtomicIntegerArray updateSteps;
+  private final double[] updateCounts;
+
+  public HogwildLogisticRegressionTrainer(OnlineLogisticRegression model, int numThreads) {
+    this(model, numThreads, DEFAULT_BATCH_SIZE);
+  }
+
+  public HogwildLogisticRegressionTrainer(OnlineLogisticRegression model, int numThreads, int batchSize) {
+    super(model.numCategories() - 1, model.numFeatures(), numThreads, batchSize);
+    Preconditions.checkArgument(model.getGradient().getClass() == DefaultGradient.class,
+        "Only the default gradient is supported");
+    this.model = model;
+    this.prior = model.getPrior();
+    this.lambda = model.getLambda();
+
+    step = new AtomicInteger(model.getStep());
+    updateSteps = new AtomicIntegerArray(numFeatures());
+    updateCounts = new double[numFeatures()];
+    for (int j = 0; j < numFeatures(); j++) {
+      updateSteps.set(j, (int) model.updateSteps.getQuick(j));
+      updateCounts[j] = model.updateCounts.getQuick(j);
+      for (int i = 0; i < numRows(); i++) {
+        coefficients[index(i, j)] = model.beta.getQuick(i, j);
+      }
+    }
+  }
+
+  @Override
+  void trainBatch(Batch batch) {
+    int firstStep = step.getAndAdd(batch.size());
+    double[] scores = batch.scores;
+    for (int n = 0; n < batch.size(); n++) {
+      int currentStep = firstStep + n;
+      Vector instance = batch.instance(n);
+      double learningRate = model.learningRateAt(currentStep);
+
+      // push coefficients back to zero based on the prior, then score
+      regularize(instance, currentStep, learningRate);
+      score(instance, scores);
+
+      // the gradient of the log likelihood
+      int actual = batch.actual(n);
+      for (int i = 0; i < scores.length; i++) {
+        scores[i] = (actual - 1 == i ? 1 : 0) - scores[i];
+      }
+
+      for (Element element : instance.nonZeroes()) {
+        int j = element.index();
+        double rate = learningRate * model.perTermLearningRateAt(updateCounts[j]) * element.get();
+        for (int i = 0; i < scores.length; i++) {
+          batch.update(index(i, j), scores[i] * rate);
+        }
+        updateCounts[j]++;
+      }
+    }
+  }
+
+  private void regularize(Vector instance, int currentStep, double learningRate) {
+    for (Element element : instance.nonZeroes()) {
+      int j = element.index();
+      int lastStep = updateSteps.get(j);
+      while (lastStep < currentStep) {
+        if (updateSteps.compareAndSet(j, lastStep, currentStep)) {
+          double rate = lambda * learningRate * model.perTermLearningRateAt(updateCounts[j]);
+          for (int i = 0; i < numRows(); i++) {
+            int index = index(i, j);
+            coefficients[index] = prior.age(coefficients[index], currentStep - lastStep, rate);
+          }
+          break;
+        }
+        lastStep = updateSteps.get(j);
+      }
+    }
+  }
+
+  /**
+   * Probabilities of the categories but the 0-th, as {@link AbstractOnlineLogisticRegression#link(Vector)}.
+   */
+  private void score(Vector instance, double[] scores) {
+    Arrays.fill(scores, 0);
+    for (Element element : instance.nonZeroes()) {
+      int base = index(0, element.index());
+      double x = element.get();
+      for (int i = 0; i < scores.length; i++) {
+        scores[i] += coefficients[base + i] * x;
+      }
+    }
+
+    if (scores.length == 1) {
+      scores[0] = AbstractOnlineLogisticRegression.link(scores[0]);
+      return;
+    }
+    double max = Double.NEGATIVE_INFINITY;
+    for (double score : scores) {
+      max = Math.max(max, score);
+    }
+    // if max >= 40, 1 + sum(exp(v)) = sum(exp(v)) to within round-off
+    double offset = max >= 40 ? max : 0;
+    double sum = max >= 40 ? 0 : 1;
+    for (int i = 0; i < scores.length; i++) {
+      scores[i] = Math.exp(scores[i] - offset);
+      sum += scores[i];
+    }
+    for (int i = 0; i < scores.length; i++) {
+      scores[i] /= sum;
+    }
+  }
+
+  /**
+   * Writes the coefficients and counters back into the model and closes it.
+   */
+  @Override
+  public void close() {
+    Matrix beta = model.beta;
+    for (int j = 0; j < numFeatures(); j++) {
+      model.updateSteps.setQuick(j, updateSteps.get(j));
+      model.updateCounts.setQuick(j, updateCounts[j]);
+      for (int i = 0; i < numRows(); i++) {
+        beta.setQuick(i, j, coefficients[index(i, j)]);
+      }
+    }
+    model.step = step.get();
+    model.unseal();
+    model.close();
+  }
+}
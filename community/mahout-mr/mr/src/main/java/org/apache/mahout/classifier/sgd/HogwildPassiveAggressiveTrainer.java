@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.classifier.sgd;
+
+import java.util.Arrays;
+
+import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.Vector.Element;
+
+/**
+ * Hogwild trainer for {@link PassiveAggressive}, following the same update as
+ * {@link PassiveAggressive#train(long, String, int, Vector)}.
+ */
+public class HogwildPassiveAggressiveTrainer extends HogwildTrainer {
+
+  private final PassiveAggressive model;
+  private final double learningRate;
+
+  public HogwildPassiveAggressiveTrainer(PassiveAggressive model, int numThreads) {
+    this(model, numThreads, DEFAULT_BATCH_SIZE);
+  }
+
+  public HogwildPassiveAggressiveTrainer(PassiveAggressive model, int numThreads, int batchSize) {
+    super(model.numCategories(), model.numFeatures(), numThreads, batchSize);
+    this.model = model;
+    this.learningRate = model.getLearningRate();
+
+    Matrix weights = model.getWeights();
+    for (int j = 0; j < numFeatures(); j++) {
+      for (int i = 0; i < numRows(); i++) {
+        coefficients[index(i, j)] = weights.getQuick(i, j);
+      }
+    }
+  }
+
+  @Override
+  void trainBatch(Batch batch) {
+    double[] scores = batch.scores;
+    for (int n = 0; n < batch.size(); n++) {
+      Vector instance = batch.instance(n);
+      int actual = batch.actual(n);
+
+      Arrays.fill(scores, 0);
+      for (Element element : instance.nonZeroes()) {
+        int base = index(0, element.index());
+        double x = element.get();
+        for (int i = 0; i < scores.length; i++) {
+          scores[i] += coefficients[base + i] * x;
+        }
+      }
+
+      // the highest score that is not actual
+      int otherIndex = -1;
+      for (int i = 0; i < scores.length; i++) {
+        if (i != actual && (otherIndex < 0 || scores[i] > scores[otherIndex])) {
+          otherIndex = i;
+        }
+      }
+
+      double loss = 1.0 - scores[actual] + scores[otherIndex];
+      if (loss >= 0) {
+        double tau = loss / (instance.dot(instance) + 0.5 / learningRate);
+        for (Element element : instance.nonZeroes()) {
+          double delta = tau * element.get();
+          batch.update(index(actual, element.index()), delta);
+          batch.update(index(otherIndex, element.index()), -delta);
+        }
+      }
+    }
+  }
+
+  /**
+   * Writes the coefficients back into the model.
+   */
+  @Override
+  public void close() {
+    Matrix weights = model.getWeights();
+    for (int j = 0; j < numFeatures(); j++) {
+      for (int i = 0; i < numRows(); i++) {
+        weights.setQuick(i, j, coefficients[index(i, j)]);
+      }
+    }
+    model.close();
+  }
+}
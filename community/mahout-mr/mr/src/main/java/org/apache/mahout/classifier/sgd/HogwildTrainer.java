@@ -0,0 +1,263 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.classifier.sgd;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.mahout.classifier.OnlineLearner;
+import org.apache.mahout.common.Pair;
+import org.apache.mahout.math.Vector;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+/**
+ * Multithreaded trainer for a linear SGD model whose coefficients are shared by all threads without any locking
+ * (Hogwild, Niu et al, 2011). Coefficients live in one flat feature-major array, so that the coefficients of all
+ * categories of a feature are adjacent.
+ * <p/>
+ * Every thread sums the updates of a mini-batch of examples locally and adds them to the shared array once the
+ * batch is done, so frequent features (a bias term for instance) are written once per batch rather than once per
+ * example. Concurrent updates of the same coefficient may occasionally be lost. With sparse data such collisions
+ * are rare and don't hurt convergence.
+ * <p/>
+ * Any number of threads may call the train methods concurrently. {@link #close()} writes the coefficients back into
+ * the model, after which the trainer must not be used anymore.
+ */
+public abstract class HogwildTrainer implements OnlineLearner {
+
+  public static final int DEFAULT_BATCH_SIZE = 64;
+
+  private final int numRows;
+  private final int numFeatures;
+  private final int numThreads;
+  private final int batchSize;
+
+  // numFeatures x numRows, feature-major
+  final double[] coefficients;
+
+  private final ThreadLocal<Batch> batches = new ThreadLocal<Batch>() {
+    @Override
+    protected Batch initialValue() {
+      return new Batch(numRows, 1);
+    }
+  };
+
+  protected HogwildTrainer(int numRows, int numFeatures, int numThreads, int batchSize) {
+    Preconditions.checkArgument(numThreads > 0, "numThreads must be greater then 0!");
+    Preconditions.checkArgument(batchSize > 0, "batchSize must be greater then 0!");
+    Preconditions.checkArgument((long) numRows * numFeatures <= Integer.MAX_VALUE,
+        "Too many coefficients for a single array: %s x %s", numRows, numFeatures);
+    this.numRows = numRows;
+    this.numFeatures = numFeatures;
+    this.numThreads = numThreads;
+    this.batchSize = batchSize;
+    this.coefficients = new double[numRows * numFeatures];
+  }
+
+  /**
+   * Trains on all examples, pairs of target category and instance, with {@code numThreads} threads pulling
+   * mini-batches from the iterator. The order in which examples are seen is not deterministic.
+   */
+  public void train(Iterable<Pair<Integer, Vector>> examples) {
+    final Iterator<Pair<Integer, Vector>> iterator = examples.iterator();
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      List<Future<Void>> futures = Lists.newArrayList();
+      for (int t = 0; t < numThreads; t++) {
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() {
+            Batch batch = new Batch(numRows, batchSize);
+            while (true) {
+              batch.clear();
+              synchronized (iterator) {
+                while (batch.size < batchSize && iterator.hasNext()) {
+                  Pair<Integer, Vector> example = iterator.next();
+                  batch.add(example.getFirst(), example.getSecond());
+                }
+              }
+              if (batch.size == 0) {
+                return null;
+              }
+              trainBatch(batch);
+              batch.apply(coefficients);
+            }
+          }
+        }));
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Override
+  public void train(int actual, Vector instance) {
+    Batch batch = batches.get();
+    batch.clear();
+    batch.add(actual, instance);
+    trainBatch(batch);
+    batch.apply(coefficients);
+  }
+
+  @Override
+  public void train(long trackingKey, int actual, Vector instance) {
+    train(actual, instance);
+  }
+
+  @Override
+  public void train(long trackingKey, String groupKey, int actual, Vector instance) {
+    train(actual, instance);
+  }
+
+  /**
+   * Computes the updates for all examples of the batch against the shared coefficients and adds them to
+   * {@link Batch#update}. They are applied to the coefficients once this returns.
+   */
+  abstract void trainBatch(Batch batch);
+
+  final int index(int row, int feature) {
+    return feature * numRows + row;
+  }
+
+  public int numRows() {
+    return numRows;
+  }
+
+  public int numFeatures() {
+    return numFeatures;
+  }
+
+  /**
+   * Examples of a mini-batch along with scratch space of the thread training on them.
+   */
+  static final class Batch {
+
+    private final int[] actual;
+    private final Vector[] instances;
+    private int size;
+
+    // scores of one example, one per row
+    final double[] scores;
+
+    // sparse sum of the coefficient updates of the batch, open addressing with linear probing
+    private int[] keys = new int[1024];
+    private double[] values = new double[1024];
+    private int[] used = new int[512];
+    private int numUsed;
+
+    Batch(int numRows, int capacity) {
+      actual = new int[capacity];
+      instances = new Vector[capacity];
+      scores = new double[numRows];
+      Arrays.fill(keys, -1);
+    }
+
+    int size() {
+      return size;
+    }
+
+    int actual(int i) {
+      return actual[i];
+    }
+
+    Vector instance(int i) {
+      return instances[i];
+    }
+
+    void add(int target, Vector instance) {
+      actual[size] = target;
+      instances[size] = instance;
+      size++;
+    }
+
+    /**
+     * Adds {@code delta} to the pending update of coefficient {@code index}.
+     */
+    void update(int index, double delta) {
+      int mask = keys.length - 1;
+      int slot = mix(index) & mask;
+      while (keys[slot] != index) {
+        if (keys[slot] < 0) {
+          if (2 * (numUsed + 1) > keys.length) {
+            grow();
+            update(index, delta);
+            return;
+          }
+          keys[slot] = index;
+          values[slot] = 0;
+          used[numUsed++] = slot;
+          break;
+        }
+        slot = (slot + 1) & mask;
+      }
+      values[slot] += delta;
+    }
+
+    void apply(double[] coefficients) {
+      for (int i = 0; i < numUsed; i++) {
+        int slot = used[i];
+        coefficients[keys[slot]] += values[slot];
+      }
+    }
+
+    void clear() {
+      for (int i = 0; i < numUsed; i++) {
+        keys[used[i]] = -1;
+      }
+      numUsed = 0;
+      Arrays.fill(instances, 0, size, null);
+      size = 0;
+    }
+
+    private void grow() {
+      int[] oldKeys = keys;
+      double[] oldValues = values;
+      int[] oldUsed = used;
+      int oldNumUsed = numUsed;
+      keys = new int[2 * oldKeys.length];
+      Arrays.fill(keys, -1);
+      values = new double[keys.length];
+      used = new int[oldKeys.length];
+      numUsed = 0;
+      for (int i = 0; i < oldNumUsed; i++) {
+        update(oldKeys[oldUsed[i]], oldValues[oldUsed[i]]);
+      }
+    }
+
+    private static int mix(int key) {
+      int h = key * 0x9E3779B9;
+      return h ^ (h >>> 16);
+    }
+  }
+}
@@ -105,12 +105,21 @@ public class OnlineLogisticRegression extends AbstractOnlineLogisticRegression i
 
   @Override
   public double perTermLearningRate(int j) {
-    return Math.sqrt(perTermAnnealingOffset / updateCounts.get(j));
+    return perTermLearningRateAt(updateCounts.get(j));
   }
 
   @Override
   public double currentLearningRate() {
-    return mu0 * Math.pow(decayFactor, getStep()) * Math.pow(getStep() + stepOffset, forgettingExponent);
+    return learningRateAt(getStep());
+  }
+
+  // annealing schedules as a function of the counters, for trainers that keep their own copy of them
+  double perTermLearningRateAt(double updateCount) {
+    return Math.sqrt(perTermAnnealingOffset / updateCount);
+  }
+
+  double learningRateAt(int step) {
+    return mu0 * Math.pow(decayFactor, step) * Math.pow(step + stepOffset, forgettingExponent);
   }
 
   public void copyFrom(OnlineLogisticRegression other) {
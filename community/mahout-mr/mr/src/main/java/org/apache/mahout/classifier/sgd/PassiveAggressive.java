@@ -127,6 +127,14 @@ public class PassiveAggressive extends AbstractVectorClassifier implements Onlin
     return weights.numCols();
   }
 
+  Matrix getWeights() {
+    return weights;
+  }
+
+  double getLearningRate() {
+    return learningRate;
+  }
+
   public PassiveAggressive copy() {
     close();
     PassiveAggressive r = new PassiveAggressive(numCategories(), numFeatures());
@@ -35,6 +35,7 @@ public class CIMapper extends Mapper<WritableComparable<?>,VectorWritable,IntWri
   
   private ClusterClassifier classifier;
   private ClusteringPolicy policy;
+  private KMeansAssigner assigner;
 
   @Override
   protected void setup(Context context) throws IOException, InterruptedException {
@@ -44,12 +45,21 @@ public class CIMapper extends Mapper<WritableComparable<?>,VectorWritable,IntWri
     classifier.readFromSeqFiles(conf, new Path(priorClustersPath));
     policy = classifier.getPolicy();
     policy.update(classifier);
+    // a mapper sees every point once, so only the center to center bounds help here
+    assigner = KMeansAssigner.forClassifier(classifier);
+    if (assigner != null) {
+      assigner.update(classifier.getModels());
+    }
     super.setup(context);
   }
 
   @Override
   protected void map(WritableComparable<?> key, VectorWritable value, Context context) throws IOException,
       InterruptedException {
+    if (assigner != null) {
+      classifier.train(assigner.nearest(value.get()), value.get(), 1.0);
+      return;
+    }
     Vector probabilities = classifier.classify(value.get());
     Vector selections = policy.select(probabilities);
     for (Element el : selections.nonZeroes()) {
@@ -66,7 +66,19 @@ public final class ClusterIterator {
    */
   public static ClusterClassifier iterate(Iterable<Vector> data, ClusterClassifier classifier, int numIterations) {
     ClusteringPolicy policy = classifier.getPolicy();
+    KMeansAssigner assigner = KMeansAssigner.forClassifier(classifier);
     for (int iteration = 1; iteration <= numIterations; iteration++) {
+      if (assigner != null) {
+        // k-means with a metric: same assignments, skipping distances the triangle inequality rules out
+        policy.update(classifier);
+        assigner.update(classifier.getModels());
+        int position = 0;
+        for (Vector vector : data) {
+          classifier.train(assigner.nearest(position++, vector), vector, 1.0);
+        }
+        classifier.close();
+        continue;
+      }
       for (Vector vector : data) {
         // update the policy based upon the prior
         policy.update(classifier);
@@ -106,11 +118,20 @@ public final class ClusterIterator {
     ClusterClassifier classifier = new ClusterClassifier();
     classifier.readFromSeqFiles(conf, priorPath);
     Path clustersOut = null;
+    KMeansAssigner assigner = KMeansAssigner.forClassifier(classifier);
     int iteration = 1;
     while (iteration <= numIterations) {
+      if (assigner != null) {
+        assigner.update(classifier.getModels());
+      }
+      int position = 0;
       for (VectorWritable vw : new SequenceFileDirValueIterable<VectorWritable>(inPath, PathType.LIST,
           PathFilters.logsCRCFilter(), conf)) {
         Vector vector = vw.get();
+        if (assigner != null) {
+          classifier.train(assigner.nearest(position++, vector), vector, 1.0);
+          continue;
+        }
         // classification yields probabilities
         Vector probabilities = classifier.classify(vector);
         // policy selects weights for models given those probabilities
@@ -0,0 +1,274 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.clustering.iterator;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.mahout.clustering.Cluster;
+import org.apache.mahout.clustering.classify.ClusterClassifier;
+import org.apache.mahout.common.distance.ChebyshevDistanceMeasure;
+import org.apache.mahout.common.distance.DistanceMeasure;
+import org.apache.mahout.common.distance.EuclideanDistanceMeasure;
+import org.apache.mahout.common.distance.ManhattanDistanceMeasure;
+import org.apache.mahout.common.distance.SquaredEuclideanDistanceMeasure;
+import org.apache.mahout.math.Vector;
+
+/**
+ * Exact nearest cluster assignment for k-means which uses the triangle inequality to skip most distance computations.
+ * <p/>
+ * {@link #update(List)} snapshots the cluster centers at the start of every pass, along with the distance between
+ * every pair of centers (up to {@link #MAX_PAIRWISE_CLUSTERS} clusters) and half the distance from every center to
+ * its closest other center. A center c can't be closer to x than the best center b found so far if
+ * d(x, b) &lt; d(b, c) / 2 (Elkan), and no other center can if d(x, b) is below half the distance from b to its
+ * closest center.
+ * <p/>
+ * If the same points are assigned on every pass, identified by their position ({@link #nearest(int, Vector)}), an
+ * upper bound on the distance to the assigned center and a lower bound on the distance to every other center are
+ * kept per point and moved by how far the centers drifted between passes (Hamerly). Once k-means settles, most points
+ * then need no distance computation at all. Without positions ({@link #nearest(Vector)}, e.g. in a mapper that sees
+ * each point once) only the center to center bounds are used.
+ * <p/>
+ * Bounds need a metric, so this only supports Euclidean, Manhattan and Chebyshev distance, and squared Euclidean
+ * distance whose square root is used for the bounds. The cluster chosen is the same as with the exhaustive
+ * {@link KMeansClusteringPolicy} path: the closest center, the one with the lowest index on ties.
+ */
+public final class KMeansAssigner {
+
+  /**
+   * Above this many clusters, distances between pairs of centers take too much memory and aren't kept.
+   */
+  public static final int MAX_PAIRWISE_CLUSTERS = 2048;
+
+  /**
+   * Relative slack on every bound comparison, so that rounding can't prune a center that is as close as the best.
+   */
+  private static final double EPSILON = 1.0e-12;
+
+  private final DistanceMeasure measure;
+  private final boolean squared;
+
+  private Vector[] centers;
+  private double[] pairwise;
+  private double[] halfNearest;
+  private double[] drift;
+  private double maxDrift;
+  private double secondMaxDrift;
+  private int maxDriftIndex;
+  private int pass;
+
+  private double[] upper = new double[0];
+  private double[] lower = new double[0];
+  private int[] assigned = new int[0];
+  private int[] lastPass = new int[0];
+
+  private long numDistances;
+
+  public KMeansAssigner(DistanceMeasure measure) {
+    if (!isSupported(measure)) {
+      throw new IllegalArgumentException("Not a supported metric: " + measure.getClass().getName());
+    }
+    this.measure = measure;
+    this.squared = measure.getClass() == SquaredEuclideanDistanceMeasure.class;
+  }
+
+  public static boolean isSupported(DistanceMeasure measure) {
+    Class<?> measureClass = measure.getClass();
+    return measureClass == SquaredEuclideanDistanceMeasure.class || measureClass == EuclideanDistanceMeasure.class
+        || measureClass == ManhattanDistanceMeasure.class || measureClass == ChebyshevDistanceMeasure.class;
+  }
+
+  /**
+   * @return an assigner for the models of the classifier if it clusters with plain {@link KMeansClusteringPolicy}
+   * and a supported measure, otherwise null
+   */
+  public static KMeansAssigner forClassifier(ClusterClassifier classifier) {
+    if (classifier.getPolicy() == null || classifier.getPolicy().getClass() != KMeansClusteringPolicy.class) {
+      return null;
+    }
+    DistanceMeasure measure = null;
+    for (Cluster model : classifier.getModels()) {
+      if (!(model instanceof DistanceMeasureCluster)) {
+        return null;
+      }
+      DistanceMeasure modelMeasure = ((DistanceMeasureCluster) model).getMeasure();
+      if (modelMeasure == null || !isSupported(modelMeasure)
+          || measure != null && measure.getClass() != modelMeasure.getClass()) {
+        return null;
+      }
+      measure = modelMeasure;
+    }
+    return measure == null ? null : new KMeansAssigner(measure);
+  }
+
+  /**
+   * Takes the current centers of the models. Must be called before every pass over the points.
+   */
+  public void update(List<Cluster> models) {
+    int k = models.size();
+    Vector[] newCenters = new Vector[k];
+    for (int i = 0; i < k; i++) {
+      newCenters[i] = models.get(i).getCenter().clone();
+    }
+
+    if (centers != null && centers.length == k) {
+      maxDrift = 0;
+      secondMaxDrift = 0;
+      maxDriftIndex = -1;
+      for (int i = 0; i < k; i++) {
+        drift[i] = metric(measure.distance(centers[i], newCenters[i]));
+        if (drift[i] > maxDrift) {
+          secondMaxDrift = maxDrift;
+          maxDrift = drift[i];
+          maxDriftIndex = i;
+        } else if (drift[i] > secondMaxDrift) {
+          secondMaxDrift = drift[i];
+        }
+      }
+      pass++;
+    } else {
+      drift = new double[k];
+      // Bounds kept for a different set of clusters are meaningless.
+      pass += 2;
+    }
+    centers = newCenters;
+
+    pairwise = k <= MAX_PAIRWISE_CLUSTERS ? new double[k * k] : null;
+    halfNearest = new double[k];
+    Arrays.fill(halfNearest, Double.POSITIVE_INFINITY);
+    for (int i = 0; i < k; i++) {
+      for (int j = i + 1; j < k; j++) {
+        double d = metric(measure.distance(centers[i], centers[j]));
+        if (pairwise != null) {
+          pairwise[i * k + j] = d;
+          pairwise[j * k + i] = d;
+        }
+        halfNearest[i] = Math.min(halfNearest[i], d / 2);
+        halfNearest[j] = Math.min(halfNearest[j], d / 2);
+      }
+    }
+  }
+
+  /**
+   * @return the index of the center closest to {@code x}
+   */
+  public int nearest(Vector x) {
+    return scan(x, -1);
+  }
+
+  /**
+   * Same as {@link #nearest(Vector)}, but keeps bounds for the point at {@code index} from one pass to the next. The
+   * caller must pass the same points at the same indices on every pass.
+   */
+  public int nearest(int index, Vector x) {
+    ensureCapacity(index + 1);
+    int a = assigned[index];
+    if (lastPass[index] == pass - 1 && a >= 0) {
+      double u = upper[index] + drift[a];
+      double l = lower[index] - (a == maxDriftIndex ? secondMaxDrift : maxDrift);
+      double z = Math.max(l, halfNearest[a]);
+      if (u * (1 + EPSILON) < z) {
+        upper[index] = u;
+        lower[index] = l;
+        lastPass[index] = pass;
+        return a;
+      }
+      u = metric(distance(x, a));
+      if (u * (1 + EPSILON) < z) {
+        upper[index] = u;
+        lower[index] = l;
+        lastPass[index] = pass;
+        return a;
+      }
+    }
+    int best = scan(x, index);
+    lastPass[index] = pass;
+    return best;
+  }
+
+  /**
+   * Scans the centers in order keeping the first closest one, skipping centers that can't be closer. If
+   * {@code index} is not negative, stores the bounds of that point.
+   */
+  private int scan(Vector x, int index) {
+    int k = centers.length;
+    int best = 0;
+    double bestDistance = distance(x, 0);
+    double bestMetric = metric(bestDistance);
+    double second = Double.POSITIVE_INFINITY;
+    for (int j = 1; j < k; j++) {
+      double slackMetric = bestMetric * (1 + EPSILON);
+      if (slackMetric < halfNearest[best]) {
+        // Every remaining center is at least twice as far from the best center.
+        second = Math.min(second, 2 * halfNearest[best] - bestMetric);
+        break;
+      }
+      if (pairwise != null && slackMetric < pairwise[best * k + j] / 2) {
+        second = Math.min(second, pairwise[best * k + j] - bestMetric);
+        continue;
+      }
+      double d = distance(x, j);
+      if (d < bestDistance) {
+        second = Math.min(second, bestMetric);
+        best = j;
+        bestDistance = d;
+        bestMetric = metric(d);
+      } else {
+        second = Math.min(second, metric(d));
+      }
+    }
+    if (index >= 0) {
+      upper[index] = bestMetric;
+      lower[index] = second;
+      assigned[index] = best;
+    }
+    return best;
+  }
+
+  /**
+   * Same argument order as {@link DistanceMeasureCluster#pdf}, so distances compare exactly as in the exhaustive path.
+   */
+  private double distance(Vector x, int center) {
+    numDistances++;
+    return measure.distance(x, centers[center]);
+  }
+
+  private double metric(double distance) {
+    return squared ? Math.sqrt(distance) : distance;
+  }
+
+  private void ensureCapacity(int size) {
+    if (size > assigned.length) {
+      int newSize = Math.max(size, 2 * assigned.length);
+      upper = Arrays.copyOf(upper, newSize);
+      lower = Arrays.copyOf(lower, newSize);
+      int oldSize = assigned.length;
+      assigned = Arrays.copyOf(assigned, newSize);
+      Arrays.fill(assigned, oldSize, newSize, -1);
+      lastPass = Arrays.copyOf(lastPass, newSize);
+      Arrays.fill(lastPass, oldSize, newSize, Integer.MIN_VALUE);
+    }
+  }
+
+  /**
+   * @return the number of point to center distances computed so far
+   */
+  public long getNumDistances() {
+    return numDistances;
+  }
+}
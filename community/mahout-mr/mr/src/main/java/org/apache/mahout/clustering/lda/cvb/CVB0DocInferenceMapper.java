@@ -36,9 +36,14 @@ public class CVB0DocInferenceMapper extends CachingCVB0Mapper {
     Vector docTopics = new DenseVector(numTopics).assign(1.0 / numTopics);
     Matrix docModel = new SparseRowMatrix(numTopics, doc.get().size());
     int maxIters = getMaxIters();
-    ModelTrainer modelTrainer = getModelTrainer();
-    for (int i = 0; i < maxIters; i++) {
-      modelTrainer.getReadModel().trainDocTopicModel(doc.get(), docTopics, docModel);
+    ShardedModelTrainer shardedModelTrainer = getShardedModelTrainer();
+    if (shardedModelTrainer != null) {
+      shardedModelTrainer.infer(doc.get(), docTopics, maxIters, null);
+    } else {
+      ModelTrainer modelTrainer = getModelTrainer();
+      for (int i = 0; i < maxIters; i++) {
+        modelTrainer.getReadModel().trainDocTopicModel(doc.get(), docTopics, docModel);
+      }
     }
     topics.set(docTopics);
     context.write(docId, topics);
@@ -46,6 +51,8 @@ public class CVB0DocInferenceMapper extends CachingCVB0Mapper {
 
   @Override
   protected void cleanup(Context context) {
-    getModelTrainer().stop();
+    if (getModelTrainer() != null) {
+      getModelTrainer().stop();
+    }
   }
 }
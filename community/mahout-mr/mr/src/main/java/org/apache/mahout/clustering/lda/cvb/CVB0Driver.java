@@ -96,6 +96,9 @@ import org.slf4j.LoggerFactory;
  * <dt>{@code --iteration_block_size block}</dt>
  * <dd>Number of iterations between perplexity checks. Defaults to {@code 10}. This option is
  * ignored unless option {@code --test_set_percentage} is greater than zero.</dd>
+ * <dt>{@code --sharded_model}</dt>
+ * <dd>Keep the topic model of the mappers sparse and sharded by term, see {@link ShardedTopicModel}, instead of
+ * holding two dense {@code numTopics x numTerms} models per mapper.</dd>
  * </dl>
  */
 public class CVB0Driver extends AbstractJob {
@@ -117,6 +120,7 @@ public class CVB0Driver extends AbstractJob {
   public static final String MODEL_WEIGHT = "prev_iter_mult";
   public static final String NUM_REDUCE_TASKS = "num_reduce_tasks";
   public static final String BACKFILL_PERPLEXITY = "backfill_perplexity";
+  public static final String SHARDED_MODEL = "sharded_model";
   private static final String MODEL_PATHS = "mahout.lda.cvb.modelPath";
 
   private static final double DEFAULT_CONVERGENCE_DELTA = 0;
@@ -162,6 +166,8 @@ public class CVB0Driver extends AbstractJob {
               String.valueOf(DEFAULT_NUM_REDUCE_TASKS));
     addOption(buildOption(BACKFILL_PERPLEXITY, null, "enable backfilling of missing perplexity values", false, false,
               null));
+    addOption(buildOption(SHARDED_MODEL, null, "keep the topic model of the mappers sparse and sharded by term",
+              false, false, null));
 
     if (parseArguments(args) == null) {
       return -1;
@@ -194,6 +200,8 @@ public class CVB0Driver extends AbstractJob {
                        : 0.0f;
     int numReduceTasks = Integer.parseInt(getOption(NUM_REDUCE_TASKS));
     boolean backfillPerplexity = hasOption(BACKFILL_PERPLEXITY);
+    // read by the mappers
+    getConf().setBoolean(SHARDED_MODEL, hasOption(SHARDED_MODEL));
 
     return run(getConf(), inputPath, topicModelOutputPath, numTopics, numTerms, alpha, eta,
         maxIterations, iterationBlockSize, convergenceDelta, dictionaryPath, docTopicOutputPath,
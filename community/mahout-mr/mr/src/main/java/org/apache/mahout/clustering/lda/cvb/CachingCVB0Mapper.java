@@ -51,13 +51,24 @@ import java.io.IOException;
  * <p/>
  * {@link ModelTrainer} already takes advantage (in maybe the not-nice way) of multi-core
  * availability by doing multithreaded learning, see that class for details.
+ * <p/>
+ * If {@link CVB0Driver#SHARDED_MODEL} is set, a {@link ShardedModelTrainer} is used instead: the model of the previous
+ * iteration is read into a {@link ShardedTopicModel}, which only holds the nonzero counts, and the learning updates
+ * are accumulated sparsely by term shard. Neither of the two dense {@code numTopics x numTerms} models is allocated.
  */
 public class CachingCVB0Mapper
     extends Mapper<IntWritable, VectorWritable, IntWritable, VectorWritable> {
 
   private static final Logger log = LoggerFactory.getLogger(CachingCVB0Mapper.class);
 
+  /**
+   * Topics per term of the random model the first iteration starts from, a dense random model would cost as much as
+   * the dense model does.
+   */
+  private static final int INITIAL_TOPICS_PER_TERM = 10;
+
   private ModelTrainer modelTrainer;
+  private ShardedModelTrainer shardedModelTrainer;
   private TopicModel readModel;
   private TopicModel writeModel;
   private int maxIters;
@@ -67,6 +78,13 @@ public class CachingCVB0Mapper
     return modelTrainer;
   }
 
+  /**
+   * @return the trainer of the sharded model, null unless {@link CVB0Driver#SHARDED_MODEL} is set
+   */
+  protected ShardedModelTrainer getShardedModelTrainer() {
+    return shardedModelTrainer;
+  }
+
   protected int getMaxIters() {
     return maxIters;
   }
@@ -89,6 +107,12 @@ public class CachingCVB0Mapper
     maxIters = conf.getInt(CVB0Driver.MAX_ITERATIONS_PER_DOC, 10);
     float modelWeight = conf.getFloat(CVB0Driver.MODEL_WEIGHT, 1.0f);
 
+    if (conf.getBoolean(CVB0Driver.SHARDED_MODEL, false)) {
+      log.info("Initializing sharded model trainer");
+      shardedModelTrainer = new ShardedModelTrainer(readShardedModel(conf, 4 * numTrainThreads), numTrainThreads);
+      return;
+    }
+
     log.info("Initializing read model");
     Path[] modelPaths = CVB0Driver.getModelPaths(conf);
     if (modelPaths != null && modelPaths.length > 0) {
@@ -114,11 +138,25 @@ public class CachingCVB0Mapper
       throws IOException, InterruptedException {
     /* where to get docTopics? */
     Vector topicVector = new DenseVector(numTopics).assign(1.0 / numTopics);
-    modelTrainer.train(document.get(), topicVector, true, maxIters);
+    if (shardedModelTrainer != null) {
+      shardedModelTrainer.train(document.get(), topicVector, maxIters);
+    } else {
+      modelTrainer.train(document.get(), topicVector, true, maxIters);
+    }
   }
 
   @Override
   protected void cleanup(Context context) throws IOException, InterruptedException {
+    if (shardedModelTrainer != null) {
+      log.info("Finishing sharded model training");
+      shardedModelTrainer.finishPass();
+      log.info("Writing model");
+      for (MatrixSlice topic : shardedModelTrainer.getReadModel()) {
+        context.write(new IntWritable(topic.index()), new VectorWritable(topic.vector()));
+      }
+      return;
+    }
+
     log.info("Stopping model trainer");
     modelTrainer.stop();
 
@@ -130,4 +168,23 @@ public class CachingCVB0Mapper
     readModel.stop();
     writeModel.stop();
   }
+
+  /**
+   * Reads the model of the previous iteration into a {@link ShardedTopicModel}, or builds a random one for the first
+   * iteration.
+   */
+  static ShardedTopicModel readShardedModel(Configuration conf, int numShards) {
+    float eta = conf.getFloat(CVB0Driver.TERM_TOPIC_SMOOTHING, Float.NaN);
+    float alpha = conf.getFloat(CVB0Driver.DOC_TOPIC_SMOOTHING, Float.NaN);
+    int numTopics = conf.getInt(CVB0Driver.NUM_TOPICS, -1);
+    int numTerms = conf.getInt(CVB0Driver.NUM_TERMS, -1);
+    Path[] modelPaths = CVB0Driver.getModelPaths(conf);
+    if (modelPaths != null && modelPaths.length > 0) {
+      return ShardedTopicModel.read(conf, numTopics, numTerms, eta, alpha, numShards, modelPaths);
+    }
+    log.info("No model files found");
+    long seed = conf.getLong(CVB0Driver.RANDOM_SEED, 1234L);
+    return ShardedTopicModel.randomModel(numTopics, numTerms, eta, alpha, numShards, INITIAL_TOPICS_PER_TERM,
+        RandomUtils.getRandom(seed));
+  }
 }
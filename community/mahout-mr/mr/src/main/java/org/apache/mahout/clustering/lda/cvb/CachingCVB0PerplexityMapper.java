@@ -44,6 +44,7 @@ public class CachingCVB0PerplexityMapper extends
   private static final Logger log = LoggerFactory.getLogger(CachingCVB0PerplexityMapper.class);
 
   private ModelTrainer modelTrainer;
+  private ShardedModelTrainer shardedModelTrainer;
   private TopicModel readModel;
   private int maxIters;
   private int numTopics;
@@ -71,18 +72,24 @@ public class CachingCVB0PerplexityMapper extends
     float modelWeight = conf.getFloat(CVB0Driver.MODEL_WEIGHT, 1.0f);
     testFraction = conf.getFloat(CVB0Driver.TEST_SET_FRACTION, 0.1f);
 
-    log.info("Initializing read model");
-    Path[] modelPaths = CVB0Driver.getModelPaths(conf);
-    if (modelPaths != null && modelPaths.length > 0) {
-      readModel = new TopicModel(conf, eta, alpha, null, numUpdateThreads, modelWeight, modelPaths);
+    if (conf.getBoolean(CVB0Driver.SHARDED_MODEL, false)) {
+      log.info("Initializing sharded model trainer");
+      shardedModelTrainer = new ShardedModelTrainer(CachingCVB0Mapper.readShardedModel(conf, 4 * numTrainThreads),
+          numTrainThreads);
     } else {
-      log.info("No model files found");
-      readModel = new TopicModel(numTopics, numTerms, eta, alpha, RandomUtils.getRandom(seed), null,
-          numTrainThreads, modelWeight);
-    }
+      log.info("Initializing read model");
+      Path[] modelPaths = CVB0Driver.getModelPaths(conf);
+      if (modelPaths != null && modelPaths.length > 0) {
+        readModel = new TopicModel(conf, eta, alpha, null, numUpdateThreads, modelWeight, modelPaths);
+      } else {
+        log.info("No model files found");
+        readModel = new TopicModel(numTopics, numTerms, eta, alpha, RandomUtils.getRandom(seed), null,
+            numTrainThreads, modelWeight);
+      }
 
-    log.info("Initializing model trainer");
-    modelTrainer = new ModelTrainer(readModel, null, numTrainThreads, numTopics, numTerms);
+      log.info("Initializing model trainer");
+      modelTrainer = new ModelTrainer(readModel, null, numTrainThreads, numTopics, numTerms);
+    }
 
     log.info("Initializing topic vector");
     topicVector = new DenseVector(new double[numTopics]);
@@ -90,7 +97,9 @@ public class CachingCVB0PerplexityMapper extends
 
   @Override
   protected void cleanup(Context context) throws IOException, InterruptedException {
-    readModel.stop();
+    if (readModel != null) {
+      readModel.stop();
+    }
     MemoryUtil.stopMemoryLogger();
   }
 
@@ -102,7 +111,10 @@ public class CachingCVB0PerplexityMapper extends
     }
     context.getCounter(Counters.SAMPLED_DOCUMENTS).increment(1);
     outKey.set(document.get().norm(1));
-    outValue.set(modelTrainer.calculatePerplexity(document.get(), topicVector.assign(1.0 / numTopics), maxIters));
+    Vector docTopics = topicVector.assign(1.0 / numTopics);
+    outValue.set(shardedModelTrainer != null
+        ? shardedModelTrainer.calculatePerplexity(document.get(), docTopics, maxIters)
+        : modelTrainer.calculatePerplexity(document.get(), docTopics, maxIters));
     context.write(outKey, outValue);
   }
 }
@@ -54,6 +54,9 @@ import org.slf4j.LoggerFactory;
  *
  * Setting the read model and the write model to be the same object may not quite work yet,
  * on account of parallelism badness.
+ *
+ * {@link ShardedModelTrainer} trains sparse {@link ShardedTopicModel}s, with threads owning
+ * disjoint term shards instead.
  */
 public class ModelTrainer {
 
@@ -0,0 +1,436 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.clustering.lda.cvb;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.base.Preconditions;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.mahout.math.MatrixSlice;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.Vector.Element;
+import org.apache.mahout.math.VectorIterable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Multicore CVB0 trainer of {@link ShardedTopicModel}s, the sparse counterpart of {@link ModelTrainer}. Every
+ * training pass reads the current model and accumulates a new one, which replaces it at the end of the pass.
+ * <p/>
+ * Documents are trained in batches, in two phases. First the threads infer p(topic | term, doc) for the documents of
+ * the batch against the read-only model, keeping only the topics with a probability of at least
+ * {@link #setMinTopicProbability(double)} for every term. Then every thread adds the counts of the terms of the
+ * shards it owns to the new model: the shards are disjoint, so nothing is locked. Updates are applied in document
+ * order, so the model only depends on the number of shards, not on the number of threads.
+ * <p/>
+ * A pass is either a call of {@link #train(VectorIterable, VectorIterable, int)}, or a stream of
+ * {@link #train(Vector, Vector, int)} calls ended by {@link #finishPass()}, which is how {@link CachingCVB0Mapper}
+ * trains when {@link CVB0Driver#SHARDED_MODEL} is set.
+ */
+public class ShardedModelTrainer {
+
+  private static final Logger log = LoggerFactory.getLogger(ShardedModelTrainer.class);
+
+  public static final double DEFAULT_MIN_TOPIC_PROBABILITY = 1.0e-3;
+
+  private static final int DOCS_PER_THREAD = 16;
+
+  private static final int PERPLEXITY_DOC_TOPIC_ITERS = 10;
+
+  private ShardedTopicModel readModel;
+  private final int numThreads;
+  private final int numShards;
+  private double minTopicProbability = DEFAULT_MIN_TOPIC_PROBABILITY;
+  private double minCount;
+  private Pass pass;
+
+  /**
+   * @param numShards number of term shards of the trained models, better a few times the number of threads so
+   *          that frequent terms don't leave a single thread doing all the updates
+   */
+  public ShardedModelTrainer(ShardedTopicModel initialModel, int numThreads, int numShards) {
+    Preconditions.checkArgument(numThreads > 0, "numThreads must be greater then 0!");
+    Preconditions.checkArgument(numShards > 0, "numShards must be greater then 0!");
+    this.readModel = initialModel;
+    this.numThreads = numThreads;
+    this.numShards = numShards;
+  }
+
+  public ShardedModelTrainer(ShardedTopicModel initialModel, int numThreads) {
+    this(initialModel, numThreads, 4 * numThreads);
+  }
+
+  public ShardedTopicModel getReadModel() {
+    return readModel;
+  }
+
+  /**
+   * Topics of a term in a document with a lesser probability are not added to the model, the others share the
+   * weight of the term.
+   */
+  public void setMinTopicProbability(double minTopicProbability) {
+    this.minTopicProbability = minTopicProbability;
+  }
+
+  /**
+   * Counts lesser than this are dropped from a model at the end of every pass.
+   */
+  public void setMinCount(double minCount) {
+    this.minCount = minCount;
+  }
+
+  public void train(VectorIterable matrix, VectorIterable docTopicCounts) {
+    train(matrix, docTopicCounts, 1);
+  }
+
+  /**
+   * Runs a training pass over the documents, updating their topic distributions
+   */
+  public void train(VectorIterable matrix, VectorIterable docTopicCounts, int numDocTopicIters) {
+    Preconditions.checkArgument(numDocTopicIters > 0, "numDocTopicIters must be greater then 0!");
+    Preconditions.checkState(pass == null, "A pass of single documents is not finished");
+    Iterator<MatrixSlice> docIterator = matrix.iterator();
+    Iterator<MatrixSlice> docTopicIterator = docTopicCounts.iterator();
+    while (docIterator.hasNext() && docTopicIterator.hasNext()) {
+      train(docIterator.next().vector(), docTopicIterator.next().vector(), numDocTopicIters);
+    }
+    finishPass();
+  }
+
+  /**
+   * Adds a document to the current pass, which starts with the first document. Documents are trained in batches, so
+   * their topic distributions are only updated once the batch is full or the pass is finished, and they must not be
+   * changed until then.
+   */
+  public void train(Vector document, Vector docTopics, int numDocTopicIters) {
+    Preconditions.checkArgument(numDocTopicIters > 0, "numDocTopicIters must be greater then 0!");
+    if (pass == null) {
+      pass = new Pass(numDocTopicIters);
+    }
+    Preconditions.checkArgument(numDocTopicIters == pass.numDocTopicIters,
+        "All documents of a pass must use the same numDocTopicIters");
+    pass.documents.add(document);
+    pass.topics.add(docTopics);
+    if (pass.documents.size() == numThreads * DOCS_PER_THREAD) {
+      trainBatch();
+    }
+  }
+
+  /**
+   * Trains the last batch of the current pass and replaces the read model with the one the pass accumulated.
+   */
+  public void finishPass() {
+    if (pass == null) {
+      pass = new Pass(1);
+    }
+    try {
+      if (!pass.documents.isEmpty()) {
+        trainBatch();
+      }
+      readModel = pass.accumulator.build(readModel.getEta(), readModel.getAlpha(), minCount);
+      log.info("Trained model with {} counts in {}ms", readModel.getNumNonZeroes(),
+          (System.nanoTime() - pass.start) / 1.0e6);
+    } finally {
+      pass.executor.shutdownNow();
+      pass = null;
+    }
+  }
+
+  private void trainBatch() {
+    try {
+      trainBatch(pass.executor, pass.accumulator, pass.documents, pass.topics, pass.numDocTopicIters);
+      pass.documents.clear();
+      pass.topics.clear();
+    } catch (InterruptedException e) {
+      abortPass();
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } catch (ExecutionException e) {
+      abortPass();
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  private void abortPass() {
+    pass.executor.shutdownNow();
+    pass = null;
+  }
+
+  private void trainBatch(ExecutorService executor, final ShardedTopicModel.Accumulator accumulator,
+      List<Vector> documents, List<Vector> topics, final int numDocTopicIters)
+    throws InterruptedException, ExecutionException {
+    // infer the documents
+    List<Callable<DocUpdate>> inferences = new ArrayList<>(documents.size());
+    for (int i = 0; i < documents.size(); i++) {
+      final Vector document = documents.get(i);
+      final Vector docTopics = topics.get(i);
+      inferences.add(new Callable<DocUpdate>() {
+        @Override
+        public DocUpdate call() {
+          return infer(document, docTopics, numDocTopicIters, accumulator);
+        }
+      });
+    }
+    final List<DocUpdate> updates = new ArrayList<>(documents.size());
+    for (Future<DocUpdate> future : executor.invokeAll(inferences)) {
+      updates.add(future.get());
+    }
+
+    // every shard is updated by a single task
+    List<Callable<Void>> shardUpdates = new ArrayList<>(accumulator.getNumShards());
+    for (int s = 0; s < accumulator.getNumShards(); s++) {
+      final int shard = s;
+      shardUpdates.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          for (DocUpdate update : updates) {
+            update.addTo(accumulator, shard);
+          }
+          return null;
+        }
+      });
+    }
+    for (Future<Void> future : executor.invokeAll(shardUpdates)) {
+      future.get();
+    }
+  }
+
+  /**
+   * Computes the perplexity of a single document against the read model, inferring its topic distribution first
+   */
+  public double calculatePerplexity(Vector document, Vector docTopics, int numDocTopicIters) {
+    infer(document, docTopics, numDocTopicIters, null);
+    return readModel.perplexity(document, docTopics);
+  }
+
+  /**
+   * Computes the perplexity of the documents, inferring their topic distributions first
+   *
+   * @param testFraction fraction of the documents to use, all of them if 0
+   */
+  public double calculatePerplexity(VectorIterable matrix, VectorIterable docTopicCounts, double testFraction) {
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      Iterator<MatrixSlice> docIterator = matrix.iterator();
+      Iterator<MatrixSlice> docTopicIterator = docTopicCounts.iterator();
+      List<Callable<double[]>> batch = new ArrayList<>();
+      double perplexity = 0;
+      double matrixNorm = 0;
+      while (docIterator.hasNext() && docTopicIterator.hasNext()) {
+        MatrixSlice docSlice = docIterator.next();
+        final Vector document = docSlice.vector();
+        final Vector topicDist = docTopicIterator.next().vector();
+        if (testFraction == 0 || docSlice.index() % (1 / testFraction) == 0) {
+          batch.add(new Callable<double[]>() {
+            @Override
+            public double[] call() {
+              infer(document, topicDist, PERPLEXITY_DOC_TOPIC_ITERS, null);
+              return new double[] {readModel.perplexity(document, topicDist), document.norm(1)};
+            }
+          });
+        }
+        if (batch.size() == numThreads * DOCS_PER_THREAD || !docIterator.hasNext() || !docTopicIterator.hasNext()) {
+          for (Future<double[]> future : executor.invokeAll(batch)) {
+            double[] result = future.get();
+            perplexity += result[0];
+            matrixNorm += result[1];
+          }
+          batch.clear();
+        }
+      }
+      return perplexity / matrixNorm;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  public void persist(Path outputPath, Configuration conf) throws IOException {
+    readModel.persist(outputPath, conf, true);
+  }
+
+  /**
+   * CVB0 inference of p(topic | doc), like {@link TopicModel#trainDocTopicModel(Vector, Vector,
+   * org.apache.mahout.math.Matrix)} repeated numDocTopicIters times.
+   *
+   * @param accumulator if not null, the significant p(topic | term, doc) of the last iteration are returned as an
+   *          update of this accumulator
+   */
+  DocUpdate infer(Vector document, Vector docTopics, int numDocTopicIters,
+      ShardedTopicModel.Accumulator accumulator) {
+    int numTopics = readModel.getNumTopics();
+    double alpha = readModel.getAlpha();
+
+    // terms in increasing order, so that the terms of a shard are contiguous
+    int n = document.getNumNondefaultElements();
+    long[] order = new long[n];
+    double[] documentWeights = new double[n];
+    int size = 0;
+    for (Element e : document.nonZeroes()) {
+      order[size] = ((long) e.index() << 32) | size;
+      documentWeights[size++] = e.get();
+    }
+    Arrays.sort(order, 0, size);
+    int[] terms = new int[size];
+    double[] weights = new double[size];
+    for (int i = 0; i < size; i++) {
+      terms[i] = (int) (order[i] >>> 32);
+      weights[i] = documentWeights[(int) order[i]];
+    }
+
+    double[] likelihoods = new double[size * numTopics];
+    for (int i = 0; i < size; i++) {
+      readModel.termTopicLikelihoods(terms[i], likelihoods, i * numTopics);
+    }
+
+    double[] topics = new double[numTopics];
+    for (int x = 0; x < numTopics; x++) {
+      topics[x] = docTopics.getQuick(x);
+    }
+    double[] newTopics = new double[numTopics];
+    double[] p = new double[numTopics];
+    DocUpdate update = accumulator == null ? null : new DocUpdate(terms, accumulator);
+    for (int iter = 0; iter < numDocTopicIters; iter++) {
+      boolean last = iter == numDocTopicIters - 1;
+      Arrays.fill(newTopics, 0.0);
+      for (int i = 0; i < size; i++) {
+        int offset = i * numTopics;
+        double sum = 0;
+        for (int x = 0; x < numTopics; x++) {
+          p[x] = likelihoods[offset + x] * (topics[x] + alpha);
+          sum += p[x];
+        }
+        double scale = weights[i] / sum;
+        for (int x = 0; x < numTopics; x++) {
+          newTopics[x] += p[x] * scale;
+        }
+        if (last && update != null) {
+          update.add(i, p, sum, weights[i], minTopicProbability);
+        }
+      }
+      double norm = 0;
+      for (int x = 0; x < numTopics; x++) {
+        norm += newTopics[x];
+      }
+      for (int x = 0; x < numTopics; x++) {
+        topics[x] = newTopics[x] / norm;
+      }
+    }
+    docTopics.assign(topics);
+    return update;
+  }
+
+  /**
+   * The model accumulated by a training pass, along with the documents of its current batch.
+   */
+  private final class Pass {
+    private final int numDocTopicIters;
+    private final long start = System.nanoTime();
+    private final ShardedTopicModel.Accumulator accumulator =
+        new ShardedTopicModel.Accumulator(readModel.getNumTopics(), readModel.getNumTerms(), numShards);
+    private final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    private final List<Vector> documents = new ArrayList<>();
+    private final List<Vector> topics = new ArrayList<>();
+
+    Pass(int numDocTopicIters) {
+      this.numDocTopicIters = numDocTopicIters;
+    }
+  }
+
+  /**
+   * Significant topic counts of the terms of a document, grouped by shard.
+   */
+  static final class DocUpdate {
+    private final int[] terms;
+    // the terms of shard s are terms[shardStarts[s] .. shardStarts[s + 1][
+    private final int[] shardStarts;
+    // the topics of terms[i] are topics[termStarts[i] .. termStarts[i + 1][
+    private final int[] termStarts;
+    private int[] topics;
+    private float[] counts;
+    private int size;
+
+    DocUpdate(int[] terms, ShardedTopicModel.Accumulator accumulator) {
+      this.terms = terms;
+      shardStarts = new int[accumulator.getNumShards() + 1];
+      for (int i = 0, s = 0; s < accumulator.getNumShards(); s++) {
+        shardStarts[s] = i;
+        while (i < terms.length && accumulator.shardOf(terms[i]) == s) {
+          i++;
+        }
+      }
+      shardStarts[accumulator.getNumShards()] = terms.length;
+      termStarts = new int[terms.length + 1];
+      topics = new int[4 * terms.length];
+      counts = new float[topics.length];
+    }
+
+    /**
+     * Adds the significant topics of the i-th term given its unnormalized p(topic | term, doc)
+     */
+    void add(int i, double[] p, double sum, double weight, double minProbability) {
+      int best = 0;
+      double keptSum = 0;
+      for (int x = 0; x < p.length; x++) {
+        if (p[x] > p[best]) {
+          best = x;
+        }
+        if (p[x] >= minProbability * sum) {
+          keptSum += p[x];
+        }
+      }
+      if (p[best] < minProbability * sum) {
+        keptSum = p[best];
+      }
+      double scale = weight / keptSum;
+      for (int x = 0; x < p.length; x++) {
+        if (x == best || p[x] >= minProbability * sum) {
+          if (size == topics.length) {
+            topics = Arrays.copyOf(topics, 2 * size);
+            counts = Arrays.copyOf(counts, 2 * size);
+          }
+          topics[size] = x;
+          counts[size++] = (float) (p[x] * scale);
+        }
+      }
+      termStarts[i + 1] = size;
+    }
+
+    void addTo(ShardedTopicModel.Accumulator accumulator, int shard) {
+      for (int i = shardStarts[shard]; i < shardStarts[shard + 1]; i++) {
+        for (int k = termStarts[i]; k < termStarts[i + 1]; k++) {
+          accumulator.add(terms[i], topics[k], counts[k]);
+        }
+      }
+    }
+  }
+}
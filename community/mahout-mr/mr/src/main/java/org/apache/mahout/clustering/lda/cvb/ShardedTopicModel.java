@@ -0,0 +1,478 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.clustering.lda.cvb;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+
+import com.google.common.base.Preconditions;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.mahout.common.Pair;
+import org.apache.mahout.common.iterator.sequencefile.SequenceFileIterable;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.DistributedRowMatrixWriter;
+import org.apache.mahout.math.MatrixSlice;
+import org.apache.mahout.math.RandomAccessSparseVector;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.Vector.Element;
+import org.apache.mahout.math.VectorWritable;
+import org.apache.mahout.math.list.LongArrayList;
+import org.apache.mahout.math.map.OpenLongFloatHashMap;
+
+/**
+ * Read-only topic model which, unlike the dense {@link TopicModel}, only stores the significant (topic, term)
+ * counts. Counts are stored term by term as float, and terms are split in contiguous shards, each one held in its own
+ * buffers: on the heap, or mapped from a file written by {@link #write(File)} (see {@link #map(File, double, double,
+ * boolean)}), so that the model doesn't have to fit on the heap. A shard must hold less than 2GB.
+ * <p/>
+ * Models are built by an {@link Accumulator}, whose shards can be updated concurrently without locking as long as
+ * every shard is only updated by one thread at a time: this is how {@link ShardedModelTrainer} trains.
+ * <p/>
+ * The smoothed p(term | topic) is {@code (count(topic, term) + eta) / (topicSum(topic) + eta * numTerms)}, like in
+ * {@link TopicModel}.
+ */
+public final class ShardedTopicModel implements Iterable<MatrixSlice> {
+
+  private static final int MAGIC = 0x4c444131;
+
+  private final int numTopics;
+  private final int numTerms;
+  private final double eta;
+  private final double alpha;
+  private final int shardSize;
+  private final Shard[] shards;
+  private final double[] topicSums;
+  // 1 / (topicSums[x] + eta * numTerms)
+  private final double[] topicNormalizers;
+
+  private ShardedTopicModel(int numTopics, int numTerms, double eta, double alpha, int shardSize, Shard[] shards,
+      double[] topicSums) {
+    this.numTopics = numTopics;
+    this.numTerms = numTerms;
+    this.eta = eta;
+    this.alpha = alpha;
+    this.shardSize = shardSize;
+    this.shards = shards;
+    this.topicSums = topicSums;
+    topicNormalizers = new double[numTopics];
+    for (int x = 0; x < numTopics; x++) {
+      topicNormalizers[x] = 1.0 / (topicSums[x] + eta * numTerms);
+    }
+  }
+
+  /**
+   * Terms of a shard, term {@code firstTerm + t} has the topics {@code topics[offsets[t] .. offsets[t + 1][} in
+   * increasing order, with the matching counts.
+   */
+  private static final class Shard {
+    private final int firstTerm;
+    private final int numTerms;
+    private final IntBuffer offsets;
+    private final IntBuffer topics;
+    private final FloatBuffer counts;
+
+    Shard(int firstTerm, int numTerms, IntBuffer offsets, IntBuffer topics, FloatBuffer counts) {
+      this.firstTerm = firstTerm;
+      this.numTerms = numTerms;
+      this.offsets = offsets;
+      this.topics = topics;
+      this.counts = counts;
+    }
+
+    int numNonZeroes() {
+      return offsets.get(numTerms);
+    }
+  }
+
+  private static int shardSize(int numTerms, int numShards) {
+    return Math.max(1, (numTerms + numShards - 1) / numShards);
+  }
+
+  public int getNumTopics() {
+    return numTopics;
+  }
+
+  public int getNumTerms() {
+    return numTerms;
+  }
+
+  public int getNumShards() {
+    return shards.length;
+  }
+
+  public double getEta() {
+    return eta;
+  }
+
+  public double getAlpha() {
+    return alpha;
+  }
+
+  /**
+   * @return number of stored (topic, term) counts
+   */
+  public long getNumNonZeroes() {
+    long numNonZeroes = 0;
+    for (Shard shard : shards) {
+      numNonZeroes += shard.numNonZeroes();
+    }
+    return numNonZeroes;
+  }
+
+  public Vector topicSums() {
+    return new DenseVector(topicSums, false);
+  }
+
+  public double count(int topic, int term) {
+    Shard shard = shards[term / shardSize];
+    int t = term - shard.firstTerm;
+    int from = shard.offsets.get(t);
+    int to = shard.offsets.get(t + 1) - 1;
+    while (from <= to) {
+      int mid = (from + to) >>> 1;
+      int x = shard.topics.get(mid);
+      if (x < topic) {
+        from = mid + 1;
+      } else if (x > topic) {
+        to = mid - 1;
+      } else {
+        return shard.counts.get(mid);
+      }
+    }
+    return 0.0;
+  }
+
+  /**
+   * Computes the smoothed p(term | topic) of a term for all topics.
+   *
+   * @param likelihoods receives p(term | topic x) at {@code offset + x}
+   */
+  public void termTopicLikelihoods(int term, double[] likelihoods, int offset) {
+    for (int x = 0; x < numTopics; x++) {
+      likelihoods[offset + x] = eta * topicNormalizers[x];
+    }
+    Shard shard = shards[term / shardSize];
+    int t = term - shard.firstTerm;
+    int end = shard.offsets.get(t + 1);
+    for (int k = shard.offsets.get(t); k < end; k++) {
+      int x = shard.topics.get(k);
+      likelihoods[offset + x] += shard.counts.get(k) * topicNormalizers[x];
+    }
+  }
+
+  /**
+   * \(sum_x sum_a (c_ai * log(p(x|i) * p(a|x)))\), see {@link TopicModel#perplexity(Vector, Vector)}
+   */
+  public double perplexity(Vector document, Vector docTopics) {
+    double[] likelihoods = new double[numTopics];
+    double[] d = new double[numTopics];
+    double norm = docTopics.norm(1) + numTopics * alpha;
+    for (int x = 0; x < numTopics; x++) {
+      d[x] = (docTopics.getQuick(x) + alpha) / norm;
+    }
+    double perplexity = 0;
+    for (Element e : document.nonZeroes()) {
+      termTopicLikelihoods(e.index(), likelihoods, 0);
+      double prob = 0;
+      for (int x = 0; x < numTopics; x++) {
+        prob += d[x] * likelihoods[x];
+      }
+      perplexity += e.get() * Math.log(prob);
+    }
+    return -perplexity;
+  }
+
+  /**
+   * Iterates over the topics as rows of counts, like {@link TopicModel#iterator()}. The rows of all topics are built
+   * upfront.
+   */
+  @Override
+  public Iterator<MatrixSlice> iterator() {
+    final Vector[] rows = new Vector[numTopics];
+    int[] sizes = new int[numTopics];
+    for (Shard shard : shards) {
+      for (int k = 0; k < shard.numNonZeroes(); k++) {
+        sizes[shard.topics.get(k)]++;
+      }
+    }
+    for (int x = 0; x < numTopics; x++) {
+      rows[x] = new RandomAccessSparseVector(numTerms, sizes[x]);
+    }
+    for (Shard shard : shards) {
+      for (int t = 0; t < shard.numTerms; t++) {
+        int end = shard.offsets.get(t + 1);
+        for (int k = shard.offsets.get(t); k < end; k++) {
+          rows[shard.topics.get(k)].setQuick(shard.firstTerm + t, shard.counts.get(k));
+        }
+      }
+    }
+    return new Iterator<MatrixSlice>() {
+      private int topic;
+
+      @Override
+      public boolean hasNext() {
+        return topic < numTopics;
+      }
+
+      @Override
+      public MatrixSlice next() {
+        MatrixSlice slice = new MatrixSlice(rows[topic], topic);
+        rows[topic++] = null;
+        return slice;
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  /**
+   * Writes the topics as rows of counts, in the format of {@link TopicModel#persist(Path, boolean)}
+   */
+  public void persist(Path outputDir, Configuration conf, boolean overwrite) throws IOException {
+    FileSystem fs = outputDir.getFileSystem(conf);
+    if (overwrite) {
+      fs.delete(outputDir, true);
+    }
+    DistributedRowMatrixWriter.write(outputDir, conf, this);
+  }
+
+  /**
+   * Writes the model to a local file, which can be mapped back with {@link #map(File, double, double, boolean)}
+   */
+  public void write(File file) throws IOException {
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(numTopics);
+      out.writeInt(numTerms);
+      out.writeInt(shardSize);
+      out.writeInt(shards.length);
+      for (double topicSum : topicSums) {
+        out.writeDouble(topicSum);
+      }
+      for (Shard shard : shards) {
+        int numNonZeroes = shard.numNonZeroes();
+        out.writeInt(shard.numTerms);
+        out.writeInt(numNonZeroes);
+        for (int t = 0; t <= shard.numTerms; t++) {
+          out.writeInt(shard.offsets.get(t));
+        }
+        for (int k = 0; k < numNonZeroes; k++) {
+          out.writeInt(shard.topics.get(k));
+        }
+        for (int k = 0; k < numNonZeroes; k++) {
+          out.writeFloat(shard.counts.get(k));
+        }
+      }
+    }
+  }
+
+  /**
+   * Maps a model written by {@link #write(File)}, the counts stay off the heap.
+   *
+   * @param loadNow whether to load the whole file in physical memory right away
+   */
+  public static ShardedTopicModel map(File file, double eta, double alpha, boolean loadNow) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      FileChannel channel = raf.getChannel();
+      DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+      Preconditions.checkArgument(in.readInt() == MAGIC, "File " + file + " is not a topic model");
+      int numTopics = in.readInt();
+      int numTerms = in.readInt();
+      int shardSize = in.readInt();
+      Shard[] shards = new Shard[in.readInt()];
+      double[] topicSums = new double[numTopics];
+      for (int x = 0; x < numTopics; x++) {
+        topicSums[x] = in.readDouble();
+      }
+      long position = 20L + 8L * numTopics;
+      for (int s = 0; s < shards.length; s++) {
+        channel.position(position);
+        int shardTerms = in.readInt();
+        int numNonZeroes = in.readInt();
+        position += 8;
+        long size = 4L * (shardTerms + 1) + 8L * numNonZeroes;
+        Preconditions.checkArgument(size <= Integer.MAX_VALUE, "Shard " + s + " of " + file + " is too large to map");
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        if (loadNow) {
+          buffer.load();
+        }
+        position += size;
+        shards[s] = new Shard(s * shardSize, shardTerms, slice(buffer, 0, shardTerms + 1).asIntBuffer(),
+            slice(buffer, 4 * (shardTerms + 1), numNonZeroes).asIntBuffer(),
+            slice(buffer, 4 * (shardTerms + 1) + 4 * numNonZeroes, numNonZeroes).asFloatBuffer());
+      }
+      return new ShardedTopicModel(numTopics, numTerms, eta, alpha, shardSize, shards, topicSums);
+    }
+  }
+
+  private static ByteBuffer slice(ByteBuffer buffer, int position, int length) {
+    ByteBuffer duplicate = buffer.duplicate();
+    ((Buffer) duplicate).position(position);
+    ((Buffer) duplicate).limit(position + 4 * length);
+    return duplicate.slice();
+  }
+
+  /**
+   * Reads the topics written as rows of counts by {@link #persist(Path, Configuration, boolean)}, or by
+   * {@link TopicModel#persist(Path, boolean)}, without ever holding a dense topic row per term.
+   */
+  public static ShardedTopicModel read(Configuration conf, int numTopics, int numTerms, double eta, double alpha,
+      int numShards, Path... modelPaths) {
+    Accumulator accumulator = new Accumulator(numTopics, numTerms, numShards);
+    for (Path modelPath : modelPaths) {
+      for (Pair<IntWritable, VectorWritable> row
+          : new SequenceFileIterable<IntWritable, VectorWritable>(modelPath, true, conf)) {
+        int topic = row.getFirst().get();
+        Preconditions.checkArgument(topic >= 0 && topic < numTopics, "Topic " + topic + " of " + modelPath
+            + " is not in [0, " + numTopics + ")");
+        for (Element e : row.getSecond().get().nonZeroes()) {
+          accumulator.add(e.index(), topic, e.get());
+        }
+      }
+    }
+    return accumulator.build(eta, alpha, 0.0);
+  }
+
+  /**
+   * Builds a random initial model, where every term has a random count for {@code topicsPerTerm} random topics.
+   */
+  public static ShardedTopicModel randomModel(int numTopics, int numTerms, double eta, double alpha, int numShards,
+      int topicsPerTerm, Random random) {
+    Accumulator accumulator = new Accumulator(numTopics, numTerms, numShards);
+    int[] topics = new int[numTopics];
+    for (int x = 0; x < numTopics; x++) {
+      topics[x] = x;
+    }
+    int n = Math.min(topicsPerTerm, numTopics);
+    for (int term = 0; term < numTerms; term++) {
+      // partial Fisher-Yates shuffle
+      for (int i = 0; i < n; i++) {
+        int j = i + random.nextInt(numTopics - i);
+        int tmp = topics[i];
+        topics[i] = topics[j];
+        topics[j] = tmp;
+        accumulator.add(term, topics[i], random.nextDouble());
+      }
+    }
+    return accumulator.build(eta, alpha, 0.0);
+  }
+
+  /**
+   * Accumulates (topic, term) counts into a new {@link ShardedTopicModel}. Different shards can be updated
+   * concurrently, but a shard must not be updated by more than one thread at a time.
+   */
+  public static final class Accumulator {
+
+    private final int numTopics;
+    private final int numTerms;
+    private final int shardSize;
+    // (term - firstTerm) * numTopics + topic -> count
+    private final OpenLongFloatHashMap[] shards;
+
+    public Accumulator(int numTopics, int numTerms, int numShards) {
+      Preconditions.checkArgument(numTopics > 0, "numTopics must be greater then 0!");
+      Preconditions.checkArgument(numTerms > 0, "numTerms must be greater then 0!");
+      Preconditions.checkArgument(numShards > 0, "numShards must be greater then 0!");
+      this.numTopics = numTopics;
+      this.numTerms = numTerms;
+      this.shardSize = shardSize(numTerms, numShards);
+      this.shards = new OpenLongFloatHashMap[(numTerms + shardSize - 1) / shardSize];
+      for (int s = 0; s < shards.length; s++) {
+        shards[s] = new OpenLongFloatHashMap();
+      }
+    }
+
+    public int getNumShards() {
+      return shards.length;
+    }
+
+    /**
+     * @return the shard holding the term
+     */
+    public int shardOf(int term) {
+      return term / shardSize;
+    }
+
+    public void add(int term, int topic, double count) {
+      int s = term / shardSize;
+      long key = (long) (term - s * shardSize) * numTopics + topic;
+      shards[s].adjustOrPutValue(key, (float) count, (float) count);
+    }
+
+    /**
+     * @param minCount counts lesser than this are dropped
+     */
+    public ShardedTopicModel build(double eta, double alpha, double minCount) {
+      double[] topicSums = new double[numTopics];
+      Shard[] built = new Shard[shards.length];
+      for (int s = 0; s < shards.length; s++) {
+        OpenLongFloatHashMap counts = shards[s];
+        LongArrayList keyList = counts.keys();
+        long[] keys = Arrays.copyOf(keyList.elements(), keyList.size());
+        Arrays.sort(keys);
+
+        int firstTerm = s * shardSize;
+        int shardTerms = Math.min(shardSize, numTerms - firstTerm);
+        int[] offsets = new int[shardTerms + 1];
+        int[] shardTopics = new int[keys.length];
+        float[] shardCounts = new float[keys.length];
+        int numNonZeroes = 0;
+        for (long key : keys) {
+          float count = counts.get(key);
+          if (count >= minCount && count > 0) {
+            int topic = (int) (key % numTopics);
+            offsets[(int) (key / numTopics) + 1]++;
+            shardTopics[numNonZeroes] = topic;
+            shardCounts[numNonZeroes++] = count;
+            topicSums[topic] += count;
+          }
+        }
+        for (int t = 0; t < shardTerms; t++) {
+          offsets[t + 1] += offsets[t];
+        }
+        built[s] = new Shard(firstTerm, shardTerms, IntBuffer.wrap(offsets),
+            IntBuffer.wrap(Arrays.copyOf(shardTopics, numNonZeroes)),
+            FloatBuffer.wrap(Arrays.copyOf(shardCounts, numNonZeroes)));
+        // release the counts of the shard as soon as it is built
+        shards[s] = new OpenLongFloatHashMap();
+      }
+      return new ShardedTopicModel(numTopics, numTerms, eta, alpha, shardSize, built, topicSums);
+    }
+  }
+}
@@ -60,6 +60,8 @@ import org.slf4j.LoggerFactory;
  * merely submits the matrix to a work queue.  When all work has been submitted,
  * {@code awaitTermination()} should be called, which will block until updates have been
  * accumulated.
+ *
+ * The matrix is dense: for large vocabularies, see {@link ShardedTopicModel} instead.
  */
 public class TopicModel implements Configurable, Iterable<MatrixSlice> {
   
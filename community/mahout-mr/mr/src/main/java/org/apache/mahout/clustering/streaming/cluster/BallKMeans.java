@@ -18,15 +18,22 @@
 package org.apache.mahout.clustering.streaming.cluster;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
 
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
 import org.apache.mahout.clustering.ClusteringUtils;
 import org.apache.mahout.common.Pair;
 import org.apache.mahout.common.RandomUtils;
@@ -34,6 +41,7 @@ import org.apache.mahout.common.distance.DistanceMeasure;
 import org.apache.mahout.math.Centroid;
 import org.apache.mahout.math.Vector;
 import org.apache.mahout.math.WeightedVector;
+import org.apache.mahout.math.neighborhood.BruteSearch;
 import org.apache.mahout.math.neighborhood.UpdatableSearcher;
 import org.apache.mahout.math.random.Multinomial;
 import org.apache.mahout.math.random.WeightedThing;
@@ -121,11 +129,30 @@ public class BallKMeans implements Iterable<Centroid> {
    */
   private final int numRuns;
 
+  /**
+   * Number of threads to cluster with. With more than one, the runs are done concurrently and the passes over the
+   * datapoints of each iteration are split into shards that run on a fork-join pool, followed by updating the new
+   * centroids a range of clusters per task. Since searchers are not safe for concurrent updates, every
+   * run then keeps its centroids in a {@link BruteSearch}; only the best clustering ends up in the searcher given to
+   * the constructor.
+   */
+  private final int numThreads;
+
   /**
    * Random object to sample values from.
    */
   private final Random random;
 
+  /**
+   * Number of shards per thread a pass over the datapoints is split into, so that uneven shards balance out.
+   */
+  private static final int SHARDS_PER_THREAD = 4;
+
+  /**
+   * Passes over fewer datapoints than this aren't split.
+   */
+  private static final int MIN_SHARD_SIZE = 1024;
+
   public BallKMeans(UpdatableSearcher searcher, int numClusters, int maxNumIterations) {
     // By default, the trimFraction is 0.9, k-means++ is used, the weights will be corrected at the end,
     // there will be 0 points in the test set and 1 run.
@@ -142,12 +169,20 @@ public class BallKMeans implements Iterable<Centroid> {
   public BallKMeans(UpdatableSearcher searcher, int numClusters, int maxNumIterations,
                     double trimFraction, boolean kMeansPlusPlusInit, boolean correctWeights,
                     double testProbability, int numRuns) {
+    this(searcher, numClusters, maxNumIterations, trimFraction, kMeansPlusPlusInit, correctWeights, testProbability,
+        numRuns, 1);
+  }
+
+  public BallKMeans(UpdatableSearcher searcher, int numClusters, int maxNumIterations,
+                    double trimFraction, boolean kMeansPlusPlusInit, boolean correctWeights,
+                    double testProbability, int numRuns, int numThreads) {
     Preconditions.checkArgument(searcher.size() == 0, "Searcher must be empty initially to populate with centroids");
     Preconditions.checkArgument(numClusters > 0, "The requested number of clusters must be positive");
     Preconditions.checkArgument(maxNumIterations > 0, "The maximum number of iterations must be positive");
     Preconditions.checkArgument(trimFraction > 0, "The trim fraction must be positive");
     Preconditions.checkArgument(testProbability >= 0 && testProbability < 1, "The testProbability must be in [0, 1)");
     Preconditions.checkArgument(numRuns > 0, "There has to be at least one run");
+    Preconditions.checkArgument(numThreads > 0, "There has to be at least one thread");
 
     this.centroids = searcher;
     this.numClusters = numClusters;
@@ -160,6 +195,7 @@ public class BallKMeans implements Iterable<Centroid> {
     this.testProbability = testProbability;
     this.splitTrainTest = testProbability > 0;
     this.numRuns = numRuns;
+    this.numThreads = numThreads;
 
     this.random = RandomUtils.getRandom();
   }
@@ -177,7 +213,7 @@ public class BallKMeans implements Iterable<Centroid> {
         "Must have nonzero number of training and test vectors. Asked for %.1f %% of %d vectors for test",
         testProbability * 100, datapoints.size());
 
-    Collections.shuffle(datapoints);
+    Collections.shuffle(datapoints, random);
     return new Pair<List<? extends WeightedVector>, List<? extends WeightedVector>>(
         datapoints.subList(numTest, datapoints.size()), datapoints.subList(0, numTest));
   }
@@ -189,6 +225,9 @@ public class BallKMeans implements Iterable<Centroid> {
    * @return an UpdatableSearcher with the resulting clusters.
    */
   public UpdatableSearcher cluster(List<? extends WeightedVector> datapoints) {
+    if (numThreads > 1) {
+      return clusterConcurrently(datapoints);
+    }
     Pair<List<? extends WeightedVector>, List<? extends WeightedVector>> trainTestSplit = splitTrainTest(datapoints);
     List<Vector> bestCentroids = new ArrayList<>();
     double cost = Double.POSITIVE_INFINITY;
@@ -197,15 +236,15 @@ public class BallKMeans implements Iterable<Centroid> {
       centroids.clear();
       if (kMeansPlusPlusInit) {
         // Use k-means++ to set initial centroids.
-        initializeSeedsKMeansPlusPlus(trainTestSplit.getFirst());
+        initializeSeedsKMeansPlusPlus(centroids, trainTestSplit.getFirst(), random);
       } else {
         // Randomly select the initial centroids.
-        initializeSeedsRandomly(trainTestSplit.getFirst());
+        initializeSeedsRandomly(centroids, trainTestSplit.getFirst());
       }
       // Do k-means iterations with trimmed mean computation (aka ball k-means).
       if (numRuns > 1) {
         // If the clustering is successful (there are no zero-weight centroids).
-        iterativeAssignment(trainTestSplit.getFirst());
+        iterativeAssignment(centroids, trainTestSplit.getFirst());
         // Compute the cost of the clustering and possibly save the centroids.
         cost = ClusteringUtils.totalClusterCost(
             splitTrainTest ? datapoints : trainTestSplit.getSecond(), centroids);
@@ -216,7 +255,7 @@ public class BallKMeans implements Iterable<Centroid> {
         }
       } else {
         // If there is only going to be one run, the cost doesn't need to be computed, so we just return the clustering.
-        iterativeAssignment(datapoints);
+        iterativeAssignment(centroids, datapoints);
         return centroids;
       }
     }
@@ -242,9 +281,10 @@ public class BallKMeans implements Iterable<Centroid> {
    *
    * The side effect of this method is to fill the centroids structure itself.
    *
+   * @param centroids The searcher to fill with the seeds.
    * @param datapoints The datapoints to select from.  These datapoints should be WeightedVectors of some kind.
    */
-  private void initializeSeedsRandomly(List<? extends WeightedVector> datapoints) {
+  private void initializeSeedsRandomly(UpdatableSearcher centroids, List<? extends WeightedVector> datapoints) {
     int numDatapoints = datapoints.size();
     double totalWeight = 0;
     for (WeightedVector datapoint : datapoints) {
@@ -278,9 +318,12 @@ public class BallKMeans implements Iterable<Centroid> {
    *
    * The side effect of this method is to fill the centroids structure itself.
    *
+   * @param centroids The searcher to fill with the seeds.
    * @param datapoints The datapoints to select from.  These datapoints should be WeightedVectors of some kind.
+   * @param random Selects the first seed.
    */
-  private void initializeSeedsKMeansPlusPlus(List<? extends WeightedVector> datapoints) {
+  private void initializeSeedsKMeansPlusPlus(UpdatableSearcher centroids,
+                                             List<? extends WeightedVector> datapoints, Random random) {
     Preconditions.checkArgument(datapoints.size() > 1, "Must have at least two datapoints points to cluster " +
         "sensibly");
     Preconditions.checkArgument(datapoints.size() >= numClusters,
@@ -371,9 +414,10 @@ public class BallKMeans implements Iterable<Centroid> {
    * By ignoring distant points, the centroids converge more quickly to a good approximation of the
    * optimal k-means solution (given good starting points).
    *
+   * @param centroids the searcher holding the centroids to update.
    * @param datapoints the points to cluster.
    */
-  private void iterativeAssignment(List<? extends WeightedVector> datapoints) {
+  private void iterativeAssignment(UpdatableSearcher centroids, List<? extends WeightedVector> datapoints) {
     DistanceMeasure distanceMeasure = centroids.getDistanceMeasure();
     // closestClusterDistances.get(i) is the distance from the i'th cluster to its closest
     // neighboring cluster.
@@ -441,6 +485,281 @@ public class BallKMeans implements Iterable<Centroid> {
     }
   }
 
+  /**
+   * Concurrent version of {@link #cluster(List)}: the runs are done in parallel and each pass over the datapoints is
+   * sharded across a fork-join pool with {@link #numThreads} workers.
+   */
+  private UpdatableSearcher clusterConcurrently(List<? extends WeightedVector> datapoints) {
+    Pair<List<? extends WeightedVector>, List<? extends WeightedVector>> trainTestSplit = splitTrainTest(datapoints);
+    // Same data as the sequential version: seeds always come from the training split, and a single run assigns
+    // all the datapoints and needs no cost.
+    final List<? extends WeightedVector> seedPoints = trainTestSplit.getFirst();
+    final List<? extends WeightedVector> assignedPoints = numRuns > 1 ? seedPoints : datapoints;
+    final List<? extends WeightedVector> costPoints = splitTrainTest ? datapoints : trainTestSplit.getSecond();
+
+    ForkJoinPool pool = new ForkJoinPool(numThreads);
+    try {
+      List<Future<Pair<List<Centroid>, Double>>> runs = Lists.newArrayListWithCapacity(numRuns);
+      for (int i = 0; i < numRuns; ++i) {
+        // Seeded here rather than in the runs, so that the seeds don't depend on how the runs interleave. A single
+        // run draws from random itself, like the sequential version.
+        final Random runRandom = numRuns > 1 ? RandomUtils.getRandom(random.nextLong()) : random;
+        runs.add(pool.submit(new Callable<Pair<List<Centroid>, Double>>() {
+          @Override
+          public Pair<List<Centroid>, Double> call() {
+            UpdatableSearcher runCentroids = new BruteSearch(centroids.getDistanceMeasure());
+            if (kMeansPlusPlusInit) {
+              initializeSeedsKMeansPlusPlus(runCentroids, seedPoints, runRandom);
+            } else {
+              initializeSeedsRandomly(runCentroids, seedPoints);
+            }
+            shardedAssignment(runCentroids, assignedPoints);
+            double cost = numRuns > 1 ? shardedClusterCost(costPoints, runCentroids) : 0;
+            List<Centroid> result = Lists.newArrayListWithCapacity(numClusters);
+            for (Vector centroid : runCentroids) {
+              result.add((Centroid) centroid);
+            }
+            return new Pair<>(result, cost);
+          }
+        }));
+      }
+
+      List<Centroid> bestCentroids = null;
+      double bestCost = Double.POSITIVE_INFINITY;
+      for (Future<Pair<List<Centroid>, Double>> run : runs) {
+        Pair<List<Centroid>, Double> result = run.get();
+        if (result.getSecond() < bestCost) {
+          bestCost = result.getSecond();
+          bestCentroids = result.getFirst();
+        }
+      }
+      if (bestCentroids == null) {
+        throw new RuntimeException("No valid clustering was found");
+      }
+
+      centroids.clear();
+      centroids.addAll(bestCentroids);
+      if (correctWeights && numRuns > 1) {
+        for (WeightedVector testDatapoint : trainTestSplit.getSecond()) {
+          WeightedVector closest = (WeightedVector) centroids.searchFirst(testDatapoint, false).getValue();
+          closest.setWeight(closest.getWeight() + testDatapoint.getWeight());
+        }
+      }
+      return centroids;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Same as {@link #iterativeAssignment(UpdatableSearcher, List)}, but each pass over the datapoints is split into
+   * shards that only record the closest cluster of their datapoints. The new centroids are then updated a range of
+   * clusters per task, every cluster taking up its datapoints in datapoint order just like the sequential pass, so no
+   * copies of the centroids are made per shard and the result is the same as with a single thread. Must run inside
+   * the fork-join pool and the searcher must be safe for concurrent searches.
+   */
+  private void shardedAssignment(UpdatableSearcher centroids, final List<? extends WeightedVector> datapoints) {
+    DistanceMeasure distanceMeasure = centroids.getDistanceMeasure();
+    double[] closestClusterDistances = new double[numClusters];
+    int[] clusterAssignments = new int[datapoints.size()];
+    Arrays.fill(clusterAssignments, -1);
+    boolean[] included = new boolean[datapoints.size()];
+    // indices of the included datapoints grouped by cluster; cluster c owns [memberOffsets[c], memberOffsets[c + 1])
+    final int[] members = new int[datapoints.size()];
+    final int[] memberOffsets = new int[numClusters + 1];
+    int[] bounds = shardBounds(datapoints.size());
+    int numClusterShards = Math.max(1, Math.min(numThreads * SHARDS_PER_THREAD, numClusters));
+
+    boolean changed = true;
+    for (int i = 0; changed && i < maxNumIterations; i++) {
+      for (Vector center : centroids) {
+        Vector closestOtherCluster = centroids.searchFirst(center, true).getValue();
+        closestClusterDistances[((Centroid) center).getIndex()] = distanceMeasure.distance(center, closestOtherCluster);
+      }
+
+      List<AssignmentShard> shards = Lists.newArrayListWithCapacity(bounds.length - 1);
+      for (int s = 0; s < bounds.length - 1; s++) {
+        shards.add(new AssignmentShard(centroids, datapoints, bounds[s], bounds[s + 1], clusterAssignments, included,
+            closestClusterDistances));
+      }
+      changed = false;
+      for (AssignmentShard shard : invokeShards(shards)) {
+        changed |= shard.changed;
+      }
+
+      Arrays.fill(memberOffsets, 0);
+      for (int j = 0; j < datapoints.size(); j++) {
+        if (included[j]) {
+          memberOffsets[clusterAssignments[j] + 1]++;
+        }
+      }
+      for (int c = 0; c < numClusters; c++) {
+        memberOffsets[c + 1] += memberOffsets[c];
+      }
+      int[] fill = Arrays.copyOf(memberOffsets, numClusters);
+      for (int j = 0; j < datapoints.size(); j++) {
+        if (included[j]) {
+          members[fill[clusterAssignments[j]]++] = j;
+        }
+      }
+
+      final Centroid[] newCentroids = new Centroid[numClusters];
+      for (Vector centroid : centroids) {
+        Centroid newCentroid = (Centroid) centroid.clone();
+        newCentroid.setWeight(0);
+        newCentroids[newCentroid.getIndex()] = newCentroid;
+      }
+      List<Callable<Void>> updates = Lists.newArrayListWithCapacity(numClusterShards);
+      for (int s = 0; s < numClusterShards; s++) {
+        final int from = (int) ((long) numClusters * s / numClusterShards);
+        final int to = (int) ((long) numClusters * (s + 1) / numClusterShards);
+        updates.add(new Callable<Void>() {
+          @Override
+          public Void call() {
+            for (int c = from; c < to; c++) {
+              for (int m = memberOffsets[c]; m < memberOffsets[c + 1]; m++) {
+                newCentroids[c].update(datapoints.get(members[m]));
+              }
+            }
+            return null;
+          }
+        });
+      }
+      invokeShards(updates);
+
+      centroids.clear();
+      centroids.addAll(Arrays.asList(newCentroids));
+    }
+
+    if (correctWeights) {
+      List<Callable<double[]>> shards = Lists.newArrayListWithCapacity(bounds.length - 1);
+      for (int s = 0; s < bounds.length - 1; s++) {
+        final UpdatableSearcher searcher = centroids;
+        final int from = bounds[s];
+        final int to = bounds[s + 1];
+        shards.add(new Callable<double[]>() {
+          @Override
+          public double[] call() {
+            double[] weights = new double[numClusters];
+            for (int j = from; j < to; j++) {
+              WeightedVector datapoint = datapoints.get(j);
+              weights[((Centroid) searcher.searchFirst(datapoint, false).getValue()).getIndex()] +=
+                  datapoint.getWeight();
+            }
+            return weights;
+          }
+        });
+      }
+      double[] weights = new double[numClusters];
+      for (double[] shardWeights : invokeShards(shards)) {
+        for (int c = 0; c < numClusters; c++) {
+          weights[c] += shardWeights[c];
+        }
+      }
+      for (Vector v : centroids) {
+        ((Centroid) v).setWeight(weights[((Centroid) v).getIndex()]);
+      }
+    }
+  }
+
+  /**
+   * Sharded {@link ClusteringUtils#totalClusterCost(Iterable, org.apache.mahout.math.neighborhood.Searcher)}.
+   */
+  private double shardedClusterCost(final List<? extends WeightedVector> datapoints,
+                                    final UpdatableSearcher centroids) {
+    int[] bounds = shardBounds(datapoints.size());
+    List<Callable<Double>> shards = Lists.newArrayListWithCapacity(bounds.length - 1);
+    for (int s = 0; s < bounds.length - 1; s++) {
+      final int from = bounds[s];
+      final int to = bounds[s + 1];
+      shards.add(new Callable<Double>() {
+        @Override
+        public Double call() {
+          return ClusteringUtils.totalClusterCost(datapoints.subList(from, to), centroids);
+        }
+      });
+    }
+    double totalCost = 0;
+    for (double cost : invokeShards(shards)) {
+      totalCost += cost;
+    }
+    return totalCost;
+  }
+
+  /**
+   * Splits {@code n} datapoints into contiguous shards; shard s covers [bounds[s], bounds[s + 1]). Shards only depend
+   * on the number of threads, so the merged results don't depend on scheduling.
+   */
+  private int[] shardBounds(int n) {
+    int numShards = Math.max(1, Math.min(numThreads * SHARDS_PER_THREAD, n / MIN_SHARD_SIZE));
+    int[] bounds = new int[numShards + 1];
+    for (int s = 0; s <= numShards; s++) {
+      bounds[s] = (int) ((long) n * s / numShards);
+    }
+    return bounds;
+  }
+
+  /**
+   * Runs the shards as fork-join tasks of the current pool and returns their results in order.
+   */
+  private static <T> List<T> invokeShards(List<? extends Callable<T>> shards) {
+    List<ForkJoinTask<T>> tasks = Lists.newArrayListWithCapacity(shards.size());
+    for (Callable<T> shard : shards) {
+      tasks.add(ForkJoinTask.adapt(shard));
+    }
+    ForkJoinTask.invokeAll(tasks);
+    List<T> results = Lists.newArrayListWithCapacity(tasks.size());
+    for (ForkJoinTask<T> task : tasks) {
+      results.add(task.join());
+    }
+    return results;
+  }
+
+  /**
+   * Assigns a range of datapoints to their closest centroids and marks those near enough to update them.
+   */
+  private final class AssignmentShard implements Callable<AssignmentShard> {
+    private final UpdatableSearcher centroids;
+    private final List<? extends WeightedVector> datapoints;
+    private final int from;
+    private final int to;
+    private final int[] clusterAssignments;
+    private final boolean[] included;
+    private final double[] closestClusterDistances;
+    private boolean changed;
+
+    AssignmentShard(UpdatableSearcher centroids, List<? extends WeightedVector> datapoints, int from, int to,
+                    int[] clusterAssignments, boolean[] included, double[] closestClusterDistances) {
+      this.centroids = centroids;
+      this.datapoints = datapoints;
+      this.from = from;
+      this.to = to;
+      this.clusterAssignments = clusterAssignments;
+      this.included = included;
+      this.closestClusterDistances = closestClusterDistances;
+    }
+
+    @Override
+    public AssignmentShard call() {
+      for (int j = from; j < to; ++j) {
+        WeightedVector datapoint = datapoints.get(j);
+        WeightedThing<Vector> closestPair = centroids.searchFirst(datapoint, false);
+        int closestIndex = ((WeightedVector) closestPair.getValue()).getIndex();
+        if (closestIndex != clusterAssignments[j]) {
+          changed = true;
+          clusterAssignments[j] = closestIndex;
+        }
+        included[j] = closestPair.getWeight() < trimFraction * closestClusterDistances[closestIndex];
+      }
+      return this;
+    }
+  }
+
   @Override
   public Iterator<Centroid> iterator() {
     return Iterators.transform(centroids.iterator(), new Function<Vector, Centroid>() {
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.clustering.streaming.cluster;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.math.Centroid;
+import org.apache.mahout.math.neighborhood.UpdatableSearcher;
+
+/**
+ * Runs several {@link StreamingKMeans} sketches concurrently and merges them into one.
+ *
+ * Each thread pulls batches of points from the shared input and clusters them into its own sketch with its own
+ * searcher. At the end, the centroids of all the sketches are shuffled and clustered once more by a final
+ * {@link StreamingKMeans}, the same way the reducer collapses the sketches of the mappers in
+ * {@link org.apache.mahout.clustering.streaming.mapreduce.StreamingKMeansDriver}. The result is a sketch of about
+ * numClusters * log(n) weighted centroids that is usually fed to {@link BallKMeans}.
+ */
+public class ParallelStreamingKMeans {
+  /**
+   * Number of points a thread takes from the input at once.
+   */
+  private static final int BATCH_SIZE = 1024;
+
+  private final Supplier<? extends UpdatableSearcher> searcherFactory;
+  private final int numClusters;
+  private final double distanceCutoff;
+  private final int numThreads;
+
+  /**
+   * @param searcherFactory creates the (empty) searcher of each sketch and of the merged result.
+   * @param numClusters estimated number of clusters, see {@link StreamingKMeans}.
+   * @param distanceCutoff initial distance cutoff of the sketches, see {@link StreamingKMeans}.
+   * @param numThreads number of concurrent sketches.
+   */
+  public ParallelStreamingKMeans(Supplier<? extends UpdatableSearcher> searcherFactory, int numClusters,
+                                 double distanceCutoff, int numThreads) {
+    Preconditions.checkArgument(numClusters > 0, "The requested number of clusters must be positive");
+    Preconditions.checkArgument(numThreads > 0, "There has to be at least one thread");
+    this.searcherFactory = searcherFactory;
+    this.numClusters = numClusters;
+    this.distanceCutoff = distanceCutoff;
+    this.numThreads = numThreads;
+  }
+
+  /**
+   * Clusters the datapoints. The iterator of {@code datapoints} is only used by one thread at a time.
+   *
+   * @return the searcher containing the merged centroids, indexed from 0.
+   */
+  public UpdatableSearcher cluster(Iterable<Centroid> datapoints) {
+    final Iterator<Centroid> input = datapoints.iterator();
+    List<StreamingKMeans> sketches = Lists.newArrayListWithCapacity(numThreads);
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      List<Future<StreamingKMeans>> futures = Lists.newArrayListWithCapacity(numThreads);
+      for (int i = 0; i < numThreads; i++) {
+        futures.add(executor.submit(new Callable<StreamingKMeans>() {
+          @Override
+          public StreamingKMeans call() {
+            StreamingKMeans sketch = new StreamingKMeans(searcherFactory.get(), numClusters, distanceCutoff);
+            List<Centroid> batch = Lists.newArrayListWithCapacity(BATCH_SIZE);
+            while (true) {
+              batch.clear();
+              synchronized (input) {
+                while (batch.size() < BATCH_SIZE && input.hasNext()) {
+                  batch.add(input.next());
+                }
+              }
+              if (batch.isEmpty()) {
+                return sketch;
+              }
+              sketch.cluster(batch);
+            }
+          }
+        }));
+      }
+      for (Future<StreamingKMeans> future : futures) {
+        sketches.add(future.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+
+    // Merge the sketches by clustering their centroids, starting from the largest cutoff any of them reached.
+    List<Centroid> intermediateCentroids = Lists.newArrayList();
+    double mergeDistanceCutoff = distanceCutoff;
+    for (StreamingKMeans sketch : sketches) {
+      Iterables.addAll(intermediateCentroids, sketch);
+      mergeDistanceCutoff = Math.max(mergeDistanceCutoff, sketch.getDistanceCutoff());
+    }
+    Collections.shuffle(intermediateCentroids, RandomUtils.getRandom());
+
+    StreamingKMeans merged = new StreamingKMeans(searcherFactory.get(), numClusters, mergeDistanceCutoff);
+    UpdatableSearcher result = merged.cluster(intermediateCentroids);
+    merged.reindexCentroids();
+    return result;
+  }
+}
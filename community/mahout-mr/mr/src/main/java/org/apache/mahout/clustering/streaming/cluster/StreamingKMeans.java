@@ -298,8 +298,9 @@ public class StreamingKMeans implements Iterable<Centroid> {
       // cluster anyway.
       // However, if the ratio is less than 1, we want to create a new cluster with probability
       // proportional to the distance to the closest cluster.
+      // Approximate searchers may find no centroid at all, which also calls for a new one.
       double sample = random.nextDouble();
-      if (sample < row.getWeight() * closestPair.getWeight() / distanceCutoff) {
+      if (closestPair.getValue() == null || sample < row.getWeight() * closestPair.getWeight() / distanceCutoff) {
         // Add new centroid, note that the vector is copied because we may mutate it later.
         centroids.add(row.clone());
       } else {
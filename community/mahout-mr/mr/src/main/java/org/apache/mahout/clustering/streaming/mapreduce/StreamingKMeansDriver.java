@@ -134,7 +134,7 @@ public final class StreamingKMeansDriver extends AbstractJob {
    * more than just the seemingly closest element must be considered. This variable has different
    * meanings depending on the actual Searcher class used but is a measure of how many candidates
    * will be considered.
-   * See the ProjectionSearch, FastProjectionSearch, LocalitySensitiveHashSearch classes for more
+   * See the ProjectionSearch, FastProjectionSearch, LocalitySensitiveHashSearch, HnswSearch classes for more
    * details.
    * Defaults to 2.
    */
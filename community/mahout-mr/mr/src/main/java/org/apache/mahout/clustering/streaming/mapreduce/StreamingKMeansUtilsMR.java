@@ -36,6 +36,7 @@ import org.apache.mahout.math.Vector;
 import org.apache.mahout.math.VectorWritable;
 import org.apache.mahout.math.neighborhood.BruteSearch;
 import org.apache.mahout.math.neighborhood.FastProjectionSearch;
+import org.apache.mahout.math.neighborhood.HnswSearch;
 import org.apache.mahout.math.neighborhood.LocalitySensitiveHashSearch;
 import org.apache.mahout.math.neighborhood.ProjectionSearch;
 import org.apache.mahout.math.neighborhood.UpdatableSearcher;
@@ -74,8 +75,9 @@ public final class StreamingKMeansUtilsMR {
       return ClassUtils.instantiateAs(searcherClass, UpdatableSearcher.class,
           new Class[]{DistanceMeasure.class, int.class, int.class},
           new Object[]{distanceMeasure, numProjections, searchSize});
-    } else if (searcherClass.equals(LocalitySensitiveHashSearch.class.getName())) {
-      return ClassUtils.instantiateAs(searcherClass, LocalitySensitiveHashSearch.class,
+    } else if (searcherClass.equals(LocalitySensitiveHashSearch.class.getName())
+        || searcherClass.equals(HnswSearch.class.getName())) {
+      return ClassUtils.instantiateAs(searcherClass, UpdatableSearcher.class,
           new Class[]{DistanceMeasure.class, int.class},
           new Object[]{distanceMeasure, searchSize});
     } else {
@@ -57,8 +57,9 @@ import org.slf4j.LoggerFactory;
  * eigenvalue extraction from the small (desiredRank x desiredRank) tridiagonal matrix.  Numerical stability is
  * achieved via brute-force: re-orthogonalization against all previous eigenvectors is computed after every pass.
  * This can be made smarter if (when!) this proves to be a major bottleneck.  Of course, this step can be parallelized
- * as well.
+ * as well.  {@link ThickRestartLanczosSolver} bounds the basis size and re-orthogonalizes selectively.
  * @see org.apache.mahout.math.ssvd.SequentialBigSvd
+ * @see ThickRestartLanczosSolver
  */
 @Deprecated
 public class LanczosSolver {
@@ -0,0 +1,770 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.math.hadoop.similarity.cooccurrence;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.Closeables;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.mahout.common.HadoopUtil;
+import org.apache.mahout.common.Pair;
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.common.iterator.sequencefile.PathFilters;
+import org.apache.mahout.common.iterator.sequencefile.PathType;
+import org.apache.mahout.common.iterator.sequencefile.SequenceFileDirIterable;
+import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.RandomAccessSparseVector;
+import org.apache.mahout.math.SequentialAccessSparseVector;
+import org.apache.mahout.math.SparseRowMatrix;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.VectorWritable;
+import org.apache.mahout.math.hadoop.similarity.cooccurrence.measures.VectorSimilarityMeasure;
+import org.apache.mahout.math.map.OpenIntIntHashMap;
+import org.apache.mahout.math.map.OpenIntObjectHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Computes the same row similarities as {@link RowSimilarityJob} inside a single JVM, for matrices that fit in
+ * memory.<p>
+ *
+ * Rows are sampled, normalized and measured exactly like the map/reduce jobs do. The normalized matrix is then
+ * indexed by column, and each row is multiplied with the rows at or after it by walking the columns of its nonzero
+ * entries, so every pair of rows is multiplied once. Pairs the measure does not
+ * {@link VectorSimilarityMeasure#consider} are skipped. Rows are processed in blocks on a fixed thread pool, and the
+ * similarities of finished blocks are handed to both rows of each pair in row order. Once a block is handed over, its
+ * rows have seen all their pairs, so their top similarities are written out. Apart from the input and its column
+ * index, only the blocks in flight and the top similarities of the rows not written yet are held in memory.<p>
+ *
+ * The top similarities of the rows not written yet take 12 bytes each. Once there are more than
+ * {@code maxPendingSimilarities} of them after a block is handed over, they are spilled: written to a run file sorted
+ * by row, and dropped from memory. When a row is written, the entries of all runs holding that row are merged with
+ * the ones collected since, which keeps the same top similarities. Runs are read in row order, one buffered stream
+ * each, and deleted when done. Each thread also keeps 16 bytes of scratch space per row, which it reuses for all of
+ * its blocks.<p>
+ *
+ * Like the jobs, both rows of a pair get the similarity of a single product, so the similarity matrix is exactly
+ * symmetric. Rows are sampled in order of row index, which matches the jobs if their input is sorted by row.
+ */
+public final class InMemoryRowSimilarity {
+
+  private static final Logger log = LoggerFactory.getLogger(InMemoryRowSimilarity.class);
+
+  /** Default number of similarities held for the rows not written yet before they spill to disk, about 120MB. */
+  public static final long DEFAULT_MAX_PENDING_SIMILARITIES = 10000000L;
+
+  private static final int BLOCK_SIZE = 256;
+  private static final String PART_FILE = "part-r-00000";
+
+  private final VectorSimilarityMeasure similarity;
+  private final int numberOfColumns;
+  private final int maxSimilaritiesPerRow;
+  private final boolean excludeSelfSimilarity;
+  private final double threshold;
+  private final int maxObservationsPerRow;
+  private final int maxObservationsPerColumn;
+  private final long randomSeed;
+  private final int numThreads;
+  private final long maxPendingSimilarities;
+  private final File spillDirectory;
+
+  /**
+   * @param similarity the measure to use
+   * @param numberOfColumns number of columns of the input matrix
+   * @param maxSimilaritiesPerRow number of similarities to keep per row
+   * @param excludeSelfSimilarity whether to drop the similarity of each row to itself
+   * @param threshold discard pairs with a similarity below this, or {@link RowSimilarityJob#NO_THRESHOLD}
+   * @param maxObservationsPerRow sample rows down to this number of entries
+   * @param maxObservationsPerColumn sample columns down to this number of entries
+   * @param randomSeed seed for sampling, or {@link RowSimilarityJob#NO_FIXED_RANDOM_SEED}
+   * @param numThreads number of threads to multiply rows with
+   */
+  public InMemoryRowSimilarity(VectorSimilarityMeasure similarity,
+                               int numberOfColumns,
+                               int maxSimilaritiesPerRow,
+                               boolean excludeSelfSimilarity,
+                               double threshold,
+                               int maxObservationsPerRow,
+                               int maxObservationsPerColumn,
+                               long randomSeed,
+                               int numThreads) {
+    this(similarity, numberOfColumns, maxSimilaritiesPerRow, excludeSelfSimilarity, threshold, maxObservationsPerRow,
+        maxObservationsPerColumn, randomSeed, numThreads, DEFAULT_MAX_PENDING_SIMILARITIES, null);
+  }
+
+  /**
+   * @param similarity the measure to use
+   * @param numberOfColumns number of columns of the input matrix
+   * @param maxSimilaritiesPerRow number of similarities to keep per row
+   * @param excludeSelfSimilarity whether to drop the similarity of each row to itself
+   * @param threshold discard pairs with a similarity below this, or {@link RowSimilarityJob#NO_THRESHOLD}
+   * @param maxObservationsPerRow sample rows down to this number of entries
+   * @param maxObservationsPerColumn sample columns down to this number of entries
+   * @param randomSeed seed for sampling, or {@link RowSimilarityJob#NO_FIXED_RANDOM_SEED}
+   * @param numThreads number of threads to multiply rows with
+   * @param maxPendingSimilarities spill the similarities of the rows not written yet to disk once there are more
+   *                               than this many
+   * @param spillDirectory local directory for the spilled runs, or null for the default temporary-file directory
+   */
+  public InMemoryRowSimilarity(VectorSimilarityMeasure similarity,
+                               int numberOfColumns,
+                               int maxSimilaritiesPerRow,
+                               boolean excludeSelfSimilarity,
+                               double threshold,
+                               int maxObservationsPerRow,
+                               int maxObservationsPerColumn,
+                               long randomSeed,
+                               int numThreads,
+                               long maxPendingSimilarities,
+                               File spillDirectory) {
+    Preconditions.checkArgument(numberOfColumns > 0,
+        "Number of columns must be greater then 0! But numberOfColumns = " + numberOfColumns);
+    Preconditions.checkArgument(maxSimilaritiesPerRow > 0,
+        "Maximum number of similarities per row must be greater then 0!");
+    Preconditions.checkArgument(numThreads > 0, "numThreads must be greater then 0!");
+    Preconditions.checkArgument(maxPendingSimilarities >= 0, "maxPendingSimilarities must not be negative!");
+    this.similarity = Preconditions.checkNotNull(similarity);
+    this.numberOfColumns = numberOfColumns;
+    this.maxSimilaritiesPerRow = maxSimilaritiesPerRow;
+    this.excludeSelfSimilarity = excludeSelfSimilarity;
+    this.threshold = threshold;
+    this.maxObservationsPerRow = maxObservationsPerRow;
+    this.maxObservationsPerColumn = maxObservationsPerColumn;
+    this.randomSeed = randomSeed;
+    this.numThreads = numThreads;
+    this.maxPendingSimilarities = maxPendingSimilarities;
+    this.spillDirectory = spillDirectory;
+  }
+
+  /**
+   * @return the similarities of the rows of the matrix, a square matrix with one row per input row
+   */
+  public Matrix rowSimilarity(Matrix rows) {
+    final Matrix similarities = new SparseRowMatrix(rows.numRows(), rows.numRows());
+    try {
+      forEachBlock(new Index(rows), rows.numRows(), new BlockConsumer() {
+        @Override
+        public void consume(int firstRow, Vector[] block) {
+          for (int n = 0; n < block.length; n++) {
+            if (block[n] != null) {
+              similarities.assignRow(firstRow + n, block[n]);
+            }
+          }
+        }
+      });
+    } catch (IOException e) {
+      // only thrown by consumers
+      throw new IllegalStateException(e);
+    }
+    return similarities;
+  }
+
+  /**
+   * Reads the rows from a directory of {@link SequenceFile}s of {@link IntWritable} keys and {@link VectorWritable}
+   * values and writes their similarities to {@code output/part-r-00000}, like {@link RowSimilarityJob} does.
+   */
+  public void rowSimilarity(Path input, Path output, Configuration conf) throws IOException {
+    Matrix rows = readRows(input, conf);
+    log.info("Read {} rows, computing similarities in memory", rows.numRows());
+
+    HadoopUtil.delete(conf, output);
+    Path path = new Path(output, PART_FILE);
+    FileSystem fs = FileSystem.get(path.toUri(), conf);
+    final SequenceFile.Writer writer =
+        new SequenceFile.Writer(fs, conf, path, IntWritable.class, VectorWritable.class);
+    try {
+      // same cardinality as the vectors written by the jobs
+      forEachBlock(new Index(rows), Integer.MAX_VALUE, new BlockConsumer() {
+        private final IntWritable row = new IntWritable();
+        private final VectorWritable similarities = new VectorWritable();
+
+        @Override
+        public void consume(int firstRow, Vector[] block) throws IOException {
+          for (int n = 0; n < block.length; n++) {
+            if (block[n] != null) {
+              row.set(firstRow + n);
+              similarities.set(block[n]);
+              writer.append(row, similarities);
+            }
+          }
+        }
+      });
+    } finally {
+      Closeables.close(writer, false);
+    }
+  }
+
+  private static Matrix readRows(Path input, Configuration conf) {
+    OpenIntObjectHashMap<Vector> rowsByIndex = new OpenIntObjectHashMap<>();
+    int numRows = 0;
+    for (Pair<IntWritable,VectorWritable> record : new SequenceFileDirIterable<IntWritable,VectorWritable>(input,
+        PathType.LIST, PathFilters.logsCRCFilter(), conf)) {
+      int row = record.getFirst().get();
+      Preconditions.checkArgument(row >= 0, "Negative row index %s", row);
+      rowsByIndex.put(row, record.getSecond().get());
+      numRows = Math.max(numRows, row + 1);
+    }
+    Vector[] rows = new Vector[numRows];
+    for (int row = 0; row < numRows; row++) {
+      rows[row] = rowsByIndex.get(row);
+    }
+    int numColumns = 0;
+    for (Vector row : rows) {
+      if (row != null) {
+        numColumns = Math.max(numColumns, row.size());
+      }
+    }
+    return new SparseRowMatrix(numRows, numColumns, rows, true, true);
+  }
+
+  private interface BlockConsumer {
+    void consume(int firstRow, Vector[] block) throws IOException;
+  }
+
+  /**
+   * Computes the similarities of blocks of rows in parallel and hands the top similarities of each block to the
+   * consumer in row order, keeping a bounded number of blocks in flight.
+   */
+  private void forEachBlock(final Index index, final int cardinality, BlockConsumer consumer) throws IOException {
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    Deque<Future<Products>> pending = new ArrayDeque<>();
+    Candidates candidates = new Candidates(index.numRows);
+    final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+      @Override
+      protected Scratch initialValue() {
+        return new Scratch(index.numRows);
+      }
+    };
+    try {
+      int nextToConsume = 0;
+      for (int start = 0; start < index.numRows; start += BLOCK_SIZE) {
+        final int firstRow = start;
+        final int lastRow = Math.min(start + BLOCK_SIZE, index.numRows);
+        pending.add(executor.submit(new Callable<Products>() {
+          @Override
+          public Products call() {
+            return products(index, firstRow, lastRow, scratch.get());
+          }
+        }));
+        if (pending.size() > 2 * numThreads) {
+          consumer.consume(nextToConsume, collect(nextToConsume, pending.poll().get(), candidates, cardinality));
+          nextToConsume += BLOCK_SIZE;
+        }
+      }
+      while (!pending.isEmpty()) {
+        consumer.consume(nextToConsume, collect(nextToConsume, pending.poll().get(), candidates, cardinality));
+        nextToConsume += BLOCK_SIZE;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+      Closeables.close(candidates, true);
+    }
+  }
+
+  /**
+   * Hands the similarities of a block to both rows of each pair. Blocks arrive in row order and a pair belongs to the
+   * block of its lower row, so the rows of this block have seen all their pairs.
+   *
+   * @return the top similarities of the rows of the block, null for rows without entries
+   */
+  private Vector[] collect(int firstRow, Products products, Candidates candidates, int cardinality)
+    throws IOException {
+    int numRows = products.others.length;
+    for (int n = 0; n < numRows; n++) {
+      int row = firstRow + n;
+      int[] others = products.others[n];
+      if (others == null) {
+        continue;
+      }
+      double[] values = products.values[n];
+      for (int k = 0; k < others.length; k++) {
+        candidates.offer(row, others[k], values[k]);
+        if (others[k] != row) {
+          candidates.offer(others[k], row, values[k]);
+        }
+      }
+    }
+
+    Vector[] block = new Vector[numRows];
+    for (int n = 0; n < numRows; n++) {
+      int row = firstRow + n;
+      if (products.others[n] != null) {
+        TopSimilarities top = candidates.remove(row);
+        block[n] = top == null
+            ? new RandomAccessSparseVector(cardinality, 0)
+            : top.toVector(cardinality);
+      }
+    }
+    if (candidates.numPending > maxPendingSimilarities) {
+      candidates.spill(firstRow + numRows);
+    }
+    return block;
+  }
+
+  /**
+   * @return the similarities of the rows in {@code [firstRow, lastRow)} to the rows at or after them
+   */
+  private Products products(Index index, int firstRow, int lastRow, Scratch scratch) {
+    Products products = new Products(lastRow - firstRow);
+    double[] dots = scratch.dots;
+    int[] seen = scratch.seen;
+    int[] others = scratch.others;
+
+    for (int row = firstRow; row < lastRow; row++) {
+      int[] columns = index.columns[row];
+      if (columns.length == 0) {
+        continue;
+      }
+      double[] values = index.values[row];
+      int numOthers = 0;
+
+      for (int k = 0; k < columns.length; k++) {
+        int column = columns[k];
+        double value = values[k];
+        int columnEnd = index.columnStart[column + 1];
+        // each column lists its rows in ascending order, starting at this row skips the pairs of earlier rows
+        int from = Arrays.binarySearch(index.columnRows, index.columnStart[column], columnEnd, row);
+        for (int p = from; p < columnEnd; p++) {
+          int other = index.columnRows[p];
+          if (threshold != RowSimilarityJob.NO_THRESHOLD && !similarity.consider(index.numNonZeroEntries[row],
+              index.numNonZeroEntries[other], index.maxValues[row], index.maxValues[other], threshold)) {
+            continue;
+          }
+          if (seen[other] != row + 1) {
+            seen[other] = row + 1;
+            dots[other] = 0;
+            others[numOthers++] = other;
+          }
+          // arguments in the order the jobs see them, lower row first
+          dots[other] += similarity.aggregate(value, index.columnValues[p]);
+        }
+      }
+
+      int[] rowOthers = new int[numOthers];
+      double[] rowValues = new double[numOthers];
+      int numSimilarities = 0;
+      for (int n = 0; n < numOthers; n++) {
+        int other = others[n];
+        if (dots[other] != 0 && !(excludeSelfSimilarity && other == row)) {
+          double similarityValue =
+              similarity.similarity(dots[other], index.norms[row], index.norms[other], numberOfColumns);
+          // zeros are not stored in the sparse vectors of the jobs
+          if (similarityValue >= threshold && similarityValue != 0) {
+            rowOthers[numSimilarities] = other;
+            rowValues[numSimilarities] = similarityValue;
+            numSimilarities++;
+          }
+        }
+      }
+      products.others[row - firstRow] = Arrays.copyOf(rowOthers, numSimilarities);
+      products.values[row - firstRow] = Arrays.copyOf(rowValues, numSimilarities);
+    }
+    return products;
+  }
+
+  /**
+   * The dot products of one row at a time, allocated once per thread. Every row stamps the entries it uses, so they
+   * never need to be cleared.
+   */
+  private static final class Scratch {
+
+    private final double[] dots;
+    // dots[other] belongs to the current row iff seen[other] == row + 1
+    private final int[] seen;
+    private final int[] others;
+
+    private Scratch(int numRows) {
+      dots = new double[numRows];
+      seen = new int[numRows];
+      others = new int[numRows];
+    }
+  }
+
+  /**
+   * The similarities of a block of rows to the rows at or after them, null for rows without entries.
+   */
+  private static final class Products {
+
+    private final int[][] others;
+    private final double[][] values;
+
+    private Products(int numRows) {
+      others = new int[numRows][];
+      values = new double[numRows][];
+    }
+  }
+
+  /**
+   * The top similarities of the rows not written yet, in memory and in the runs spilled so far.
+   */
+  private final class Candidates implements Closeable {
+
+    private final TopSimilarities[] inMemory;
+    private long numPending;
+    // ordered by the row each run is positioned at
+    private final PriorityQueue<SpilledRun> runs = new PriorityQueue<>();
+
+    private Candidates(int numRows) {
+      inMemory = new TopSimilarities[numRows];
+    }
+
+    private void offer(int row, int other, double value) {
+      if (inMemory[row] == null) {
+        inMemory[row] = new TopSimilarities(maxSimilaritiesPerRow);
+      }
+      if (inMemory[row].offer(other, value)) {
+        numPending++;
+      }
+    }
+
+    /**
+     * @return the top similarities of the row from memory and all runs, or null if it has none
+     */
+    private TopSimilarities remove(int row) throws IOException {
+      TopSimilarities top = inMemory[row];
+      if (top != null) {
+        numPending -= top.size;
+        inMemory[row] = null;
+      }
+      while (!runs.isEmpty() && runs.peek().row == row) {
+        SpilledRun run = runs.poll();
+        if (top == null) {
+          top = new TopSimilarities(maxSimilaritiesPerRow);
+        }
+        top.readFrom(run.in);
+        if (run.next()) {
+          runs.add(run);
+        } else {
+          run.close();
+        }
+      }
+      return top;
+    }
+
+    /**
+     * Writes the similarities of the rows from {@code firstRow} on to a new run, in row order, and drops them.
+     */
+    private void spill(int firstRow) throws IOException {
+      File file = File.createTempFile("rowSimilarity-", ".run", spillDirectory);
+      int numRecords = 0;
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+      try {
+        for (int row = firstRow; row < inMemory.length; row++) {
+          if (inMemory[row] != null) {
+            out.writeInt(row);
+            inMemory[row].writeTo(out);
+            inMemory[row] = null;
+            numRecords++;
+          }
+        }
+      } finally {
+        Closeables.close(out, false);
+      }
+      log.info("Spilled {} similarities of {} rows to {}", numPending, numRecords, file);
+      numPending = 0;
+
+      SpilledRun run = new SpilledRun(file, numRecords);
+      if (run.next()) {
+        runs.add(run);
+      } else {
+        run.close();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      while (!runs.isEmpty()) {
+        runs.poll().close();
+      }
+    }
+  }
+
+  /**
+   * A spilled run positioned at the record of {@link #row}, read sequentially and deleted once closed.
+   */
+  private static final class SpilledRun implements Comparable<SpilledRun>, Closeable {
+
+    private final File file;
+    private final DataInputStream in;
+    private int numRecordsLeft;
+    private int row;
+
+    private SpilledRun(File file, int numRecords) throws IOException {
+      this.file = file;
+      this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      this.numRecordsLeft = numRecords;
+    }
+
+    /**
+     * Reads the row of the next record, whose similarities follow in the stream.
+     * @return false if there are no records left
+     */
+    private boolean next() throws IOException {
+      if (numRecordsLeft == 0) {
+        return false;
+      }
+      numRecordsLeft--;
+      row = in.readInt();
+      return true;
+    }
+
+    @Override
+    public int compareTo(SpilledRun other) {
+      return Integer.compare(row, other.row);
+    }
+
+    @Override
+    public void close() throws IOException {
+      Closeables.close(in, true);
+      if (!file.delete()) {
+        log.warn("Could not delete {}", file);
+      }
+    }
+  }
+
+  /**
+   * Keeps the same similarities of a row as {@link Vectors#topKElements}, in a min-heap that only grows as far as
+   * needed.
+   */
+  private static final class TopSimilarities {
+
+    private final int k;
+    private int[] indices = new int[4];
+    private double[] values = new double[4];
+    private int size;
+    private long numOffered;
+
+    private TopSimilarities(int k) {
+      this.k = k;
+    }
+
+    /**
+     * @return true if the heap grew
+     */
+    private boolean offer(int index, double value) {
+      numOffered++;
+      return insert(index, value);
+    }
+
+    private boolean insert(int index, double value) {
+      if (size < k) {
+        if (size == indices.length) {
+          int capacity = (int) Math.min(k, 2L * size);
+          indices = Arrays.copyOf(indices, capacity);
+          values = Arrays.copyOf(values, capacity);
+        }
+        int n = size++;
+        while (n > 0 && values[(n - 1) / 2] > value) {
+          int parent = (n - 1) / 2;
+          indices[n] = indices[parent];
+          values[n] = values[parent];
+          n = parent;
+        }
+        indices[n] = index;
+        values[n] = value;
+        return true;
+      } else if (value > values[0]) {
+        int n = 0;
+        while (2 * n + 1 < size) {
+          int child = 2 * n + 1;
+          if (child + 1 < size && values[child + 1] < values[child]) {
+            child++;
+          }
+          if (values[child] >= value) {
+            break;
+          }
+          indices[n] = indices[child];
+          values[n] = values[child];
+          n = child;
+        }
+        indices[n] = index;
+        values[n] = value;
+      }
+      return false;
+    }
+
+    private void writeTo(DataOutput out) throws IOException {
+      out.writeLong(numOffered);
+      out.writeInt(size);
+      for (int n = 0; n < size; n++) {
+        out.writeInt(indices[n]);
+        out.writeDouble(values[n]);
+      }
+    }
+
+    /**
+     * Merges in similarities written by {@link #writeTo}. The top k of a row are the top k of the top k of its parts.
+     */
+    private void readFrom(DataInput in) throws IOException {
+      numOffered += in.readLong();
+      int numEntries = in.readInt();
+      for (int n = 0; n < numEntries; n++) {
+        insert(in.readInt(), in.readDouble());
+      }
+    }
+
+    private Vector toVector(int cardinality) {
+      Vector vector = new RandomAccessSparseVector(cardinality, size);
+      for (int n = 0; n < size; n++) {
+        // like the queue of topKElements, which starts out filled with Double.MIN_VALUE, once there are more than k
+        if (numOffered <= k || values[n] > Double.MIN_VALUE) {
+          vector.setQuick(indices[n], values[n]);
+        }
+      }
+      return vector;
+    }
+  }
+
+  /**
+   * The sampled and normalized rows, sorted by column, along with their norms and a column index of them.
+   */
+  private final class Index {
+
+    private final int numRows;
+    private final int[][] columns;
+    private final double[][] values;
+    private final double[] norms;
+    private final int[] numNonZeroEntries;
+    private final double[] maxValues;
+
+    private final int[] columnStart;
+    private final int[] columnRows;
+    private final double[] columnValues;
+
+    private Index(Matrix rows) {
+      numRows = rows.numRows();
+      columns = new int[numRows][];
+      values = new double[numRows][];
+      norms = new double[numRows];
+      numNonZeroEntries = new int[numRows];
+      maxValues = new double[numRows];
+
+      OpenIntIntHashMap observationsPerColumn = new OpenIntIntHashMap();
+      for (int row = 0; row < numRows; row++) {
+        for (Vector.Element elem : rows.viewRow(row).nonZeroes()) {
+          observationsPerColumn.adjustOrPutValue(elem.index(), 1, 1);
+        }
+      }
+
+      Random random = randomSeed == RowSimilarityJob.NO_FIXED_RANDOM_SEED
+          ? RandomUtils.getRandom()
+          : RandomUtils.getRandom(randomSeed);
+
+      int numColumns = 0;
+      int numEntries = 0;
+      for (int row = 0; row < numRows; row++) {
+        Vector rowVector = similarity.normalize(sampleDown(rows.viewRow(row), observationsPerColumn, random));
+        Vector sorted = new SequentialAccessSparseVector(rowVector);
+        int[] rowColumns = new int[sorted.getNumNondefaultElements()];
+        double[] rowValues = new double[rowColumns.length];
+        int numNonZeros = 0;
+        double maxValue = Double.MIN_VALUE;
+        for (Vector.Element elem : sorted.nonZeroes()) {
+          rowColumns[numNonZeros] = elem.index();
+          rowValues[numNonZeros] = elem.get();
+          numNonZeros++;
+          if (maxValue < elem.get()) {
+            maxValue = elem.get();
+          }
+        }
+        if (numNonZeros < rowColumns.length) {
+          rowColumns = Arrays.copyOf(rowColumns, numNonZeros);
+          rowValues = Arrays.copyOf(rowValues, numNonZeros);
+        }
+        columns[row] = rowColumns;
+        values[row] = rowValues;
+        norms[row] = similarity.norm(rowVector);
+        numNonZeroEntries[row] = numNonZeros;
+        maxValues[row] = maxValue;
+        if (numNonZeros > 0) {
+          numColumns = Math.max(numColumns, rowColumns[numNonZeros - 1] + 1);
+        }
+        numEntries += numNonZeros;
+      }
+
+      // rows are added in order, so each column lists its rows in ascending order
+      columnStart = new int[numColumns + 1];
+      for (int[] rowColumns : columns) {
+        for (int column : rowColumns) {
+          columnStart[column + 1]++;
+        }
+      }
+      for (int column = 0; column < numColumns; column++) {
+        columnStart[column + 1] += columnStart[column];
+      }
+      columnRows = new int[numEntries];
+      columnValues = new double[numEntries];
+      int[] next = columnStart.clone();
+      for (int row = 0; row < numRows; row++) {
+        for (int k = 0; k < columns[row].length; k++) {
+          int p = next[columns[row][k]]++;
+          columnRows[p] = row;
+          columnValues[p] = values[row][k];
+        }
+      }
+    }
+
+    /**
+     * Same as {@link RowSimilarityJob.VectorNormMapper}.
+     */
+    private Vector sampleDown(Vector rowVector, OpenIntIntHashMap observationsPerColumn, Random random) {
+      int observationsPerRow = rowVector.getNumNondefaultElements();
+      double rowSampleRate = (double) Math.min(maxObservationsPerRow, observationsPerRow) / (double) observationsPerRow;
+
+      Vector downsampledRow = rowVector.like();
+      for (Vector.Element elem : rowVector.nonZeroes()) {
+        int columnCount = observationsPerColumn.get(elem.index());
+        double columnSampleRate = (double) Math.min(maxObservationsPerColumn, columnCount) / (double) columnCount;
+        if (random.nextDouble() <= Math.min(rowSampleRate, columnSampleRate)) {
+          downsampledRow.setQuick(elem.index(), elem.get());
+        }
+      }
+      return downsampledRow;
+    }
+  }
+}
@@ -104,6 +104,12 @@ public class RowSimilarityJob extends AbstractJob {
     addOption("maxObservationsPerColumn", null, "sample columns down to this number of entries",
         String.valueOf(DEFAULT_MAX_OBSERVATIONS_PER_COLUMN));
     addOption("randomSeed", null, "use this seed for sampling", false);
+    addFlag("inMemory", "im", "compute the similarities inside this JVM using all cores instead of map/reduce jobs, "
+        + "the matrix has to fit in memory");
+    addOption("maxPendingSimilarities", null, "with --inMemory, spill the similarities of rows not written yet to "
+        + "local disk once there are more than this many (default: "
+        + InMemoryRowSimilarity.DEFAULT_MAX_PENDING_SIMILARITIES + ')',
+        String.valueOf(InMemoryRowSimilarity.DEFAULT_MAX_PENDING_SIMILARITIES));
     addOption(DefaultOptionCreator.overwriteOption().create());
 
     Map<String,List<String>> parsedArgs = parseArguments(args);
@@ -155,6 +161,15 @@ public class RowSimilarityJob extends AbstractJob {
 
     Path observationsPerColumnPath = getTempPath("observationsPerColumn.bin");
 
+    if (hasOption("inMemory")) {
+      VectorSimilarityMeasure similarity = ClassUtils.instantiateAs(similarityClassname, VectorSimilarityMeasure.class);
+      new InMemoryRowSimilarity(similarity, numberOfColumns, maxSimilaritiesPerRow, excludeSelfSimilarity, threshold,
+          maxObservationsPerRow, maxObservationsPerColumn, randomSeed, Runtime.getRuntime().availableProcessors(),
+          Long.parseLong(getOption("maxPendingSimilarities")), null)
+          .rowSimilarity(getInputPath(), getOutputPath(), getConf());
+      return 0;
+    }
+
     AtomicInteger currentPhase = new AtomicInteger();
 
     Job countObservations = prepareJob(getInputPath(), getTempPath("notUsed"), CountObservationsMapper.class,
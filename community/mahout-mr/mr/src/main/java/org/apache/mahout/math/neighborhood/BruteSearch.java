@@ -17,17 +17,24 @@
 
 package org.apache.mahout.math.neighborhood;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
-import java.util.PriorityQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Ordering;
+import org.apache.mahout.common.distance.CosineDistanceMeasure;
 import org.apache.mahout.common.distance.DistanceMeasure;
+import org.apache.mahout.common.distance.EuclideanDistanceMeasure;
+import org.apache.mahout.common.distance.SquaredEuclideanDistanceMeasure;
+import org.apache.mahout.math.CardinalityException;
 import org.apache.mahout.math.Vector;
 import org.apache.mahout.math.WeightedVector;
 import org.apache.mahout.math.random.WeightedThing;
@@ -35,8 +42,20 @@ import org.apache.mahout.math.random.WeightedThing;
 /**
  * Search for nearest neighbors using a complete search (i.e. looping through
  * the references and comparing each vector to the query).
+ *
+ * Batches of queries are searched in blocks: the reference vectors are packed into contiguous arrays for each batch,
+ * and for (squared) Euclidean and cosine distances each block of queries is compared to each block of references
+ * through dot products and norms. The packed copy is not kept between batches, since callers such as
+ * {@link org.apache.mahout.clustering.streaming.cluster.BallKMeans} update the reference vectors in place.
+ * Candidates are kept in primitive top-k heaps; the final neighbors' distances are then recomputed with the
+ * distance measure.
  */
 public class BruteSearch extends UpdatableSearcher {
+  private static final int QUERY_BLOCK = 16;
+  private static final int REFERENCE_BLOCK = 256;
+  /** Caps the dense query block at this many doubles for high dimensional data. */
+  private static final int MAX_QUERY_BLOCK_ELEMENTS = 1 << 20;
+
   /**
    * The list of reference vectors.
    */
@@ -70,34 +89,25 @@ public class BruteSearch extends UpdatableSearcher {
   public List<WeightedThing<Vector>> search(Vector query, int limit) {
     Preconditions.checkArgument(limit > 0, "limit must be greater then 0!");
     limit = Math.min(limit, referenceVectors.size());
-    // A priority queue of the best @limit elements, ordered from worst to best so that the worst
-    // element is always on top and can easily be removed.
-    PriorityQueue<WeightedThing<Integer>> bestNeighbors =
-        new PriorityQueue<>(limit, Ordering.natural().reverse());
-    // The resulting list of weighted WeightedVectors (the weight is the distance from the query).
-    List<WeightedThing<Vector>> results =
-        Lists.newArrayListWithCapacity(limit);
+    if (limit == 0) {
+      return Lists.newArrayList();
+    }
+    // The best @limit elements, with the worst element always on top so it can easily be replaced.
+    TopKHeap bestNeighbors = new TopKHeap(limit);
     int rowNumber = 0;
     for (Vector row : referenceVectors) {
       double distance = distanceMeasure.distance(query, row);
       // Only add a new neighbor if the result is better than the worst element
       // in the queue or the queue isn't full.
-      if (bestNeighbors.size() < limit || bestNeighbors.peek().getWeight() > distance) {
-        bestNeighbors.add(new WeightedThing<>(rowNumber, distance));
-        if (bestNeighbors.size() > limit) {
-          bestNeighbors.poll();
-        } else {
-          // Increase the size of the results list by 1 so we can add elements in the reverse
-          // order from the queue.
-          results.add(null);
-        }
+      if (!bestNeighbors.isFull() || distance < bestNeighbors.worst()) {
+        bestNeighbors.offer(rowNumber, distance);
       }
       ++rowNumber;
     }
-    for (int i = limit - 1; i >= 0; --i) {
-      WeightedThing<Integer> neighbor = bestNeighbors.poll();
-      results.set(i, new WeightedThing<>(
-          referenceVectors.get(neighbor.getValue()), neighbor.getWeight()));
+    int numResults = bestNeighbors.sort();
+    List<WeightedThing<Vector>> results = Lists.newArrayListWithCapacity(numResults);
+    for (int i = 0; i < numResults; ++i) {
+      results.add(new WeightedThing<>(referenceVectors.get(bestNeighbors.idAt(i)), bestNeighbors.distanceAt(i)));
     }
     return results;
   }
@@ -134,32 +144,220 @@ public class BruteSearch extends UpdatableSearcher {
    * @param limit The number of results to return.
    * @param numThreads   Number of threads to use in searching.
    * @return A list of result lists.
+   * @deprecated use {@link #searchBatch(Iterable, int, int)}, which does not throw {@link InterruptedException}
    */
+  @Deprecated
   public List<List<WeightedThing<Vector>>> search(Iterable<WeightedVector> queries,
-                                                  final int limit, int numThreads) throws InterruptedException {
+                                                  int limit, int numThreads) throws InterruptedException {
+    return searchBatch(queries, limit, numThreads);
+  }
+
+  /**
+   * Searches with a list full of queries in a threaded fashion, one block of queries per task.
+   *
+   * @param queries The queries to search for.
+   * @param limit The number of results to return.
+   * @param numThreads   Number of threads to use in searching.
+   * @return A list of result lists.
+   */
+  @Override
+  public List<List<WeightedThing<Vector>>> searchBatch(Iterable<? extends Vector> queries, final int limit,
+                                                       int numThreads) {
+    Preconditions.checkArgument(limit > 0, "limit must be greater then 0!");
+    Preconditions.checkArgument(numThreads > 0, "numThreads must be greater then 0!");
+
+    final List<Vector> queryList = Lists.newArrayList(queries);
+    final List<List<WeightedThing<Vector>>> results =
+        Lists.newArrayList(Collections.<List<WeightedThing<Vector>>>nCopies(queryList.size(), null));
+    final DistanceKind kind = DistanceKind.of(distanceMeasure);
+    // packing costs about as much as searching a single query
+    final PackedVectors packed = kind == null ? null : PackedVectors.pack(referenceVectors);
+    final AtomicInteger nextBlock = new AtomicInteger();
+
+    int numBlocks = (queryList.size() + QUERY_BLOCK - 1) / QUERY_BLOCK;
+    numThreads = Math.min(numThreads, numBlocks);
+    if (numThreads <= 1) {
+      searchBlocks(queryList, limit, kind, packed, nextBlock, results);
+      return results;
+    }
+
     ExecutorService executor = Executors.newFixedThreadPool(numThreads);
-    List<Callable<Object>> tasks = Lists.newArrayList();
-
-    final List<List<WeightedThing<Vector>>> results = Lists.newArrayList();
-    int i = 0;
-    for (final Vector query : queries) {
-      results.add(null);
-      final int index = i++;
-      tasks.add(new Callable<Object>() {
-        @Override
-        public Object call() throws Exception {
-          results.set(index, BruteSearch.this.search(query, limit));
-          return null;
-        }
-      });
+    try {
+      List<Future<Void>> futures = Lists.newArrayListWithCapacity(numThreads);
+      for (int i = 0; i < numThreads; i++) {
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() {
+            searchBlocks(queryList, limit, kind, packed, nextBlock, results);
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+    return results;
+  }
+
+  /**
+   * Claims blocks of queries off {@code nextBlock} until there are none left and searches them. All the scratch
+   * space is allocated once per call.
+   */
+  private void searchBlocks(List<Vector> queries, int limit, DistanceKind kind, PackedVectors packed,
+                            AtomicInteger nextBlock, List<List<WeightedThing<Vector>>> results) {
+    int numRefs = referenceVectors.size();
+    int k = Math.min(limit, numRefs);
+    int numCols = packed == null ? 0 : packed.numCols();
+    int queryBlock = numCols == 0
+        ? QUERY_BLOCK
+        : Math.max(1, Math.min(QUERY_BLOCK, MAX_QUERY_BLOCK_ELEMENTS / numCols));
+
+    TopKHeap[] heaps = new TopKHeap[queryBlock];
+    for (int q = 0; q < queryBlock && k > 0; q++) {
+      heaps[q] = new TopKHeap(k);
     }
+    double[] queryBuffer = packed == null ? null : new double[queryBlock * numCols];
+    double[] queryNorms = new double[queryBlock];
+    double[] dots = packed == null ? null : new double[queryBlock * REFERENCE_BLOCK];
 
-    executor.invokeAll(tasks);
-    executor.shutdown();
+    int block;
+    while ((block = nextBlock.getAndIncrement()) * (long) queryBlock < queries.size()) {
+      int from = block * queryBlock;
+      int numQueries = Math.min(queryBlock, queries.size() - from);
+      if (k == 0) {
+        for (int q = 0; q < numQueries; q++) {
+          results.set(from + q, Lists.<WeightedThing<Vector>>newArrayList());
+        }
+        continue;
+      }
+
+      for (int q = 0; q < numQueries; q++) {
+        heaps[q].clear();
+      }
 
+      if (packed == null) {
+        for (int q = 0; q < numQueries; q++) {
+          Vector query = queries.get(from + q);
+          TopKHeap heap = heaps[q];
+          for (int r = 0; r < numRefs; r++) {
+            double distance = distanceMeasure.distance(query, referenceVectors.get(r));
+            if (!heap.isFull() || distance < heap.worst()) {
+              heap.offer(r, distance);
+            }
+          }
+        }
+      } else {
+        // Pack the query block densely.
+        Arrays.fill(queryBuffer, 0, numQueries * numCols, 0);
+        for (int q = 0; q < numQueries; q++) {
+          Vector query = queries.get(from + q);
+          if (query.size() != numCols) {
+            throw new CardinalityException(numCols, query.size());
+          }
+          int base = q * numCols;
+          for (Vector.Element e : query.nonZeroes()) {
+            queryBuffer[base + e.index()] = e.get();
+          }
+          queryNorms[q] = query.getLengthSquared();
+        }
+
+        for (int refFrom = 0; refFrom < numRefs; refFrom += REFERENCE_BLOCK) {
+          int refTo = Math.min(numRefs, refFrom + REFERENCE_BLOCK);
+          int width = refTo - refFrom;
+          packed.dots(queryBuffer, numQueries, refFrom, refTo, dots);
+          for (int q = 0; q < numQueries; q++) {
+            TopKHeap heap = heaps[q];
+            double queryNorm = queryNorms[q];
+            int base = q * width - refFrom;
+            for (int r = refFrom; r < refTo; r++) {
+              double distance = kind.distance(queryNorm, packed.squaredNorm(r), dots[base + r]);
+              if (!heap.isFull() || distance < heap.worst()) {
+                heap.offer(r, distance);
+              }
+            }
+          }
+        }
+      }
+
+      for (int q = 0; q < numQueries; q++) {
+        results.set(from + q, toResults(queries.get(from + q), heaps[q], packed != null));
+      }
+    }
+  }
+
+  private List<WeightedThing<Vector>> toResults(Vector query, TopKHeap heap, boolean recompute) {
+    int numResults = heap.sort();
+    List<WeightedThing<Vector>> results = Lists.newArrayListWithCapacity(numResults);
+    for (int i = 0; i < numResults; i++) {
+      Vector neighbor = referenceVectors.get(heap.idAt(i));
+      // Distances from norms and dot products lose some precision to cancellation, recompute them for the winners.
+      double distance = recompute ? distanceMeasure.distance(query, neighbor) : heap.distanceAt(i);
+      results.add(new WeightedThing<>(neighbor, distance));
+    }
+    if (recompute) {
+      Collections.sort(results);
+    }
     return results;
   }
 
+  /**
+   * Distance measures that can be evaluated from squared norms and a dot product.
+   */
+  private enum DistanceKind {
+    SQUARED_EUCLIDEAN {
+      @Override
+      double distance(double queryNorm, double referenceNorm, double dot) {
+        return Math.max(0, queryNorm + referenceNorm - 2 * dot);
+      }
+    },
+    EUCLIDEAN {
+      @Override
+      double distance(double queryNorm, double referenceNorm, double dot) {
+        return Math.sqrt(Math.max(0, queryNorm + referenceNorm - 2 * dot));
+      }
+    },
+    COSINE {
+      @Override
+      double distance(double queryNorm, double referenceNorm, double dot) {
+        // Same corrections as CosineDistanceMeasure.
+        double denominator = Math.sqrt(queryNorm) * Math.sqrt(referenceNorm);
+        if (denominator < dot) {
+          denominator = dot;
+        }
+        if (denominator == 0 && dot == 0) {
+          return 0;
+        }
+        return 1.0 - dot / denominator;
+      }
+    };
+
+    abstract double distance(double queryNorm, double referenceNorm, double dot);
+
+    /**
+     * @return the kind of the measure, or null if it has to be evaluated by {@link DistanceMeasure#distance} on
+     * the vectors themselves
+     */
+    static DistanceKind of(DistanceMeasure measure) {
+      // Exact classes only: subclasses may weigh dimensions.
+      if (measure.getClass() == SquaredEuclideanDistanceMeasure.class) {
+        return SQUARED_EUCLIDEAN;
+      } else if (measure.getClass() == EuclideanDistanceMeasure.class) {
+        return EUCLIDEAN;
+      } else if (measure.getClass() == CosineDistanceMeasure.class) {
+        return COSINE;
+      }
+      return null;
+    }
+  }
+
   @Override
   public Iterator<Vector> iterator() {
     return referenceVectors.iterator();
@@ -0,0 +1,977 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.math.neighborhood;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.apache.hadoop.io.Writable;
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.common.distance.DistanceMeasure;
+import org.apache.mahout.math.Centroid;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.VectorWritable;
+import org.apache.mahout.math.WeightedVector;
+import org.apache.mahout.math.random.WeightedThing;
+
+/**
+ * Approximate nearest neighbor search on a hierarchical navigable small world (HNSW) graph.
+ * <p/>
+ * Every vector becomes a node on layers 0 to a random level drawn from an exponentially decaying distribution.
+ * Each layer is a proximity graph: a search greedily descends the sparse upper layers to find a good entry point
+ * and then runs a best-first beam search of width {@code searchSize} on layer 0, which links every vector.
+ * Only {@link DistanceMeasure#distance(Vector, Vector)} is used, so any measure works, although the graph is most
+ * effective for metrics.
+ * <p/>
+ * Adjacency is kept in flat int arrays: all layer 0 lists in a single array with a fixed slot of
+ * {@code 2 * maxConnections + 1} ints per node (count followed by neighbor ids), and upper layers in one small
+ * array per node that has any.
+ * <p/>
+ * {@link #add(Vector)} is thread safe and may run concurrently with searches; graph updates lock single nodes only.
+ * Removed vectors are marked as deleted and no longer returned, but stay in the graph to keep it navigable. A removed
+ * node keeps a copy of its vector, since callers such as
+ * {@link org.apache.mahout.clustering.streaming.cluster.StreamingKMeans} move a vector after removing it and add it
+ * again. Once removed nodes outnumber the live ones, the graph is rebuilt from the live vectors, so it never holds
+ * much more than twice as many nodes as there are live vectors.
+ * <p/>
+ * The index can be saved and loaded as a {@link Writable}. Vectors are written through {@link VectorWritable};
+ * {@link WeightedVector}s and {@link Centroid}s keep their weight and index.
+ */
+public class HnswSearch extends UpdatableSearcher implements Writable {
+
+  public static final int DEFAULT_MAX_CONNECTIONS = 16;
+  public static final int DEFAULT_EF_CONSTRUCTION = 100;
+
+  private static final int INITIAL_CAPACITY = 1024;
+  private static final int MAX_LEVEL = 16;
+  private static final int LOCK_STRIPES = 1024;
+  private static final long NO_ENTRY = -1L;
+
+  private static final byte PLAIN_VECTOR = 0;
+  private static final byte WEIGHTED_VECTOR = 1;
+  private static final byte CENTROID = 2;
+
+  /**
+   * The maximum number of neighbors of a node on layers above 0; layer 0 allows twice as many.
+   */
+  private final int maxConnections;
+  private final int maxConnections0;
+
+  /**
+   * Beam width used when linking a new vector.
+   */
+  private final int efConstruction;
+
+  /**
+   * Beam width used when searching. Searches for more than this many results use the limit instead.
+   */
+  private final int searchSize;
+
+  private final double levelMultiplier;
+  private final Random random = RandomUtils.getRandom();
+
+  /**
+   * Read lock for everything that reads the graph, write lock for growing arrays, removals, rebuilds and clear.
+   */
+  private final ReentrantReadWriteLock structureLock = new ReentrantReadWriteLock();
+  private final Object[] nodeLocks = new Object[LOCK_STRIPES];
+
+  private Vector[] vectors;
+  private byte[] levels;
+  private boolean[] removed;
+  private int[] baseLinks;
+  private int[][] upperLinks;
+  private int count;
+  private int numRemoved;
+  /**
+   * Counts the reallocations of the graph by clear, rebuild and readFields. Changes under the write lock only.
+   */
+  private int generation;
+
+  /**
+   * Entry point node id in the low and its level in the high 32 bits.
+   */
+  private final AtomicLong entry = new AtomicLong(NO_ENTRY);
+
+  private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+    @Override
+    protected Scratch initialValue() {
+      return new Scratch(maxConnections, maxConnections0, efConstruction);
+    }
+  };
+
+  public HnswSearch(DistanceMeasure distanceMeasure, int searchSize) {
+    this(distanceMeasure, DEFAULT_MAX_CONNECTIONS, DEFAULT_EF_CONSTRUCTION, searchSize);
+  }
+
+  public HnswSearch(DistanceMeasure distanceMeasure, int maxConnections, int efConstruction, int searchSize) {
+    super(distanceMeasure);
+    Preconditions.checkArgument(maxConnections > 1, "maxConnections must be greater then 1!");
+    Preconditions.checkArgument(efConstruction > 0, "efConstruction must be greater then 0!");
+    Preconditions.checkArgument(searchSize > 0, "searchSize must be greater then 0!");
+    this.maxConnections = maxConnections;
+    this.maxConnections0 = 2 * maxConnections;
+    this.efConstruction = efConstruction;
+    this.searchSize = searchSize;
+    this.levelMultiplier = 1 / Math.log(maxConnections);
+    for (int i = 0; i < LOCK_STRIPES; i++) {
+      nodeLocks[i] = new Object();
+    }
+    allocate(INITIAL_CAPACITY);
+  }
+
+  private void allocate(int capacity) {
+    vectors = new Vector[capacity];
+    levels = new byte[capacity];
+    removed = new boolean[capacity];
+    baseLinks = new int[capacity * (maxConnections0 + 1)];
+    upperLinks = new int[capacity][];
+    count = 0;
+    numRemoved = 0;
+    generation++;
+    entry.set(NO_ENTRY);
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity <= vectors.length) {
+      return;
+    }
+    int newCapacity = Math.max(capacity, 2 * vectors.length);
+    vectors = Arrays.copyOf(vectors, newCapacity);
+    levels = Arrays.copyOf(levels, newCapacity);
+    removed = Arrays.copyOf(removed, newCapacity);
+    baseLinks = Arrays.copyOf(baseLinks, newCapacity * (maxConnections0 + 1));
+    upperLinks = Arrays.copyOf(upperLinks, newCapacity);
+  }
+
+  /**
+   * Adds a vector to the graph. Safe to call from several threads at once.
+   */
+  @Override
+  public void add(Vector vector) {
+    int id;
+    int level;
+    long currentEntry;
+    int addedTo;
+    structureLock.writeLock().lock();
+    try {
+      addedTo = generation;
+      level = Math.min((int) (-Math.log(1.0 - random.nextDouble()) * levelMultiplier), MAX_LEVEL);
+      ensureCapacity(count + 1);
+      id = count++;
+      vectors[id] = vector;
+      levels[id] = (byte) level;
+      upperLinks[id] = level > 0 ? new int[level * (maxConnections + 1)] : null;
+      currentEntry = entry.get();
+      if (currentEntry == NO_ENTRY) {
+        entry.set(packEntry(id, level));
+        return;
+      }
+    } finally {
+      structureLock.writeLock().unlock();
+    }
+
+    structureLock.readLock().lock();
+    try {
+      if (generation != addedTo) {
+        // The graph was reallocated in between: a clear dropped the node, a rebuild added the vector again.
+        return;
+      }
+      link(id, vector, level, currentEntry);
+
+      // Promote the new node to entry point unless someone else got higher meanwhile. Still under the read lock,
+      // so the id belongs to the current graph.
+      while (true) {
+        long current = entry.get();
+        if (entryLevel(current) >= level || entry.compareAndSet(current, packEntry(id, level))) {
+          break;
+        }
+      }
+    } finally {
+      structureLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Adds all vectors using up to {@code numThreads} threads.
+   */
+  public void addAll(Iterable<? extends Vector> data, int numThreads) {
+    Preconditions.checkArgument(numThreads > 0, "numThreads must be greater then 0!");
+    final List<Vector> dataList = Lists.newArrayList(data);
+    numThreads = Math.min(numThreads, dataList.size());
+    if (numThreads <= 1) {
+      addAll(dataList);
+      return;
+    }
+
+    final AtomicInteger next = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      List<Future<Void>> futures = Lists.newArrayListWithCapacity(numThreads);
+      for (int i = 0; i < numThreads; i++) {
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() {
+            for (int j = next.getAndIncrement(); j < dataList.size(); j = next.getAndIncrement()) {
+              add(dataList.get(j));
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private void link(int id, Vector vector, int level, long currentEntry) {
+    Scratch s = scratch.get();
+    s.ensureCapacity(vectors.length);
+
+    int top = entryLevel(currentEntry);
+    s.nearestId = entryId(currentEntry);
+    s.nearestDistance = distanceMeasure.distance(vector, vectors[s.nearestId]);
+    for (int layer = top; layer > level; layer--) {
+      greedySearch(vector, layer, s);
+    }
+
+    for (int layer = Math.min(top, level); layer >= 0; layer--) {
+      TopKHeap found = searchLayer(vector, s.nearestId, s.nearestDistance, efConstruction, layer, s);
+      int numFound = found.sort();
+      s.nearestId = found.idAt(0);
+      s.nearestDistance = found.distanceAt(0);
+
+      int numSelected = selectNeighbors(id, found, numFound, maxConnections, s);
+      // selectNeighbors reuses s.selected when pruning, so keep the new node's neighbors aside.
+      System.arraycopy(s.selected, 0, s.linked, 0, numSelected);
+      mergeLinks(id, layer, s.linked, numSelected, s);
+      for (int i = 0; i < numSelected; i++) {
+        addLink(s.linked[i], layer, id, s);
+      }
+    }
+  }
+
+  /**
+   * Links the new node {@code id} to {@code neighbors} on {@code layer}. Once {@code id} is reachable from an upper
+   * layer, concurrent inserts may already have linked it back to their nodes, so those links are kept: the union is
+   * pruned with the selection heuristic if it has too many.
+   */
+  private void mergeLinks(int id, int layer, int[] neighbors, int numNeighbors, Scratch s) {
+    int capacity = layer == 0 ? maxConnections0 : maxConnections;
+    synchronized (lockFor(id)) {
+      int[] links = linksOf(id, layer);
+      int offset = linksOffset(id, layer);
+      int numLinks = links[offset];
+      int numNew = 0;
+      for (int i = 0; i < numNeighbors; i++) {
+        if (!contains(links, offset, numLinks, neighbors[i])) {
+          neighbors[numNew++] = neighbors[i];
+        }
+      }
+      if (numLinks + numNew <= capacity) {
+        System.arraycopy(neighbors, 0, links, offset + 1 + numLinks, numNew);
+        links[offset] = numLinks + numNew;
+        return;
+      }
+
+      Vector vector = vectors[id];
+      TopKHeap heap = s.merge;
+      heap.clear();
+      for (int i = 0; i < numLinks; i++) {
+        int neighbor = links[offset + 1 + i];
+        heap.offer(neighbor, distanceMeasure.distance(vector, vectors[neighbor]));
+      }
+      for (int i = 0; i < numNew; i++) {
+        heap.offer(neighbors[i], distanceMeasure.distance(vector, vectors[neighbors[i]]));
+      }
+      int numCandidates = heap.sort();
+      int numSelected = selectNeighbors(id, heap, numCandidates, capacity, s);
+      System.arraycopy(s.selected, 0, links, offset + 1, numSelected);
+      links[offset] = numSelected;
+    }
+  }
+
+  private static boolean contains(int[] links, int offset, int numLinks, int id) {
+    for (int i = 0; i < numLinks; i++) {
+      if (links[offset + 1 + i] == id) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Adds a link from {@code node} to {@code id} on {@code layer}, pruning the neighbors of {@code node} with the
+   * selection heuristic if it has too many.
+   */
+  private void addLink(int node, int layer, int id, Scratch s) {
+    int capacity = layer == 0 ? maxConnections0 : maxConnections;
+    synchronized (lockFor(node)) {
+      int[] links = linksOf(node, layer);
+      int offset = linksOffset(node, layer);
+      int numLinks = links[offset];
+      if (contains(links, offset, numLinks, id)) {
+        return;
+      }
+      if (numLinks < capacity) {
+        links[offset + 1 + numLinks] = id;
+        links[offset] = numLinks + 1;
+        return;
+      }
+
+      Vector nodeVector = vectors[node];
+      TopKHeap heap = layer == 0 ? s.prune0 : s.prune;
+      heap.clear();
+      heap.offer(id, distanceMeasure.distance(nodeVector, vectors[id]));
+      for (int i = 0; i < numLinks; i++) {
+        int neighbor = links[offset + 1 + i];
+        heap.offer(neighbor, distanceMeasure.distance(nodeVector, vectors[neighbor]));
+      }
+      int numCandidates = heap.sort();
+      int numSelected = selectNeighbors(node, heap, numCandidates, capacity, s);
+      System.arraycopy(s.selected, 0, links, offset + 1, numSelected);
+      links[offset] = numSelected;
+    }
+  }
+
+  /**
+   * Neighbor selection heuristic: walks the candidates nearest first and keeps one only if it is closer to the base
+   * node than to any neighbor kept so far, which favors links in diverse directions. Slots left over are filled with
+   * the nearest rejected candidates. Results go to {@code s.selected}.
+   *
+   * @param candidates candidates sorted by increasing distance to {@code base}
+   * @return the number of neighbors selected
+   */
+  private int selectNeighbors(int base, TopKHeap candidates, int numCandidates, int limit, Scratch s) {
+    int numSelected = 0;
+    int numPruned = 0;
+    for (int i = 0; i < numCandidates && numSelected < limit; i++) {
+      int candidate = candidates.idAt(i);
+      if (candidate == base) {
+        continue;
+      }
+      double distance = candidates.distanceAt(i);
+      Vector candidateVector = vectors[candidate];
+      boolean diverse = true;
+      for (int j = 0; j < numSelected; j++) {
+        if (distanceMeasure.distance(candidateVector, vectors[s.selected[j]]) < distance) {
+          diverse = false;
+          break;
+        }
+      }
+      if (diverse) {
+        s.selected[numSelected++] = candidate;
+      } else {
+        s.pruned[numPruned++] = candidate;
+      }
+    }
+    for (int i = 0; i < numPruned && numSelected < limit; i++) {
+      s.selected[numSelected++] = s.pruned[i];
+    }
+    return numSelected;
+  }
+
+  /**
+   * Moves {@code s.nearestId} to its closest neighbor on {@code layer} until there is no closer one.
+   */
+  private void greedySearch(Vector query, int layer, Scratch s) {
+    boolean improved = true;
+    while (improved) {
+      improved = false;
+      int numLinks = copyLinks(s.nearestId, layer, s.neighbors);
+      for (int i = 0; i < numLinks; i++) {
+        int neighbor = s.neighbors[i];
+        double distance = distanceMeasure.distance(query, vectors[neighbor]);
+        if (distance < s.nearestDistance) {
+          s.nearestId = neighbor;
+          s.nearestDistance = distance;
+          improved = true;
+        }
+      }
+    }
+  }
+
+  /**
+   * Best-first search on {@code layer} keeping the {@code ef} nearest nodes seen.
+   *
+   * @return the scratch heap holding the nearest nodes found, unsorted
+   */
+  private TopKHeap searchLayer(Vector query, int entryId, double entryDistance, int ef, int layer, Scratch s) {
+    int epoch = s.nextEpoch();
+    int[] visited = s.visited;
+    TopKHeap results = s.results(ef);
+    CandidateQueue candidates = s.candidates;
+    candidates.clear();
+
+    visited[entryId] = epoch;
+    candidates.add(entryId, entryDistance);
+    results.offer(entryId, entryDistance);
+    while (candidates.size() > 0) {
+      if (candidates.peekDistance() > results.worst()) {
+        break;
+      }
+      int numLinks = copyLinks(candidates.poll(), layer, s.neighbors);
+      for (int i = 0; i < numLinks; i++) {
+        int neighbor = s.neighbors[i];
+        if (visited[neighbor] == epoch) {
+          continue;
+        }
+        visited[neighbor] = epoch;
+        double distance = distanceMeasure.distance(query, vectors[neighbor]);
+        if (!results.isFull() || distance < results.worst()) {
+          candidates.add(neighbor, distance);
+          results.offer(neighbor, distance);
+        }
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Searches layer 0 with beam width {@code ef}. Must hold the read lock.
+   *
+   * @return the scratch heap with the nearest nodes sorted nearest first, or null if the graph is empty
+   */
+  private TopKHeap searchNearest(Vector query, int ef) {
+    long currentEntry = entry.get();
+    if (currentEntry == NO_ENTRY) {
+      return null;
+    }
+    Scratch s = scratch.get();
+    s.ensureCapacity(vectors.length);
+    s.nearestId = entryId(currentEntry);
+    s.nearestDistance = distanceMeasure.distance(query, vectors[s.nearestId]);
+    for (int layer = entryLevel(currentEntry); layer > 0; layer--) {
+      greedySearch(query, layer, s);
+    }
+    TopKHeap found = searchLayer(query, s.nearestId, s.nearestDistance, ef, 0, s);
+    found.sort();
+    return found;
+  }
+
+  private int copyLinks(int node, int layer, int[] out) {
+    synchronized (lockFor(node)) {
+      int[] links = linksOf(node, layer);
+      int offset = linksOffset(node, layer);
+      int numLinks = links[offset];
+      System.arraycopy(links, offset + 1, out, 0, numLinks);
+      return numLinks;
+    }
+  }
+
+  private int[] linksOf(int node, int layer) {
+    return layer == 0 ? baseLinks : upperLinks[node];
+  }
+
+  private int linksOffset(int node, int layer) {
+    return layer == 0 ? node * (maxConnections0 + 1) : (layer - 1) * (maxConnections + 1);
+  }
+
+  private Object lockFor(int node) {
+    return nodeLocks[node & (LOCK_STRIPES - 1)];
+  }
+
+  private static long packEntry(int id, int level) {
+    return ((long) level << 32) | (id & 0xFFFFFFFFL);
+  }
+
+  private static int entryId(long packed) {
+    return (int) packed;
+  }
+
+  private static int entryLevel(long packed) {
+    return packed == NO_ENTRY ? -1 : (int) (packed >>> 32);
+  }
+
+  @Override
+  public int size() {
+    structureLock.readLock().lock();
+    try {
+      return count - numRemoved;
+    } finally {
+      structureLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Searches for the query vector returning the closest limit vectors. At least {@code searchSize} candidates are
+   * considered; fewer than {@code limit} results come back only if the searcher has fewer live vectors or many of
+   * the candidates were removed.
+   */
+  @Override
+  public List<WeightedThing<Vector>> search(Vector query, int limit) {
+    Preconditions.checkArgument(limit > 0, "limit must be greater then 0!");
+    structureLock.readLock().lock();
+    try {
+      TopKHeap found = searchNearest(query, Math.max(searchSize, limit));
+      if (found == null) {
+        return Collections.emptyList();
+      }
+      List<WeightedThing<Vector>> results = Lists.newArrayListWithCapacity(Math.min(limit, found.size()));
+      for (int i = 0; i < found.size() && results.size() < limit; i++) {
+        int id = found.idAt(i);
+        if (!removed[id]) {
+          results.add(new WeightedThing<>(vectors[id], found.distanceAt(i)));
+        }
+      }
+      return results;
+    } finally {
+      structureLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Batch search spreading the queries over {@code numThreads} threads; each query runs the single-query search.
+   */
+  @Override
+  public List<List<WeightedThing<Vector>>> searchBatch(Iterable<? extends Vector> queries, final int limit,
+                                                       int numThreads) {
+    Preconditions.checkArgument(numThreads > 0, "numThreads must be greater then 0!");
+    final List<Vector> queryList = Lists.newArrayList(queries);
+    numThreads = Math.min(numThreads, queryList.size());
+    if (numThreads <= 1) {
+      return search(queryList, limit);
+    }
+
+    final List<List<WeightedThing<Vector>>> results =
+        Lists.newArrayList(Collections.<List<WeightedThing<Vector>>>nCopies(queryList.size(), null));
+    final AtomicInteger next = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      List<Future<Void>> futures = Lists.newArrayListWithCapacity(numThreads);
+      for (int i = 0; i < numThreads; i++) {
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() {
+            for (int j = next.getAndIncrement(); j < queryList.size(); j = next.getAndIncrement()) {
+              results.set(j, search(queryList.get(j), limit));
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+    return results;
+  }
+
+  /**
+   * Returns the closest vector to the query. If the beam search only finds removed vectors, all live vectors are
+   * looked at.
+   *
+   * @param query the vector to search for
+   * @param differentThanQuery if true, returns the closest vector different than the query (this
+   *                           only matters if the query is among the searched vectors), otherwise,
+   *                           returns the closest vector to the query (even the same vector).
+   * @return the weighted vector closest to the query, a null vector at infinite distance if there is none
+   */
+  @Override
+  public WeightedThing<Vector> searchFirst(Vector query, boolean differentThanQuery) {
+    structureLock.readLock().lock();
+    try {
+      TopKHeap found = searchNearest(query, searchSize);
+      if (found != null) {
+        for (int i = 0; i < found.size(); i++) {
+          int id = found.idAt(i);
+          if (!removed[id] && (!differentThanQuery || !vectors[id].equals(query))) {
+            return new WeightedThing<>(vectors[id], found.distanceAt(i));
+          }
+        }
+      }
+      int id = scanNearestLive(query, differentThanQuery);
+      if (id >= 0) {
+        return new WeightedThing<>(vectors[id], distanceMeasure.distance(query, vectors[id]));
+      }
+      return new WeightedThing<>(null, Double.POSITIVE_INFINITY);
+    } finally {
+      structureLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Returns a snapshot of the vectors currently in the searcher.
+   */
+  @Override
+  public Iterator<Vector> iterator() {
+    structureLock.readLock().lock();
+    try {
+      return liveVectors().iterator();
+    } finally {
+      structureLock.readLock().unlock();
+    }
+  }
+
+  private List<Vector> liveVectors() {
+    List<Vector> live = Lists.newArrayListWithCapacity(count - numRemoved);
+    for (int i = 0; i < count; i++) {
+      if (!removed[i]) {
+        live.add(vectors[i]);
+      }
+    }
+    return live;
+  }
+
+  /**
+   * Finds the nearest live vector by looking at all of them, for when the beam search found none that would do.
+   * Must hold the read lock.
+   *
+   * @return the node id, or -1 if there is no such vector
+   */
+  private int scanNearestLive(Vector query, boolean differentThanQuery) {
+    int nearest = -1;
+    double nearestDistance = Double.POSITIVE_INFINITY;
+    for (int id = 0; id < count; id++) {
+      if (!removed[id] && (!differentThanQuery || !vectors[id].equals(query))) {
+        double distance = distanceMeasure.distance(query, vectors[id]);
+        if (nearest < 0 || distance < nearestDistance) {
+          nearest = id;
+          nearestDistance = distance;
+        }
+      }
+    }
+    return nearest;
+  }
+
+  /**
+   * Marks the vector closest to {@code vector} as removed if it is within {@code epsilon}. If the beam search finds
+   * no live vector that close, all live vectors are looked at. The node stays in the graph for routing, with a copy
+   * of the vector, until removed nodes outnumber the live ones and the graph is rebuilt.
+   */
+  @Override
+  public boolean remove(Vector vector, double epsilon) {
+    structureLock.writeLock().lock();
+    try {
+      int id = -1;
+      double distance = Double.POSITIVE_INFINITY;
+      TopKHeap found = searchNearest(vector, searchSize);
+      if (found != null) {
+        for (int i = 0; i < found.size(); i++) {
+          if (!removed[found.idAt(i)]) {
+            id = found.idAt(i);
+            distance = found.distanceAt(i);
+            break;
+          }
+        }
+      }
+      if (id < 0 || distance >= epsilon) {
+        // The beam search is approximate, but callers rely on being able to remove what they added.
+        id = scanNearestLive(vector, false);
+        if (id >= 0) {
+          distance = distanceMeasure.distance(vector, vectors[id]);
+        }
+      }
+      if (id < 0 || distance >= epsilon) {
+        return false;
+      }
+      // The caller may change the removed vector, but the node has to stay where its links were chosen for.
+      vectors[id] = vectors[id].clone();
+      removed[id] = true;
+      numRemoved++;
+      if (numRemoved > count - numRemoved) {
+        rebuild();
+      }
+      return true;
+    } finally {
+      structureLock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Drops the removed nodes by adding the live vectors to an empty graph. Must hold the write lock.
+   */
+  private void rebuild() {
+    List<Vector> live = liveVectors();
+    allocate(Math.max(INITIAL_CAPACITY, 2 * live.size()));
+    for (Vector vector : live) {
+      add(vector);
+    }
+  }
+
+  /**
+   * Number of nodes in the graph, including removed ones that are kept for routing.
+   */
+  int numNodes() {
+    structureLock.readLock().lock();
+    try {
+      return count;
+    } finally {
+      structureLock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public void clear() {
+    structureLock.writeLock().lock();
+    try {
+      allocate(INITIAL_CAPACITY);
+    } finally {
+      structureLock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    structureLock.readLock().lock();
+    try {
+      out.writeUTF(distanceMeasure.getClass().getName());
+      out.writeInt(maxConnections);
+      out.writeInt(count);
+      out.writeLong(entry.get());
+      for (int i = 0; i < count; i++) {
+        out.writeByte(levels[i]);
+        out.writeBoolean(removed[i]);
+        writeNodeVector(out, vectors[i]);
+        for (int layer = 0; layer <= levels[i]; layer++) {
+          synchronized (lockFor(i)) {
+            int[] links = linksOf(i, layer);
+            int offset = linksOffset(i, layer);
+            int numLinks = links[offset];
+            out.writeShort(numLinks);
+            for (int j = 0; j < numLinks; j++) {
+              out.writeInt(links[offset + 1 + j]);
+            }
+          }
+        }
+      }
+    } finally {
+      structureLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Replaces the contents of this searcher with a graph saved by {@link #write(DataOutput)}. The saved graph must
+   * have been built with the same distance measure and {@code maxConnections}.
+   */
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    String measure = in.readUTF();
+    Preconditions.checkArgument(measure.equals(distanceMeasure.getClass().getName()),
+        "Graph was built with %s, not %s", measure, distanceMeasure.getClass().getName());
+    int savedMaxConnections = in.readInt();
+    Preconditions.checkArgument(savedMaxConnections == maxConnections,
+        "Graph was built with maxConnections %s, not %s", savedMaxConnections, maxConnections);
+
+    structureLock.writeLock().lock();
+    try {
+      int numNodes = in.readInt();
+      long savedEntry = in.readLong();
+      allocate(Math.max(INITIAL_CAPACITY, numNodes));
+      for (int i = 0; i < numNodes; i++) {
+        int level = in.readByte();
+        levels[i] = (byte) level;
+        removed[i] = in.readBoolean();
+        if (removed[i]) {
+          numRemoved++;
+        }
+        vectors[i] = readNodeVector(in);
+        upperLinks[i] = level > 0 ? new int[level * (maxConnections + 1)] : null;
+        for (int layer = 0; layer <= level; layer++) {
+          int[] links = linksOf(i, layer);
+          int offset = linksOffset(i, layer);
+          int numLinks = in.readShort();
+          links[offset] = numLinks;
+          for (int j = 0; j < numLinks; j++) {
+            links[offset + 1 + j] = in.readInt();
+          }
+        }
+      }
+      count = numNodes;
+      entry.set(savedEntry);
+    } finally {
+      structureLock.writeLock().unlock();
+    }
+  }
+
+  private static void writeNodeVector(DataOutput out, Vector vector) throws IOException {
+    if (vector instanceof WeightedVector) {
+      WeightedVector weighted = (WeightedVector) vector;
+      out.writeByte(vector instanceof Centroid ? CENTROID : WEIGHTED_VECTOR);
+      out.writeDouble(weighted.getWeight());
+      out.writeInt(weighted.getIndex());
+      VectorWritable.writeVector(out, weighted.getVector());
+    } else {
+      out.writeByte(PLAIN_VECTOR);
+      VectorWritable.writeVector(out, vector);
+    }
+  }
+
+  private static Vector readNodeVector(DataInput in) throws IOException {
+    byte type = in.readByte();
+    if (type == PLAIN_VECTOR) {
+      return VectorWritable.readVector(in);
+    }
+    double weight = in.readDouble();
+    int index = in.readInt();
+    Vector vector = VectorWritable.readVector(in);
+    return type == CENTROID ? new Centroid(index, vector, weight) : new WeightedVector(vector, weight, index);
+  }
+
+  /**
+   * Min-heap of (id, distance) candidates to expand, on growable primitive arrays.
+   */
+  private static final class CandidateQueue {
+    private int[] ids = new int[64];
+    private double[] distances = new double[64];
+    private int size;
+
+    void clear() {
+      size = 0;
+    }
+
+    int size() {
+      return size;
+    }
+
+    double peekDistance() {
+      return distances[0];
+    }
+
+    void add(int id, double distance) {
+      if (size == ids.length) {
+        ids = Arrays.copyOf(ids, 2 * size);
+        distances = Arrays.copyOf(distances, 2 * size);
+      }
+      int i = size++;
+      while (i > 0) {
+        int parent = (i - 1) >>> 1;
+        if (distances[parent] <= distance) {
+          break;
+        }
+        ids[i] = ids[parent];
+        distances[i] = distances[parent];
+        i = parent;
+      }
+      ids[i] = id;
+      distances[i] = distance;
+    }
+
+    int poll() {
+      int top = ids[0];
+      size--;
+      int id = ids[size];
+      double distance = distances[size];
+      int i = 0;
+      while (true) {
+        int child = 2 * i + 1;
+        if (child >= size) {
+          break;
+        }
+        if (child + 1 < size && distances[child + 1] < distances[child]) {
+          child++;
+        }
+        if (distances[child] >= distance) {
+          break;
+        }
+        ids[i] = ids[child];
+        distances[i] = distances[child];
+        i = child;
+      }
+      ids[i] = id;
+      distances[i] = distance;
+      return top;
+    }
+  }
+
+  /**
+   * Per thread buffers, so that neither linking nor searching allocates per visited node.
+   */
+  private static final class Scratch {
+    final int[] neighbors;
+    final int[] selected;
+    final int[] linked;
+    int[] pruned;
+    final TopKHeap prune0;
+    final TopKHeap prune;
+    final TopKHeap merge;
+    final CandidateQueue candidates = new CandidateQueue();
+    TopKHeap results;
+    int[] visited = new int[0];
+    int epoch;
+    int nearestId;
+    double nearestDistance;
+
+    Scratch(int maxConnections, int maxConnections0, int efConstruction) {
+      neighbors = new int[maxConnections0];
+      selected = new int[maxConnections0];
+      linked = new int[maxConnections0];
+      pruned = new int[Math.max(efConstruction, maxConnections0 + maxConnections)];
+      prune0 = new TopKHeap(maxConnections0 + 1);
+      prune = new TopKHeap(maxConnections + 1);
+      merge = new TopKHeap(maxConnections0 + maxConnections);
+    }
+
+    void ensureCapacity(int capacity) {
+      if (visited.length < capacity) {
+        visited = new int[capacity];
+        epoch = 0;
+      }
+    }
+
+    int nextEpoch() {
+      if (++epoch == 0) {
+        Arrays.fill(visited, 0);
+        epoch = 1;
+      }
+      return epoch;
+    }
+
+    TopKHeap results(int ef) {
+      if (results == null || results.capacity() != ef) {
+        results = new TopKHeap(ef);
+      }
+      if (pruned.length < ef) {
+        pruned = new int[ef];
+      }
+      results.clear();
+      return results;
+    }
+  }
+}
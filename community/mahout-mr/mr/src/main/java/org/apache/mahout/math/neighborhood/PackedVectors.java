@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.math.neighborhood;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.mahout.math.Vector;
+
+/**
+ * Reference vectors packed into contiguous arrays so that distances to a block of queries can be computed as a
+ * small dense (or CSR-times-dense) matrix product. Rows are stored row-major dense if the data is mostly dense and in
+ * CSR form otherwise; squared norms are kept alongside.
+ */
+final class PackedVectors {
+
+  /** Pack densely above this fraction of non-zeros. */
+  private static final double DENSE_THRESHOLD = 0.3;
+
+  private final int numRows;
+  private final int numCols;
+  private final double[] squaredNorms;
+
+  // Dense storage, null for CSR.
+  private final double[] dense;
+
+  // CSR storage, null for dense.
+  private final int[] rowOffsets;
+  private final int[] columns;
+  private final double[] values;
+
+  private PackedVectors(int numRows, int numCols, double[] squaredNorms, double[] dense, int[] rowOffsets,
+                        int[] columns, double[] values) {
+    this.numRows = numRows;
+    this.numCols = numCols;
+    this.squaredNorms = squaredNorms;
+    this.dense = dense;
+    this.rowOffsets = rowOffsets;
+    this.columns = columns;
+    this.values = values;
+  }
+
+  /**
+   * @return packed vectors, or null if the vectors do not all have the same cardinality.
+   */
+  static PackedVectors pack(List<Vector> vectors) {
+    int numRows = vectors.size();
+    int numCols = numRows == 0 ? 0 : vectors.get(0).size();
+    long numNonDefault = 0;
+    for (Vector v : vectors) {
+      if (v.size() != numCols) {
+        return null;
+      }
+      numNonDefault += v.getNumNondefaultElements();
+    }
+
+    double[] squaredNorms = new double[numRows];
+    long denseSize = (long) numRows * numCols;
+    if (denseSize <= Integer.MAX_VALUE && numNonDefault > DENSE_THRESHOLD * denseSize) {
+      double[] dense = new double[numRows * numCols];
+      for (int r = 0; r < numRows; r++) {
+        Vector v = vectors.get(r);
+        int base = r * numCols;
+        for (Vector.Element e : v.nonZeroes()) {
+          dense[base + e.index()] = e.get();
+        }
+        squaredNorms[r] = v.getLengthSquared();
+      }
+      return new PackedVectors(numRows, numCols, squaredNorms, dense, null, null, null);
+    }
+
+    int[] rowOffsets = new int[numRows + 1];
+    int[] columns = new int[(int) numNonDefault];
+    double[] values = new double[(int) numNonDefault];
+    int p = 0;
+    for (int r = 0; r < numRows; r++) {
+      Vector v = vectors.get(r);
+      rowOffsets[r] = p;
+      for (Vector.Element e : v.nonZeroes()) {
+        if (p == columns.length) {
+          // Non-default count was an underestimate; grow.
+          columns = Arrays.copyOf(columns, 2 * p + 1);
+          values = Arrays.copyOf(values, 2 * p + 1);
+        }
+        columns[p] = e.index();
+        values[p] = e.get();
+        p++;
+      }
+      squaredNorms[r] = v.getLengthSquared();
+    }
+    rowOffsets[numRows] = p;
+    return new PackedVectors(numRows, numCols, squaredNorms, null, rowOffsets, columns, values);
+  }
+
+  int numRows() {
+    return numRows;
+  }
+
+  int numCols() {
+    return numCols;
+  }
+
+  double squaredNorm(int row) {
+    return squaredNorms[row];
+  }
+
+  /**
+   * Computes dot products of a block of queries with rows {@code [from, to)}.
+   *
+   * @param queries {@code numQueries x numCols} row-major dense query block
+   * @param out receives the dot product of query {@code q} and row {@code r} at {@code q * (to - from) + r - from}
+   */
+  void dots(double[] queries, int numQueries, int from, int to, double[] out) {
+    int width = to - from;
+    if (dense != null) {
+      for (int r = from; r < to; r++) {
+        int rowBase = r * numCols;
+        for (int q = 0; q < numQueries; q++) {
+          int queryBase = q * numCols;
+          double sum = 0;
+          for (int k = 0; k < numCols; k++) {
+            sum += dense[rowBase + k] * queries[queryBase + k];
+          }
+          out[q * width + r - from] = sum;
+        }
+      }
+    } else {
+      for (int q = 0; q < numQueries; q++) {
+        int queryBase = q * numCols;
+        for (int r = from; r < to; r++) {
+          double sum = 0;
+          for (int p = rowOffsets[r]; p < rowOffsets[r + 1]; p++) {
+            sum += values[p] * queries[queryBase + columns[p]];
+          }
+          out[q * width + r - from] = sum;
+        }
+      }
+    }
+  }
+}
@@ -80,6 +80,20 @@ public abstract class Searcher implements Iterable<Vector> {
     return results;
   }
 
+  /**
+   * Batch version of {@link #search(Vector, int)}. Searchers that can process queries in blocks or concurrently
+   * override this; by default the queries are searched one by one on the calling thread.
+   *
+   * @param queries the vectors to search for
+   * @param limit the number of results to return per query
+   * @param numThreads the number of threads the searcher may use
+   * @return one list of results per query, in query order
+   */
+  public List<List<WeightedThing<Vector>>> searchBatch(Iterable<? extends Vector> queries, int limit,
+                                                       int numThreads) {
+    return search(queries, limit);
+  }
+
   /**
    * Returns the closest vector to the query.
    * When only one the nearest vector is needed, use this method, NOT search(query, limit) because
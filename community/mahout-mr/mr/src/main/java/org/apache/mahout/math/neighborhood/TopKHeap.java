@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.math.neighborhood;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Bounded max-heap of (id, distance) pairs on primitive arrays that keeps the {@code k} smallest distances offered.
+ * Meant to be reused across queries through {@link #clear()}, so a scan allocates nothing per candidate.
+ */
+public final class TopKHeap {
+  private final int[] ids;
+  private final double[] distances;
+  private int size;
+
+  public TopKHeap(int k) {
+    Preconditions.checkArgument(k > 0, "k must be greater then 0!");
+    ids = new int[k];
+    distances = new double[k];
+  }
+
+  public void clear() {
+    size = 0;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int capacity() {
+    return ids.length;
+  }
+
+  public boolean isFull() {
+    return size == ids.length;
+  }
+
+  /**
+   * @return the largest distance kept if the heap is full, otherwise positive infinity; once the heap is
+   * {@link #isFull() full}, only candidates closer than this can still get in. Callers skipping {@link #offer} on
+   * this bound must still offer every candidate while the heap is not full, infinite or NaN distances included.
+   */
+  public double worst() {
+    return size < ids.length ? Double.POSITIVE_INFINITY : distances[0];
+  }
+
+  /**
+   * Offers a candidate. Distances are ordered like {@link Double#compare}, so NaN ranks after positive infinity.
+   * @return true if the candidate was kept
+   */
+  public boolean offer(int id, double distance) {
+    if (size < ids.length) {
+      int i = size++;
+      // sift up
+      while (i > 0) {
+        int parent = (i - 1) >>> 1;
+        if (Double.compare(distances[parent], distance) >= 0) {
+          break;
+        }
+        ids[i] = ids[parent];
+        distances[i] = distances[parent];
+        i = parent;
+      }
+      ids[i] = id;
+      distances[i] = distance;
+      return true;
+    }
+    if (Double.compare(distance, distances[0]) >= 0) {
+      return false;
+    }
+    siftDown(0, size, id, distance);
+    return true;
+  }
+
+  private void siftDown(int i, int n, int id, double distance) {
+    while (true) {
+      int child = 2 * i + 1;
+      if (child >= n) {
+        break;
+      }
+      if (child + 1 < n && Double.compare(distances[child + 1], distances[child]) > 0) {
+        child++;
+      }
+      if (Double.compare(distances[child], distance) <= 0) {
+        break;
+      }
+      ids[i] = ids[child];
+      distances[i] = distances[child];
+      i = child;
+    }
+    ids[i] = id;
+    distances[i] = distance;
+  }
+
+  /**
+   * Sorts the kept candidates by increasing distance in place (heap sort). After this, {@link #idAt(int)} and
+   * {@link #distanceAt(int)} enumerate them nearest first; the heap must be {@link #clear()}ed before it is offered
+   * candidates again.
+   * @return the number of candidates
+   */
+  public int sort() {
+    for (int n = size - 1; n > 0; n--) {
+      int id = ids[n];
+      double distance = distances[n];
+      ids[n] = ids[0];
+      distances[n] = distances[0];
+      siftDown(0, n, id, distance);
+    }
+    return size;
+  }
+
+  public int idAt(int i) {
+    return ids[i];
+  }
+
+  public double distanceAt(int i) {
+    return distances[i];
+  }
+}
@@ -50,6 +50,11 @@ public class GlobalOnlineAuc implements OnlineAuc {
   // for the FIFO policy
   public static final int HISTORY = 10;
 
+  // Written ahead of the window size, which is never negative, so that the layout without score summaries can
+  // still be read.
+  private static final int VERSION_MARKER = Integer.MIN_VALUE;
+  public static final int WRITABLE_VERSION = 1;
+
   // defines the exponential averaging window for results
   private int windowSize = Integer.MAX_VALUE;
 
@@ -59,6 +64,7 @@ public class GlobalOnlineAuc implements OnlineAuc {
   private Matrix scores;
   private Vector averages;
   private Vector samples;
+  private final OnlineSummarizer[] summaries;
 
   public GlobalOnlineAuc() {
     int numCategories = 2;
@@ -67,6 +73,10 @@ public class GlobalOnlineAuc implements OnlineAuc {
     averages = new DenseVector(numCategories);
     averages.assign(0.5);
     samples = new DenseVector(numCategories);
+    summaries = new OnlineSummarizer[numCategories];
+    for (int i = 0; i < numCategories; i++) {
+      summaries[i] = new OnlineSummarizer();
+    }
   }
 
   @Override
@@ -100,6 +110,7 @@ public class GlobalOnlineAuc implements OnlineAuc {
     }
 
     samples.set(category, n + 1);
+    summaries[category].add(score);
 
     if (samples.minValue() >= 1) {
       // compare to previous scores for other category
@@ -136,6 +147,11 @@ public class GlobalOnlineAuc implements OnlineAuc {
     return auc();
   }
 
+  @Override
+  public OnlineSummarizer scoreSummary(int category) {
+    return summaries[category];
+  }
+
   @Override
   public void setPolicy(ReplacementPolicy policy) {
     this.policy = policy;
@@ -148,21 +164,43 @@ public class GlobalOnlineAuc implements OnlineAuc {
 
   @Override
   public void write(DataOutput out) throws IOException {
+    out.writeInt(VERSION_MARKER);
+    out.writeInt(WRITABLE_VERSION);
     out.writeInt(windowSize);
     out.writeInt(policy.ordinal());
     MatrixWritable.writeMatrix(out, scores);
     VectorWritable.writeVector(out, averages);
     VectorWritable.writeVector(out, samples);
+    for (OnlineSummarizer summary : summaries) {
+      summary.write(out);
+    }
   }
 
   @Override
   public void readFields(DataInput in) throws IOException {
-    windowSize = in.readInt();
+    int first = in.readInt();
+    boolean hasSummaries = first == VERSION_MARKER;
+    if (hasSummaries) {
+      int version = in.readInt();
+      if (version != WRITABLE_VERSION) {
+        throw new IOException("Incorrect object version, wanted " + WRITABLE_VERSION + " got " + version);
+      }
+      windowSize = in.readInt();
+    } else {
+      // written before the score summaries were kept
+      windowSize = first;
+    }
     policy = ReplacementPolicy.values()[in.readInt()];
 
     scores = MatrixWritable.readMatrix(in);
     averages = VectorWritable.readVector(in);
     samples = VectorWritable.readVector(in);
+    for (int i = 0; i < summaries.length; i++) {
+      summaries[i] = new OnlineSummarizer();
+      if (hasSummaries) {
+        summaries[i].readFields(in);
+      }
+    }
   }
 
 }
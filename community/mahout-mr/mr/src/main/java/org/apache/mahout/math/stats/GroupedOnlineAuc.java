@@ -72,6 +72,18 @@ public class GroupedOnlineAuc implements OnlineAuc {
     return sum / map.size();
   }
 
+  /**
+   * @return summary of the scores of the given category over all groups
+   */
+  @Override
+  public OnlineSummarizer scoreSummary(int category) {
+    OnlineSummarizer r = new OnlineSummarizer();
+    for (OnlineAuc auc : map.values()) {
+      r.merge(auc.scoreSummary(category));
+    }
+    return r;
+  }
+
   @Override
   public void setPolicy(GlobalOnlineAuc.ReplacementPolicy policy) {
     this.policy = policy;
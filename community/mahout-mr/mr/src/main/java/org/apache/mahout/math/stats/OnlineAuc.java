@@ -32,6 +32,15 @@ public interface OnlineAuc extends Writable {
 
   double auc();
 
+  /**
+   * @return summary of the scores seen so far for examples of the given category (0 or 1),
+   * including quantiles such as the median or 99th percentile
+   * @throws UnsupportedOperationException if the implementation does not keep score summaries
+   */
+  default OnlineSummarizer scoreSummary(int category) {
+    throw new UnsupportedOperationException(getClass() + " does not keep score summaries");
+  }
+
   void setPolicy(GlobalOnlineAuc.ReplacementPolicy policy);
 
   void setWindowSize(int windowSize);
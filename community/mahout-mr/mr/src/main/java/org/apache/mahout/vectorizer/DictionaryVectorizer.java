@@ -18,10 +18,12 @@
 package org.apache.mahout.vectorizer;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.Lists;
 import com.google.common.io.Closeables;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.filecache.DistributedCache;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.IntWritable;
@@ -43,20 +45,29 @@ import org.apache.mahout.common.StringTuple;
 import org.apache.mahout.common.commandline.DefaultOptionCreator;
 import org.apache.mahout.common.iterator.sequencefile.PathType;
 import org.apache.mahout.common.iterator.sequencefile.SequenceFileDirIterable;
+import org.apache.mahout.common.iterator.sequencefile.SequenceFileIterable;
+import org.apache.mahout.common.iterator.sequencefile.SequenceFileIterator;
 import org.apache.mahout.math.VectorWritable;
 import org.apache.mahout.vectorizer.collocations.llr.CollocDriver;
 import org.apache.mahout.vectorizer.collocations.llr.LLRReducer;
 import org.apache.mahout.vectorizer.common.PartialVectorMerger;
+import org.apache.mahout.vectorizer.term.CompactTermDictionary;
 import org.apache.mahout.vectorizer.term.TFPartialVectorReducer;
+import org.apache.mahout.vectorizer.term.TFVectorMapper;
 import org.apache.mahout.vectorizer.term.TermCountCombiner;
 import org.apache.mahout.vectorizer.term.TermCountMapper;
 import org.apache.mahout.vectorizer.term.TermCountReducer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.PriorityQueue;
 
 /**
  * This class converts a set of input documents in the sequence file format to vectors. The Sequence file
@@ -72,6 +83,10 @@ public final class DictionaryVectorizer extends AbstractJob implements Vectorize
   public static final String MAX_NGRAMS = "max.ngrams";
   public static final int DEFAULT_MIN_SUPPORT = 2;
   public static final String DICTIONARY_FILE = "dictionary.file-";
+  public static final String COMPACT_DICTIONARY_FILE = "dictionary.compact";
+  /** Number of terms of an unsorted part sorted in memory at a time while building the compact dictionary */
+  public static final String SORT_BUFFER_TERMS = "dictionary.sort.buffer.terms";
+  public static final int DEFAULT_SORT_BUFFER_TERMS = 1 << 18;
 
   private static final int MAX_CHUNKSIZE = 10000;
   private static final int MIN_CHUNKSIZE = 100;
@@ -80,6 +95,7 @@ public final class DictionaryVectorizer extends AbstractJob implements Vectorize
   private static final int DICTIONARY_BYTE_OVERHEAD = 4;
   private static final String VECTOR_OUTPUT_FOLDER = "partial-vectors-";
   private static final String DICTIONARY_JOB_FOLDER = "wordcount";
+  private static final String SORTED_RUNS_FOLDER = "dictionary.sorted-runs";
   
   /**
    * Cannot be initialized. Use the static functions
@@ -214,6 +230,279 @@ public final class DictionaryVectorizer extends AbstractJob implements Vectorize
     HadoopUtil.delete(conf, partialVectorPaths);
   }
   
+  /**
+   * Create Term Frequency (Tf) Vectors from the input set of documents in {@link SequenceFile} format in a single
+   * map pass over the documents. The whole dictionary is stored in a compact, memory mapped
+   * {@link CompactTermDictionary} that every mapper looks terms up in, so neither dictionary chunks nor partial
+   * vectors are needed. Produces the same vectors as
+   * {@link #createTermFrequencyVectors(Path, Path, String, Configuration, int, int, float, float, boolean, int, int,
+   * boolean, boolean)} provided document ids are unique. The usual dictionary file is written as well.
+   *
+   * @param input
+   *          input directory of the documents in {@link SequenceFile} format
+   * @param output
+   *          output directory where {@link org.apache.mahout.math.RandomAccessSparseVector}'s of the document
+   *          are generated
+   * @param tfVectorsFolderName
+   *          The name of the folder in which the final output vectors will be stored
+   * @param baseConf
+   *          job configuration
+   * @param minSupport
+   *          the minimum frequency of the feature in the entire corpus to be considered for inclusion in the
+   *          sparse vector
+   * @param maxNGramSize
+   *          1 = unigram, 2 = unigram and bigram, 3 = unigram, bigram and trigram
+   * @param minLLRValue
+   *          minValue of log likelihood ratio to used to prune ngrams
+   * @param normPower
+   *          L_p norm to be computed
+   * @param logNormalize
+   *          whether to use log normalization
+   * @param numReducers
+   *          the desired number of reducer tasks of the ngram generation
+   * @param sequentialAccess
+   *          output vectors should be optimized for sequential access
+   * @param namedVectors
+   *          output vectors should be named, retaining key (doc id) as a label
+   */
+  public static void createTermFrequencyVectorsInOnePass(Path input,
+                                                         Path output,
+                                                         String tfVectorsFolderName,
+                                                         Configuration baseConf,
+                                                         int minSupport,
+                                                         int maxNGramSize,
+                                                         float minLLRValue,
+                                                         float normPower,
+                                                         boolean logNormalize,
+                                                         int numReducers,
+                                                         boolean sequentialAccess,
+                                                         boolean namedVectors)
+    throws IOException, InterruptedException, ClassNotFoundException {
+    Preconditions.checkArgument(normPower == PartialVectorMerger.NO_NORMALIZING || normPower >= 0,
+        "If specified normPower must be nonnegative", normPower);
+    Preconditions.checkArgument(normPower == PartialVectorMerger.NO_NORMALIZING
+                                || (normPower > 1 && !Double.isInfinite(normPower))
+                                || !logNormalize,
+        "normPower must be > 1 and not infinite if log normalization is chosen", normPower);
+    if (minSupport < 0) {
+      minSupport = DEFAULT_MIN_SUPPORT;
+    }
+
+    Path dictionaryJobPath = new Path(output, DICTIONARY_JOB_FOLDER);
+
+    log.info("Creating dictionary from {} and saving at {}", input, dictionaryJobPath);
+
+    int[] maxTermDimension = new int[1];
+    Path dictionaryPath;
+    if (maxNGramSize == 1) {
+      startWordCounting(input, dictionaryJobPath, baseConf, minSupport);
+      dictionaryPath = createCompactDictionary(dictionaryJobPath, output, baseConf, maxTermDimension);
+    } else {
+      CollocDriver.generateAllGrams(input, dictionaryJobPath, baseConf, maxNGramSize,
+        minSupport, minLLRValue, numReducers);
+      dictionaryPath = createCompactDictionary(new Path(dictionaryJobPath, CollocDriver.NGRAM_OUTPUT_DIRECTORY),
+                                               output,
+                                               baseConf,
+                                               maxTermDimension);
+    }
+
+    makeVectors(input, baseConf, maxNGramSize, dictionaryPath, new Path(output, tfVectorsFolderName),
+      maxTermDimension[0], normPower, logNormalize, sequentialAccess, namedVectors);
+  }
+
+  /**
+   * Read the feature frequency List which is built at the end of the Word Count Job and write it as a single
+   * dictionary file and as a {@link CompactTermDictionary}. Ids are the same as the ones assigned by
+   * {@link #createDictionaryChunks}, the position of the term in the concatenation of the parts. The compact
+   * dictionary needs the terms in byte order, which is obtained by a k-way merge of sorted runs. Word count parts
+   * are already sorted that way and are merged as they are. Ngram parts are sorted by
+   * {@link org.apache.mahout.vectorizer.collocations.llr.Gram}; they are sorted in chunks of
+   * {@link #SORT_BUFFER_TERMS} terms, each spilled to a temporary run file, so memory use does not grow with the
+   * number of ngrams.
+   */
+  private static Path createCompactDictionary(Path wordCountPath,
+                                              Path dictionaryPathBase,
+                                              Configuration baseConf,
+                                              int[] maxTermDimension) throws IOException {
+    Configuration conf = new Configuration(baseConf);
+
+    FileSystem fs = FileSystem.get(dictionaryPathBase.toUri(), conf);
+    FileStatus[] parts = HadoopUtil.getFileStatus(new Path(wordCountPath, OUTPUT_FILES_PATTERN),
+                                                  PathType.GLOB, null, null, conf);
+
+    // id of the first term of each part
+    int[] partOffsets = new int[parts.length];
+    boolean[] sortedParts = new boolean[parts.length];
+    Path dictionaryPath = new Path(dictionaryPathBase, DICTIONARY_FILE + 0);
+    SequenceFile.Writer dictWriter = new SequenceFile.Writer(fs, conf, dictionaryPath, Text.class, IntWritable.class);
+    int i = 0;
+    try {
+      for (int part = 0; part < parts.length; part++) {
+        partOffsets[part] = i;
+        sortedParts[part] = true;
+        Text previous = null;
+        for (Pair<Text,Writable> record : new SequenceFileIterable<Text,Writable>(parts[part].getPath(), false, conf)) {
+          Text term = record.getFirst();
+          if (previous != null && previous.compareTo(term) >= 0) {
+            sortedParts[part] = false;
+          }
+          previous = term;
+          dictWriter.append(term, new IntWritable(i++));
+        }
+      }
+      maxTermDimension[0] = i;
+    } finally {
+      Closeables.close(dictWriter, false);
+    }
+
+    Path compactDictionaryPath = new Path(dictionaryPathBase, COMPACT_DICTIONARY_FILE);
+    Path sortedRunsPath = new Path(dictionaryPathBase, SORTED_RUNS_FOLDER);
+    int sortBufferTerms = conf.getInt(SORT_BUFFER_TERMS, DEFAULT_SORT_BUFFER_TERMS);
+    Preconditions.checkArgument(sortBufferTerms > 0, "Invalid " + SORT_BUFFER_TERMS + ": " + sortBufferTerms);
+    List<Iterator<DictionaryEntry>> runs = Lists.newArrayList();
+    List<SequenceFileIterator<Text,Writable>> iterators = Lists.newArrayList();
+    CompactTermDictionary.Writer writer =
+        new CompactTermDictionary.Writer(new BufferedOutputStream(fs.create(compactDictionaryPath, true)));
+    try {
+      for (int part = 0; part < parts.length; part++) {
+        if (sortedParts[part]) {
+          SequenceFileIterator<Text,Writable> iterator =
+              new SequenceFileIterator<>(parts[part].getPath(), false, conf);
+          iterators.add(iterator);
+          runs.add(new DictionaryRun(iterator, partOffsets[part], runs.size()));
+        } else {
+          for (Path runPath : spillSortedRuns(parts[part].getPath(), partOffsets[part], sortBufferTerms,
+                                              new Path(sortedRunsPath, String.valueOf(part)), fs, conf)) {
+            SequenceFileIterator<Text,Writable> iterator = new SequenceFileIterator<>(runPath, false, conf);
+            iterators.add(iterator);
+            runs.add(new DictionaryRun(iterator, -1, runs.size()));
+          }
+        }
+      }
+      PriorityQueue<DictionaryEntry> queue = new PriorityQueue<>(Math.max(1, runs.size()));
+      for (Iterator<DictionaryEntry> run : runs) {
+        if (run.hasNext()) {
+          queue.add(run.next());
+        }
+      }
+      DictionaryEntry last = null;
+      while (!queue.isEmpty()) {
+        DictionaryEntry entry = queue.poll();
+        Iterator<DictionaryEntry> run = runs.get(entry.run);
+        if (run.hasNext()) {
+          queue.add(run.next());
+        }
+        if (last != null && last.compareTo(entry) != 0) {
+          writer.add(Arrays.copyOf(last.term.getBytes(), last.term.getLength()), last.id);
+        }
+        // like the in memory dictionary of the chunks, the last id of a term found twice wins
+        if (last == null || last.compareTo(entry) != 0 || last.id < entry.id) {
+          last = entry;
+        }
+      }
+      if (last != null) {
+        writer.add(Arrays.copyOf(last.term.getBytes(), last.term.getLength()), last.id);
+      }
+    } finally {
+      for (SequenceFileIterator<Text,Writable> iterator : iterators) {
+        Closeables.close(iterator, true);
+      }
+      Closeables.close(writer, false);
+      HadoopUtil.delete(conf, sortedRunsPath);
+    }
+
+    return compactDictionaryPath;
+  }
+
+  /**
+   * Sort the terms of a part in chunks of {@code sortBufferTerms} and write each chunk as a run of term and id
+   * pairs.
+   *
+   * @return the run files, in the order of the part
+   */
+  private static List<Path> spillSortedRuns(Path part,
+                                            int firstId,
+                                            int sortBufferTerms,
+                                            Path runsPath,
+                                            FileSystem fs,
+                                            Configuration conf) throws IOException {
+    List<Path> runPaths = Lists.newArrayList();
+    List<DictionaryEntry> buffer = Lists.newArrayList();
+    int id = firstId;
+    for (Pair<Text,Writable> record : new SequenceFileIterable<Text,Writable>(part, false, conf)) {
+      buffer.add(new DictionaryEntry(record.getFirst(), id++, 0));
+      if (buffer.size() == sortBufferTerms) {
+        runPaths.add(writeSortedRun(buffer, new Path(runsPath, String.valueOf(runPaths.size())), fs, conf));
+        buffer.clear();
+      }
+    }
+    if (!buffer.isEmpty()) {
+      runPaths.add(writeSortedRun(buffer, new Path(runsPath, String.valueOf(runPaths.size())), fs, conf));
+    }
+    return runPaths;
+  }
+
+  private static Path writeSortedRun(List<DictionaryEntry> entries, Path runPath, FileSystem fs, Configuration conf)
+    throws IOException {
+    Collections.sort(entries);
+    SequenceFile.Writer runWriter = new SequenceFile.Writer(fs, conf, runPath, Text.class, IntWritable.class);
+    try {
+      IntWritable id = new IntWritable();
+      for (DictionaryEntry entry : entries) {
+        id.set(entry.id);
+        runWriter.append(entry.term, id);
+      }
+    } finally {
+      Closeables.close(runWriter, false);
+    }
+    return runPath;
+  }
+
+  private static final class DictionaryEntry implements Comparable<DictionaryEntry> {
+
+    private final Text term;
+    private final int id;
+    private final int run;
+
+    private DictionaryEntry(Text term, int id, int run) {
+      this.term = term;
+      this.id = id;
+      this.run = run;
+    }
+
+    @Override
+    public int compareTo(DictionaryEntry other) {
+      return term.compareTo(other.term);
+    }
+  }
+
+  /**
+   * Terms of a sorted run along with their ids, in the order of the run. Ids either count up from the id of the
+   * first term of a word count part, or, if that is negative, are the values of a spilled run.
+   */
+  private static final class DictionaryRun extends AbstractIterator<DictionaryEntry> {
+
+    private final Iterator<Pair<Text,Writable>> records;
+    private final int run;
+    private int nextId;
+
+    private DictionaryRun(Iterator<Pair<Text,Writable>> records, int firstId, int run) {
+      this.records = records;
+      this.nextId = firstId;
+      this.run = run;
+    }
+
+    @Override
+    protected DictionaryEntry computeNext() {
+      if (!records.hasNext()) {
+        return endOfData();
+      }
+      Pair<Text,Writable> record = records.next();
+      int id = nextId < 0 ? ((IntWritable) record.getSecond()).get() : nextId++;
+      return new DictionaryEntry(record.getFirst(), id, run);
+    }
+  }
+
   /**
    * Read the feature frequency List which is built at the end of the Word Count Job and assign ids to them.
    * This will use constant memory and will run at the speed of your disk read
@@ -336,6 +625,58 @@ public final class DictionaryVectorizer extends AbstractJob implements Vectorize
     }
   }
   
+  /**
+   * Create the final term frequency vectors of the input documents with a map only job, using a
+   * {@link CompactTermDictionary} holding all the features.
+   */
+  private static void makeVectors(Path input,
+                                  Configuration baseConf,
+                                  int maxNGramSize,
+                                  Path dictionaryFilePath,
+                                  Path output,
+                                  int dimension,
+                                  float normPower,
+                                  boolean logNormalize,
+                                  boolean sequentialAccess,
+                                  boolean namedVectors)
+    throws IOException, InterruptedException, ClassNotFoundException {
+
+    Configuration conf = new Configuration(baseConf);
+    // this conf parameter needs to be set enable serialisation of conf values
+    conf.set("io.serializations", "org.apache.hadoop.io.serializer.JavaSerialization,"
+                                  + "org.apache.hadoop.io.serializer.WritableSerialization");
+    conf.setInt(PartialVectorMerger.DIMENSION, dimension);
+    conf.setFloat(PartialVectorMerger.NORMALIZATION_POWER, normPower);
+    conf.setBoolean(PartialVectorMerger.LOG_NORMALIZE, logNormalize);
+    conf.setBoolean(PartialVectorMerger.SEQUENTIAL_ACCESS, sequentialAccess);
+    conf.setBoolean(PartialVectorMerger.NAMED_VECTOR, namedVectors);
+    conf.setInt(MAX_NGRAMS, maxNGramSize);
+    DistributedCache.addCacheFile(dictionaryFilePath.toUri(), conf);
+
+    Job job = new Job(conf);
+    job.setJobName("DictionaryVectorizer::MakeVectors: input-folder: " + input
+                    + ", dictionary-file: " + dictionaryFilePath);
+    job.setJarByClass(DictionaryVectorizer.class);
+
+    job.setOutputKeyClass(Text.class);
+    job.setOutputValueClass(VectorWritable.class);
+    FileInputFormat.setInputPaths(job, input);
+
+    FileOutputFormat.setOutputPath(job, output);
+
+    job.setMapperClass(TFVectorMapper.class);
+    job.setInputFormatClass(SequenceFileInputFormat.class);
+    job.setNumReduceTasks(0);
+    job.setOutputFormatClass(SequenceFileOutputFormat.class);
+
+    HadoopUtil.delete(conf, output);
+
+    boolean succeeded = job.waitForCompletion(true);
+    if (!succeeded) {
+      throw new IllegalStateException("Job failed!");
+    }
+  }
+
   /**
    * Count the frequencies of words in parallel using Map/Reduce. The input documents have to be in
    * {@link SequenceFile} format
@@ -395,6 +736,8 @@ public final class DictionaryVectorizer extends AbstractJob implements Vectorize
     addOption(DefaultOptionCreator.methodOption().create());
     addOption("namedVector", "nv", "(Optional) Whether output vectors should be NamedVectors. "
         + "If set true else false", "false");
+    addFlag("singlePass", "sp", "(Optional) Create the vectors in a single map pass using a compact dictionary "
+        + "of all the features instead of dictionary chunks");
     if (parseArguments(args) == null) {
       return -1;
     }
@@ -409,10 +752,17 @@ public final class DictionaryVectorizer extends AbstractJob implements Vectorize
     boolean sequential = hasOption("sequential");
     boolean namedVecs = hasOption("namedVectors");
     //TODO: add support for other paths
-    createTermFrequencyVectors(getInputPath(), getOutputPath(),
-            tfDirName,
-            getConf(), minSupport, maxNGramSize, minLLRValue,
-            normPower, logNormalize, numReducers, chunkSizeInMegs, sequential, namedVecs);
+    if (hasOption("singlePass")) {
+      createTermFrequencyVectorsInOnePass(getInputPath(), getOutputPath(),
+              tfDirName,
+              getConf(), minSupport, maxNGramSize, minLLRValue,
+              normPower, logNormalize, numReducers, sequential, namedVecs);
+    } else {
+      createTermFrequencyVectors(getInputPath(), getOutputPath(),
+              tfDirName,
+              getConf(), minSupport, maxNGramSize, minLLRValue,
+              normPower, logNormalize, numReducers, chunkSizeInMegs, sequential, namedVecs);
+    }
     return 0;
   }
 
@@ -0,0 +1,640 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.vectorizer;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.io.Closeables;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.mahout.common.HadoopUtil;
+import org.apache.mahout.common.Pair;
+import org.apache.mahout.common.lucene.AnalyzerUtils;
+import org.apache.mahout.common.iterator.sequencefile.PathFilters;
+import org.apache.mahout.common.iterator.sequencefile.PathType;
+import org.apache.mahout.common.iterator.sequencefile.SequenceFileDirIterator;
+import org.apache.mahout.math.NamedVector;
+import org.apache.mahout.math.RandomAccessSparseVector;
+import org.apache.mahout.math.SequentialAccessSparseVector;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.VectorWritable;
+import org.apache.mahout.math.function.Functions;
+import org.apache.mahout.math.function.ObjectLongProcedure;
+import org.apache.mahout.math.hadoop.stats.VarianceTotals;
+import org.apache.mahout.math.map.OpenObjectIntHashMap;
+import org.apache.mahout.math.map.OpenObjectLongHashMap;
+import org.apache.mahout.vectorizer.common.PartialVectorMerger;
+import org.apache.mahout.vectorizer.tfidf.TFIDFConverter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the {@link SparseVectorsFromSequenceFiles} pipeline (tokenization, dictionary, term frequency vectors,
+ * pruning of high document frequency terms and tf-idf vectors) inside the JVM on all cores, for corpora that do not
+ * need a cluster. Documents are streamed from the input in batches that are processed in parallel. Every pass over
+ * the corpus tokenizes the documents again instead of writing intermediate files, only the dictionary, the document
+ * frequencies and the tf and tf-idf vectors are written.
+ * <p/>
+ * Vectors are the same as the ones of the map/reduce pipeline: terms get the same ids and every vector goes through
+ * the same steps, including the serialization between jobs which decides the order sparse vectors are iterated in
+ * and so the rounding of their norms. Document ids have to be unique, only unigrams are supported and vectors are
+ * written in the order of the input instead of being sorted by document id.
+ */
+public final class InProcessVectorizer implements Vectorizer {
+
+  private static final Logger log = LoggerFactory.getLogger(InProcessVectorizer.class);
+
+  private static final int BATCH_SIZE = 128;
+  private static final String PART_FILE = "part-r-00000";
+  private static final String TFIDF_OUTPUT_FOLDER = "tfidf-vectors";
+
+  private final int numThreads;
+
+  public InProcessVectorizer() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  public InProcessVectorizer(int numThreads) {
+    Preconditions.checkArgument(numThreads > 0, "numThreads must be greater then 0!");
+    this.numThreads = numThreads;
+  }
+
+  /**
+   * Creates the term frequency vectors of the documents, like {@link DocumentProcessor#tokenizeDocuments} followed
+   * by {@link DictionaryVectorizer#createVectors}.
+   */
+  @Override
+  public void createVectors(Path input, Path output, VectorizerConfig config)
+    throws IOException, ClassNotFoundException {
+    Preconditions.checkArgument(config.getMaxNGramSize() <= 1, "Only unigrams are supported");
+    String analyzerClassName = config.getAnalyzerClassName() == null
+        ? StandardAnalyzer.class.getName()
+        : config.getAnalyzerClassName();
+    createVectors(input,
+                  output,
+                  config.getConf(),
+                  Class.forName(analyzerClassName).asSubclass(Analyzer.class),
+                  config.getTfDirName(),
+                  config.getMinSupport(),
+                  config.getNormPower(),
+                  config.isLogNormalize(),
+                  false,
+                  1,
+                  -1,
+                  -1.0,
+                  config.isSequentialAccess(),
+                  config.isNamedVectors());
+  }
+
+  /**
+   * Creates the vectors of the documents like {@link SparseVectorsFromSequenceFiles} does with the same options.
+   *
+   * @param input
+   *          input directory of the documents, {@link SequenceFile}s of {@link Text} keys and values
+   * @param output
+   *          output directory
+   * @param analyzerClass
+   *          The Lucene {@link Analyzer} for tokenizing the text
+   * @param tfVectorsFolderName
+   *          The name of the folder in which the term frequency vectors will be stored
+   * @param minSupport
+   *          the minimum frequency of the feature in the entire corpus to be considered for inclusion in the
+   *          sparse vector
+   * @param normPower
+   *          L_p norm to be computed
+   * @param logNormalize
+   *          whether to use log normalization
+   * @param processIdf
+   *          whether to create tf-idf vectors
+   * @param minDf
+   *          The minimum document frequency
+   * @param maxDFPercent
+   *          The max percentage of vectors for the DF
+   * @param maxDFSigma
+   *          if positive, the number of standard deviations of the document frequencies above which terms are
+   *          pruned
+   * @param sequentialAccess
+   *          output vectors should be optimized for sequential access
+   * @param namedVectors
+   *          output vectors should be named, retaining key (doc id) as a label
+   */
+  public void createVectors(Path input,
+                            Path output,
+                            Configuration conf,
+                            Class<? extends Analyzer> analyzerClass,
+                            String tfVectorsFolderName,
+                            int minSupport,
+                            float normPower,
+                            boolean logNormalize,
+                            boolean processIdf,
+                            int minDf,
+                            int maxDFPercent,
+                            double maxDFSigma,
+                            boolean sequentialAccess,
+                            boolean namedVectors) throws IOException {
+    Preconditions.checkArgument(normPower == PartialVectorMerger.NO_NORMALIZING || normPower >= 0,
+        "If specified normPower must be nonnegative", normPower);
+    Preconditions.checkArgument(normPower == PartialVectorMerger.NO_NORMALIZING
+                                || (normPower > 1 && !Double.isInfinite(normPower))
+                                || !logNormalize,
+        "normPower must be > 1 and not infinite if log normalization is chosen", normPower);
+
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      Pipeline pipeline = new Pipeline(input, output, conf, AnalyzerUtils.createAnalyzer(analyzerClass), executor);
+      pipeline.minSupport = minSupport < 0 ? DictionaryVectorizer.DEFAULT_MIN_SUPPORT : minSupport;
+      pipeline.sequentialAccess = sequentialAccess;
+      pipeline.namedVectors = namedVectors;
+      pipeline.run(tfVectorsFolderName, normPower, logNormalize, processIdf, minDf, maxDFPercent, maxDFSigma);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Work done on each batch of documents: {@link #process} in parallel, {@link #consume} in the order of the input.
+   */
+  private interface BatchTask<T> {
+
+    T process(List<Pair<Text,Text>> documents) throws IOException;
+
+    void consume(T result) throws IOException;
+  }
+
+  /**
+   * State of a single run.
+   */
+  private final class Pipeline {
+
+    private final Path input;
+    private final Path output;
+    private final Configuration conf;
+    private final Analyzer analyzer;
+    private final ExecutorService executor;
+    private final TFIDF weight = new TFIDF();
+
+    private int minSupport;
+    private boolean sequentialAccess;
+    private boolean namedVectors;
+
+    private OpenObjectIntHashMap<String> dictionary;
+    private int dimension;
+    private long[] documentFrequencies;
+    private long featureCount;
+    private long vectorCount;
+
+    private Pipeline(Path input, Path output, Configuration conf, Analyzer analyzer, ExecutorService executor) {
+      this.input = input;
+      this.output = output;
+      this.conf = conf;
+      this.analyzer = analyzer;
+      this.executor = executor;
+    }
+
+    void run(String tfVectorsFolderName,
+             final float normPower,
+             final boolean logNormalize,
+             final boolean processIdf,
+             final int minDf,
+             int maxDFPercent,
+             double maxDFSigma) throws IOException {
+      log.info("Creating dictionary from {}", input);
+      createDictionary();
+
+      final boolean shouldPrune = maxDFSigma >= 0.0 || maxDFPercent > 0.00;
+      final float tfNormPower = processIdf ? PartialVectorMerger.NO_NORMALIZING : normPower;
+      final boolean tfLogNormalize = !processIdf && logNormalize;
+      final Path tfDir = new Path(output, tfVectorsFolderName);
+
+      log.info("Creating Term Frequency Vectors");
+      final SequenceFile.Writer tfWriter = shouldPrune ? null : createWriter(tfDir);
+      documentFrequencies = new long[dimension];
+      try {
+        forEachBatch(new BatchTask<List<Pair<Text,Vector>>>() {
+          @Override
+          public List<Pair<Text,Vector>> process(List<Pair<Text,Text>> documents) throws IOException {
+            List<Pair<Text,Vector>> vectors = Lists.newArrayListWithCapacity(documents.size());
+            for (Pair<Text,Text> document : documents) {
+              Vector vector = termFrequencies(document.getFirst(), document.getSecond(), tfNormPower, tfLogNormalize);
+              if (vector != null) {
+                vectors.add(new Pair<>(document.getFirst(), vector));
+              }
+            }
+            return vectors;
+          }
+
+          @Override
+          public void consume(List<Pair<Text,Vector>> vectors) throws IOException {
+            for (Pair<Text,Vector> vector : vectors) {
+              if (tfWriter != null) {
+                tfWriter.append(vector.getFirst(), new VectorWritable(vector.getSecond()));
+              }
+              for (Vector.Element e : vector.getSecond().nonZeroes()) {
+                documentFrequencies[e.index()]++;
+              }
+              vectorCount++;
+            }
+          }
+        });
+      } finally {
+        Closeables.close(tfWriter, false);
+      }
+
+      if (!shouldPrune && !processIdf) {
+        return;
+      }
+
+      log.info("Calculating IDF");
+      writeDocumentFrequencies();
+
+      long maxDF = maxDFPercent;
+      final long maxDFThreshold;
+      if (shouldPrune) {
+        if (maxDFSigma >= 0.0) {
+          VarianceTotals totals = new VarianceTotals();
+          double sum = 0;
+          double sumOfSquares = 0;
+          double totalCount = 0;
+          for (long df : documentFrequencies) {
+            if (df > 0) {
+              sum += df;
+              sumOfSquares += (double) df * df;
+              totalCount++;
+            }
+          }
+          totals.setSum(sum);
+          totals.setSumOfSquares(sumOfSquares);
+          totals.setTotalCount(totalCount);
+          double stdDev = Math.sqrt(totals.computeVarianceForGivenMean(0.0));
+          maxDF = (int) (100.0 * maxDFSigma * stdDev / vectorCount);
+        }
+        maxDFThreshold = (long) (vectorCount * (maxDF / 100.0f));
+      } else {
+        maxDFThreshold = Long.MAX_VALUE;
+      }
+      final long maxDf = maxDF;
+
+      if (shouldPrune) {
+        log.info("Pruning");
+      }
+      if (processIdf) {
+        log.info("Creating TF-IDF Vectors");
+      }
+      final SequenceFile.Writer prunedWriter = shouldPrune ? createWriter(tfDir) : null;
+      final SequenceFile.Writer tfidfWriter = processIdf ? createWriter(new Path(output, TFIDF_OUTPUT_FOLDER)) : null;
+      try {
+        forEachBatch(new BatchTask<List<Pair<Text,Vector[]>>>() {
+          @Override
+          public List<Pair<Text,Vector[]>> process(List<Pair<Text,Text>> documents) throws IOException {
+            List<Pair<Text,Vector[]>> vectors = Lists.newArrayListWithCapacity(documents.size());
+            for (Pair<Text,Text> document : documents) {
+              Text key = document.getFirst();
+              Vector tf = termFrequencies(key, document.getSecond(), tfNormPower, tfLogNormalize);
+              if (tf == null) {
+                continue;
+              }
+              if (shouldPrune) {
+                tf = prune(tf, maxDFThreshold, minDf, tfNormPower, tfLogNormalize);
+              }
+              Vector tfidf = processIdf ? tfidf(key, tf, minDf, maxDf, normPower, logNormalize) : null;
+              vectors.add(new Pair<>(key, new Vector[] {tf, tfidf}));
+            }
+            return vectors;
+          }
+
+          @Override
+          public void consume(List<Pair<Text,Vector[]>> vectors) throws IOException {
+            for (Pair<Text,Vector[]> vector : vectors) {
+              if (prunedWriter != null) {
+                prunedWriter.append(vector.getFirst(), new VectorWritable(vector.getSecond()[0]));
+              }
+              if (tfidfWriter != null && vector.getSecond()[1] != null) {
+                tfidfWriter.append(vector.getFirst(), new VectorWritable(vector.getSecond()[1]));
+              }
+            }
+          }
+        });
+      } finally {
+        Closeables.close(prunedWriter, false);
+        Closeables.close(tfidfWriter, false);
+      }
+    }
+
+    /**
+     * Counts the terms of the corpus and assigns ids to the ones reaching the minimum support in the order the word
+     * count job outputs them: by reducer, then by term.
+     */
+    private void createDictionary() throws IOException {
+      final Queue<OpenObjectLongHashMap<String>> counters = new ConcurrentLinkedQueue<>();
+      forEachBatch(new BatchTask<Void>() {
+        @Override
+        public Void process(List<Pair<Text,Text>> documents) throws IOException {
+          OpenObjectLongHashMap<String> counter = counters.poll();
+          if (counter == null) {
+            counter = new OpenObjectLongHashMap<>();
+          }
+          for (Pair<Text,Text> document : documents) {
+            for (String term : tokenize(document.getFirst(), document.getSecond())) {
+              counter.adjustOrPutValue(term, 1, 1);
+            }
+          }
+          counters.add(counter);
+          return null;
+        }
+
+        @Override
+        public void consume(Void result) {
+        }
+      });
+
+      final OpenObjectLongHashMap<String> termCounts = new OpenObjectLongHashMap<>();
+      for (OpenObjectLongHashMap<String> counter : counters) {
+        counter.forEachPair(new ObjectLongProcedure<String>() {
+          @Override
+          public boolean apply(String term, long count) {
+            termCounts.adjustOrPutValue(term, count, count);
+            return true;
+          }
+        });
+      }
+
+      final List<Text> terms = Lists.newArrayList();
+      termCounts.forEachPair(new ObjectLongProcedure<String>() {
+        @Override
+        public boolean apply(String term, long count) {
+          if (count >= minSupport) {
+            terms.add(new Text(term));
+          }
+          return true;
+        }
+      });
+      final int numReducers = Math.max(1, conf.getInt("mapreduce.job.reduces", 1));
+      Collections.sort(terms, new Comparator<Text>() {
+        @Override
+        public int compare(Text a, Text b) {
+          int partitionA = (a.hashCode() & Integer.MAX_VALUE) % numReducers;
+          int partitionB = (b.hashCode() & Integer.MAX_VALUE) % numReducers;
+          return partitionA != partitionB ? Integer.compare(partitionA, partitionB) : a.compareTo(b);
+        }
+      });
+
+      dictionary = new OpenObjectIntHashMap<>(terms.size());
+      Path dictionaryPath = new Path(output, DictionaryVectorizer.DICTIONARY_FILE + 0);
+      FileSystem fs = FileSystem.get(dictionaryPath.toUri(), conf);
+      SequenceFile.Writer writer = new SequenceFile.Writer(fs, conf, dictionaryPath, Text.class, IntWritable.class);
+      try {
+        for (int id = 0; id < terms.size(); id++) {
+          dictionary.put(terms.get(id).toString(), id);
+          writer.append(terms.get(id), new IntWritable(id));
+        }
+      } finally {
+        Closeables.close(writer, false);
+      }
+      dimension = terms.size();
+    }
+
+    /**
+     * Writes the document frequencies like {@link TFIDFConverter#calculateDF} and computes the feature and vector
+     * counts the same way.
+     */
+    private void writeDocumentFrequencies() throws IOException {
+      Path frequencyPath = new Path(output, TFIDFConverter.FREQUENCY_FILE + 0);
+      FileSystem fs = FileSystem.get(frequencyPath.toUri(), conf);
+      SequenceFile.Writer writer =
+          new SequenceFile.Writer(fs, conf, frequencyPath, IntWritable.class, LongWritable.class);
+      long maxFeature = 0;
+      try {
+        for (int feature = 0; feature < documentFrequencies.length; feature++) {
+          if (documentFrequencies[feature] > 0) {
+            writer.append(new IntWritable(feature), new LongWritable(documentFrequencies[feature]));
+            maxFeature = feature;
+          }
+        }
+      } finally {
+        Closeables.close(writer, false);
+      }
+      featureCount = maxFeature + 1;
+      if (vectorCount == 0) {
+        vectorCount = Long.MAX_VALUE;
+      }
+    }
+
+    /**
+     * @return the term frequency vector of the document as created by {@link DictionaryVectorizer}, null if it has
+     *         no term of the dictionary
+     */
+    private Vector termFrequencies(Text key, Text document, float normPower, boolean logNormalize)
+      throws IOException {
+      List<String> terms = tokenize(key, document);
+      // TFPartialVectorReducer
+      Vector vector = new RandomAccessSparseVector(dimension, terms.size());
+      for (String term : terms) {
+        if (!term.isEmpty() && dictionary.containsKey(term)) {
+          int termId = dictionary.get(term);
+          vector.setQuick(termId, vector.getQuick(termId) + 1);
+        }
+      }
+      if (sequentialAccess) {
+        vector = new SequentialAccessSparseVector(vector);
+      }
+      if (namedVectors) {
+        vector = new NamedVector(vector, key.toString());
+      }
+      if (vector.getNumNondefaultElements() == 0) {
+        return null;
+      }
+      return mergePartialVector(key, betweenJobs(vector), dimension, normPower, logNormalize);
+    }
+
+    /**
+     * @return the term frequency vector pruned as done by {@link HighDFWordsPruner}
+     */
+    private Vector prune(Vector tf, long maxDf, long minDf, float normPower, boolean logNormalize)
+      throws IOException {
+      // WordsPrunerReducer
+      Vector value = betweenJobs(tf);
+      Vector vector = value.clone();
+      for (Vector.Element e : value.nonZeroes()) {
+        long df = documentFrequencies[e.index()];
+        if (df == 0 || df > maxDf || df < minDf) {
+          vector.setQuick(e.index(), 0.0);
+        }
+      }
+      // PrunedPartialVectorMergeReducer
+      vector = betweenJobs(vector).clone();
+      if (normPower != PartialVectorMerger.NO_NORMALIZING) {
+        vector = logNormalize ? vector.logNormalize(normPower) : vector.normalize(normPower);
+      }
+      return vector;
+    }
+
+    /**
+     * @return the tf-idf vector as created by {@link TFIDFConverter#processTfIdf}, null if it is empty
+     */
+    private Vector tfidf(Text key, Vector tf, int minDf, long maxDf, float normPower, boolean logNormalize)
+      throws IOException {
+      // TFIDFPartialVectorReducer
+      Vector value = betweenJobs(tf);
+      Vector vector = new RandomAccessSparseVector((int) featureCount, value.getNumNondefaultElements());
+      for (Vector.Element e : value.nonZeroes()) {
+        long df = e.index() < documentFrequencies.length ? documentFrequencies[e.index()] : 0;
+        if (df == 0) {
+          continue;
+        }
+        if (maxDf > -1 && (100.0 * df) / vectorCount > maxDf) {
+          continue;
+        }
+        if (df < minDf) {
+          df = minDf;
+        }
+        vector.setQuick(e.index(), weight.calculate((int) e.get(), (int) df, (int) featureCount, (int) vectorCount));
+      }
+      if (sequentialAccess) {
+        vector = new SequentialAccessSparseVector(vector);
+      }
+      if (namedVectors) {
+        vector = new NamedVector(vector, key.toString());
+      }
+      return mergePartialVector(key, betweenJobs(vector), (int) featureCount, normPower, logNormalize);
+    }
+
+    /**
+     * @return the vector as output by {@link org.apache.mahout.vectorizer.common.PartialVectorMergeReducer} for a
+     *         single partial vector, null if it is empty
+     */
+    private Vector mergePartialVector(Text key, Vector partial, int dimension, float normPower, boolean logNormalize) {
+      Vector vector = new RandomAccessSparseVector(dimension, 10);
+      vector.assign(partial, Functions.PLUS);
+      if (normPower != PartialVectorMerger.NO_NORMALIZING) {
+        vector = logNormalize ? vector.logNormalize(normPower) : vector.normalize(normPower);
+      }
+      if (sequentialAccess) {
+        vector = new SequentialAccessSparseVector(vector);
+      }
+      if (namedVectors) {
+        vector = new NamedVector(vector, key.toString());
+      }
+      return vector.getNumNondefaultElements() > 0 ? vector : null;
+    }
+
+    private List<String> tokenize(Text key, Text document) throws IOException {
+      // SequenceFileTokenizerMapper
+      TokenStream stream = analyzer.tokenStream(key.toString(), new StringReader(document.toString()));
+      CharTermAttribute termAtt = stream.addAttribute(CharTermAttribute.class);
+      stream.reset();
+      List<String> terms = Lists.newArrayList();
+      while (stream.incrementToken()) {
+        if (termAtt.length() > 0) {
+          terms.add(new String(termAtt.buffer(), 0, termAtt.length()));
+        }
+      }
+      stream.end();
+      Closeables.close(stream, true);
+      return terms;
+    }
+
+    private SequenceFile.Writer createWriter(Path dir) throws IOException {
+      HadoopUtil.delete(conf, dir);
+      Path path = new Path(dir, PART_FILE);
+      FileSystem fs = FileSystem.get(path.toUri(), conf);
+      return new SequenceFile.Writer(fs, conf, path, Text.class, VectorWritable.class);
+    }
+
+    /**
+     * Streams the documents through the task, keeping a bounded number of batches in flight.
+     */
+    private <T> void forEachBatch(final BatchTask<T> task) throws IOException {
+      Deque<Future<T>> pending = new ArrayDeque<>();
+      SequenceFileDirIterator<Text,Text> documents =
+          new SequenceFileDirIterator<>(input, PathType.LIST, PathFilters.logsCRCFilter(), null, false, conf);
+      try {
+        while (documents.hasNext()) {
+          final List<Pair<Text,Text>> batch = Lists.newArrayListWithCapacity(BATCH_SIZE);
+          while (batch.size() < BATCH_SIZE && documents.hasNext()) {
+            batch.add(documents.next());
+          }
+          pending.add(executor.submit(new Callable<T>() {
+            @Override
+            public T call() throws IOException {
+              return task.process(batch);
+            }
+          }));
+          if (pending.size() > 2 * numThreads) {
+            task.consume(pending.poll().get());
+          }
+        }
+        while (!pending.isEmpty()) {
+          task.consume(pending.poll().get());
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException(e);
+      } catch (ExecutionException e) {
+        throw new IllegalStateException(e.getCause());
+      } finally {
+        for (Future<T> future : pending) {
+          future.cancel(true);
+        }
+        Closeables.close(documents, true);
+      }
+    }
+  }
+
+  /**
+   * @return the vector as the next job sees it: written by a reducer, read by a mapper and shuffled to a reducer
+   */
+  private static Vector betweenJobs(Vector vector) throws IOException {
+    return copy(copy(vector));
+  }
+
+  private static Vector copy(Vector vector) throws IOException {
+    DataOutputBuffer out = new DataOutputBuffer();
+    new VectorWritable(vector).write(out);
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(out.getData(), out.getLength());
+    VectorWritable writable = new VectorWritable();
+    writable.readFields(in);
+    return writable.get();
+  }
+}
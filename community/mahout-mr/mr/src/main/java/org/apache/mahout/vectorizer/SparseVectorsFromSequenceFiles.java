@@ -135,6 +135,18 @@ public final class SparseVectorsFromSequenceFiles extends AbstractJob {
                     "(Optional) Whether output vectors should be NamedVectors. If set true else false")
             .withShortName("nv").create();
 
+    Option singlePassOpt = obuilder.withLongName("singlePass").withRequired(false)
+            .withDescription(
+                    "(Optional) Whether vectors should be created in a single map pass using a compact dictionary "
+                            + "of all the features instead of dictionary chunks. If set true else false")
+            .withShortName("sp").create();
+
+    Option inProcessOpt = obuilder.withLongName("inProcess").withRequired(false)
+            .withDescription(
+                    "(Optional) Whether vectors should be created inside this JVM using all cores instead of "
+                            + "map/reduce jobs. Only unigrams are supported. If set true else false")
+            .withShortName("ip").create();
+
     Option overwriteOutput = obuilder.withLongName("overwrite").withRequired(false).withDescription(
             "If set, overwrite the output directory").withShortName("ow").create();
     Option helpOpt = obuilder.withLongName("help").withDescription("Print out help").withShortName("h")
@@ -145,7 +157,7 @@ public final class SparseVectorsFromSequenceFiles extends AbstractJob {
             .withOption(maxDFSigmaOpt).withOption(maxDFPercentOpt).withOption(weightOpt).withOption(powerOpt)
             .withOption(minLLROpt).withOption(numReduceTasksOpt).withOption(maxNGramSizeOpt).withOption(overwriteOutput)
             .withOption(helpOpt).withOption(sequentialAccessVectorOpt).withOption(namedVectorOpt)
-            .withOption(logNormalizeOpt)
+            .withOption(logNormalizeOpt).withOption(singlePassOpt).withOption(inProcessOpt)
             .create();
     try {
       Parser parser = new Parser();
@@ -249,8 +261,19 @@ public final class SparseVectorsFromSequenceFiles extends AbstractJob {
       if (cmdLine.hasOption(logNormalizeOpt)) {
         logNormalize = true;
       }
-      log.info("Tokenizing documents in {}", inputDir);
       Configuration conf = getConf();
+      if (cmdLine.hasOption(inProcessOpt)) {
+        if (maxNGramSize == 1) {
+          log.info("Creating vectors of documents in {} in process", inputDir);
+          new InProcessVectorizer().createVectors(inputDir, outputDir, conf, analyzerClass,
+                  DictionaryVectorizer.DOCUMENT_VECTOR_OUTPUT_FOLDER, minSupport, norm, logNormalize, processIdf,
+                  minDf, maxDFPercent, maxDFSigma, cmdLine.hasOption(sequentialAccessVectorOpt),
+                  cmdLine.hasOption(namedVectorOpt));
+          return 0;
+        }
+        log.warn("Ngrams are not supported in process, running map/reduce jobs");
+      }
+      log.info("Tokenizing documents in {}", inputDir);
       Path tokenizedPath = new Path(outputDir, DocumentProcessor.TOKENIZED_DOCUMENT_OUTPUT_FOLDER);
       //TODO: move this into DictionaryVectorizer , and then fold SparseVectorsFrom with EncodedVectorsFrom
       // to have one framework for all of this.
@@ -265,12 +288,26 @@ public final class SparseVectorsFromSequenceFiles extends AbstractJob {
       if (cmdLine.hasOption(namedVectorOpt)) {
         namedVectors = true;
       }
+      boolean singlePass = cmdLine.hasOption(singlePassOpt);
       boolean shouldPrune = maxDFSigma >= 0.0 || maxDFPercent > 0.00;
       String tfDirName = shouldPrune
               ? DictionaryVectorizer.DOCUMENT_VECTOR_OUTPUT_FOLDER + "-toprune"
               : DictionaryVectorizer.DOCUMENT_VECTOR_OUTPUT_FOLDER;
       log.info("Creating Term Frequency Vectors");
-      if (processIdf) {
+      if (singlePass) {
+        DictionaryVectorizer.createTermFrequencyVectorsInOnePass(tokenizedPath,
+                outputDir,
+                tfDirName,
+                conf,
+                minSupport,
+                maxNGramSize,
+                minLLRValue,
+                processIdf ? -1.0f : norm,
+                !processIdf && logNormalize,
+                reduceTasks,
+                sequentialAccessOutput,
+                namedVectors);
+      } else if (processIdf) {
         DictionaryVectorizer.createTermFrequencyVectors(tokenizedPath,
                 outputDir,
                 tfDirName,
@@ -353,7 +390,12 @@ public final class SparseVectorsFromSequenceFiles extends AbstractJob {
         }
         HadoopUtil.delete(new Configuration(conf), tfDir);
       }
-      if (processIdf) {
+      if (processIdf && singlePass) {
+        TFIDFConverter.processTfIdfInOnePass(
+                new Path(outputDir, DictionaryVectorizer.DOCUMENT_VECTOR_OUTPUT_FOLDER),
+                outputDir, conf, docFrequenciesFeatures, minDf, maxDF, norm, logNormalize,
+                sequentialAccessOutput, namedVectors);
+      } else if (processIdf) {
         TFIDFConverter.processTfIdf(
                 new Path(outputDir, DictionaryVectorizer.DOCUMENT_VECTOR_OUTPUT_FOLDER),
                 outputDir, conf, docFrequenciesFeatures, minDf, maxDF, norm, logNormalize,
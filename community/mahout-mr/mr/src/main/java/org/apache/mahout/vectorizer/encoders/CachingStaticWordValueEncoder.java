@@ -17,15 +17,26 @@
 
 package org.apache.mahout.vectorizer.encoders;
 
-import java.util.Arrays;
-
-import com.google.common.base.Preconditions;
-import org.apache.mahout.math.map.OpenIntIntHashMap;
+import org.apache.mahout.math.MurmurHash;
+import org.apache.mahout.math.map.LinearProbingLongIntHashMap;
 
+/**
+ * Remembers the probe locations of the words it has seen.  Words are keyed by the 64 bit hash of
+ * their UTF-8 bytes, which is computed the same way for byte arrays and for strings, so both forms
+ * share the caches and the key of a string is only computed once for all of its probes.
+ * <p/>
+ * Instances are not thread-safe.
+ */
 public class CachingStaticWordValueEncoder extends StaticWordValueEncoder {
 
+  private static final int KEY_SEED = 0;
+
   private final int dataSize;
-  private OpenIntIntHashMap[] caches;
+  private LinearProbingLongIntHashMap[] caches;
+
+  // key of the last string seen, strings being immutable this saves rehashing it for every probe
+  private String lastWord;
+  private long lastKey;
 
   public CachingStaticWordValueEncoder(String name, int dataSize) {
     super(name);
@@ -34,13 +45,13 @@ public class CachingStaticWordValueEncoder extends StaticWordValueEncoder {
   }
 
   private void initCaches() {
-    caches = new OpenIntIntHashMap[getProbes()];
+    caches = new LinearProbingLongIntHashMap[getProbes()];
     for (int probe = 0; probe < getProbes(); probe++) {
-      caches[probe] = new OpenIntIntHashMap();
+      caches[probe] = new LinearProbingLongIntHashMap();
     }
   }
 
-  OpenIntIntHashMap[] getCaches() {
+  LinearProbingLongIntHashMap[] getCaches() {
     return caches;
   }
 
@@ -52,15 +63,46 @@ public class CachingStaticWordValueEncoder extends StaticWordValueEncoder {
 
   @Override
   protected int hashForProbe(byte[] originalForm, int dataSize, String name, int probe) {
-    Preconditions.checkArgument(dataSize == this.dataSize,
-        "dataSize argument [" + dataSize + "] does not match expected dataSize [" + this.dataSize + ']');
-    int originalHashcode = Arrays.hashCode(originalForm);
-    if (caches[probe].containsKey(originalHashcode)) {
-      return caches[probe].get(originalHashcode);
+    checkDataSize(dataSize);
+    long key = MurmurHash.hash64A(originalForm, KEY_SEED);
+    LinearProbingLongIntHashMap cache = caches[probe];
+    int cached = cache.get(key);
+    if (cached != 0 || cache.containsKey(key)) {
+      return cached;
     }
     int hash = super.hashForProbe(originalForm, dataSize, name, probe);
-    caches[probe].put(originalHashcode, hash);
+    cache.put(key, hash);
     return hash;
   }
-}
 
+  @Override
+  protected int hashForProbe(CharSequence originalForm, int dataSize, String name, int probe) {
+    checkDataSize(dataSize);
+    long key;
+    if (originalForm instanceof String && originalForm.equals(lastWord)) {
+      key = lastKey;
+    } else {
+      key = MurmurHash.hash64A(originalForm, KEY_SEED);
+      if (originalForm instanceof String) {
+        lastWord = (String) originalForm;
+        lastKey = key;
+      }
+    }
+    LinearProbingLongIntHashMap cache = caches[probe];
+    int cached = cache.get(key);
+    if (cached != 0 || cache.containsKey(key)) {
+      return cached;
+    }
+    int hash = super.hashForProbe(originalForm, dataSize, name, probe);
+    cache.put(key, hash);
+    return hash;
+  }
+
+  private void checkDataSize(int dataSize) {
+    // not Preconditions, which would build the message on every probe
+    if (dataSize != this.dataSize) {
+      throw new IllegalArgumentException(
+          "dataSize argument [" + dataSize + "] does not match expected dataSize [" + this.dataSize + ']');
+    }
+  }
+}
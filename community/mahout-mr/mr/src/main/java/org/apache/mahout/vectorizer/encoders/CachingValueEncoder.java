@@ -61,4 +61,10 @@ public abstract class CachingValueEncoder extends FeatureVectorEncoder {
     }
     return h;
   }
+
+  @Override
+  protected Iterable<Integer> hashesForProbe(CharSequence originalForm, int dataSize, String name, int probe) {
+    // the value does not matter, so don't bother converting it
+    return hashesForProbe((byte[]) null, dataSize, name, probe);
+  }
 }
@@ -39,12 +39,13 @@ public class ContinuousValueEncoder extends CachingValueEncoder {
   public void addToVector(byte[] originalForm, double weight, Vector data) {
     int probes = getProbes();
     String name = getName();
+    double w = getWeight(originalForm, weight);
     for (int i = 0; i < probes; i++) {
       int n = hashForProbe(originalForm, data.size(), name, i);
       if (isTraceEnabled()) {
         trace((String) null, n);
       }
-      data.set(n, data.get(n) + getWeight(originalForm,weight));
+      data.set(n, data.get(n) + w);
     }
   }
 
@@ -56,6 +57,14 @@ public class ContinuousValueEncoder extends CachingValueEncoder {
     return w * Double.parseDouble(new String(originalForm, Charsets.UTF_8));
   }
 
+  @Override
+  protected double getWeight(String originalForm, double w) {
+    if (originalForm == null) {
+      return w;
+    }
+    return w * Double.parseDouble(originalForm);
+  }
+
   /**
    * Converts a value into a form that would help a human understand the internals of how the value
    * is being interpreted.  For text-like things, this is likely to be a list of the terms found with
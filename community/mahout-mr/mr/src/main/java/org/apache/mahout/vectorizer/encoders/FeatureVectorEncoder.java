@@ -117,14 +117,53 @@ public abstract class FeatureVectorEncoder {
     return Collections.singletonList(hashForProbe(originalForm, dataSize, name, probe));
   }
 
+  /**
+   * Provides the hash for a probe of a value given as characters.  Encoders that can hash the
+   * characters directly (see {@link MurmurHash#hash64A(CharSequence, int)}) should override this
+   * together with {@link #hashForProbe(byte[], int, String, int)} so that both agree.  By default the
+   * value is converted to UTF-8 bytes.
+   *
+   * @param originalForm  The original value
+   * @param dataSize      The length of the vector being encoded
+   * @param name          The name of the variable being encoded
+   * @param probe         The probe number
+   * @return              The hash of the current probe
+   */
+  protected int hashForProbe(CharSequence originalForm, int dataSize, String name, int probe) {
+    return hashForProbe(bytesForChars(originalForm), dataSize, name, probe);
+  }
+
+  /**
+   * Returns all of the hashes for a probe of a value given as characters.  By default the value is
+   * converted to UTF-8 bytes and passed to {@link #hashesForProbe(byte[], int, String, int)}.
+   *
+   * @param originalForm The original value.
+   * @param dataSize     The length of the vector being encoded
+   * @param name         The name of the variable being encoded
+   * @param probe        The probe number
+   * @return an Iterable of the hashes
+   */
+  protected Iterable<Integer> hashesForProbe(CharSequence originalForm, int dataSize, String name, int probe) {
+    return hashesForProbe(bytesForChars(originalForm), dataSize, name, probe);
+  }
+
   protected double getWeight(byte[] originalForm, double w) {
     return 1.0;
   }
 
+  /**
+   * Returns the weight of a value given as a string.  By default the value is converted to UTF-8
+   * bytes and passed to {@link #getWeight(byte[], double)}.
+   */
+  protected double getWeight(String originalForm, double w) {
+    return getWeight(bytesForString(originalForm), w);
+  }
+
   // ******* Utility functions used by most implementations
 
   /**
-   * Hash a string and an integer into the range [0..numFeatures-1].
+   * Hash the UTF-8 bytes of a string and an integer into the range [0..numFeatures-1].  The
+   * string is not converted to bytes.
    *
    * @param term        The string.
    * @param probe       An integer that modifies the resulting hash.
@@ -132,8 +171,8 @@ public abstract class FeatureVectorEncoder {
    * @return An integer in the range [0..numFeatures-1] that has good spread for small changes in
    *         term and probe.
    */
-  protected int hash(String term, int probe, int numFeatures) {
-    long r = MurmurHash.hash64A(bytesForString(term), probe) % numFeatures;
+  protected int hash(CharSequence term, int probe, int numFeatures) {
+    long r = hash64(term, probe) % numFeatures;
     if (r < 0) {
       r += numFeatures;
     }
@@ -168,8 +207,8 @@ public abstract class FeatureVectorEncoder {
    *         term and probe.
    */
   protected static int hash(String term1, String term2, int probe, int numFeatures) {
-    long r = MurmurHash.hash64A(bytesForString(term1), probe);
-    r = MurmurHash.hash64A(bytesForString(term2), (int) r) % numFeatures;
+    long r = hash64(term1, probe);
+    r = hash64(term2, (int) r) % numFeatures;
     if (r < 0) {
       r += numFeatures;
     }
@@ -208,10 +247,10 @@ public abstract class FeatureVectorEncoder {
    *         term and probe.
    */
   protected int hash(String term1, String term2, String term3, String term4, int probe, int numFeatures) {
-    long r = MurmurHash.hash64A(bytesForString(term1), probe);
-    r = MurmurHash.hash64A(bytesForString(term2), (int) r) % numFeatures;
-    r = MurmurHash.hash64A(bytesForString(term3), (int) r) % numFeatures;
-    r = MurmurHash.hash64A(bytesForString(term4), (int) r) % numFeatures;
+    long r = hash64(term1, probe);
+    r = hash64(term2, (int) r) % numFeatures;
+    r = hash64(term3, (int) r) % numFeatures;
+    r = hash64(term4, (int) r) % numFeatures;
     if (r < 0) {
       r += numFeatures;
     }
@@ -276,4 +315,16 @@ public abstract class FeatureVectorEncoder {
   protected static byte[] bytesForString(String x) {
     return x == null ? EMPTY_ARRAY : x.getBytes(Charsets.UTF_8);
   }
+
+  /**
+   * Hashes the UTF-8 bytes of a string without converting it, null being hashed as the empty string
+   * as in {@link #bytesForString(String)}.
+   */
+  private static long hash64(CharSequence x, int seed) {
+    return MurmurHash.hash64A(x == null ? "" : x, seed);
+  }
+
+  private static byte[] bytesForChars(CharSequence x) {
+    return x == null ? EMPTY_ARRAY : x.toString().getBytes(Charsets.UTF_8);
+  }
 }
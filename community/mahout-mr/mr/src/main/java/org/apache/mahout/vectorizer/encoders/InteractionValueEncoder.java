@@ -56,7 +56,9 @@ public class InteractionValueEncoder extends FeatureVectorEncoder {
   }
 
   /**
-   * Adds a value to a vector.
+   * Adds a value to a vector.  The values are hashed through the character versions of the
+   * hashing methods of both encoders, so they are not converted to bytes and the caching encoders
+   * reuse their cached locations.
    *
    * @param original1 The original form of the first value as a string.
    * @param original2 The original form of the second value as a string.
@@ -64,9 +66,23 @@ public class InteractionValueEncoder extends FeatureVectorEncoder {
    * @param data          The vector to which the value should be added.
    */
   public void addInteractionToVector(String original1, String original2, double weight, Vector data) {
-    byte[] originalForm1 = bytesForString(original1);
-    byte[] originalForm2 = bytesForString(original2);
-    addInteractionToVector(originalForm1, originalForm2, weight, data);
+    String originalForm1 = original1 == null ? "" : original1;
+    String originalForm2 = original2 == null ? "" : original2;
+    String name = getName();
+    double w = getWeight(originalForm1, originalForm2, weight);
+    for (int i = 0; i < probes(); i++) {
+      Iterable<Integer> jValues =
+          secondEncoder.hashesForProbe(originalForm2, data.size(), name, i % secondEncoder.getProbes());
+      for (int k : firstEncoder.hashesForProbe(originalForm1, data.size(), name, i % firstEncoder.getProbes())) {
+        for (int j : jValues) {
+          int n = (k + j) % data.size();
+          if (isTraceEnabled()) {
+            trace(String.format("%s:%s", originalForm1, originalForm2), n);
+          }
+          data.incrementQuick(n, w);
+        }
+      }
+    }
   }
 
   /**
@@ -104,6 +120,10 @@ public class InteractionValueEncoder extends FeatureVectorEncoder {
     return firstEncoder.getWeight(originalForm1, 1.0) * secondEncoder.getWeight(originalForm2, 1.0) * w;
   }
 
+  protected double getWeight(String originalForm1, String originalForm2, double w) {
+    return firstEncoder.getWeight(originalForm1, 1.0) * secondEncoder.getWeight(originalForm2, 1.0) * w;
+  }
+
   /**
    * Converts a value into a form that would help a human understand the internals of how the value
    * is being interpreted.  For text-like things, this is likely to be a list of the terms found with
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.vectorizer.encoders;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.apache.mahout.math.RandomAccessSparseVector;
+import org.apache.mahout.math.Vector;
+
+import java.util.List;
+
+/**
+ * Encodes records made of several fields into a single hashed feature vector.  Each field has its
+ * own encoder and interactions between pairs of fields can be added as well.  Field values are
+ * handed to the encoders as strings, which the word, text and interaction encoders hash straight
+ * from their characters.
+ * <p/>
+ * {@link #encode(List)} writes into one sparse vector that is cleared and reused for every record,
+ * so a caller that keeps the result past the next record must copy it.  Neither this class nor the
+ * caching encoders are thread-safe, so each thread needs its own encoders.
+ */
+public final class RecordEncoder {
+
+  private final List<FeatureVectorEncoder> fieldEncoders = Lists.newArrayList();
+  private final List<InteractionValueEncoder> interactionEncoders = Lists.newArrayList();
+  private final List<int[]> interactionFields = Lists.newArrayList();
+  private final Vector accumulator;
+
+  public RecordEncoder(int cardinality) {
+    accumulator = new RandomAccessSparseVector(cardinality);
+  }
+
+  /**
+   * Adds the next field of the records.
+   *
+   * @param encoder The encoder of the field, or null if the field is only used by interactions.
+   * @return The index of the field in the records.
+   */
+  public int addField(FeatureVectorEncoder encoder) {
+    fieldEncoders.add(encoder);
+    return fieldEncoders.size() - 1;
+  }
+
+  /**
+   * Adds an interaction between two fields that have already been added.
+   *
+   * @param encoder The encoder of the interaction.
+   * @param field1  The index of the field passed to the first encoder of the interaction.
+   * @param field2  The index of the field passed to the second encoder of the interaction.
+   */
+  public void addInteraction(InteractionValueEncoder encoder, int field1, int field2) {
+    Preconditions.checkNotNull(encoder);
+    Preconditions.checkArgument(field1 >= 0 && field1 < fieldEncoders.size(), "No such field: " + field1);
+    Preconditions.checkArgument(field2 >= 0 && field2 < fieldEncoders.size(), "No such field: " + field2);
+    interactionEncoders.add(encoder);
+    interactionFields.add(new int[] {field1, field2});
+  }
+
+  public int getNumFields() {
+    return fieldEncoders.size();
+  }
+
+  public int getCardinality() {
+    return accumulator.size();
+  }
+
+  /**
+   * Encodes a record into the reused accumulator vector.
+   *
+   * @param record The values of the fields, in the order the fields were added.  Null values are
+   *               skipped, along with the interactions they take part in.
+   * @return The accumulator, which is overwritten by the next call.
+   */
+  public Vector encode(List<? extends CharSequence> record) {
+    accumulator.assign(0);
+    encode(record, accumulator);
+    return accumulator;
+  }
+
+  /**
+   * Adds the features of a record to a vector.
+   *
+   * @param record The values of the fields, in the order the fields were added.  Null values are
+   *               skipped, along with the interactions they take part in.
+   * @param data   The vector to which the features should be added.
+   */
+  public void encode(List<? extends CharSequence> record, Vector data) {
+    Preconditions.checkArgument(record.size() == fieldEncoders.size(),
+        "record has " + record.size() + " fields, expected " + fieldEncoders.size());
+    for (int i = 0; i < fieldEncoders.size(); i++) {
+      FeatureVectorEncoder encoder = fieldEncoders.get(i);
+      CharSequence value = record.get(i);
+      if (encoder != null && value != null) {
+        encoder.addToVector(value.toString(), 1.0, data);
+      }
+    }
+    for (int i = 0; i < interactionEncoders.size(); i++) {
+      int[] fields = interactionFields.get(i);
+      CharSequence value1 = record.get(fields[0]);
+      CharSequence value2 = record.get(fields[1]);
+      if (value1 != null && value2 != null) {
+        interactionEncoders.get(i).addInteractionToVector(value1.toString(), value2.toString(), 1.0, data);
+      }
+    }
+  }
+}
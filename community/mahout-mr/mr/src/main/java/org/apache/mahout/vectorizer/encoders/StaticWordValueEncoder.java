@@ -18,6 +18,8 @@
 package org.apache.mahout.vectorizer.encoders;
 
 import com.google.common.base.Charsets;
+import org.apache.mahout.math.MurmurHash;
+import org.apache.mahout.math.Vector;
 
 import java.util.Collections;
 import java.util.Map;
@@ -30,20 +32,73 @@ import java.util.Map;
  * feature vector is used so that the probability of feature collisions is suitably small, then this
  * can be decreased to 1.  If a very small feature vector is used, the number of probes should
  * probably be increased to 3.
+ * <p/>
+ * Words added as strings are hashed and weighted straight from their characters.  Sub-classes that
+ * change the hashing must therefore override both the byte array and the character versions of
+ * hashForProbe.
  */
 public class StaticWordValueEncoder extends WordValueEncoder {
   private Map<String, Double> dictionary;
   private double missingValueWeight = 1;
   private final byte[] nameBytes;
+  // hash of the name for each probe, which is the seed of the hash of the word
+  private int[] nameHashes = new int[0];
 
   public StaticWordValueEncoder(String name) {
     super(name);
     nameBytes = bytesForString(name);
   }
 
+  /**
+   * Adds a word to a vector without converting it to UTF-8 bytes first.
+   *
+   * @param originalForm The word.
+   * @param w            The weight to be applied to this feature.
+   * @param data         The vector to which the value should be added.
+   */
+  @Override
+  public void addToVector(String originalForm, double w, Vector data) {
+    String word = originalForm == null ? "" : originalForm;
+    int probes = getProbes();
+    String name = getName();
+    double weight = getWeight(word, w);
+    for (int i = 0; i < probes; i++) {
+      int n = hashForProbe(word, data.size(), name, i);
+      if (isTraceEnabled()) {
+        trace(word, n);
+      }
+      data.incrementQuick(n, weight);
+    }
+  }
+
   @Override
   protected int hashForProbe(byte[] originalForm, int dataSize, String name, int probe) {
-    return hash(nameBytes, originalForm, WORD_LIKE_VALUE_HASH_SEED + probe, dataSize);
+    // same as hash(nameBytes, originalForm, WORD_LIKE_VALUE_HASH_SEED + probe, dataSize)
+    return hash(originalForm, nameHash(probe), dataSize);
+  }
+
+  /**
+   * Same as {@link #hashForProbe(byte[], int, String, int)} applied to the UTF-8 bytes of the word.
+   */
+  @Override
+  protected int hashForProbe(CharSequence originalForm, int dataSize, String name, int probe) {
+    return hash(originalForm, nameHash(probe), dataSize);
+  }
+
+  private int nameHash(int probe) {
+    if (probe >= nameHashes.length) {
+      int[] hashes = new int[probe + 1];
+      for (int i = 0; i < hashes.length; i++) {
+        hashes[i] = (int) MurmurHash.hash64A(nameBytes, WORD_LIKE_VALUE_HASH_SEED + i);
+      }
+      nameHashes = hashes;
+    }
+    return nameHashes[probe];
+  }
+
+  @Override
+  protected Iterable<Integer> hashesForProbe(CharSequence originalForm, int dataSize, String name, int probe) {
+    return Collections.singletonList(hashForProbe(originalForm, dataSize, name, probe));
   }
 
   /**
@@ -66,13 +121,22 @@ public class StaticWordValueEncoder extends WordValueEncoder {
     this.missingValueWeight = missingValueWeight;
   }
 
+  @Override
+  protected double getWeight(String originalForm, double w) {
+    return w * weight(originalForm);
+  }
+
   @Override
   protected double weight(byte[] originalForm) {
+    return dictionary == null ? missingValueWeight : weight(new String(originalForm, Charsets.UTF_8));
+  }
+
+  private double weight(String word) {
     double weight = missingValueWeight;
     if (dictionary != null) {
-      String s = new String(originalForm, Charsets.UTF_8);
-      if (dictionary.containsKey(s)) {
-        weight = dictionary.get(s);
+      Double w = dictionary.get(word);
+      if (w != null) {
+        weight = w;
       }
     }
     return weight;
@@ -18,14 +18,13 @@
 package org.apache.mahout.vectorizer.encoders;
 
 import com.google.common.base.Charsets;
-import com.google.common.base.Splitter;
 import com.google.common.collect.HashMultiset;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multiset;
 import org.apache.mahout.math.Vector;
 
 import java.util.Collection;
-import java.util.regex.Pattern;
+import java.util.List;
 
 /**
  * Encodes text that is tokenized on non-alphanum separators.  Each word is encoded using a
@@ -37,9 +36,8 @@ public class TextValueEncoder extends FeatureVectorEncoder {
 
   private static final double LOG_2 = Math.log(2.0);
 
-  private static final Splitter ON_NON_WORD = Splitter.on(Pattern.compile("\\W+")).omitEmptyStrings();
-
   private FeatureVectorEncoder wordEncoder;
+  private boolean interactionsHashWords;
   private final Multiset<String> counts;
 
   public TextValueEncoder(String name) {
@@ -60,6 +58,20 @@ public class TextValueEncoder extends FeatureVectorEncoder {
     flush(weight, data);
   }
 
+  /**
+   * Adds a value to a vector after tokenizing it by splitting on non-alphanum characters.
+   *
+   * @param originalForm The original form of the value as a string.
+   * @param data         The vector to which the value should be added.
+   */
+  @Override
+  public void addToVector(String originalForm, double weight, Vector data) {
+    if (originalForm != null) {
+      addText(originalForm);
+    }
+    flush(weight, data);
+  }
+
   /**
    * Adds text to the internal word counter, but delays converting it to vector
    * form until flush is called.
@@ -98,20 +110,54 @@ public class TextValueEncoder extends FeatureVectorEncoder {
 
   @Override
   protected Iterable<Integer> hashesForProbe(byte[] originalForm, int dataSize, String name, int probe) {
+    return hashesForProbe(new String(originalForm, Charsets.UTF_8), dataSize, name, probe);
+  }
+
+  /**
+   * Returns the hashes of each word of the text.  These are the same as for the bytes of the word unless
+   * {@link #setInteractionsHashWords(boolean)} is on, in which case they are given by the word encoder.
+   */
+  @Override
+  protected Iterable<Integer> hashesForProbe(CharSequence originalForm, int dataSize, String name, int probe) {
     Collection<Integer> hashes = Lists.newArrayList();
-    for (String word : tokenize(new String(originalForm, Charsets.UTF_8))) {
-      hashes.add(hashForProbe(bytesForString(word), dataSize, name, probe));
+    for (String word : tokenize(originalForm)) {
+      if (interactionsHashWords) {
+        hashes.add(wordEncoder.hashForProbe(word, dataSize, name, probe % wordEncoder.getProbes()));
+      } else {
+        hashes.add(hashForProbe(bytesForString(word), dataSize, name, probe));
+      }
     }
     return hashes;
   }
 
   /**
    * Tokenizes a string using the simplest method.  This should be over-ridden for more subtle
-   * tokenization.
+   * tokenization.  Words are the maximal runs of <tt>[a-zA-Z_0-9]</tt>, as when splitting on
+   * <tt>\W+</tt>, but are found without a regular expression.
    * @see LuceneTextValueEncoder
    */
   protected Iterable<String> tokenize(CharSequence originalForm) {
-    return ON_NON_WORD.split(originalForm);
+    List<String> words = Lists.newArrayList();
+    int start = -1;
+    int n = originalForm.length();
+    for (int i = 0; i < n; i++) {
+      if (isWordChar(originalForm.charAt(i))) {
+        if (start < 0) {
+          start = i;
+        }
+      } else if (start >= 0) {
+        words.add(originalForm.subSequence(start, i).toString());
+        start = -1;
+      }
+    }
+    if (start >= 0) {
+      words.add(originalForm.subSequence(start, n).toString());
+    }
+    return words;
+  }
+
+  private static boolean isWordChar(char c) {
+    return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_';
   }
 
   /**
@@ -139,4 +185,14 @@ public class TextValueEncoder extends FeatureVectorEncoder {
   public final void setWordEncoder(FeatureVectorEncoder wordEncoder) {
     this.wordEncoder = wordEncoder;
   }
+
+  /**
+   * By default every word of a text used in an interaction hashes to the same locations, as it always has.
+   * When this is on, each word is hashed by the word encoder instead, which gives every word its own
+   * locations and lets a caching word encoder cache them.  This changes where text interactions land, so
+   * vectors encoded with and without it must not be mixed in one model.
+   */
+  public void setInteractionsHashWords(boolean interactionsHashWords) {
+    this.interactionsHashWords = interactionsHashWords;
+  }
 }
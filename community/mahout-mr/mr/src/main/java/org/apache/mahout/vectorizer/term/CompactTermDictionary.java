@@ -0,0 +1,261 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.vectorizer.term;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+import com.google.common.base.Preconditions;
+import org.apache.mahout.math.list.IntArrayList;
+
+/**
+ * Read-only term to id dictionary, compact enough to hold the whole vocabulary of a large corpus in every mapper.
+ * The file is memory mapped, so the dictionary stays off the heap.
+ * <p/>
+ * Terms are stored in increasing order of their UTF-8 bytes (the order of {@link org.apache.hadoop.io.Text} keys)
+ * in blocks of {@link #BLOCK_SIZE} terms. Each term only stores the suffix it doesn't share with the previous term
+ * of its block, followed by its id. A lookup is a binary search over the first terms of the blocks followed by a
+ * scan of a single block, without decoding the terms.
+ * <p/>
+ * File layout: the blocks, then the offsets of the blocks, then the number of blocks, the number of terms and a
+ * magic number as ints. Within a block every term is written as (shared prefix length, suffix length, suffix bytes,
+ * id), numbers as variable length ints.
+ */
+public final class CompactTermDictionary {
+
+  public static final int BLOCK_SIZE = 16;
+
+  private static final int MAGIC = 0x54444331;
+
+  private final ByteBuffer data;
+  private final int[] blockOffsets;
+  private final int numTerms;
+
+  private CompactTermDictionary(ByteBuffer data, int[] blockOffsets, int numTerms) {
+    this.data = data;
+    this.blockOffsets = blockOffsets;
+    this.numTerms = numTerms;
+  }
+
+  /**
+   * Maps a dictionary written by a {@link Writer}. The dictionary can be used by several threads.
+   */
+  public static CompactTermDictionary map(File file) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      FileChannel channel = raf.getChannel();
+      long length = channel.size();
+      Preconditions.checkArgument(length >= 12 && length <= Integer.MAX_VALUE,
+          "File " + file + " is not a term dictionary");
+      ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+      int end = (int) length;
+      Preconditions.checkArgument(buffer.getInt(end - 4) == MAGIC, "File " + file + " is not a term dictionary");
+      int numTerms = buffer.getInt(end - 8);
+      int numBlocks = buffer.getInt(end - 12);
+      int[] blockOffsets = new int[numBlocks];
+      int offsetsStart = end - 12 - 4 * numBlocks;
+      for (int b = 0; b < numBlocks; b++) {
+        blockOffsets[b] = buffer.getInt(offsetsStart + 4 * b);
+      }
+      return new CompactTermDictionary(buffer, blockOffsets, numTerms);
+    }
+  }
+
+  public int size() {
+    return numTerms;
+  }
+
+  /**
+   * @return the id of the term, -1 if it is not in the dictionary
+   */
+  public int get(String term) {
+    return get(term.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * @param term UTF-8 bytes of the term
+   * @return the id of the term, -1 if it is not in the dictionary
+   */
+  public int get(byte[] term) {
+    // last block whose first term is lesser than or equal to the term
+    int lo = 0;
+    int hi = blockOffsets.length - 1;
+    int block = -1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      int cmp = compareFirstTerm(blockOffsets[mid], term);
+      if (cmp < 0) {
+        block = mid;
+        lo = mid + 1;
+      } else if (cmp > 0) {
+        hi = mid - 1;
+      } else {
+        block = mid;
+        break;
+      }
+    }
+    if (block < 0) {
+      return -1;
+    }
+    return scan(blockOffsets[block], Math.min(BLOCK_SIZE, numTerms - block * BLOCK_SIZE), term);
+  }
+
+  private int compareFirstTerm(int offset, byte[] term) {
+    int[] position = {offset};
+    readVarInt(position); // shared prefix, always 0
+    int length = readVarInt(position);
+    int start = position[0];
+    int n = Math.min(length, term.length);
+    for (int i = 0; i < n; i++) {
+      int cmp = (data.get(start + i) & 0xff) - (term[i] & 0xff);
+      if (cmp != 0) {
+        return cmp;
+      }
+    }
+    return length - term.length;
+  }
+
+  /**
+   * Looks the term up in a block, the first term of the block being lesser than or equal to the term.
+   */
+  private int scan(int offset, int count, byte[] term) {
+    int[] position = {offset};
+    // length of the prefix shared by the term and the previous term of the block, which was lesser
+    int matched = 0;
+    for (int i = 0; i < count; i++) {
+      int prefix = readVarInt(position);
+      int suffixLength = readVarInt(position);
+      int suffixStart = position[0];
+      position[0] += suffixLength;
+      int id = readVarInt(position);
+      if (prefix < matched) {
+        // this term differs from the previous one at a byte where the previous one matched the term: it is greater
+        return -1;
+      }
+      if (prefix > matched) {
+        // this term still differs from the term where the previous one did: it is lesser too
+        continue;
+      }
+      int common = 0;
+      int n = Math.min(suffixLength, term.length - matched);
+      while (common < n && data.get(suffixStart + common) == term[matched + common]) {
+        common++;
+      }
+      if (common == suffixLength && matched + common == term.length) {
+        return id;
+      }
+      if (common == suffixLength
+          || common < n && (data.get(suffixStart + common) & 0xff) < (term[matched + common] & 0xff)) {
+        matched += common;
+      } else {
+        return -1;
+      }
+    }
+    return -1;
+  }
+
+  private int readVarInt(int[] position) {
+    int value = 0;
+    int shift = 0;
+    int b;
+    do {
+      b = data.get(position[0]++);
+      value |= (b & 0x7f) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return value;
+  }
+
+  /**
+   * Writes a dictionary, terms have to be added in increasing order of their UTF-8 bytes.
+   */
+  public static final class Writer implements Closeable {
+
+    private final DataOutputStream out;
+    private final IntArrayList blockOffsets = new IntArrayList();
+    private byte[] previous = new byte[0];
+    private int numTerms;
+    private long position;
+
+    public Writer(OutputStream out) {
+      this.out = new DataOutputStream(out);
+    }
+
+    public int size() {
+      return numTerms;
+    }
+
+    public void add(String term, int id) throws IOException {
+      add(term.getBytes(StandardCharsets.UTF_8), id);
+    }
+
+    public void add(byte[] term, int id) throws IOException {
+      Preconditions.checkArgument(id >= 0, "id must be positive: %s", id);
+      int prefix = 0;
+      int n = Math.min(previous.length, term.length);
+      while (prefix < n && previous[prefix] == term[prefix]) {
+        prefix++;
+      }
+      Preconditions.checkArgument(numTerms == 0 || prefix < term.length
+          && (prefix == previous.length || (term[prefix] & 0xff) > (previous[prefix] & 0xff)),
+          "Terms must be added in increasing order");
+      if (numTerms % BLOCK_SIZE == 0) {
+        Preconditions.checkState(position <= Integer.MAX_VALUE, "Dictionary too large");
+        blockOffsets.add((int) position);
+        prefix = 0;
+      }
+      writeVarInt(prefix);
+      writeVarInt(term.length - prefix);
+      out.write(term, prefix, term.length - prefix);
+      position += term.length - prefix;
+      writeVarInt(id);
+      previous = term;
+      numTerms++;
+    }
+
+    private void writeVarInt(int value) throws IOException {
+      while ((value & ~0x7f) != 0) {
+        out.writeByte((value & 0x7f) | 0x80);
+        value >>>= 7;
+        position++;
+      }
+      out.writeByte(value);
+      position++;
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        for (int b = 0; b < blockOffsets.size(); b++) {
+          out.writeInt(blockOffsets.get(b));
+        }
+        out.writeInt(blockOffsets.size());
+        out.writeInt(numTerms);
+        out.writeInt(MAGIC);
+      } finally {
+        out.close();
+      }
+    }
+  }
+}
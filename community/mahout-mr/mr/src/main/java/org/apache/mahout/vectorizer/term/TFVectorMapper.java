@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.vectorizer.term;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.Closeables;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.lucene.analysis.shingle.ShingleFilter;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.mahout.common.HadoopUtil;
+import org.apache.mahout.common.StringTuple;
+import org.apache.mahout.common.lucene.IteratorTokenStream;
+import org.apache.mahout.math.NamedVector;
+import org.apache.mahout.math.RandomAccessSparseVector;
+import org.apache.mahout.math.SequentialAccessSparseVector;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.VectorWritable;
+import org.apache.mahout.vectorizer.DictionaryVectorizer;
+import org.apache.mahout.vectorizer.common.PartialVectorMerger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Converts a tokenized document in to its final term frequency vector in a single map pass, looking terms up in
+ * a memory mapped {@link CompactTermDictionary} that holds the whole vocabulary. Produces the same vectors as
+ * {@link TFPartialVectorReducer} followed by {@link org.apache.mahout.vectorizer.common.PartialVectorMergeReducer}
+ * as long as document ids are unique.
+ */
+public class TFVectorMapper extends Mapper<Text, StringTuple, Text, VectorWritable> {
+
+  private CompactTermDictionary dictionary;
+
+  private int dimension;
+  private boolean sequentialAccess;
+  private boolean namedVector;
+  private int maxNGramSize = 1;
+  private double normPower;
+  private boolean logNormalize;
+
+  @Override
+  protected void map(Text key, StringTuple value, Context context) throws IOException, InterruptedException {
+    List<String> terms = value.getEntries();
+
+    Vector vector = new RandomAccessSparseVector(dimension, terms.size()); // guess at initial size
+
+    if (maxNGramSize >= 2) {
+      ShingleFilter sf = new ShingleFilter(new IteratorTokenStream(terms.iterator()), maxNGramSize);
+      sf.reset();
+      try {
+        do {
+          String term = sf.getAttribute(CharTermAttribute.class).toString();
+          addTerm(vector, term);
+        } while (sf.incrementToken());
+
+        sf.end();
+      } finally {
+        Closeables.close(sf, true);
+      }
+    } else {
+      for (String term : terms) {
+        addTerm(vector, term);
+      }
+    }
+
+    if (normPower != PartialVectorMerger.NO_NORMALIZING) {
+      if (logNormalize) {
+        vector = vector.logNormalize(normPower);
+      } else {
+        vector = vector.normalize(normPower);
+      }
+    }
+    if (sequentialAccess) {
+      vector = new SequentialAccessSparseVector(vector);
+    }
+
+    if (namedVector) {
+      vector = new NamedVector(vector, key.toString());
+    }
+
+    // if the vector has no nonZero entries (nothing in the dictionary), let's not waste space sending it to disk.
+    if (vector.getNumNondefaultElements() > 0) {
+      context.write(key, new VectorWritable(vector));
+    } else {
+      context.getCounter("TFVectorMapper", "emptyVectorCount").increment(1);
+    }
+  }
+
+  private void addTerm(Vector vector, String term) {
+    if (!term.isEmpty()) {
+      int termId = dictionary.get(term);
+      if (termId >= 0) {
+        vector.setQuick(termId, vector.getQuick(termId) + 1);
+      }
+    }
+  }
+
+  @Override
+  protected void setup(Context context) throws IOException, InterruptedException {
+    super.setup(context);
+    Configuration conf = context.getConfiguration();
+
+    dimension = conf.getInt(PartialVectorMerger.DIMENSION, Integer.MAX_VALUE);
+    sequentialAccess = conf.getBoolean(PartialVectorMerger.SEQUENTIAL_ACCESS, false);
+    namedVector = conf.getBoolean(PartialVectorMerger.NAMED_VECTOR, false);
+    maxNGramSize = conf.getInt(DictionaryVectorizer.MAX_NGRAMS, maxNGramSize);
+    normPower = conf.getFloat(PartialVectorMerger.NORMALIZATION_POWER, PartialVectorMerger.NO_NORMALIZING);
+    logNormalize = conf.getBoolean(PartialVectorMerger.LOG_NORMALIZE, false);
+
+    for (Path cachedFile : HadoopUtil.getCachedFiles(conf)) {
+      if (cachedFile.getName().contains(DictionaryVectorizer.COMPACT_DICTIONARY_FILE)) {
+        dictionary = CompactTermDictionary.map(new File(cachedFile.toUri().getPath()));
+      }
+    }
+    Preconditions.checkState(dictionary != null, "Unable to find the term dictionary in the cached files");
+  }
+
+}
@@ -38,11 +38,14 @@ import org.apache.mahout.common.HadoopUtil;
 import org.apache.mahout.common.Pair;
 import org.apache.mahout.common.iterator.sequencefile.PathType;
 import org.apache.mahout.common.iterator.sequencefile.SequenceFileDirIterable;
+import org.apache.mahout.common.iterator.sequencefile.SequenceFileIterable;
 import org.apache.mahout.math.VectorWritable;
 import org.apache.mahout.vectorizer.common.PartialVectorMerger;
 import org.apache.mahout.vectorizer.term.TermDocumentCountMapper;
 import org.apache.mahout.vectorizer.term.TermDocumentCountReducer;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.List;
 
@@ -64,6 +67,7 @@ public final class TFIDFConverter {
 
   private static final String DOCUMENT_VECTOR_OUTPUT_FOLDER = "tfidf-vectors";
   public static final String FREQUENCY_FILE = "frequency.file-";
+  public static final String DOCUMENT_FREQUENCY_FILE = "frequency.dense";
   private static final int MAX_CHUNKSIZE = 10000;
   private static final int MIN_CHUNKSIZE = 100;
   private static final String OUTPUT_FILES_PATTERN = "part-*";
@@ -152,6 +156,113 @@ public final class TFIDFConverter {
 
   }
   
+  /**
+   * Create Term Frequency-Inverse Document Frequency (Tf-Idf) Vectors from the input set of vectors in
+   * {@link SequenceFile} format with a single map only job. The document frequencies of all features are written
+   * to a file holding one long per feature, which every mapper maps in memory instead of loading chunks of it on
+   * the heap. Produces the same vectors as {@link #processTfIdf}, before using this method calculateDF should be
+   * called.
+   *
+   * @param input
+   *          input directory of the vectors in {@link SequenceFile} format
+   * @param output
+   *          output directory where {@link org.apache.mahout.math.RandomAccessSparseVector}'s of the document
+   *          are generated
+   * @param datasetFeatures
+   *          Document frequencies information calculated by calculateDF
+   * @param minDf
+   *          The minimum document frequency. Default 1
+   * @param maxDF
+   *          The max percentage of vectors for the DF. Can be used to remove really high frequency features.
+   *          Expressed as an integer between 0 and 100. Default 99
+   */
+  public static void processTfIdfInOnePass(Path input,
+                                           Path output,
+                                           Configuration baseConf,
+                                           Pair<Long[], List<Path>> datasetFeatures,
+                                           int minDf,
+                                           long maxDF,
+                                           float normPower,
+                                           boolean logNormalize,
+                                           boolean sequentialAccessOutput,
+                                           boolean namedVector)
+    throws IOException, InterruptedException, ClassNotFoundException {
+    Preconditions.checkArgument(normPower == PartialVectorMerger.NO_NORMALIZING || normPower >= 0,
+        "If specified normPower must be nonnegative", normPower);
+    Preconditions.checkArgument(normPower == PartialVectorMerger.NO_NORMALIZING
+                                || (normPower > 1 && !Double.isInfinite(normPower))
+                                || !logNormalize,
+        "normPower must be > 1 and not infinite if log normalization is chosen", normPower);
+
+    long featureCount = datasetFeatures.getFirst()[0];
+    Path frequencyPath = new Path(output, DOCUMENT_FREQUENCY_FILE);
+    writeDocumentFrequencies(datasetFeatures.getSecond(), frequencyPath, featureCount, baseConf);
+
+    Configuration conf = new Configuration(baseConf);
+    // this conf parameter needs to be set enable serialisation of conf values
+    conf.set("io.serializations", "org.apache.hadoop.io.serializer.JavaSerialization,"
+        + "org.apache.hadoop.io.serializer.WritableSerialization");
+    conf.setLong(FEATURE_COUNT, featureCount);
+    conf.setLong(VECTOR_COUNT, datasetFeatures.getFirst()[1]);
+    conf.setInt(MIN_DF, minDf);
+    conf.setLong(MAX_DF, maxDF);
+    conf.setFloat(PartialVectorMerger.NORMALIZATION_POWER, normPower);
+    conf.setBoolean(PartialVectorMerger.LOG_NORMALIZE, logNormalize);
+    conf.setBoolean(PartialVectorMerger.SEQUENTIAL_ACCESS, sequentialAccessOutput);
+    conf.setBoolean(PartialVectorMerger.NAMED_VECTOR, namedVector);
+    DistributedCache.addCacheFile(frequencyPath.toUri(), conf);
+
+    Path outputDir = new Path(output, DOCUMENT_VECTOR_OUTPUT_FOLDER);
+
+    Job job = new Job(conf);
+    job.setJobName(": MakeVectors: input-folder: " + input + ", frequency-file: " + frequencyPath);
+    job.setJarByClass(TFIDFConverter.class);
+    job.setOutputKeyClass(Text.class);
+    job.setOutputValueClass(VectorWritable.class);
+    FileInputFormat.setInputPaths(job, input);
+
+    FileOutputFormat.setOutputPath(job, outputDir);
+
+    job.setMapperClass(TFIDFVectorMapper.class);
+    job.setInputFormatClass(SequenceFileInputFormat.class);
+    job.setNumReduceTasks(0);
+    job.setOutputFormatClass(SequenceFileOutputFormat.class);
+
+    HadoopUtil.delete(conf, outputDir);
+
+    boolean succeeded = job.waitForCompletion(true);
+    if (!succeeded) {
+      throw new IllegalStateException("Job failed!");
+    }
+  }
+
+  /**
+   * Writes the document frequencies of the chunks as one big endian long per feature, 0 for missing features.
+   */
+  private static void writeDocumentFrequencies(Iterable<Path> frequencyChunks,
+                                               Path output,
+                                               long featureCount,
+                                               Configuration baseConf) throws IOException {
+    Preconditions.checkArgument(featureCount <= Integer.MAX_VALUE, "Too many features: %s", featureCount);
+    Configuration conf = new Configuration(baseConf);
+    long[] documentFrequencies = new long[(int) featureCount];
+    for (Path chunk : frequencyChunks) {
+      for (Pair<IntWritable,LongWritable> record
+           : new SequenceFileIterable<IntWritable,LongWritable>(chunk, true, conf)) {
+        documentFrequencies[record.getFirst().get()] = record.getSecond().get();
+      }
+    }
+    FileSystem fs = FileSystem.get(output.toUri(), conf);
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fs.create(output, true)));
+    try {
+      for (long documentFrequency : documentFrequencies) {
+        out.writeLong(documentFrequency);
+      }
+    } finally {
+      Closeables.close(out, false);
+    }
+  }
+
   /**
    * Calculates the document frequencies of all terms from the input set of vectors in
    * {@link SequenceFile} format. This job uses a fixed limit on the maximum memory used by the feature chunk
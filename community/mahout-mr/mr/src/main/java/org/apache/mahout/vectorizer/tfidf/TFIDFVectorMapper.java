@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.vectorizer.tfidf;
+
+import com.google.common.base.Preconditions;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.mahout.common.HadoopUtil;
+import org.apache.mahout.math.NamedVector;
+import org.apache.mahout.math.RandomAccessSparseVector;
+import org.apache.mahout.math.SequentialAccessSparseVector;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.VectorWritable;
+import org.apache.mahout.vectorizer.TFIDF;
+import org.apache.mahout.vectorizer.common.PartialVectorMerger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Converts a term frequency vector into its final tf-idf vector in a single map pass. Document frequencies are
+ * read from a memory mapped file holding one long per feature (0 for features without document frequency), written
+ * by {@link TFIDFConverter#processTfIdfInOnePass}.
+ */
+public class TFIDFVectorMapper
+    extends Mapper<WritableComparable<?>, VectorWritable, WritableComparable<?>, VectorWritable> {
+
+  private final TFIDF tfidf = new TFIDF();
+
+  private LongBuffer documentFrequencies;
+  private int minDf = 1;
+  private long maxDf = -1;
+  private long vectorCount = 1;
+  private long featureCount;
+  private boolean sequentialAccess;
+  private boolean namedVector;
+  private double normPower;
+  private boolean logNormalize;
+
+  @Override
+  protected void map(WritableComparable<?> key, VectorWritable value, Context context)
+    throws IOException, InterruptedException {
+    Vector tf = value.get();
+    Vector vector = new RandomAccessSparseVector((int) featureCount, tf.getNumNondefaultElements());
+    for (Vector.Element e : tf.nonZeroes()) {
+      if (e.index() >= documentFrequencies.limit()) {
+        continue;
+      }
+      long df = documentFrequencies.get(e.index());
+      if (df == 0) {
+        continue;
+      }
+      if (maxDf > -1 && (100.0 * df) / vectorCount > maxDf) {
+        continue;
+      }
+      if (df < minDf) {
+        df = minDf;
+      }
+      vector.setQuick(e.index(), tfidf.calculate((int) e.get(), (int) df, (int) featureCount, (int) vectorCount));
+    }
+
+    if (normPower != PartialVectorMerger.NO_NORMALIZING) {
+      if (logNormalize) {
+        vector = vector.logNormalize(normPower);
+      } else {
+        vector = vector.normalize(normPower);
+      }
+    }
+    if (sequentialAccess) {
+      vector = new SequentialAccessSparseVector(vector);
+    }
+
+    if (namedVector) {
+      vector = new NamedVector(vector, key.toString());
+    }
+
+    // drop empty vectors.
+    if (vector.getNumNondefaultElements() > 0) {
+      context.write(key, new VectorWritable(vector));
+    }
+  }
+
+  @Override
+  protected void setup(Context context) throws IOException, InterruptedException {
+    super.setup(context);
+    Configuration conf = context.getConfiguration();
+
+    vectorCount = conf.getLong(TFIDFConverter.VECTOR_COUNT, 1);
+    featureCount = conf.getLong(TFIDFConverter.FEATURE_COUNT, 1);
+    minDf = conf.getInt(TFIDFConverter.MIN_DF, 1);
+    maxDf = conf.getLong(TFIDFConverter.MAX_DF, -1);
+    sequentialAccess = conf.getBoolean(PartialVectorMerger.SEQUENTIAL_ACCESS, false);
+    namedVector = conf.getBoolean(PartialVectorMerger.NAMED_VECTOR, false);
+    normPower = conf.getFloat(PartialVectorMerger.NORMALIZATION_POWER, PartialVectorMerger.NO_NORMALIZING);
+    logNormalize = conf.getBoolean(PartialVectorMerger.LOG_NORMALIZE, false);
+
+    for (Path cachedFile : HadoopUtil.getCachedFiles(conf)) {
+      if (cachedFile.getName().contains(TFIDFConverter.DOCUMENT_FREQUENCY_FILE)) {
+        try (RandomAccessFile file = new RandomAccessFile(new File(cachedFile.toUri().getPath()), "r")) {
+          FileChannel channel = file.getChannel();
+          documentFrequencies = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).asLongBuffer();
+        }
+      }
+    }
+    Preconditions.checkState(documentFrequencies != null,
+        "Unable to find the document frequencies in the cached files");
+  }
+
+}
@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.classifier;
+
+import java.util.List;
+import java.util.Random;
+
+import org.apache.mahout.classifier.naivebayes.ComplementaryNaiveBayesClassifier;
+import org.apache.mahout.classifier.naivebayes.NaiveBayesModel;
+import org.apache.mahout.classifier.naivebayes.StandardNaiveBayesClassifier;
+import org.apache.mahout.classifier.sgd.CrossFoldLearner;
+import org.apache.mahout.classifier.sgd.L1;
+import org.apache.mahout.classifier.sgd.OnlineLogisticRegression;
+import org.apache.mahout.common.MahoutTestCase;
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.math.DenseMatrix;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.RandomAccessSparseVector;
+import org.apache.mahout.math.Vector;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public final class FrozenClassifierTest extends MahoutTestCase {
+
+  private static final int NUM_FEATURES = 20;
+  private static final double EPSILON = 1.0e-12;
+
+  private static List<Vector> instances(Random random, int n) {
+    List<Vector> instances = Lists.newArrayList();
+    for (int i = 0; i < n; i++) {
+      Vector instance = i % 2 == 0 ? new DenseVector(NUM_FEATURES) : new RandomAccessSparseVector(NUM_FEATURES);
+      for (int j = 0; j < NUM_FEATURES; j++) {
+        if (random.nextDouble() < 0.3) {
+          instance.setQuick(j, random.nextGaussian());
+        }
+      }
+      instance.setQuick(0, 1);
+      instances.add(instance);
+    }
+    return instances;
+  }
+
+  private static int target(Vector instance, int numCategories) {
+    return Math.abs((int) (3 * (instance.get(1) + instance.get(2)))) % numCategories;
+  }
+
+  private static void assertSameScores(AbstractVectorClassifier expected, FrozenClassifier frozen,
+                                       List<Vector> instances) {
+    int n = frozen.numCategories();
+    double[] batch = frozen.scoreFull(instances, new double[instances.size() * n]);
+    double[] scores = new double[n];
+    for (int i = 0; i < instances.size(); i++) {
+      Vector instance = instances.get(i);
+      Vector reference = expected.classifyFull(instance);
+      frozen.scoreFull(instance, scores);
+      for (int c = 0; c < n; c++) {
+        assertEquals(reference.get(c), scores[c], EPSILON);
+        assertEquals(scores[c], batch[i * n + c], 0.0);
+      }
+      assertEquals(0, reference.minus(frozen.classifyFull(instance)).norm(1), EPSILON);
+    }
+  }
+
+  @Test
+  public void testLogisticRegression() {
+    Random random = RandomUtils.getRandom();
+    List<Vector> data = instances(random, 500);
+    for (int numCategories : new int[] {2, 4}) {
+      OnlineLogisticRegression lr = new OnlineLogisticRegression(numCategories, NUM_FEATURES, new L1())
+          .lambda(1.0e-3)
+          .learningRate(10);
+      for (Vector instance : data) {
+        lr.train(target(instance, numCategories), instance);
+      }
+
+      FrozenClassifier frozen = FrozenClassifier.compile(lr);
+      assertEquals(numCategories, frozen.numCategories());
+      assertSameScores(lr, frozen, data);
+      if (numCategories == 2) {
+        for (Vector instance : data) {
+          assertEquals(lr.classifyScalar(instance), frozen.classifyScalar(instance), EPSILON);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testCrossFoldLearner() {
+    Random random = RandomUtils.getRandom();
+    List<Vector> data = instances(random, 500);
+    for (int numCategories : new int[] {2, 3}) {
+      CrossFoldLearner learner = new CrossFoldLearner(5, numCategories, NUM_FEATURES, new L1())
+          .lambda(1.0e-3)
+          .learningRate(10);
+      for (Vector instance : data) {
+        learner.train(target(instance, numCategories), instance);
+      }
+      learner.close();
+
+      FrozenClassifier frozen = FrozenClassifier.compile(learner);
+      assertSameScores(learner, frozen, data);
+      for (Vector instance : data) {
+        assertEquals(0, learner.classify(instance).minus(frozen.classify(instance)).norm(1), EPSILON);
+      }
+    }
+  }
+
+  @Test
+  public void testNaiveBayes() {
+    Random random = RandomUtils.getRandom();
+    int numLabels = 4;
+    DenseMatrix weights = new DenseMatrix(numLabels, NUM_FEATURES);
+    for (int i = 0; i < numLabels; i++) {
+      for (int j = 0; j < NUM_FEATURES; j++) {
+        weights.setQuick(i, j, random.nextDouble());
+      }
+    }
+    Vector perFeature = new DenseVector(NUM_FEATURES);
+    Vector perLabel = new DenseVector(numLabels);
+    for (int i = 0; i < numLabels; i++) {
+      perLabel.setQuick(i, weights.viewRow(i).zSum());
+    }
+    for (int j = 0; j < NUM_FEATURES; j++) {
+      perFeature.setQuick(j, weights.viewColumn(j).zSum());
+    }
+    Vector thetaNormalizer = new DenseVector(numLabels).assign(-1.5);
+
+    List<Vector> data = instances(random, 100);
+    NaiveBayesModel standard = new NaiveBayesModel(weights, perFeature, perLabel, null, 1.0f, false);
+    FrozenClassifier frozen = FrozenClassifier.compile(standard);
+    assertSameScores(new StandardNaiveBayesClassifier(standard), frozen, data);
+
+    NaiveBayesModel complementary = new NaiveBayesModel(weights, perFeature, perLabel, thetaNormalizer, 1.0f, true);
+    assertSameScores(new ComplementaryNaiveBayesClassifier(complementary), FrozenClassifier.compile(complementary),
+        data);
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testNaiveBayesHasNoProbabilities() {
+    NaiveBayesModel model = new NaiveBayesModel(new DenseMatrix(2, NUM_FEATURES), new DenseVector(NUM_FEATURES),
+        new DenseVector(2), null, 1.0f, false);
+    FrozenClassifier.compile(model).classify(new DenseVector(NUM_FEATURES));
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.classifier.df.builder;
+
+import java.util.Random;
+
+import org.apache.mahout.classifier.df.DecisionForest;
+import org.apache.mahout.classifier.df.data.BinnedData;
+import org.apache.mahout.classifier.df.data.Data;
+import org.apache.mahout.classifier.df.data.DataLoader;
+import org.apache.mahout.classifier.df.data.Dataset;
+import org.apache.mahout.classifier.df.data.Utils;
+import org.apache.mahout.classifier.df.node.Node;
+import org.apache.mahout.classifier.df.ref.ParallelBuilder;
+import org.apache.mahout.common.MahoutTestCase;
+import org.apache.mahout.common.RandomUtils;
+import org.junit.Test;
+
+@Deprecated
+public final class HistogramTreeBuilderTest extends MahoutTestCase {
+
+  private static final int NUM_ATTRIBUTES = 10;
+
+  private static final int NUM_INSTANCES = 2000;
+
+  private static final int NUM_TREES = 5;
+
+  @Test
+  public void testClassification() throws Exception {
+    Random rng = RandomUtils.getRandom();
+    Data data = Utils.randomData(rng, NUM_ATTRIBUTES, false, NUM_INSTANCES);
+    HistogramTreeBuilder treeBuilder = new HistogramTreeBuilder(new BinnedData(data));
+
+    Node tree = treeBuilder.build(rng);
+    for (int index = 0; index < data.size(); index++) {
+      double label = tree.classify(data.get(index));
+      assertTrue(label >= 0 && label < data.getDataset().nblabels());
+    }
+
+    assertSameForest(treeBuilder);
+  }
+
+  @Test
+  public void testRegression() throws Exception {
+    Random rng = RandomUtils.getRandom();
+    Data data = Utils.randomData(rng, NUM_ATTRIBUTES, true, NUM_INSTANCES);
+    HistogramTreeBuilder treeBuilder = new HistogramTreeBuilder(new BinnedData(data));
+
+    Node tree = treeBuilder.build(rng);
+    for (int index = 0; index < data.size(); index++) {
+      double label = tree.classify(data.get(index));
+      assertTrue(label >= 0.0 && label < 1.0);
+    }
+
+    assertSameForest(treeBuilder);
+  }
+
+  @Test
+  public void testSeparableClassification() throws Exception {
+    Random rng = RandomUtils.getRandom();
+    Data data = separableData(rng, false);
+    Dataset dataset = data.getDataset();
+    HistogramTreeBuilder treeBuilder = new HistogramTreeBuilder(new BinnedData(data));
+    treeBuilder.setM(2);
+
+    Node tree = treeBuilder.build(rng);
+    for (int index = 0; index < data.size(); index++) {
+      assertEquals(dataset.getLabel(data.get(index)), tree.classify(data.get(index)), EPSILON);
+    }
+  }
+
+  @Test
+  public void testSeparableRegression() throws Exception {
+    Random rng = RandomUtils.getRandom();
+    Data data = separableData(rng, true);
+    Dataset dataset = data.getDataset();
+    HistogramTreeBuilder treeBuilder = new HistogramTreeBuilder(new BinnedData(data));
+    treeBuilder.setM(2);
+
+    Node tree = treeBuilder.build(rng);
+    for (int index = 0; index < data.size(); index++) {
+      assertEquals(dataset.getLabel(data.get(index)), tree.classify(data.get(index)), EPSILON);
+    }
+  }
+
+  /**
+   * Two numerical attributes, the label only depends on whether the first one is below 0.4 or above 0.6. The first
+   * attribute has fewer distinct values than {@link BinnedData#DEFAULT_MAX_BINS} so that no bin straddles the gap.
+   */
+  private static Data separableData(Random rng, boolean regression) throws Exception {
+    String[] source = new String[NUM_INSTANCES];
+    for (int index = 0; index < NUM_INSTANCES; index++) {
+      boolean high = rng.nextBoolean();
+      double value = (high ? 60 + rng.nextInt(40) : rng.nextInt(40)) / 100.0;
+      String label = regression ? (high ? "3.0" : "1.0") : (high ? "1" : "0");
+      source[index] = value + "," + rng.nextDouble() + ',' + label;
+    }
+    Dataset dataset = DataLoader.generateDataset("N N L", regression, source);
+    return DataLoader.loadData(dataset, source);
+  }
+
+  /**
+   * The forest must not depend on the number of threads
+   */
+  private static void assertSameForest(HistogramTreeBuilder treeBuilder) {
+    long seed = RandomUtils.getRandom().nextLong();
+    DecisionForest expected = new ParallelBuilder(RandomUtils.getRandom(seed), treeBuilder, 1).build(NUM_TREES);
+    DecisionForest actual = new ParallelBuilder(RandomUtils.getRandom(seed), treeBuilder, 4).build(NUM_TREES);
+    assertEquals(expected, actual);
+  }
+}
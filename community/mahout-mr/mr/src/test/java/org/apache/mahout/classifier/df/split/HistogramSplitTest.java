@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.classifier.df.split;
+
+import java.util.Random;
+
+import org.apache.mahout.classifier.df.data.BinnedData;
+import org.apache.mahout.classifier.df.data.Data;
+import org.apache.mahout.classifier.df.data.Dataset;
+import org.apache.mahout.classifier.df.data.Utils;
+import org.apache.mahout.common.MahoutTestCase;
+import org.apache.mahout.common.RandomUtils;
+import org.junit.Test;
+
+@Deprecated
+public final class HistogramSplitTest extends MahoutTestCase {
+
+  private static final int NUM_ATTRIBUTES = 10;
+
+  // fewer instances than bins, so every distinct value gets its own bin
+  private static final int NUM_INSTANCES = 100;
+
+  @Test
+  public void testBins() throws Exception {
+    Random rng = RandomUtils.getRandom();
+    Data data = Utils.randomData(rng, NUM_ATTRIBUTES, false, 1000);
+    Dataset dataset = data.getDataset();
+    BinnedData binned = new BinnedData(data, 16);
+
+    for (int attr = 0; attr < dataset.nbAttributes(); attr++) {
+      if (attr == dataset.getLabelId()) {
+        continue;
+      }
+      short[] bins = binned.bins(attr);
+      for (int index = 0; index < data.size(); index++) {
+        double value = data.get(index).get(attr);
+        int bin = bins[index];
+        assertTrue(bin >= 0 && bin < binned.nbBins(attr));
+        if (dataset.isNumerical(attr)) {
+          assertTrue(binned.nbBins(attr) <= 16);
+          assertEquals(bin, binned.bin(attr, value));
+          if (bin > 0) {
+            assertTrue(value >= binned.cut(attr, bin - 1));
+          }
+          if (bin < binned.nbBins(attr) - 1) {
+            assertTrue(value < binned.cut(attr, bin));
+          }
+        } else {
+          assertEquals((int) value, bin);
+          assertTrue(binned.isPresent(attr, bin));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testClassification() throws Exception {
+    Random rng = RandomUtils.getRandom();
+    Data data = Utils.randomData(rng, NUM_ATTRIBUTES, false, NUM_INSTANCES);
+    assertSameGain(data, new DefaultIgSplit());
+  }
+
+  @Test
+  public void testRegression() throws Exception {
+    Random rng = RandomUtils.getRandom();
+    Data data = Utils.randomData(rng, NUM_ATTRIBUTES, true, NUM_INSTANCES);
+    assertSameGain(data, new RegressionSplit());
+  }
+
+  /**
+   * The histogram split must find the same gain as an exhaustive split, and the histogram of a subset must be the
+   * histogram of the whole data minus the histogram of the other instances
+   */
+  private static void assertSameGain(Data data, IgSplit igSplit) {
+    Dataset dataset = data.getDataset();
+    boolean regression = dataset.isNumerical(dataset.getLabelId());
+    BinnedData binned = new BinnedData(data);
+    int stride = HistogramSplit.stride(dataset);
+
+    int[] rows = new int[data.size()];
+    int[] lo = new int[(data.size() + 2) / 3];
+    int[] hi = new int[data.size() - lo.length];
+    for (int index = 0; index < data.size(); index++) {
+      rows[index] = index;
+      if (index % 3 == 0) {
+        lo[index / 3] = index;
+      } else {
+        hi[index - index / 3 - 1] = index;
+      }
+    }
+
+    for (int attr = 0; attr < dataset.nbAttributes(); attr++) {
+      if (attr == dataset.getLabelId()) {
+        continue;
+      }
+      double[] histogram = new double[binned.nbBins(attr) * stride];
+      HistogramSplit.fill(binned, attr, rows, histogram);
+      Split expected = igSplit.computeSplit(data, attr);
+      Split actual = HistogramSplit.computeSplit(binned, attr, histogram);
+      assertEquals(attr, actual.getAttr());
+      if (regression && dataset.isNumerical(attr)) {
+        // RegressionSplit picks the cut with the least sum of variances, not the largest gain
+        assertTrue(actual.getIg() >= expected.getIg() - EPSILON);
+      } else {
+        assertEquals(expected.getIg(), actual.getIg(), EPSILON);
+      }
+
+      double[] loHistogram = new double[histogram.length];
+      HistogramSplit.fill(binned, attr, lo, loHistogram);
+      double[] hiHistogram = new double[histogram.length];
+      HistogramSplit.fill(binned, attr, hi, hiHistogram);
+      HistogramSplit.subtract(histogram, loHistogram);
+      assertArrayEquals(hiHistogram, loHistogram, EPSILON);
+    }
+  }
+}
@@ -0,0 +1,218 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.classifier.naivebayes.training;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.google.common.collect.Lists;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.mahout.classifier.naivebayes.BayesUtils;
+import org.apache.mahout.classifier.naivebayes.NaiveBayesModel;
+import org.apache.mahout.common.MahoutTestCase;
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.math.RandomAccessSparseVector;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.VectorWritable;
+import org.apache.mahout.math.function.Functions;
+import org.junit.Before;
+import org.junit.Test;
+
+public class InMemoryNaiveBayesTrainerTest extends MahoutTestCase {
+
+  private static final int NUM_INSTANCES = 500;
+  private static final int NUM_LABELS = 5;
+  private static final int CARDINALITY = 200;
+  private static final float ALPHA_I = 1.0f;
+
+  private List<Vector> instances;
+  private int[] labels;
+
+  @Override
+  @Before
+  public void setUp() throws Exception {
+    super.setUp();
+    Random random = RandomUtils.getRandom();
+    instances = Lists.newArrayList();
+    labels = new int[NUM_INSTANCES];
+    for (int i = 0; i < NUM_INSTANCES; i++) {
+      Vector instance = new RandomAccessSparseVector(CARDINALITY);
+      for (int j = 0; j < 20; j++) {
+        instance.set(random.nextInt(CARDINALITY), random.nextInt(5) + 1);
+      }
+      instances.add(instance);
+      labels[i] = random.nextInt(NUM_LABELS);
+    }
+  }
+
+  @Test
+  public void standard() {
+    NaiveBayesModel model = new InMemoryNaiveBayesTrainer(ALPHA_I, false, 3).train(instances, labels, NUM_LABELS);
+    model.validate();
+    assertModel(model, false);
+  }
+
+  @Test
+  public void complementary() {
+    NaiveBayesModel model = new InMemoryNaiveBayesTrainer(ALPHA_I, true, 3).train(instances, labels, NUM_LABELS);
+    model.validate();
+    assertModel(model, true);
+  }
+
+  @Test
+  public void sameModelForAnyNumberOfThreads() {
+    NaiveBayesModel single = new InMemoryNaiveBayesTrainer(ALPHA_I, true, 1).train(instances, labels, NUM_LABELS);
+    NaiveBayesModel multi = new InMemoryNaiveBayesTrainer(ALPHA_I, true, 4).train(instances, labels, NUM_LABELS);
+    for (int label = 0; label < NUM_LABELS; label++) {
+      assertEquals(single.labelWeight(label), multi.labelWeight(label), EPSILON);
+      assertEquals(single.thetaNormalizer(label), multi.thetaNormalizer(label), EPSILON);
+      for (int feature = 0; feature < CARDINALITY; feature++) {
+        assertEquals(single.weight(label, feature), multi.weight(label, feature), EPSILON);
+      }
+    }
+    assertEquals(single.numFeatures(), multi.numFeatures(), EPSILON);
+  }
+
+  @Test
+  public void sameModelAsMapReduce() throws Exception {
+    assertSameModelAsMapReduce(false);
+  }
+
+  @Test
+  public void sameComplementaryModelAsMapReduce() throws Exception {
+    assertSameModelAsMapReduce(true);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void unknownLabel() {
+    labels[0] = NUM_LABELS;
+    new InMemoryNaiveBayesTrainer(ALPHA_I, false, 2).train(instances, labels, NUM_LABELS);
+  }
+
+  /** Trains with the map/reduce jobs of {@link TrainNaiveBayesJob} in local mode and compares every field. */
+  private void assertSameModelAsMapReduce(boolean complementary) throws Exception {
+    Configuration conf = getConfiguration();
+    Path input = getTestTempFilePath("instances.seq");
+    try (SequenceFile.Writer writer = new SequenceFile.Writer(FileSystem.get(conf), conf, input, Text.class,
+        VectorWritable.class)) {
+      for (int i = 0; i < NUM_INSTANCES; i++) {
+        writer.append(new Text("/label" + labels[i] + '/'), new VectorWritable(instances.get(i)));
+      }
+    }
+
+    Path output = getTestTempFilePath("output");
+    Path labelIndex = getTestTempFilePath("labelIndex");
+    TrainNaiveBayesJob trainNaiveBayes = new TrainNaiveBayesJob();
+    trainNaiveBayes.setConf(conf);
+    List<String> args = Lists.newArrayList("--input", input.toString(), "--output", output.toString(),
+        "--labelIndex", labelIndex.toString(), "--alphaI", String.valueOf(ALPHA_I),
+        "--tempDir", getTestTempFilePath("tmp").toString());
+    if (complementary) {
+      args.add("--trainComplementary");
+    }
+    assertEquals(0, trainNaiveBayes.run(args.toArray(new String[args.size()])));
+    NaiveBayesModel expected = NaiveBayesModel.materialize(output, conf);
+
+    // the job numbers the labels in the order it first sees them
+    int[] indexedLabels = new int[NUM_INSTANCES];
+    Map<Integer, String> index = BayesUtils.readLabelIndex(conf, labelIndex);
+    for (int i = 0; i < NUM_INSTANCES; i++) {
+      for (Map.Entry<Integer, String> entry : index.entrySet()) {
+        if (entry.getValue().equals("label" + labels[i])) {
+          indexedLabels[i] = entry.getKey();
+        }
+      }
+    }
+    NaiveBayesModel actual =
+        new InMemoryNaiveBayesTrainer(ALPHA_I, complementary, 3).train(instances, indexedLabels, index.size());
+
+    assertEquals(expected.numLabels(), actual.numLabels());
+    assertEquals(expected.cardinality(), actual.cardinality());
+    assertEquals(expected.alphaI(), actual.alphaI(), EPSILON);
+    assertEquals(expected.isComplemtary(), actual.isComplemtary());
+    assertEquals(expected.numFeatures(), actual.numFeatures(), EPSILON);
+    assertEquals(expected.totalWeightSum(), actual.totalWeightSum(), EPSILON);
+    for (int feature = 0; feature < expected.cardinality(); feature++) {
+      assertEquals(expected.featureWeight(feature), actual.featureWeight(feature), EPSILON);
+    }
+    for (int label = 0; label < expected.numLabels(); label++) {
+      assertEquals(expected.labelWeight(label), actual.labelWeight(label), EPSILON);
+      if (complementary) {
+        assertEquals(expected.thetaNormalizer(label), actual.thetaNormalizer(label), EPSILON);
+      }
+      for (int feature = 0; feature < expected.cardinality(); feature++) {
+        assertEquals(expected.weight(label, feature), actual.weight(label, feature), EPSILON);
+      }
+    }
+  }
+
+  /** Compares to the sums and theta normalizers computed the way the mappers of {@link TrainNaiveBayesJob} do. */
+  private void assertModel(NaiveBayesModel model, boolean complementary) {
+    Vector[] summedObservations = new Vector[NUM_LABELS];
+    for (int i = 0; i < NUM_INSTANCES; i++) {
+      if (summedObservations[labels[i]] == null) {
+        summedObservations[labels[i]] = new RandomAccessSparseVector(CARDINALITY);
+      }
+      summedObservations[labels[i]].assign(instances.get(i), Functions.PLUS);
+    }
+
+    Vector weightsPerFeature = new RandomAccessSparseVector(CARDINALITY);
+    Vector weightsPerLabel = new RandomAccessSparseVector(NUM_LABELS);
+    for (int label = 0; label < NUM_LABELS; label++) {
+      if (summedObservations[label] != null) {
+        weightsPerFeature.assign(summedObservations[label], Functions.PLUS);
+        weightsPerLabel.set(label, summedObservations[label].zSum());
+      }
+    }
+
+    assertEquals(NUM_LABELS, model.numLabels());
+    assertEquals(CARDINALITY, model.cardinality());
+    assertEquals(ALPHA_I, model.alphaI(), EPSILON);
+    assertEquals(complementary, model.isComplemtary());
+    assertEquals(weightsPerFeature.getNumNondefaultElements(), model.numFeatures(), EPSILON);
+    assertEquals(weightsPerLabel.zSum(), model.totalWeightSum(), EPSILON);
+    for (int feature = 0; feature < CARDINALITY; feature++) {
+      assertEquals(weightsPerFeature.get(feature), model.featureWeight(feature), EPSILON);
+    }
+    for (int label = 0; label < NUM_LABELS; label++) {
+      assertEquals(weightsPerLabel.get(label), model.labelWeight(label), EPSILON);
+      for (int feature = 0; feature < CARDINALITY; feature++) {
+        double expected = summedObservations[label] == null ? 0 : summedObservations[label].get(feature);
+        assertEquals(expected, model.weight(label, feature), EPSILON);
+      }
+    }
+
+    if (complementary) {
+      ComplementaryThetaTrainer trainer = new ComplementaryThetaTrainer(weightsPerFeature, weightsPerLabel, ALPHA_I);
+      for (int label = 0; label < NUM_LABELS; label++) {
+        if (summedObservations[label] != null) {
+          trainer.train(label, summedObservations[label]);
+        }
+      }
+      Vector perLabelThetaNormalizer = trainer.retrievePerLabelThetaNormalizer();
+      for (int label = 0; label < NUM_LABELS; label++) {
+        assertEquals(perLabelThetaNormalizer.get(label), model.thetaNormalizer(label), EPSILON);
+      }
+    }
+  }
+}
@@ -17,6 +17,9 @@
 
 package org.apache.mahout.classifier.sequencelearning.hmm;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.apache.mahout.math.Matrix;
 import org.junit.Test;
 
@@ -60,4 +63,21 @@ public class HMMEvaluatorTest extends HMMTestBase {
     assertEquals(1.8425e-4, forwardLikelihood, EPSILON);
   }
 
+  @Test
+  public void testBatchDecode() {
+    HmmModel model = new HmmModel(5, 7, 1234L);
+    List<int[]> observed = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      // a few sequences long enough to underflow without scaling
+      observed.add(HmmEvaluator.predict(model, i % 50 == 0 ? 3000 : 1 + i % 30, i + 1));
+    }
+
+    List<int[]> decoded = HmmEvaluator.decode(model, observed, 3);
+
+    assertEquals(observed.size(), decoded.size());
+    for (int i = 0; i < observed.size(); i++) {
+      assertArrayEquals(HmmEvaluator.decode(model, observed.get(i), true), decoded.get(i));
+    }
+  }
+
 }
@@ -17,6 +17,10 @@
 
 package org.apache.mahout.classifier.sequencelearning.hmm;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import org.apache.mahout.math.Matrix;
 import org.apache.mahout.math.Vector;
 import org.junit.Test;
@@ -160,4 +164,44 @@ public class HMMTrainerTest extends HMMTestBase {
     }
   }
 
+  @Test
+  public void testParallelBaumWelchTraining() {
+    int[] observed = {1, 0, 2, 2, 0, 0, 1, 1, 1, 0, 2, 0, 1, 0, 0};
+
+    // a single sequence has to give the same model as the sequential version
+    HmmModel expected = HmmTrainer.trainBaumWelch(getModel(), observed, 0.1, 10, false);
+    HmmModel trained = HmmTrainer.trainBaumWelch(getModel(), Collections.singletonList(observed), 0.1, 10, 2);
+
+    assertSameModel(expected, trained, 1.0e-10);
+  }
+
+  @Test
+  public void testParallelBaumWelchSequences() {
+    List<int[]> observed = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      observed.add(HmmEvaluator.predict(getModel(), 1 + i % 40, i + 1));
+    }
+    HmmModel initial = new HmmModel(4, 3, 1234L);
+
+    HmmModel sequential = HmmTrainer.trainBaumWelch(initial, observed, 0.0001, 20, 1);
+    HmmModel parallel = HmmTrainer.trainBaumWelch(initial, observed, 0.0001, 20, 4);
+
+    assertSameModel(sequential, parallel, 1.0e-10);
+    HmmUtils.validate(parallel);
+  }
+
+  private static void assertSameModel(HmmModel expected, HmmModel actual, double epsilon) {
+    for (int i = 0; i < expected.getNrOfHiddenStates(); ++i) {
+      assertEquals(expected.getInitialProbabilities().get(i), actual.getInitialProbabilities().get(i), epsilon);
+      for (int j = 0; j < expected.getNrOfHiddenStates(); ++j) {
+        assertEquals(expected.getTransitionMatrix().getQuick(i, j), actual.getTransitionMatrix().getQuick(i, j),
+            epsilon);
+      }
+      for (int j = 0; j < expected.getNrOfOutputStates(); ++j) {
+        assertEquals(expected.getEmissionMatrix().getQuick(i, j), actual.getEmissionMatrix().getQuick(i, j),
+            epsilon);
+      }
+    }
+  }
+
 }
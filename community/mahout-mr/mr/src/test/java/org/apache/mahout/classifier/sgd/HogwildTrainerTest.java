@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.classifier.sgd;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.mahout.common.Pair;
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.Vector;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public final class HogwildTrainerTest extends OnlineBaseTest {
+
+  private static final int NUM_THREADS = 4;
+  private static final int NUM_PASSES = 10;
+
+  private static List<Pair<Integer, Vector>> examples(Matrix input, Vector target) {
+    Random gen = RandomUtils.getRandom();
+    List<Pair<Integer, Vector>> examples = Lists.newArrayList();
+    for (int pass = 0; pass < NUM_PASSES; pass++) {
+      for (int row : permute(gen, 60)) {
+        examples.add(new Pair<>((int) target.get(row), input.viewRow(row)));
+      }
+    }
+    return examples;
+  }
+
+  @Test
+  public void testLogisticRegression() throws IOException {
+    Vector target = readStandardData();
+    OnlineLogisticRegression lr = new OnlineLogisticRegression(2, 8, new L1())
+      .lambda(1 * 1.0e-3)
+      .learningRate(50);
+
+    HogwildTrainer trainer = new HogwildLogisticRegressionTrainer(lr, NUM_THREADS, 4);
+    trainer.train(examples(getInput(), target));
+    trainer.close();
+
+    assertEquals(NUM_PASSES * 60 + 1, lr.getStep());
+    assertTrue(lr.validModel());
+    test(getInput(), target, lr, 0.05, 0.3);
+  }
+
+  @Test
+  public void testSingleExamples() throws IOException {
+    Vector target = readStandardData();
+    OnlineLogisticRegression lr = new OnlineLogisticRegression(2, 8, new L1())
+      .lambda(1 * 1.0e-3)
+      .learningRate(50);
+
+    // examples may also be pushed one at a time, from any number of threads
+    HogwildTrainer trainer = new HogwildLogisticRegressionTrainer(lr, 1);
+    train(getInput(), target, trainer);
+    test(getInput(), target, lr, 0.05, 0.3);
+  }
+
+  @Test
+  public void testPassiveAggressive() throws IOException {
+    Vector target = readStandardData();
+    PassiveAggressive pa = new PassiveAggressive(2, 8).learningRate(0.1);
+
+    HogwildTrainer trainer = new HogwildPassiveAggressiveTrainer(pa, NUM_THREADS, 4);
+    trainer.train(examples(getInput(), target));
+    trainer.close();
+
+    test(getInput(), target, pa, 0.11, 0.31);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnsupportedGradient() {
+    OnlineLogisticRegression lr = new OnlineLogisticRegression(2, 8, new L1());
+    lr.setGradient(new MixedGradient(0.5, 10));
+    new HogwildLogisticRegressionTrainer(lr, NUM_THREADS);
+  }
+}
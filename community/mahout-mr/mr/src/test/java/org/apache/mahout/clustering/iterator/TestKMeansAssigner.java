@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.clustering.iterator;
+
+import java.util.List;
+import java.util.Random;
+
+import org.apache.mahout.clustering.Cluster;
+import org.apache.mahout.clustering.classify.ClusterClassifier;
+import org.apache.mahout.clustering.kmeans.Kluster;
+import org.apache.mahout.common.MahoutTestCase;
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.common.distance.ChebyshevDistanceMeasure;
+import org.apache.mahout.common.distance.CosineDistanceMeasure;
+import org.apache.mahout.common.distance.DistanceMeasure;
+import org.apache.mahout.common.distance.EuclideanDistanceMeasure;
+import org.apache.mahout.common.distance.ManhattanDistanceMeasure;
+import org.apache.mahout.common.distance.SquaredEuclideanDistanceMeasure;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.Vector;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public final class TestKMeansAssigner extends MahoutTestCase {
+
+  private static final int NUM_POINTS = 2000;
+  private static final int NUM_BLOBS = 10;
+  private static final int NUM_CLUSTERS = 12;
+  private static final int NUM_DIMENSIONS = 5;
+  private static final int NUM_ITERATIONS = 10;
+
+  private static final DistanceMeasure[] MEASURES = {
+      new EuclideanDistanceMeasure(), new SquaredEuclideanDistanceMeasure(), new ManhattanDistanceMeasure(),
+      new ChebyshevDistanceMeasure()
+  };
+
+  private static List<Vector> blobs(Random random) {
+    List<Vector> blobCenters = Lists.newArrayList();
+    for (int i = 0; i < NUM_BLOBS; i++) {
+      Vector center = new DenseVector(NUM_DIMENSIONS);
+      for (int j = 0; j < NUM_DIMENSIONS; j++) {
+        center.set(j, 10 * random.nextDouble());
+      }
+      blobCenters.add(center);
+    }
+    List<Vector> points = Lists.newArrayList();
+    for (int i = 0; i < NUM_POINTS; i++) {
+      Vector point = blobCenters.get(random.nextInt(NUM_BLOBS)).clone();
+      for (int j = 0; j < NUM_DIMENSIONS; j++) {
+        point.set(j, point.get(j) + random.nextGaussian());
+      }
+      points.add(point);
+    }
+    return points;
+  }
+
+  private static ClusterClassifier newClassifier(List<Vector> points, DistanceMeasure measure,
+                                                 ClusteringPolicy policy) {
+    List<Cluster> models = Lists.newArrayList();
+    for (int i = 0; i < NUM_CLUSTERS; i++) {
+      models.add(new Kluster(points.get(i).clone(), i, measure));
+    }
+    return new ClusterClassifier(models, policy);
+  }
+
+  private static int exhaustiveNearest(ClusterClassifier classifier, Vector point) {
+    return classifier.getPolicy().select(classifier.classify(point)).maxValueIndex();
+  }
+
+  @Test
+  public void testIterateMatchesExhaustive() {
+    Random random = RandomUtils.getRandom();
+    List<Vector> points = blobs(random);
+    for (DistanceMeasure measure : MEASURES) {
+      ClusterClassifier accelerated = newClassifier(points, measure, new KMeansClusteringPolicy());
+      // any subclass of the policy takes the exhaustive path
+      ClusterClassifier exhaustive = newClassifier(points, measure, new KMeansClusteringPolicy() {});
+      assertNotNull(KMeansAssigner.forClassifier(accelerated));
+      assertNull(KMeansAssigner.forClassifier(exhaustive));
+
+      ClusterIterator.iterate(points, accelerated, NUM_ITERATIONS);
+      ClusterIterator.iterate(points, exhaustive, NUM_ITERATIONS);
+      for (int i = 0; i < NUM_CLUSTERS; i++) {
+        Cluster expected = exhaustive.getModels().get(i);
+        Cluster actual = accelerated.getModels().get(i);
+        assertEquals(measure.getClass().getSimpleName(), expected.getNumObservations(),
+            actual.getNumObservations());
+        assertEquals(measure.getClass().getSimpleName(), 0.0,
+            expected.getCenter().minus(actual.getCenter()).norm(1), 0.0);
+      }
+    }
+  }
+
+  @Test
+  public void testNearestMatchesExhaustive() {
+    Random random = RandomUtils.getRandom();
+    List<Vector> points = blobs(random);
+    for (DistanceMeasure measure : MEASURES) {
+      ClusterClassifier classifier = newClassifier(points, measure, new KMeansClusteringPolicy());
+      KMeansAssigner assigner = KMeansAssigner.forClassifier(classifier);
+      for (int iteration = 0; iteration < NUM_ITERATIONS; iteration++) {
+        assigner.update(classifier.getModels());
+        for (int i = 0; i < points.size(); i++) {
+          Vector point = points.get(i);
+          int expected = exhaustiveNearest(classifier, point);
+          assertEquals(expected, assigner.nearest(point));
+          assertEquals(expected, assigner.nearest(i, point));
+          classifier.train(expected, point, 1.0);
+        }
+        classifier.close();
+      }
+    }
+  }
+
+  @Test
+  public void testBoundsSkipDistances() {
+    Random random = RandomUtils.getRandom();
+    List<Vector> points = blobs(random);
+    ClusterClassifier classifier = newClassifier(points, new EuclideanDistanceMeasure(),
+        new KMeansClusteringPolicy());
+    KMeansAssigner assigner = KMeansAssigner.forClassifier(classifier);
+    for (int iteration = 0; iteration < NUM_ITERATIONS; iteration++) {
+      assigner.update(classifier.getModels());
+      for (int i = 0; i < points.size(); i++) {
+        classifier.train(assigner.nearest(i, points.get(i)), points.get(i), 1.0);
+      }
+      classifier.close();
+    }
+    long exhaustiveDistances = (long) NUM_ITERATIONS * NUM_POINTS * NUM_CLUSTERS;
+    assertTrue(String.valueOf(assigner.getNumDistances()), assigner.getNumDistances() < exhaustiveDistances / 2);
+  }
+
+  @Test
+  public void testUnsupportedMeasure() {
+    Random random = RandomUtils.getRandom();
+    List<Vector> points = blobs(random);
+    assertNull(KMeansAssigner.forClassifier(newClassifier(points, new CosineDistanceMeasure(),
+        new KMeansClusteringPolicy())));
+    assertNull(KMeansAssigner.forClassifier(newClassifier(points, new EuclideanDistanceMeasure(),
+        new FuzzyKMeansClusteringPolicy())));
+  }
+}
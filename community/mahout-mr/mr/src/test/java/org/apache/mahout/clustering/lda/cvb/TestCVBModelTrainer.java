@@ -20,11 +20,17 @@ import com.google.common.base.Joiner;
 import com.google.common.collect.Lists;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
 import org.apache.mahout.clustering.ClusteringTestUtils;
 import org.apache.mahout.common.MahoutTestCase;
+import org.apache.mahout.common.Pair;
 import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.common.iterator.sequencefile.PathFilters;
+import org.apache.mahout.common.iterator.sequencefile.PathType;
+import org.apache.mahout.common.iterator.sequencefile.SequenceFileDirIterable;
 import org.apache.mahout.math.Matrix;
 import org.apache.mahout.math.MatrixUtils;
+import org.apache.mahout.math.VectorWritable;
 import org.apache.mahout.math.function.DoubleFunction;
 import org.junit.Test;
 
@@ -123,6 +129,54 @@ public final class TestCVBModelTrainer extends MahoutTestCase {
     System.out.println("Perplexities: " + Joiner.on(", ").join(perplexities));
   }
 
+  @Test
+  public void testShardedModelViaMR() throws Exception {
+    int numGeneratingTopics = 3;
+    int numTerms = 9;
+    Matrix matrix = ClusteringTestUtils.randomStructuredModel(numGeneratingTopics, numTerms, new DoubleFunction() {
+      @Override
+      public double apply(double d) {
+        return 1.0 / Math.pow(d + 1.0, 3);
+      }
+    });
+    Matrix sampledCorpus = ClusteringTestUtils.sampledCorpus(matrix, RandomUtils.getRandom(1234), 500, 10, 1);
+    Path sampleCorpusPath = getTestTempDirPath("corpus");
+    MatrixUtils.write(sampleCorpusPath, getConfiguration(), sampledCorpus);
+
+    double[] perplexities = new double[2];
+    for (boolean sharded : new boolean[] {false, true}) {
+      Path topicModelStateTempPath = getTestTempDirPath("topicTemp" + sharded);
+      Path topicModelOutputPath = getTestTempFilePath("topicModel" + sharded);
+      Path docTopicOutputPath = getTestTempFilePath("docTopics" + sharded);
+      Configuration conf = getConfiguration();
+      conf.setBoolean(CVB0Driver.SHARDED_MODEL, sharded);
+      new CVB0Driver().run(conf, sampleCorpusPath, topicModelOutputPath, numGeneratingTopics, numTerms,
+          ALPHA, ETA, 5, 1, 0, null, docTopicOutputPath, topicModelStateTempPath, 1234, 0.2f, 2,
+          1, 3, 1, false);
+      perplexities[sharded ? 1 : 0] = lowestPerplexity(conf, topicModelStateTempPath);
+
+      int numTopics = 0;
+      for (Pair<IntWritable, VectorWritable> topic
+          : new SequenceFileDirIterable<IntWritable, VectorWritable>(topicModelOutputPath, PathType.LIST,
+              PathFilters.partFilter(), conf)) {
+        assertEquals(1.0, topic.getSecond().get().norm(1), EPSILON);
+        numTopics++;
+      }
+      assertEquals(numGeneratingTopics, numTopics);
+      int numDocs = 0;
+      for (Pair<IntWritable, VectorWritable> docTopics
+          : new SequenceFileDirIterable<IntWritable, VectorWritable>(docTopicOutputPath, PathType.LIST,
+              PathFilters.partFilter(), conf)) {
+        assertEquals(1.0, docTopics.getSecond().get().norm(1), EPSILON);
+        numDocs++;
+      }
+      assertEquals(sampledCorpus.numRows(), numDocs);
+    }
+    System.out.println("Perplexities dense, sharded: " + Arrays.toString(perplexities));
+    // the sharded model drops improbable topics and starts from another random model, but learns as well
+    assertEquals(perplexities[0], perplexities[1], 0.1 * perplexities[0]);
+  }
+
   private static double lowestPerplexity(Configuration conf, Path topicModelTemp)
       throws IOException {
     double lowest = Double.MAX_VALUE;
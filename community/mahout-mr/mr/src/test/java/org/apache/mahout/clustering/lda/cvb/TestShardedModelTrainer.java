@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.clustering.lda.cvb;
+
+import java.io.File;
+
+import org.apache.mahout.clustering.ClusteringTestUtils;
+import org.apache.mahout.common.MahoutTestCase;
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.math.DenseMatrix;
+import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.function.DoubleFunction;
+import org.junit.Test;
+
+public final class TestShardedModelTrainer extends MahoutTestCase {
+
+  private static final double ETA = 0.1;
+  private static final double ALPHA = 0.1;
+
+  private static final int NUM_TOPICS = 3;
+  private static final int NUM_TERMS = 26;
+  private static final int NUM_SHARDS = 5;
+  private static final int NUM_ITERATIONS = 5;
+
+  private static Matrix sampledCorpus() {
+    Matrix matrix = ClusteringTestUtils.randomStructuredModel(NUM_TOPICS, NUM_TERMS, new DoubleFunction() {
+      @Override public double apply(double d) {
+        return 1.0 / Math.pow(d + 1.0, 2);
+      }
+    });
+    return ClusteringTestUtils.sampledCorpus(matrix, RandomUtils.getRandom(1234), 200, 20, 2);
+  }
+
+  private static ShardedModelTrainer train(Matrix corpus, int numThreads, double[] perplexities) {
+    ShardedTopicModel initialModel =
+        ShardedTopicModel.randomModel(NUM_TOPICS, NUM_TERMS, ETA, ALPHA, NUM_SHARDS, 2, RandomUtils.getRandom(42));
+    ShardedModelTrainer trainer = new ShardedModelTrainer(initialModel, numThreads, NUM_SHARDS);
+    Matrix docTopics = new DenseMatrix(corpus.numRows(), NUM_TOPICS).assign(1.0 / NUM_TOPICS);
+    for (int i = 0; i < perplexities.length; i++) {
+      trainer.train(corpus, docTopics, NUM_ITERATIONS);
+      perplexities[i] = trainer.calculatePerplexity(corpus, docTopics, 0);
+    }
+    return trainer;
+  }
+
+  @Test
+  public void testPerplexityDecreases() {
+    Matrix corpus = sampledCorpus();
+    double[] perplexities = new double[5];
+    ShardedTopicModel model = train(corpus, 2, perplexities).getReadModel();
+
+    assertTrue(perplexities[perplexities.length - 1] < perplexities[0]);
+    // the model holds all the weight of the corpus
+    double corpusWeight = 0;
+    for (int docId = 0; docId < corpus.numRows(); docId++) {
+      corpusWeight += corpus.viewRow(docId).norm(1);
+    }
+    assertEquals(corpusWeight, model.topicSums().norm(1), 1.0e-2);
+  }
+
+  @Test
+  public void testSameModelForAnyNumberOfThreads() {
+    Matrix corpus = sampledCorpus();
+    double[] expectedPerplexities = new double[3];
+    ShardedTopicModel expected = train(corpus, 1, expectedPerplexities).getReadModel();
+    double[] perplexities = new double[3];
+    ShardedTopicModel actual = train(corpus, 4, perplexities).getReadModel();
+
+    assertArrayEquals(expectedPerplexities, perplexities, 0.0);
+    assertEquals(expected.getNumNonZeroes(), actual.getNumNonZeroes());
+    for (int topic = 0; topic < NUM_TOPICS; topic++) {
+      for (int term = 0; term < NUM_TERMS; term++) {
+        assertEquals(expected.count(topic, term), actual.count(topic, term), 0.0);
+      }
+    }
+  }
+
+  @Test
+  public void testWriteAndMap() throws Exception {
+    ShardedTopicModel model = train(sampledCorpus(), 2, new double[2]).getReadModel();
+    File file = getTestTempFile("model");
+    model.write(file);
+    ShardedTopicModel mapped = ShardedTopicModel.map(file, ETA, ALPHA, true);
+
+    assertEquals(model.getNumShards(), mapped.getNumShards());
+    assertEquals(model.getNumNonZeroes(), mapped.getNumNonZeroes());
+    assertEquals(model.topicSums(), mapped.topicSums());
+    double[] expected = new double[NUM_TOPICS];
+    double[] actual = new double[NUM_TOPICS];
+    for (int term = 0; term < NUM_TERMS; term++) {
+      model.termTopicLikelihoods(term, expected, 0);
+      mapped.termTopicLikelihoods(term, actual, 0);
+      assertArrayEquals(expected, actual, 0.0);
+    }
+  }
+}
@@ -139,6 +139,76 @@ public class BallKMeansTest {
     }
   }
 
+  @Test
+  public void testConcurrentClustering() {
+    UpdatableSearcher searcher = new BruteSearch(new SquaredEuclideanDistanceMeasure());
+    BallKMeans clusterer = new BallKMeans(searcher, 1 << NUM_DIMENSIONS, NUM_ITERATIONS, 0.9, true, true, 0.1, 3, 4);
+    clusterer.cluster(Lists.newArrayList(syntheticData.getFirst()));
+
+    assertEquals("Total weight not preserved", totalWeight(syntheticData.getFirst()), totalWeight(clusterer), 1.0e-9);
+    OnlineSummarizer summarizer = new OnlineSummarizer();
+    for (Vector mean : syntheticData.getSecond()) {
+      summarizer.add(searcher.search(mean, 1).get(0).getWeight());
+    }
+    assertTrue(String.format("Median weight [%f] too large [>%f]", summarizer.getMedian(),
+        DISTRIBUTION_RADIUS), summarizer.getMedian() < DISTRIBUTION_RADIUS);
+  }
+
+  @Test
+  public void testConcurrentMatchesSequential() {
+    // a single run consumes the same random numbers either way, and the sharded passes update the centroids in the
+    // same order as the sequential ones
+    BallKMeans sequential = new BallKMeans(new BruteSearch(new SquaredEuclideanDistanceMeasure()),
+        1 << NUM_DIMENSIONS, NUM_ITERATIONS, 0.9, true, true, 0, 1, 1);
+    BallKMeans concurrent = new BallKMeans(new BruteSearch(new SquaredEuclideanDistanceMeasure()),
+        1 << NUM_DIMENSIONS, NUM_ITERATIONS, 0.9, true, true, 0, 1, 4);
+    RandomUtils.useTestSeed();
+    List<Vector> expected = Lists.newArrayList(sequential.cluster(syntheticData.getFirst()));
+    RandomUtils.useTestSeed();
+    List<Vector> actual = Lists.newArrayList(concurrent.cluster(syntheticData.getFirst()));
+
+    assertEquals(expected.size(), actual.size());
+    for (Vector v : expected) {
+      Centroid centroid = (Centroid) v;
+      Centroid match = null;
+      for (Vector other : actual) {
+        if (((Centroid) other).getIndex() == centroid.getIndex()) {
+          match = (Centroid) other;
+        }
+      }
+      assertEquals(0, centroid.getDistanceSquared(match), 1.0e-18);
+      assertEquals(centroid.getWeight(), match.getWeight(), 1.0e-9);
+    }
+  }
+
+  @Test
+  public void testConcurrentRunsAreRepeatable() {
+    // every run gets its own random numbers up front, so the result doesn't depend on how the runs interleave
+    // (the datapoints are copied as splitting them shuffles them in place)
+    List<List<Vector>> results = Lists.newArrayList();
+    for (int numThreads : new int[] {2, 4}) {
+      BallKMeans clusterer = new BallKMeans(new BruteSearch(new SquaredEuclideanDistanceMeasure()),
+          1 << NUM_DIMENSIONS, NUM_ITERATIONS, 0.9, true, true, 0.1, 3, numThreads);
+      RandomUtils.useTestSeed();
+      results.add(Lists.newArrayList(clusterer.cluster(Lists.newArrayList(syntheticData.getFirst()))));
+    }
+
+    List<Vector> expected = results.get(0);
+    List<Vector> actual = results.get(1);
+    assertEquals(expected.size(), actual.size());
+    for (Vector v : expected) {
+      Centroid centroid = (Centroid) v;
+      Centroid match = null;
+      for (Vector other : actual) {
+        if (((Centroid) other).getIndex() == centroid.getIndex()) {
+          match = (Centroid) other;
+        }
+      }
+      assertEquals(0, centroid.getDistanceSquared(match), 1.0e-18);
+      assertEquals(centroid.getWeight(), match.getWeight(), 1.0e-9);
+    }
+  }
+
   @Test
   public void testInitialization() {
     // Start with super clusterable data.
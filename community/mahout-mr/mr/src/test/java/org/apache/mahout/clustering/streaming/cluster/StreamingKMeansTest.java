@@ -21,6 +21,7 @@ package org.apache.mahout.clustering.streaming.cluster;
 import java.util.Arrays;
 import java.util.List;
 
+import com.google.common.base.Supplier;
 import org.apache.mahout.clustering.ClusteringUtils;
 import org.apache.mahout.common.Pair;
 import org.apache.mahout.common.RandomUtils;
@@ -41,6 +42,7 @@ import org.junit.runners.Parameterized;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
 import static org.junit.runners.Parameterized.Parameters;
 
 
@@ -166,4 +168,34 @@ public class StreamingKMeansTest {
       assertEquals(expectedNumPoints, v, 0);
     }
   }
+
+  @Test
+  public void testParallelClustering() {
+    // Batching doesn't matter here, so only run once per searcher type.
+    assumeTrue(allAtOnce);
+    int numStreamingClusters = (int)Math.log(syntheticData.getFirst().size()) * (1 << NUM_DIMENSIONS);
+    double estimatedCutoff = ClusteringUtils.estimateDistanceCutoff(syntheticData.getFirst(),
+        searcher.getDistanceMeasure(), 100);
+    final boolean fast = searcher instanceof FastProjectionSearch;
+    ParallelStreamingKMeans clusterer = new ParallelStreamingKMeans(new Supplier<UpdatableSearcher>() {
+      @Override
+      public UpdatableSearcher get() {
+        return fast
+            ? new FastProjectionSearch(new SquaredEuclideanDistanceMeasure(), NUM_PROJECTIONS, SEARCH_SIZE)
+            : new ProjectionSearch(new SquaredEuclideanDistanceMeasure(), NUM_PROJECTIONS, SEARCH_SIZE);
+      }
+    }, numStreamingClusters, estimatedCutoff, 4);
+
+    UpdatableSearcher centroids = clusterer.cluster(syntheticData.getFirst());
+    System.out.printf("Total number of clusters %d\n", centroids.size());
+
+    assertEquals("Total weight not preserved", ClusteringUtils.totalWeight(syntheticData.getFirst()),
+        ClusteringUtils.totalWeight(centroids), 1.0e-9);
+    double maxWeight = 0;
+    for (Vector mean : syntheticData.getSecond()) {
+      WeightedThing<Vector> v = centroids.search(mean, 1).get(0);
+      maxWeight = Math.max(v.getWeight(), maxWeight);
+    }
+    assertTrue("Maximum weight too large " + maxWeight, maxWeight < 0.05);
+  }
 }
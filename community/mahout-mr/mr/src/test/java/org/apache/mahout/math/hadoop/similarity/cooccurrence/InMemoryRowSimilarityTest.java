@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.math.hadoop.similarity.cooccurrence;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.mahout.common.MahoutTestCase;
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.math.DenseMatrix;
+import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.function.Functions;
+import org.apache.mahout.math.hadoop.MathHelper;
+import org.apache.mahout.math.hadoop.similarity.cooccurrence.measures.CosineSimilarity;
+import org.apache.mahout.math.hadoop.similarity.cooccurrence.measures.LoglikelihoodSimilarity;
+import org.apache.mahout.math.hadoop.similarity.cooccurrence.measures.TanimotoCoefficientSimilarity;
+import org.apache.mahout.math.map.OpenIntObjectHashMap;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Random;
+
+public class InMemoryRowSimilarityTest extends MahoutTestCase {
+
+  @Test
+  public void toyExample() {
+    Matrix rows = new DenseMatrix(new double[][] {
+        new double[] { 1, 0, 1, 1, 0 },
+        new double[] { 0, 0, 1, 1, 0 },
+        new double[] { 0, 0, 0, 0, 1 } });
+
+    Matrix similarities = new InMemoryRowSimilarity(new TanimotoCoefficientSimilarity(), 5, 100, false,
+        RowSimilarityJob.NO_THRESHOLD, 500, 500, RowSimilarityJob.NO_FIXED_RANDOM_SEED, 2).rowSimilarity(rows);
+
+    assertEquals(3, similarities.numRows());
+    assertEquals(3, similarities.numCols());
+
+    assertEquals(1.0, similarities.get(0, 0), EPSILON);
+    assertEquals(1.0, similarities.get(1, 1), EPSILON);
+    assertEquals(1.0, similarities.get(2, 2), EPSILON);
+    assertEquals(0.0, similarities.get(2, 0), EPSILON);
+    assertEquals(0.0, similarities.get(2, 1), EPSILON);
+    assertEquals(0.0, similarities.get(0, 2), EPSILON);
+    assertEquals(0.0, similarities.get(1, 2), EPSILON);
+    assertEquals(0.666666, similarities.get(0, 1), EPSILON);
+    assertEquals(0.666666, similarities.get(1, 0), EPSILON);
+  }
+
+  @Test
+  public void sameAsJobs() throws Exception {
+    // keep all similarities of the count based measures, top k is ambiguous with ties
+    compareWithJobs(TanimotoCoefficientSimilarity.class.getName(), 1000, false, null, null);
+    compareWithJobs(LoglikelihoodSimilarity.class.getName(), 1000, true, null, null);
+    compareWithJobs(CosineSimilarity.class.getName(), 10, false, "0.3", null);
+  }
+
+  @Test
+  public void sameAsJobsWhenSpilling() throws Exception {
+    // spill after every block
+    compareWithJobs(TanimotoCoefficientSimilarity.class.getName(), 1000, false, null, "0");
+    compareWithJobs(CosineSimilarity.class.getName(), 10, false, "0.3", "0");
+  }
+
+  @Test
+  public void spillingKeepsTopSimilarities() {
+    Random random = RandomUtils.getRandom();
+    Matrix rows = new DenseMatrix(1000, 50);
+    for (int row = 0; row < rows.numRows(); row++) {
+      for (int column = 0; column < rows.numCols(); column++) {
+        if (random.nextDouble() < 0.3) {
+          rows.setQuick(row, column, random.nextDouble());
+        }
+      }
+    }
+
+    Matrix expected = new InMemoryRowSimilarity(new CosineSimilarity(), 50, 5, false, RowSimilarityJob.NO_THRESHOLD,
+        500, 500, 1234L, 3).rowSimilarity(rows);
+    File spillDirectory = getTestTempDir("spills");
+    for (long maxPendingSimilarities : new long[] {0, 1000}) {
+      Matrix actual = new InMemoryRowSimilarity(new CosineSimilarity(), 50, 5, false, RowSimilarityJob.NO_THRESHOLD,
+          500, 500, 1234L, 3, maxPendingSimilarities, spillDirectory).rowSimilarity(rows);
+      assertEquals(0, expected.minus(actual).aggregate(Functions.MAX, Functions.ABS), EPSILON);
+      assertEquals(0, spillDirectory.list().length);
+    }
+  }
+
+  private void compareWithJobs(String similarityClassname, int maxSimilaritiesPerRow, boolean excludeSelfSimilarity,
+      String threshold, String maxPendingSimilarities) throws Exception {
+
+    int numRows = 300;
+    int numColumns = 80;
+    Random random = RandomUtils.getRandom();
+    double[][] entries = new double[numRows][numColumns];
+    for (int row = 0; row < numRows; row++) {
+      // leave some rows empty
+      if (row % 17 != 0) {
+        for (int column = 0; column < numColumns; column++) {
+          if (random.nextDouble() < 0.1) {
+            entries[row][column] = 0.5 + random.nextDouble();
+          }
+        }
+      }
+    }
+
+    // every comparison gets its own files, the outputs of the previous one are still there
+    String prefix = similarityClassname.substring(similarityClassname.lastIndexOf('.') + 1) + '-'
+        + (maxPendingSimilarities == null ? "" : "spill-");
+    File inputFile = getTestTempFile(prefix + "rows");
+    File jobsOutputDir = getTestTempDir(prefix + "jobsOutput");
+    jobsOutputDir.delete();
+    File inMemoryOutputDir = getTestTempDir(prefix + "inMemoryOutput");
+    inMemoryOutputDir.delete();
+
+    Configuration conf = getConfiguration();
+    Path inputPath = new Path(inputFile.getAbsolutePath());
+    FileSystem fs = FileSystem.get(inputPath.toUri(), conf);
+    MathHelper.writeDistributedRowMatrix(entries, fs, conf, inputPath);
+
+    runJob(conf, inputFile, jobsOutputDir, getTestTempDir(prefix + "jobsTmp"), similarityClassname,
+        maxSimilaritiesPerRow, excludeSelfSimilarity, threshold, null, false);
+    runJob(conf, inputFile, inMemoryOutputDir, getTestTempDir(prefix + "inMemoryTmp"), similarityClassname,
+        maxSimilaritiesPerRow, excludeSelfSimilarity, threshold, maxPendingSimilarities, true);
+
+    OpenIntObjectHashMap<Vector> expected =
+        MathHelper.readMatrixRows(conf, new Path(jobsOutputDir.getAbsolutePath(), "part-r-00000"));
+    OpenIntObjectHashMap<Vector> actual =
+        MathHelper.readMatrixRows(conf, new Path(inMemoryOutputDir.getAbsolutePath(), "part-r-00000"));
+
+    assertEquals(expected.size(), actual.size());
+    for (int row : expected.keys().elements()) {
+      Vector expectedRow = expected.get(row);
+      Vector actualRow = actual.get(row);
+      assertNotNull(actualRow);
+      assertEquals(expectedRow.size(), actualRow.size());
+      assertEquals(expectedRow.getNumNondefaultElements(), actualRow.getNumNondefaultElements());
+      for (Vector.Element element : expectedRow.nonZeroes()) {
+        assertEquals(element.get(), actualRow.getQuick(element.index()), EPSILON);
+      }
+    }
+  }
+
+  private static void runJob(Configuration conf, File inputFile, File outputDir, File tmpDir,
+      String similarityClassname, int maxSimilaritiesPerRow, boolean excludeSelfSimilarity, String threshold,
+      String maxPendingSimilarities, boolean inMemory) throws Exception {
+    RowSimilarityJob rowSimilarityJob = new RowSimilarityJob();
+    rowSimilarityJob.setConf(conf);
+
+    StringBuilder args = new StringBuilder();
+    args.append("--input ").append(inputFile.getAbsolutePath())
+        .append(" --output ").append(outputDir.getAbsolutePath())
+        .append(" --numberOfColumns 80 --similarityClassname ").append(similarityClassname)
+        .append(" --maxSimilaritiesPerRow ").append(maxSimilaritiesPerRow)
+        .append(" --excludeSelfSimilarity ").append(excludeSelfSimilarity)
+        .append(" --tempDir ").append(tmpDir.getAbsolutePath());
+    if (threshold != null) {
+      args.append(" --threshold ").append(threshold);
+    }
+    if (maxPendingSimilarities != null) {
+      args.append(" --maxPendingSimilarities ").append(maxPendingSimilarities);
+    }
+    if (inMemory) {
+      args.append(" --inMemory");
+    }
+    rowSimilarityJob.run(args.toString().split(" "));
+  }
+}
@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.math.neighborhood;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import com.google.common.collect.Lists;
+import org.apache.mahout.common.MahoutTestCase;
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.common.distance.CosineDistanceMeasure;
+import org.apache.mahout.common.distance.DistanceMeasure;
+import org.apache.mahout.common.distance.EuclideanDistanceMeasure;
+import org.apache.mahout.common.distance.ManhattanDistanceMeasure;
+import org.apache.mahout.common.distance.SquaredEuclideanDistanceMeasure;
+import org.apache.mahout.math.Centroid;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.RandomAccessSparseVector;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.random.WeightedThing;
+import org.junit.Test;
+
+public final class BruteSearchTest extends MahoutTestCase {
+
+  private static final int NUM_REFERENCES = 1000;
+  private static final int NUM_QUERIES = 150;
+  private static final int LIMIT = 7;
+
+  @Test
+  public void testTopKHeap() {
+    Random random = RandomUtils.getRandom();
+    TopKHeap heap = new TopKHeap(10);
+    double[] distances = new double[1000];
+    for (int i = 0; i < distances.length; i++) {
+      distances[i] = random.nextDouble();
+      heap.offer(i, distances[i]);
+    }
+    double[] sorted = distances.clone();
+    Arrays.sort(sorted);
+
+    assertEquals(10, heap.sort());
+    for (int i = 0; i < 10; i++) {
+      assertEquals(sorted[i], heap.distanceAt(i), 0);
+      assertEquals(sorted[i], distances[heap.idAt(i)], 0);
+    }
+  }
+
+  @Test
+  public void testDenseBatchMatchesSingleSearch() {
+    List<Vector> references = randomVectors(NUM_REFERENCES, 30, 1.0);
+    List<Vector> queries = randomVectors(NUM_QUERIES, 30, 1.0);
+    for (DistanceMeasure measure : measures()) {
+      checkBatchSearch(measure, references, queries);
+    }
+  }
+
+  @Test
+  public void testSparseBatchMatchesSingleSearch() {
+    List<Vector> references = randomVectors(NUM_REFERENCES, 500, 0.02);
+    List<Vector> queries = randomVectors(NUM_QUERIES, 500, 0.02);
+    for (DistanceMeasure measure : measures()) {
+      checkBatchSearch(measure, references, queries);
+    }
+  }
+
+  @Test
+  public void testBatchSearchSeesCentroidUpdates() {
+    List<Vector> references = randomVectors(NUM_REFERENCES, 30, 1.0);
+    List<Vector> queries = randomVectors(NUM_QUERIES, 30, 1.0);
+    BruteSearch searcher = new BruteSearch(new EuclideanDistanceMeasure());
+    List<Centroid> centroids = Lists.newArrayList();
+    for (Vector reference : references) {
+      Centroid centroid = new Centroid(centroids.size(), reference.clone(), 1);
+      centroids.add(centroid);
+      searcher.add(centroid);
+    }
+    searcher.searchBatch(queries, LIMIT, 2);
+
+    // move a centroid in place, like the k-means implementations do, far away from all others and query there
+    Vector target = new DenseVector(30).assign(10);
+    Centroid moved = centroids.get(17);
+    moved.update(target.times(2).minus(moved));
+    assertEquals(0, moved.getDistanceSquared(target), 1.0e-12);
+    queries.set(0, target);
+
+    List<List<WeightedThing<Vector>>> batch = searcher.searchBatch(queries, LIMIT, 2);
+    assertSame(moved, batch.get(0).get(0).getValue());
+    assertEquals(0, batch.get(0).get(0).getWeight(), 1.0e-6);
+    for (int q = 0; q < queries.size(); q++) {
+      List<WeightedThing<Vector>> expected = searcher.search(queries.get(q), LIMIT);
+      for (int i = 0; i < expected.size(); i++) {
+        assertEquals(expected.get(i).getWeight(), batch.get(q).get(i).getWeight(), 1.0e-9);
+      }
+    }
+  }
+
+  @Test
+  public void testNonFiniteDistancesFillResults() {
+    Vector infinite = new DenseVector(new double[] {Double.POSITIVE_INFINITY, 0});
+    Vector nan = new DenseVector(new double[] {Double.NaN, 0});
+    Vector finite = new DenseVector(new double[] {1, 1});
+    Vector query = new DenseVector(new double[] {0, 1});
+    for (DistanceMeasure measure : measures()) {
+      BruteSearch searcher = new BruteSearch(measure);
+      searcher.add(infinite);
+      assertEquals(1, searcher.search(query, 1).size());
+      assertEquals(1, searcher.searchBatch(Lists.newArrayList(query), 1, 1).get(0).size());
+
+      searcher.add(nan);
+      searcher.add(finite);
+      List<WeightedThing<Vector>> single = searcher.search(query, 3);
+      List<WeightedThing<Vector>> batch = searcher.searchBatch(Lists.newArrayList(query, query), 3, 2).get(1);
+      String name = measure.getClass().getSimpleName();
+      assertEquals(name, 3, single.size());
+      assertEquals(name, 3, batch.size());
+      assertSame(name, finite, single.get(0).getValue());
+      assertSame(name, finite, batch.get(0).getValue());
+    }
+  }
+
+  private static void checkBatchSearch(DistanceMeasure measure, List<Vector> references, List<Vector> queries) {
+    BruteSearch searcher = new BruteSearch(measure);
+    searcher.addAll(references);
+
+    for (int numThreads : new int[] {1, 3}) {
+      List<List<WeightedThing<Vector>>> batch = searcher.searchBatch(queries, LIMIT, numThreads);
+      assertEquals(queries.size(), batch.size());
+      for (int q = 0; q < queries.size(); q++) {
+        List<WeightedThing<Vector>> expected = searcher.search(queries.get(q), LIMIT);
+        List<WeightedThing<Vector>> actual = batch.get(q);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+          assertEquals(measure.getClass().getSimpleName(), expected.get(i).getWeight(), actual.get(i).getWeight(),
+              1.0e-9);
+        }
+      }
+    }
+  }
+
+  private static List<DistanceMeasure> measures() {
+    return Lists.newArrayList(new SquaredEuclideanDistanceMeasure(), new EuclideanDistanceMeasure(),
+        new CosineDistanceMeasure(), new ManhattanDistanceMeasure());
+  }
+
+  private static List<Vector> randomVectors(int n, int dimension, double density) {
+    Random random = RandomUtils.getRandom();
+    List<Vector> vectors = Lists.newArrayListWithCapacity(n);
+    for (int i = 0; i < n; i++) {
+      Vector v = density >= 1 ? new DenseVector(dimension) : new RandomAccessSparseVector(dimension);
+      for (int j = 0; j < dimension; j++) {
+        if (random.nextDouble() < density) {
+          v.setQuick(j, random.nextGaussian());
+        }
+      }
+      vectors.add(v);
+    }
+    return vectors;
+  }
+}
@@ -0,0 +1,229 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.math.neighborhood;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import com.google.common.collect.Lists;
+import org.apache.mahout.clustering.streaming.cluster.StreamingKMeans;
+import org.apache.mahout.common.MahoutTestCase;
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.common.distance.EuclideanDistanceMeasure;
+import org.apache.mahout.common.distance.ManhattanDistanceMeasure;
+import org.apache.mahout.math.Centroid;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.function.Functions;
+import org.apache.mahout.math.random.WeightedThing;
+import org.junit.Test;
+
+public final class HnswSearchTest extends MahoutTestCase {
+
+  private static final int NUM_VECTORS = 4000;
+  private static final int NUM_DIMENSIONS = 10;
+  private static final int NUM_QUERIES = 200;
+  private static final int LIMIT = 10;
+  private static final int SEARCH_SIZE = 40;
+
+  @Test
+  public void testConcurrentAdd() {
+    Random random = RandomUtils.getRandom();
+    List<Vector> data = randomVectors(random, NUM_VECTORS);
+    HnswSearch searcher = new HnswSearch(new EuclideanDistanceMeasure(), SEARCH_SIZE);
+    searcher.addAll(data, 4);
+
+    assertEquals(NUM_VECTORS, searcher.size());
+    // the search is approximate, an outlier can end up without links from the rest of the graph
+    int misses = 0;
+    for (Vector v : data) {
+      WeightedThing<Vector> first = searcher.searchFirst(v, false);
+      if (first.getWeight() == 0) {
+        assertSame(v, first.getValue());
+      } else {
+        misses++;
+      }
+    }
+    assertTrue("missed " + misses, misses <= NUM_VECTORS / 1000);
+  }
+
+  @Test
+  public void testConcurrentAddAndClear() throws Exception {
+    Random random = RandomUtils.getRandom();
+    final List<Vector> data = randomVectors(random, NUM_VECTORS);
+    final HnswSearch searcher = new HnswSearch(new EuclideanDistanceMeasure(), 4, 8, SEARCH_SIZE);
+    Thread adder = new Thread() {
+      @Override
+      public void run() {
+        searcher.addAll(data, 4);
+      }
+    };
+    adder.start();
+    // adds in flight must not leave nodes of a discarded graph behind, in particular as the entry point
+    while (adder.isAlive()) {
+      searcher.clear();
+      Thread.sleep(1);
+    }
+    adder.join();
+
+    int size = searcher.size();
+    assertEquals(size, searcher.numNodes());
+    List<Vector> more = randomVectors(random, 100);
+    searcher.addAll(more);
+    assertEquals(size + more.size(), searcher.size());
+    for (Vector v : more) {
+      WeightedThing<Vector> first = searcher.searchFirst(v, false);
+      assertEquals(0, first.getWeight(), 0);
+      assertSame(v, first.getValue());
+    }
+  }
+
+  @Test
+  public void testRecall() {
+    Random random = RandomUtils.getRandom();
+    List<Vector> data = randomVectors(random, NUM_VECTORS);
+    List<Vector> queries = randomVectors(random, NUM_QUERIES);
+    BruteSearch brute = new BruteSearch(new ManhattanDistanceMeasure());
+    brute.addAll(data);
+    HnswSearch searcher = new HnswSearch(new ManhattanDistanceMeasure(), SEARCH_SIZE);
+    searcher.addAll(data);
+
+    List<List<WeightedThing<Vector>>> expected = brute.search(queries, LIMIT);
+    List<List<WeightedThing<Vector>>> actual = searcher.searchBatch(queries, LIMIT, 3);
+    int hits = 0;
+    for (int i = 0; i < NUM_QUERIES; i++) {
+      double kthDistance = expected.get(i).get(LIMIT - 1).getWeight();
+      List<WeightedThing<Vector>> results = actual.get(i);
+      assertEquals(LIMIT, results.size());
+      for (int j = 0; j < LIMIT; j++) {
+        if (j > 0) {
+          assertTrue(results.get(j).getWeight() >= results.get(j - 1).getWeight());
+        }
+        if (results.get(j).getWeight() <= kthDistance) {
+          hits++;
+        }
+      }
+    }
+    assertTrue("recall too low: " + hits, hits > 0.9 * NUM_QUERIES * LIMIT);
+  }
+
+  @Test
+  public void testStreamingKMeansKeepsGraphSmall() {
+    Random random = RandomUtils.getRandom();
+    List<Centroid> data = Lists.newArrayListWithCapacity(NUM_VECTORS);
+    for (Vector v : randomVectors(random, NUM_VECTORS)) {
+      data.add(new Centroid(data.size(), v, 1));
+    }
+    HnswSearch searcher = new HnswSearch(new EuclideanDistanceMeasure(), SEARCH_SIZE);
+    // every point merged into a centroid removes the centroid and adds it again
+    StreamingKMeans clusterer = new StreamingKMeans(searcher, 20, 1.0e-3);
+    clusterer.cluster(data);
+
+    assertEquals(clusterer.getNumClusters(), searcher.size());
+    assertTrue("graph has " + searcher.numNodes() + " nodes for " + searcher.size() + " centroids",
+        searcher.numNodes() <= 2 * searcher.size() + 1);
+    double totalWeight = 0;
+    for (Centroid centroid : clusterer) {
+      totalWeight += centroid.getWeight();
+      WeightedThing<Vector> first = searcher.searchFirst(centroid, false);
+      assertSame(centroid, first.getValue());
+    }
+    assertEquals(NUM_VECTORS, totalWeight, 0);
+  }
+
+  @Test
+  public void testSearchFirstWhenNearbyVectorsAreRemoved() {
+    Random random = RandomUtils.getRandom();
+    List<Vector> near = randomVectors(random, 100);
+    List<Vector> far = randomVectors(random, 101);
+    for (Vector v : far) {
+      v.assign(Functions.plus(100));
+    }
+    HnswSearch searcher = new HnswSearch(new EuclideanDistanceMeasure(), 4, 4, 2);
+    searcher.addAll(near);
+    searcher.addAll(far);
+    // fewer removed than live vectors, so the graph is not rebuilt, but the origin is surrounded by removed ones
+    for (Vector v : near) {
+      assertTrue(searcher.remove(v, 1.0e-9));
+    }
+
+    assertEquals(201, searcher.numNodes());
+    WeightedThing<Vector> first = searcher.searchFirst(new DenseVector(NUM_DIMENSIONS), false);
+    assertTrue(far.contains(first.getValue()));
+  }
+
+  @Test
+  public void testWriteAndRead() throws IOException {
+    Random random = RandomUtils.getRandom();
+    HnswSearch searcher = new HnswSearch(new EuclideanDistanceMeasure(), SEARCH_SIZE);
+    int i = 0;
+    for (Vector v : randomVectors(random, NUM_VECTORS / 4)) {
+      searcher.add(new Centroid(i, v, i % 7 + 1));
+      i++;
+    }
+    assertTrue(searcher.remove(Lists.newArrayList(searcher).get(0), 1.0e-9));
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    searcher.write(new DataOutputStream(bytes));
+    HnswSearch copy = new HnswSearch(new EuclideanDistanceMeasure(), SEARCH_SIZE);
+    copy.readFields(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+    assertEquals(searcher.size(), copy.size());
+    for (Vector query : randomVectors(random, NUM_QUERIES)) {
+      List<WeightedThing<Vector>> expected = searcher.search(query, LIMIT);
+      List<WeightedThing<Vector>> actual = copy.search(query, LIMIT);
+      assertEquals(expected.size(), actual.size());
+      for (int j = 0; j < expected.size(); j++) {
+        Centroid original = (Centroid) expected.get(j).getValue();
+        Centroid restored = (Centroid) actual.get(j).getValue();
+        assertEquals(expected.get(j).getWeight(), actual.get(j).getWeight(), 0);
+        assertEquals(original.getIndex(), restored.getIndex());
+        assertEquals(original.getWeight(), restored.getWeight(), 0);
+        assertEquals(0, original.getVector().minus(restored.getVector()).norm(1), 0);
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testReadWithOtherMeasure() throws IOException {
+    Random random = RandomUtils.getRandom();
+    HnswSearch searcher = new HnswSearch(new EuclideanDistanceMeasure(), SEARCH_SIZE);
+    searcher.addAll(randomVectors(random, 10));
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    searcher.write(new DataOutputStream(bytes));
+    new HnswSearch(new ManhattanDistanceMeasure(), SEARCH_SIZE)
+        .readFields(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+  }
+
+  private static List<Vector> randomVectors(Random random, int n) {
+    List<Vector> vectors = Lists.newArrayListWithCapacity(n);
+    for (int i = 0; i < n; i++) {
+      Vector v = new DenseVector(NUM_DIMENSIONS);
+      for (int j = 0; j < NUM_DIMENSIONS; j++) {
+        v.setQuick(j, random.nextGaussian());
+      }
+      vectors.add(v);
+    }
+    return vectors;
+  }
+}
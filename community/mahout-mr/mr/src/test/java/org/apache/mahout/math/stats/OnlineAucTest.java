@@ -18,10 +18,21 @@
 package org.apache.mahout.math.stats;
 
 import org.apache.mahout.classifier.evaluation.Auc;
+import org.apache.mahout.classifier.sgd.PolymorphicWritable;
 import org.apache.mahout.common.MahoutTestCase;
 import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.math.DenseMatrix;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.MatrixWritable;
+import org.apache.mahout.math.VectorWritable;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.Random;
 
 public final class OnlineAucTest extends MahoutTestCase {
@@ -97,6 +108,72 @@ public final class OnlineAucTest extends MahoutTestCase {
     assertEquals(0.7603, stats[2].getQuartile(1), 0.006);
   }
 
+  @Test
+  public void scoreSummaries() throws IOException {
+    Random gen = RandomUtils.getRandom();
+    OnlineAuc global = new GlobalOnlineAuc();
+    OnlineAuc grouped = new GroupedOnlineAuc();
+    Auc batch = new Auc();
+    for (int i = 0; i < 10000; i++) {
+      double x0 = gen.nextGaussian();
+      double x1 = gen.nextGaussian() + 1;
+      String group = i % 2 == 0 ? "a" : "b";
+      global.addSample(0, x0);
+      global.addSample(1, x1);
+      grouped.addSample(0, group, x0);
+      grouped.addSample(1, group, x1);
+      batch.add(0, x0);
+      batch.add(1, x1);
+    }
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    global.write(new DataOutputStream(bytes));
+    OnlineAuc copy = new GlobalOnlineAuc();
+    copy.readFields(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    assertEquals(global.auc(), copy.auc(), 0);
+
+    for (int category = 0; category < 2; category++) {
+      OnlineSummarizer summary = global.scoreSummary(category);
+      assertEquals(10000, summary.getCount());
+      assertEquals(category, summary.getMedian(), 0.05);
+      // 97.5%-ile of a unit normal is about 1.96
+      assertEquals(category + 1.96, summary.quantile(0.975), 0.1);
+
+      assertEquals(summary.getMedian(), copy.scoreSummary(category).getMedian(), 0);
+      assertEquals(summary.getMean(), grouped.scoreSummary(category).getMean(), 1.0e-12);
+      assertEquals(summary.getMedian(), grouped.scoreSummary(category).getMedian(), 0.01);
+      assertEquals(summary.getMean(), batch.scoreSummary(category).getMean(), 0);
+    }
+  }
+
+  @Test
+  public void readsLayoutWithoutScoreSummaries() throws IOException {
+    // a GlobalOnlineAuc as written before the score summaries were kept, wrapped the way CrossFoldLearner does
+    Matrix scores = new DenseMatrix(2, GlobalOnlineAuc.HISTORY);
+    scores.assign(0.25);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeUTF(GlobalOnlineAuc.class.getName());
+    out.writeInt(100);
+    out.writeInt(GlobalOnlineAuc.ReplacementPolicy.FIFO.ordinal());
+    MatrixWritable.writeMatrix(out, scores);
+    VectorWritable.writeVector(out, new DenseVector(new double[] {0.3, 0.7}));
+    VectorWritable.writeVector(out, new DenseVector(new double[] {20, 20}));
+    out.writeInt(42);
+
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    OnlineAuc auc = PolymorphicWritable.read(in, OnlineAuc.class);
+    assertEquals(0.7, auc.auc(), 1.0e-12);
+    assertEquals(0, auc.scoreSummary(0).getCount());
+    assertEquals(0, auc.scoreSummary(1).getCount());
+    // nothing past the old layout was consumed
+    assertEquals(42, in.readInt());
+
+    // and it keeps going from there
+    auc.addSample(1, 1.0);
+    assertEquals(1, auc.scoreSummary(1).getCount());
+  }
+
   @Test(expected=UnsupportedOperationException.class)
   public void mustNotOmitGroup() {
     OnlineAuc x = new GroupedOnlineAuc();
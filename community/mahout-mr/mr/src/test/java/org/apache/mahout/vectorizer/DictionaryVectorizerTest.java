@@ -159,6 +159,83 @@ public final class DictionaryVectorizerTest extends MahoutTestCase {
     validateVectorContainingSecondTextBlock(conf, tfVectors, secondTextBlockIdentifierDimensionId);
   }
   
+  @Test
+  public void testCreateVectorsInOnePass() throws Exception {
+    Configuration conf = getConfiguration();
+    Path documents = getTestTempFilePath("unique-documents/docs.file");
+    FileSystem fs = FileSystem.get(documents.toUri(), conf);
+    SequenceFile.Writer writer = new SequenceFile.Writer(fs, conf, documents, Text.class, Text.class);
+    try {
+      RandomDocumentGenerator gen = new RandomDocumentGenerator();
+      for (int i = 0; i < NUM_DOCS; i++) {
+        writer.append(new Text("Document::ID::" + i), new Text(gen.getRandomDocument()));
+      }
+    } finally {
+      Closeables.close(writer, false);
+    }
+
+    Path tokenizedDocuments = getTestTempDirPath("onepass/tokenized-documents");
+    DocumentProcessor.tokenizeDocuments(documents, StandardAnalyzer.class, tokenizedDocuments, conf);
+
+    for (int maxNGramSize = 1; maxNGramSize <= 2; maxNGramSize++) {
+      Path chunked = getTestTempDirPath("onepass/chunked-" + maxNGramSize);
+      Path onePass = getTestTempDirPath("onepass/single-" + maxNGramSize);
+
+      DictionaryVectorizer.createTermFrequencyVectors(tokenizedDocuments, chunked,
+          DictionaryVectorizer.DOCUMENT_VECTOR_OUTPUT_FOLDER, conf, 2, maxNGramSize, 0.0f, 2.0f, true, 1, 100,
+          true, true);
+      DictionaryVectorizer.createTermFrequencyVectorsInOnePass(tokenizedDocuments, onePass,
+          DictionaryVectorizer.DOCUMENT_VECTOR_OUTPUT_FOLDER, conf, 2, maxNGramSize, 0.0f, 2.0f, true, 1,
+          true, true);
+
+      Path chunkedTf = new Path(chunked, DictionaryVectorizer.DOCUMENT_VECTOR_OUTPUT_FOLDER);
+      Path onePassTf = new Path(onePass, DictionaryVectorizer.DOCUMENT_VECTOR_OUTPUT_FOLDER);
+      validateVectors(conf, NUM_DOCS, onePassTf, true, true);
+      assertSameVectors(conf, chunkedTf, onePassTf);
+    }
+
+    // ngram parts sorted in many small runs give the same vectors
+    Configuration spillConf = new Configuration(conf);
+    spillConf.setInt(DictionaryVectorizer.SORT_BUFFER_TERMS, 7);
+    Path spilled = getTestTempDirPath("onepass/spilled-2");
+    DictionaryVectorizer.createTermFrequencyVectorsInOnePass(tokenizedDocuments, spilled,
+        DictionaryVectorizer.DOCUMENT_VECTOR_OUTPUT_FOLDER, spillConf, 2, 2, 0.0f, 2.0f, true, 1, true, true);
+    assertSameVectors(conf, new Path(getTestTempDirPath("onepass/chunked-2"),
+        DictionaryVectorizer.DOCUMENT_VECTOR_OUTPUT_FOLDER),
+        new Path(spilled, DictionaryVectorizer.DOCUMENT_VECTOR_OUTPUT_FOLDER));
+
+    Path tfVectors = getTestTempDirPath("onepass/tf");
+    DictionaryVectorizer.createTermFrequencyVectors(tokenizedDocuments, tfVectors,
+        DictionaryVectorizer.DOCUMENT_VECTOR_OUTPUT_FOLDER, conf, 2, 1, 0.0f, -1.0f, false, 1, 100, false, false);
+    Path tf = new Path(tfVectors, DictionaryVectorizer.DOCUMENT_VECTOR_OUTPUT_FOLDER);
+    Path chunkedTfidf = getTestTempDirPath("onepass/tfidf-chunked");
+    Path onePassTfidf = getTestTempDirPath("onepass/tfidf-single");
+    Pair<Long[], List<Path>> docFrequenciesFeatures = TFIDFConverter.calculateDF(tf, chunkedTfidf, conf, 100);
+    TFIDFConverter.processTfIdf(tf, chunkedTfidf, conf, docFrequenciesFeatures, 2, 50, 2.0f, false, false, false,
+        1);
+    TFIDFConverter.processTfIdfInOnePass(tf, onePassTfidf, conf, docFrequenciesFeatures, 2, 50, 2.0f, false, false,
+        false);
+    assertSameVectors(conf, new Path(chunkedTfidf, "tfidf-vectors"), new Path(onePassTfidf, "tfidf-vectors"));
+  }
+
+  private static void assertSameVectors(Configuration conf, Path expectedPath, Path actualPath) {
+    Map<String, Vector> expected = new HashMap<>();
+    for (Pair<Text, VectorWritable> record : new SequenceFileDirIterable<Text, VectorWritable>(
+        expectedPath, PathType.LIST, PathFilters.partFilter(), null, false, conf)) {
+      expected.put(record.getFirst().toString(), record.getSecond().get());
+    }
+    int count = 0;
+    for (Pair<Text, VectorWritable> record : new SequenceFileDirIterable<Text, VectorWritable>(
+        actualPath, PathType.LIST, PathFilters.partFilter(), null, false, conf)) {
+      Vector vector = expected.get(record.getFirst().toString());
+      assertNotNull("Unexpected vector " + record.getFirst(), vector);
+      assertEquals(vector.size(), record.getSecond().get().size());
+      assertEquals(0.0, vector.minus(record.getSecond().get()).norm(1), EPSILON);
+      count++;
+    }
+    assertEquals(expected.size(), count);
+  }
+
   public static void validateVectors(Configuration conf,
                                      int numDocs,
                                      Path vectorPath,
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.vectorizer;
+
+import java.util.List;
+import java.util.Map;
+
+import com.carrotsearch.randomizedtesting.annotations.ThreadLeakScope;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Closeables;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.mahout.common.MahoutTestCase;
+import org.apache.mahout.common.Pair;
+import org.apache.mahout.common.iterator.sequencefile.PathFilters;
+import org.apache.mahout.common.iterator.sequencefile.PathType;
+import org.apache.mahout.common.iterator.sequencefile.SequenceFileDirIterable;
+import org.apache.mahout.math.NamedVector;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.VectorWritable;
+import org.junit.Before;
+import org.junit.Test;
+
+@ThreadLeakScope(ThreadLeakScope.Scope.NONE)
+public final class InProcessVectorizerTest extends MahoutTestCase {
+
+  private static final int NUM_DOCS = 100;
+
+  private Configuration conf;
+  private Path inputPath;
+
+  @Override
+  @Before
+  public void setUp() throws Exception {
+    super.setUp();
+    conf = getConfiguration();
+    inputPath = getTestTempFilePath("documents/docs.file");
+    FileSystem fs = FileSystem.get(inputPath.toUri(), conf);
+    SequenceFile.Writer writer = new SequenceFile.Writer(fs, conf, inputPath, Text.class, Text.class);
+    try {
+      RandomDocumentGenerator gen = new RandomDocumentGenerator();
+      for (int i = 0; i < NUM_DOCS; i++) {
+        writer.append(new Text("Document::ID::" + i), new Text(gen.getRandomDocument()));
+      }
+    } finally {
+      Closeables.close(writer, false);
+    }
+  }
+
+  @Test
+  public void testTfIdf() throws Exception {
+    runTest("--norm", "2");
+  }
+
+  @Test
+  public void testTfSeqNam() throws Exception {
+    runTest("--weight", "tf", "--norm", "2", "--logNormalize", "-seq", "-nv");
+  }
+
+  @Test
+  public void testPruning() throws Exception {
+    runTest("--maxDFSigma", "1.0", "--minDF", "2", "-nv");
+  }
+
+  @Test
+  public void testWithoutPruning() throws Exception {
+    runTest("--weight", "tf", "--maxDFPercent", "0", "--minSupport", "3", "-seq");
+  }
+
+  private void runTest(String... options) throws Exception {
+    Path mapReduceOutput = getTestTempDirPath("mapreduce");
+    Path inProcessOutput = getTestTempDirPath("inprocess");
+
+    ToolRunner.run(getConfiguration(), new SparseVectorsFromSequenceFiles(), arguments(mapReduceOutput, options));
+    List<String> inProcessOptions = Lists.newArrayList(options);
+    inProcessOptions.add("--inProcess");
+    ToolRunner.run(getConfiguration(), new SparseVectorsFromSequenceFiles(),
+        arguments(inProcessOutput, inProcessOptions.toArray(new String[inProcessOptions.size()])));
+
+    assertSameRecords(new Path(mapReduceOutput, "dictionary.file-0"), new Path(inProcessOutput, "dictionary.file-0"));
+    for (String vectors : new String[] {"tf-vectors", "tfidf-vectors"}) {
+      Path expected = new Path(mapReduceOutput, vectors);
+      if (FileSystem.get(expected.toUri(), conf).exists(expected)) {
+        assertSameRecords(expected, new Path(inProcessOutput, vectors));
+      }
+    }
+  }
+
+  private String[] arguments(Path output, String... options) {
+    List<String> arguments = Lists.newArrayList("-i", inputPath.toString(), "-o", output.toString(), "-ow");
+    arguments.addAll(Lists.newArrayList(options));
+    return arguments.toArray(new String[arguments.size()]);
+  }
+
+  /**
+   * Records have to be the same, in any order. Vectors are compared through their serialized form.
+   */
+  private void assertSameRecords(Path expectedPath, Path actualPath) {
+    Map<String, String> expected = Maps.newHashMap();
+    for (Pair<Writable, Writable> record : new SequenceFileDirIterable<>(
+        expectedPath, PathType.LIST, PathFilters.logsCRCFilter(), null, false, conf)) {
+      expected.put(record.getFirst().toString(), describe(record.getSecond()));
+    }
+    int count = 0;
+    for (Pair<Writable, Writable> record : new SequenceFileDirIterable<>(
+        actualPath, PathType.LIST, PathFilters.logsCRCFilter(), null, false, conf)) {
+      assertEquals(record.getFirst().toString(), expected.get(record.getFirst().toString()),
+          describe(record.getSecond()));
+      count++;
+    }
+    assertEquals(expected.size(), count);
+    assertTrue(count > 0);
+  }
+
+  private static String describe(Writable value) {
+    if (value instanceof IntWritable) {
+      return value.toString();
+    }
+    Vector vector = ((VectorWritable) value).get();
+    Vector delegate = vector instanceof NamedVector ? ((NamedVector) vector).getDelegate() : vector;
+    return vector.getClass().getSimpleName() + ' ' + delegate.getClass().getSimpleName() + ' ' + vector;
+  }
+
+}
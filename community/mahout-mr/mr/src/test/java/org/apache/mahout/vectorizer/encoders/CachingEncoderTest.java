@@ -17,6 +17,7 @@
 
 package org.apache.mahout.vectorizer.encoders;
 
+import com.google.common.base.Charsets;
 import org.apache.mahout.common.MahoutTestCase;
 import org.apache.mahout.math.DenseVector;
 import org.apache.mahout.math.Vector;
@@ -45,4 +46,47 @@ public class CachingEncoderTest extends MahoutTestCase {
     assertFalse("testCacheAreUsedContinuous: cache should have values", encoder.getCaches()[0].isEmpty());
   }
 
+  @Test
+  public void testCachedStaticWordMatchesStaticWord() {
+    CachingStaticWordValueEncoder cached = new CachingStaticWordValueEncoder(NAME, CARDINALITY * 100);
+    StaticWordValueEncoder plain = new StaticWordValueEncoder(NAME);
+    Vector expected = new DenseVector(CARDINALITY * 100);
+    Vector v = new DenseVector(CARDINALITY * 100);
+    for (String word : new String[] {WORD, "other", WORD, "caf\u00e9", "other"}) {
+      plain.addToVector(word, expected);
+      // strings and bytes share the cache
+      cached.addToVector(word, v);
+      cached.addToVector(word.getBytes(Charsets.UTF_8), v);
+    }
+    assertEquals(0, v.minus(expected.times(2)).norm(1), 0);
+    assertEquals(3, cached.getCaches()[0].size());
+  }
+
+  @Test
+  public void testCachedTextMatchesText() {
+    CachingTextValueEncoder cached = new CachingTextValueEncoder(NAME, CARDINALITY * 100);
+    TextValueEncoder plain = new TextValueEncoder(NAME);
+    Vector expected = new DenseVector(CARDINALITY * 100);
+    Vector v = new DenseVector(CARDINALITY * 100);
+    plain.addToVector("the word and the other word", expected);
+    cached.addToVector("the word and the other word", v);
+    assertEquals(0, v.minus(expected).norm(1), 0);
+  }
+
+  @Test
+  public void testCachedInteractionsMatchInteractions() {
+    InteractionValueEncoder cached = new InteractionValueEncoder("interactions",
+        new CachingStaticWordValueEncoder("word", CARDINALITY * 100),
+        new CachingTextValueEncoder("text", CARDINALITY * 100));
+    InteractionValueEncoder plain = new InteractionValueEncoder("interactions",
+        new StaticWordValueEncoder("word"), new TextValueEncoder("text"));
+    Vector expected = new DenseVector(CARDINALITY * 100);
+    Vector v = new DenseVector(CARDINALITY * 100);
+    for (int i = 0; i < 3; i++) {
+      plain.addInteractionToVector(WORD, "some text here", 1.0, expected);
+      cached.addInteractionToVector(WORD, "some text here", 1.0, v);
+    }
+    assertEquals(0, v.minus(expected).norm(1), 0);
+  }
+
 }
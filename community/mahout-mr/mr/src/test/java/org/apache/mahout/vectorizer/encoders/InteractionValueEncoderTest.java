@@ -22,6 +22,7 @@ import java.util.Set;
 
 import static com.google.common.collect.Iterables.getFirst;
 
+import com.google.common.base.Charsets;
 import com.google.common.collect.Maps;
 import org.apache.mahout.common.MahoutTestCase;
 import org.apache.mahout.math.DenseVector;
@@ -80,6 +81,38 @@ public class InteractionValueEncoderTest extends MahoutTestCase {
     assertEquals((float) k*3, v1.norm(1), 0);
   }
   
+  @Test
+  public void testTextInteractionsKeepLocations() {
+    WordValueEncoder wv = new StaticWordValueEncoder("word");
+    TextValueEncoder tv = new TextValueEncoder("text");
+    InteractionValueEncoder enc = new InteractionValueEncoder("interactions", wv, tv);
+    Vector v1 = new DenseVector(20000);
+    enc.addInteractionToVector("a", "some text here", 1.0, v1);
+    // by default all words of the text give the same locations
+    assertEquals(enc.getProbes(), v1.getNumNonZeroElements());
+
+    Vector v2 = new DenseVector(20000);
+    enc.addInteractionToVector("a".getBytes(Charsets.UTF_8), "some text here".getBytes(Charsets.UTF_8), 1.0, v2);
+    assertEquals(0, v1.minus(v2).norm(1), 0);
+  }
+
+  @Test
+  public void testTextInteractionsUseWords() {
+    WordValueEncoder wv = new StaticWordValueEncoder("word");
+    TextValueEncoder tv = new TextValueEncoder("text");
+    tv.setInteractionsHashWords(true);
+    InteractionValueEncoder enc = new InteractionValueEncoder("interactions", wv, tv);
+    Vector v1 = new DenseVector(20000);
+    enc.addInteractionToVector("a", "some text here", 1.0, v1);
+    // each word of the text gives its own locations, this assumes no hash collision
+    assertEquals(enc.getProbes() * 3, v1.getNumNonZeroElements());
+
+    // strings and bytes are hashed the same
+    Vector v2 = new DenseVector(20000);
+    enc.addInteractionToVector("a".getBytes(Charsets.UTF_8), "some text here".getBytes(Charsets.UTF_8), 1.0, v2);
+    assertEquals(0, v1.minus(v2).norm(1), 0);
+  }
+
   @Test
   public void testTraceDictionary() {
     StaticWordValueEncoder encoder1 = new StaticWordValueEncoder("first");
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.vectorizer.encoders;
+
+import java.util.Arrays;
+
+import org.apache.mahout.common.MahoutTestCase;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.Vector;
+import org.junit.Test;
+
+public final class RecordEncoderTest extends MahoutTestCase {
+
+  private static final int CARDINALITY = 1000;
+
+  @Test
+  public void testEncode() {
+    RecordEncoder encoder = new RecordEncoder(CARDINALITY);
+    int word = encoder.addField(new CachingStaticWordValueEncoder("word", CARDINALITY));
+    int text = encoder.addField(new CachingTextValueEncoder("text", CARDINALITY));
+    int value = encoder.addField(new ContinuousValueEncoder("value"));
+    encoder.addInteraction(new InteractionValueEncoder("word x text", new StaticWordValueEncoder("word"),
+        new TextValueEncoder("text")), word, text);
+    assertEquals(3, encoder.getNumFields());
+
+    StaticWordValueEncoder wordEncoder = new StaticWordValueEncoder("word");
+    TextValueEncoder textEncoder = new TextValueEncoder("text");
+    ContinuousValueEncoder valueEncoder = new ContinuousValueEncoder("value");
+    InteractionValueEncoder interactions = new InteractionValueEncoder("word x text",
+        new StaticWordValueEncoder("word"), new TextValueEncoder("text"));
+
+    String[][] records = {{"a", "some text here", "2.5"}, {"b", "more text", "-1"}, {"a", "some text here", "2.5"}};
+    for (String[] record : records) {
+      Vector expected = new DenseVector(CARDINALITY);
+      wordEncoder.addToVector(record[word], expected);
+      textEncoder.addToVector(record[text], expected);
+      valueEncoder.addToVector(record[value], expected);
+      interactions.addInteractionToVector(record[word], record[text], 1.0, expected);
+
+      // the accumulator must be cleared between records
+      Vector v = encoder.encode(Arrays.asList(record));
+      assertEquals(CARDINALITY, v.size());
+      assertEquals(0, v.minus(expected).norm(1), 1.0e-12);
+    }
+  }
+
+  @Test
+  public void testNullFields() {
+    RecordEncoder encoder = new RecordEncoder(CARDINALITY);
+    int word = encoder.addField(new StaticWordValueEncoder("word"));
+    int other = encoder.addField(null);
+    encoder.addInteraction(new InteractionValueEncoder("interaction", new StaticWordValueEncoder("word"),
+        new StaticWordValueEncoder("other")), word, other);
+
+    Vector v = encoder.encode(Arrays.asList("a", null));
+    Vector expected = new DenseVector(CARDINALITY);
+    new StaticWordValueEncoder("word").addToVector("a", expected);
+    assertEquals(0, v.minus(expected).norm(1), 0);
+
+    v = encoder.encode(Arrays.asList(null, "b"));
+    assertEquals(0, v.norm(1), 0);
+
+    v = encoder.encode(Arrays.asList(new StringBuilder("a"), "b"));
+    assertEquals(2 + 2, v.norm(1), 0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testWrongNumberOfFields() {
+    RecordEncoder encoder = new RecordEncoder(CARDINALITY);
+    encoder.addField(new StaticWordValueEncoder("word"));
+    encoder.encode(Arrays.asList("a", "b"));
+  }
+}
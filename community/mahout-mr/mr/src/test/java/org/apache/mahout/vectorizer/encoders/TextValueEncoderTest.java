@@ -17,7 +17,10 @@
 
 package org.apache.mahout.vectorizer.encoders;
 
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
 import org.apache.mahout.common.MahoutTestCase;
 import org.apache.mahout.math.DenseVector;
@@ -25,6 +28,7 @@ import org.apache.mahout.math.Vector;
 import org.junit.Test;
 
 import java.util.Locale;
+import java.util.regex.Pattern;
 
 public final class TextValueEncoderTest extends MahoutTestCase {
 
@@ -59,6 +63,28 @@ public final class TextValueEncoderTest extends MahoutTestCase {
     assertEquals(v3.zSum(), v3.dot(v1), 0);
   }
 
+  @Test
+  public void testStringMatchesBytes() {
+    TextValueEncoder enc = new TextValueEncoder("text");
+    Vector v1 = new DenseVector(200);
+    Vector v2 = new DenseVector(200);
+    String text = "test1 and more and caf\u00e9 \u65e5\u672c";
+    enc.addToVector(text, v1);
+    enc.addToVector(text.getBytes(Charsets.UTF_8), v2);
+    assertEquals(0, v1.minus(v2).norm(1), 0);
+    assertTrue(v1.norm(1) > 0);
+  }
+
+  @Test
+  public void testTokenize() {
+    Splitter onNonWord = Splitter.on(Pattern.compile("\\W+")).omitEmptyStrings();
+    TextValueEncoder enc = new TextValueEncoder("text");
+    for (String text : new String[] {"", " ", "a", "test1 and more", "  leading, trailing!! ", "under_score x-y",
+        "caf\u00e9 na\u00efve", "tab\tand\nnewline"}) {
+      assertEquals(text, Lists.newArrayList(onNonWord.split(text)), Lists.newArrayList(enc.tokenize(text)));
+    }
+  }
+
   @Test
   public void testAsString() {
     Locale.setDefault(Locale.ENGLISH);
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.vectorizer.term;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import com.google.common.collect.Lists;
+import org.apache.mahout.common.MahoutTestCase;
+import org.apache.mahout.common.RandomUtils;
+import org.junit.Test;
+
+public final class CompactTermDictionaryTest extends MahoutTestCase {
+
+  @Test
+  public void testLookups() throws Exception {
+    Random random = RandomUtils.getRandom();
+    // byte order of the UTF-8 encoding, which differs from String order outside of the BMP
+    TreeMap<String, Integer> terms = new TreeMap<>(new Comparator<String>() {
+      @Override
+      public int compare(String a, String b) {
+        byte[] x = a.getBytes(StandardCharsets.UTF_8);
+        byte[] y = b.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < Math.min(x.length, y.length); i++) {
+          int cmp = (x[i] & 0xff) - (y[i] & 0xff);
+          if (cmp != 0) {
+            return cmp;
+          }
+        }
+        return x.length - y.length;
+      }
+    });
+    List<String> absent = Lists.newArrayList();
+    String alphabet = "abcde\u00e9\u4e2d";
+    while (terms.size() < 2000) {
+      StringBuilder term = new StringBuilder();
+      int length = 1 + random.nextInt(8);
+      for (int i = 0; i < length; i++) {
+        term.append(alphabet.charAt(random.nextInt(alphabet.length())));
+      }
+      if (random.nextInt(4) == 0) {
+        absent.add(term.toString());
+      } else {
+        terms.put(term.toString(), random.nextInt(1000000));
+      }
+    }
+    absent.add("");
+    absent.add("zzzz");
+    absent.add("\u0000");
+
+    File file = getTestTempFile("dictionary.compact");
+    try (CompactTermDictionary.Writer writer = new CompactTermDictionary.Writer(new FileOutputStream(file))) {
+      for (Map.Entry<String, Integer> entry : terms.entrySet()) {
+        writer.add(entry.getKey(), entry.getValue());
+      }
+    }
+
+    CompactTermDictionary dictionary = CompactTermDictionary.map(file);
+    assertEquals(terms.size(), dictionary.size());
+    for (Map.Entry<String, Integer> entry : terms.entrySet()) {
+      assertEquals(entry.getKey(), entry.getValue().intValue(), dictionary.get(entry.getKey()));
+    }
+    for (String term : absent) {
+      if (!terms.containsKey(term)) {
+        assertEquals(term, -1, dictionary.get(term));
+      }
+    }
+  }
+
+  @Test
+  public void testEmpty() throws Exception {
+    File file = getTestTempFile("empty.compact");
+    new CompactTermDictionary.Writer(new FileOutputStream(file)).close();
+    CompactTermDictionary dictionary = CompactTermDictionary.map(file);
+    assertEquals(0, dictionary.size());
+    assertEquals(-1, dictionary.get("a"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnsortedTerms() throws IOException {
+    try (CompactTermDictionary.Writer writer =
+             new CompactTermDictionary.Writer(new FileOutputStream(getTestTempFile("unsorted.compact")))) {
+      writer.add("b", 0);
+      writer.add("a", 1);
+    }
+  }
+
+}
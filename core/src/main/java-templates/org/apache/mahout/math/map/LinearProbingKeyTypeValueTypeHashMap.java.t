@@ -0,0 +1,659 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.mahout.math.map;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.mahout.math.function.${keyTypeCap}${valueTypeCap}Procedure;
+import org.apache.mahout.math.function.${keyTypeCap}Procedure;
+import org.apache.mahout.math.list.${keyTypeCap}ArrayList;
+
+#if (${keyType} != ${valueType})
+import org.apache.mahout.math.list.${valueTypeCap}ArrayList;
+#end
+
+
+/**
+ * Open hash map from ${keyType} keys to ${valueType} values using linear probing.
+ * <p/>
+ * Unlike {@link Open${keyTypeCap}${valueTypeCap}HashMap}, which uses double hashing over a prime sized table and a
+ * separate state array, this map keeps only the key and value arrays. A slot is free if its key is <tt>0</tt>; the
+ * key <tt>0</tt> itself is kept in an extra slot at the end of the arrays. Floating point keys are compared by their
+ * bits, so only <tt>+0.0</tt> goes to the extra slot. Tables are powers of two and probes walk
+ * consecutive slots, so a lookup usually reads a single cache line of keys. Removal shifts the following entries of
+ * the probe sequence back instead of leaving tombstones, so lookups do not degrade after many removals.
+ * <p/>
+ * Iteration order differs from {@link Open${keyTypeCap}${valueTypeCap}HashMap}, but all iteration methods use the
+ * same order.
+ **/
+public class LinearProbing${keyTypeCap}${valueTypeCap}HashMap extends Abstract${keyTypeCap}${valueTypeCap}Map {
+
+  private static final int MIN_CAPACITY = 4;
+  private static final int MAX_CAPACITY = 1 << 30;
+
+  /** The hash table keys, followed by the slot of the key <tt>0</tt>. */
+  protected ${keyType}[] table;
+
+  /** The hash table values, followed by the value of the key <tt>0</tt>. */
+  protected ${valueType}[] values;
+
+  /** Table length minus one. */
+  protected int mask;
+
+  /** Whether the key <tt>0</tt> is contained. */
+  protected boolean containsFreeKey;
+
+
+  /** Constructs an empty map with default capacity and default load factors. */
+  public LinearProbing${keyTypeCap}${valueTypeCap}HashMap() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Constructs an empty map with the specified initial capacity and default load factors.
+   *
+   * @param initialCapacity the initial capacity of the map.
+   * @throws IllegalArgumentException if the initial capacity is less than zero.
+   */
+  public LinearProbing${keyTypeCap}${valueTypeCap}HashMap(int initialCapacity) {
+    this(initialCapacity, DEFAULT_MIN_LOAD_FACTOR, DEFAULT_MAX_LOAD_FACTOR);
+  }
+
+  /**
+   * Constructs an empty map with the specified initial capacity and the specified minimum and maximum load factor.
+   * The capacity is rounded up to a power of two.
+   *
+   * @param initialCapacity the initial capacity.
+   * @param minLoadFactor   the minimum load factor.
+   * @param maxLoadFactor   the maximum load factor.
+   * @throws IllegalArgumentException if <tt>initialCapacity < 0 || (minLoadFactor < 0.0 || minLoadFactor >= 1.0) ||
+   *                                  (maxLoadFactor <= 0.0 || maxLoadFactor >= 1.0) || (minLoadFactor >=
+   *                                  maxLoadFactor)</tt>.
+   */
+  public LinearProbing${keyTypeCap}${valueTypeCap}HashMap(int initialCapacity, double minLoadFactor,
+                                                          double maxLoadFactor) {
+    setUp(initialCapacity, minLoadFactor, maxLoadFactor);
+  }
+
+  /**
+   * @return the smallest power of two that is at least <tt>desiredCapacity</tt>, within the supported range.
+   */
+  private static int tableSize(int desiredCapacity) {
+    if (desiredCapacity >= MAX_CAPACITY) {
+      return MAX_CAPACITY;
+    }
+    return Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(desiredCapacity - 1, 1)) << 1);
+  }
+
+  /** Spreads the hash code so that the low bits used to index the table depend on all bits of the key. */
+  private static int mix(int hash) {
+    int h = hash * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+#if (${keyType} == 'double')
+  /**
+   * Keys are compared by their bits, as {@link HashFunctions#hash(double)} hashes them, so <tt>-0.0</tt> is a key of
+   * its own and <tt>NaN</tt> can be found again.
+   */
+  private static boolean same(double a, double b) {
+    return Double.doubleToLongBits(a) == Double.doubleToLongBits(b);
+  }
+
+  /** @return whether <tt>key</tt> is <tt>+0.0</tt>, the key marking free slots. */
+  private static boolean isFree(double key) {
+    return Double.doubleToLongBits(key) == 0L;
+  }
+#elseif (${keyType} == 'float')
+  /**
+   * Keys are compared by their bits, as {@link HashFunctions#hash(float)} hashes them, so <tt>-0.0f</tt> is a key of
+   * its own and <tt>NaN</tt> can be found again.
+   */
+  private static boolean same(float a, float b) {
+    return Float.floatToIntBits(a) == Float.floatToIntBits(b);
+  }
+
+  /** @return whether <tt>key</tt> is <tt>+0.0f</tt>, the key marking free slots. */
+  private static boolean isFree(float key) {
+    return Float.floatToIntBits(key) == 0;
+  }
+#else
+  private static boolean same(${keyType} a, ${keyType} b) {
+    return a == b;
+  }
+
+  /** @return whether <tt>key</tt> is <tt>0</tt>, the key marking free slots. */
+  private static boolean isFree(${keyType} key) {
+    return key == 0;
+  }
+#end
+
+  /** Removes all (key,value) associations from the receiver. Implicitly calls <tt>trimToSize()</tt>. */
+  @Override
+  public void clear() {
+    Arrays.fill(this.table, (${keyType}) 0);
+    containsFreeKey = false;
+    distinct = 0;
+    trimToSize();
+  }
+
+  /**
+   * Returns a deep copy of the receiver.
+   *
+   * @return a deep copy of the receiver.
+   */
+  @Override
+  public Object clone() {
+    LinearProbing${keyTypeCap}${valueTypeCap}HashMap copy =
+        (LinearProbing${keyTypeCap}${valueTypeCap}HashMap) super.clone();
+    copy.table = copy.table.clone();
+    copy.values = copy.values.clone();
+    return copy;
+  }
+
+  /**
+   * Returns <tt>true</tt> if the receiver contains the specified key.
+   *
+   * @return <tt>true</tt> if the receiver contains the specified key.
+   */
+  @Override
+  public boolean containsKey(${keyType} key) {
+    return indexOfKey(key) >= 0;
+  }
+
+  /**
+   * Returns <tt>true</tt> if the receiver contains the specified value.
+   *
+   * @return <tt>true</tt> if the receiver contains the specified value.
+   */
+  @Override
+  public boolean containsValue(${valueType} value) {
+    return indexOfValue(value) >= 0;
+  }
+
+  /**
+   * Ensures that the receiver can hold at least the specified number of associations without needing to allocate new
+   * internal memory. If necessary, allocates new internal memory and increases the capacity of the receiver. <p> This
+   * method never need be called; it is for performance tuning only.
+   *
+   * @param minCapacity the desired minimum capacity.
+   */
+  @Override
+  public void ensureCapacity(int minCapacity) {
+    if (mask + 1 < minCapacity) {
+      rehash(tableSize(minCapacity));
+    }
+  }
+
+  /**
+   * Applies a procedure to each key of the receiver, if any. Note: Iterates over the keys in no particular order.
+   * All methods which <i>can</i> be expressed in terms of this method use the <i>same</i> order.
+   *
+   * @param procedure the procedure to be applied. Stops iteration if the procedure returns <tt>false</tt>, otherwise
+   *                  continues.
+   * @return <tt>false</tt> if the procedure stopped before all keys where iterated over, <tt>true</tt> otherwise.
+   */
+  @Override
+  public boolean forEachKey(${keyTypeCap}Procedure procedure) {
+    if (containsFreeKey && !procedure.apply(table[mask + 1])) {
+      return false;
+    }
+    for (int i = mask + 1; i-- > 0;) {
+      if (!isFree(table[i]) && !procedure.apply(table[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Applies a procedure to each (key,value) pair of the receiver, if any. Iteration order is guaranteed to be
+   * <i>identical</i> to the order used by method {@link #forEachKey(${keyTypeCap}Procedure)}.
+   *
+   * @param procedure the procedure to be applied. Stops iteration if the procedure returns <tt>false</tt>, otherwise
+   *                  continues.
+   * @return <tt>false</tt> if the procedure stopped before all keys where iterated over, <tt>true</tt> otherwise.
+   */
+  @Override
+  public boolean forEachPair(${keyTypeCap}${valueTypeCap}Procedure procedure) {
+    if (containsFreeKey && !procedure.apply(table[mask + 1], values[mask + 1])) {
+      return false;
+    }
+    for (int i = mask + 1; i-- > 0;) {
+      if (!isFree(table[i]) && !procedure.apply(table[i], values[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the value associated with the specified key.
+   *
+   * @param key the key to be searched for.
+   * @return the value associated with the specified key; <tt>0</tt> if no such key is present.
+   */
+  @Override
+  public ${valueType} get(${keyType} key) {
+    if (isFree(key)) {
+      return containsFreeKey ? values[mask + 1] : 0;
+    }
+    ${keyType}[] tab = table;
+    int i = mix(HashFunctions.hash(key)) & mask;
+    ${keyType} k;
+    while (!isFree(k = tab[i])) {
+      if (same(k, key)) {
+        return values[i];
+      }
+      i = (i + 1) & mask;
+    }
+    return 0;
+  }
+
+  /**
+   * @param key the key to be searched in the receiver.
+   * @return the index where the key is contained in the receiver, returns -1 if the key was not found.
+   */
+  protected int indexOfKey(${keyType} key) {
+    if (isFree(key)) {
+      return containsFreeKey ? mask + 1 : -1;
+    }
+    ${keyType}[] tab = table;
+    int i = mix(HashFunctions.hash(key)) & mask;
+    ${keyType} k;
+    while (!isFree(k = tab[i])) {
+      if (same(k, key)) {
+        return i;
+      }
+      i = (i + 1) & mask;
+    }
+    return -1;
+  }
+
+  /**
+   * @param value the value to be searched in the receiver.
+   * @return the index where the value is contained in the receiver, returns -1 if the value was not found.
+   */
+  protected int indexOfValue(${valueType} value) {
+    if (containsFreeKey && values[mask + 1] == value) {
+      return mask + 1;
+    }
+    for (int i = mask + 1; i-- > 0;) {
+      if (!isFree(table[i]) && values[i] == value) {
+        return i;
+      }
+    }
+    return -1; // not found
+  }
+
+  /**
+   * Fills all keys contained in the receiver into the specified list. Fills the list, starting at index 0. After this
+   * call returns the specified list has a new size that equals <tt>this.size()</tt>. Iteration order is guaranteed to
+   * be <i>identical</i> to the order used by method {@link #forEachKey(${keyTypeCap}Procedure)}.
+   *
+   * @param list the list to be filled, can have any size.
+   */
+  @Override
+  public void keys(${keyTypeCap}ArrayList list) {
+    list.setSize(distinct);
+    ${keyType}[] elements = list.elements();
+
+    int j = 0;
+    if (containsFreeKey) {
+      elements[j++] = table[mask + 1];
+    }
+    for (int i = mask + 1; i-- > 0;) {
+      if (!isFree(table[i])) {
+        elements[j++] = table[i];
+      }
+    }
+  }
+
+  public Iterator<MapElement> iterator() {
+    return new MapIterator();
+  }
+
+  public final class MapElement {
+    // slots are visited from the free key slot at mask + 1 down to 0
+    private int offset = mask + 2;
+    int seen = 0;
+
+    boolean advanceOffset() {
+      offset--;
+      while (offset >= 0 && (offset == mask + 1 ? !containsFreeKey : isFree(table[offset]))) {
+        offset--;
+      }
+      if (offset >= 0) {
+        seen++;
+      }
+      return offset >= 0;
+    }
+
+    public ${valueType} get() {
+      return values[offset];
+    }
+
+    public ${keyType} index() {
+      return table[offset];
+    }
+
+    public void set(${valueType} value) {
+      values[offset] = value;
+    }
+  }
+
+  public final class MapIterator implements Iterator<MapElement> {
+    private final MapElement element = new MapElement();
+
+    private MapIterator() { }
+
+    @Override
+    public boolean hasNext() {
+      return element.seen < distinct;
+    }
+
+    @Override
+    public MapElement next() {
+      if (element.advanceOffset()) {
+        return element;
+      }
+      throw new NoSuchElementException();
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  /**
+   * Fills all pairs satisfying a given condition into the specified lists. Fills into the lists, starting at index 0.
+   * After this call returns the specified lists both have a new size, the number of pairs satisfying the condition.
+   * Iteration order is guaranteed to be <i>identical</i> to the order used by method {@link
+   * #forEachKey(${keyTypeCap}Procedure)}.
+   *
+   * @param condition the condition to be matched. Takes the current key as first and the current value as second
+   *                  argument.
+   * @param keyList   the list to be filled with keys, can have any size.
+   * @param valueList the list to be filled with values, can have any size.
+   */
+  @Override
+  public void pairsMatching(${keyTypeCap}${valueTypeCap}Procedure condition,
+                            ${keyTypeCap}ArrayList keyList,
+                            ${valueTypeCap}ArrayList valueList) {
+    keyList.clear();
+    valueList.clear();
+
+    if (containsFreeKey && condition.apply(table[mask + 1], values[mask + 1])) {
+      keyList.add(table[mask + 1]);
+      valueList.add(values[mask + 1]);
+    }
+    for (int i = mask + 1; i-- > 0;) {
+      if (!isFree(table[i]) && condition.apply(table[i], values[i])) {
+        keyList.add(table[i]);
+        valueList.add(values[i]);
+      }
+    }
+  }
+
+  /**
+   * Associates the given key with the given value. Replaces any old <tt>(key,someOtherValue)</tt> association, if
+   * existing.
+   *
+   * @param key   the key the value shall be associated with.
+   * @param value the value to be associated.
+   * @return <tt>true</tt> if the receiver did not already contain such a key; <tt>false</tt> if the receiver did
+   *         already contain such a key - the new value has now replaced the formerly associated value.
+   */
+  @Override
+  public boolean put(${keyType} key, ${valueType} value) {
+    int i = indexOfInsertion(key);
+    if (i < 0) { // already contained
+      values[-i - 1] = value;
+      return false;
+    }
+    insertAt(i, key, value);
+    return true;
+  }
+
+  @Override
+  public ${valueType} adjustOrPutValue(${keyType} key, ${valueType} newValue, ${valueType} incrValue) {
+    int i = indexOfInsertion(key);
+    if (i < 0) { // already contained
+      i = -i - 1;
+      values[i] += incrValue;
+      return values[i];
+    }
+    insertAt(i, key, newValue);
+    return newValue;
+  }
+
+  /**
+   * @param key the key to be added to the receiver.
+   * @return the free slot where the key needs to be inserted if it is not contained, or -index-1 if the key is
+   *         contained at slot index.
+   */
+  protected int indexOfInsertion(${keyType} key) {
+    if (isFree(key)) {
+      return containsFreeKey ? -(mask + 1) - 1 : mask + 1;
+    }
+    ${keyType}[] tab = table;
+    int i = mix(HashFunctions.hash(key)) & mask;
+    ${keyType} k;
+    while (!isFree(k = tab[i])) {
+      if (same(k, key)) {
+        return -i - 1;
+      }
+      i = (i + 1) & mask;
+    }
+    return i;
+  }
+
+  private void insertAt(int i, ${keyType} key, ${valueType} value) {
+    if (i == mask + 1) {
+      containsFreeKey = true;
+    }
+    table[i] = key;
+    values[i] = value;
+    distinct++;
+
+    // the table always keeps a free slot, which terminates probe sequences
+    if (distinct > highWaterMark) {
+      if (mask + 1 == MAX_CAPACITY) {
+        throw new IllegalStateException("Hash table is full: " + distinct);
+      }
+      rehash(tableSize(chooseGrowCapacity(distinct + 1, minLoadFactor, maxLoadFactor)));
+    }
+  }
+
+  /**
+   * Rehashes the contents of the receiver into a new table with a smaller or larger capacity. This method is called
+   * automatically when the number of keys in the receiver exceeds the high water mark or falls below the low water
+   * mark.
+   *
+   * @param newCapacity the new table length, a power of two
+   */
+  protected void rehash(int newCapacity) {
+    ${keyType}[] oldTable = table;
+    ${valueType}[] oldValues = values;
+    int oldCapacity = mask + 1;
+
+    ${keyType}[] tab = new ${keyType}[newCapacity + 1];
+    ${valueType}[] vals = new ${valueType}[newCapacity + 1];
+    int newMask = newCapacity - 1;
+    for (int i = oldCapacity; i-- > 0;) {
+      ${keyType} k = oldTable[i];
+      if (!isFree(k)) {
+        int j = mix(HashFunctions.hash(k)) & newMask;
+        while (!isFree(tab[j])) {
+          j = (j + 1) & newMask;
+        }
+        tab[j] = k;
+        vals[j] = oldValues[i];
+      }
+    }
+    tab[newCapacity] = oldTable[oldCapacity];
+    vals[newCapacity] = oldValues[oldCapacity];
+
+    this.table = tab;
+    this.values = vals;
+    this.mask = newMask;
+    this.lowWaterMark = chooseLowWaterMark(newCapacity, this.minLoadFactor);
+    this.highWaterMark = chooseHighWaterMark(newCapacity, this.maxLoadFactor);
+  }
+
+  /**
+   * Removes the given key with its associated element from the receiver, if present.
+   *
+   * @param key the key to be removed from the receiver.
+   * @return <tt>true</tt> if the receiver contained the specified key, <tt>false</tt> otherwise.
+   */
+  @Override
+  public boolean removeKey(${keyType} key) {
+    int i = indexOfKey(key);
+    if (i < 0) {
+      return false;
+    } // key not contained
+
+    if (i == mask + 1) {
+      containsFreeKey = false;
+    } else {
+      shiftKeys(i);
+    }
+    this.distinct--;
+
+    if (this.distinct < this.lowWaterMark) {
+      int newCapacity = tableSize(chooseShrinkCapacity(this.distinct, this.minLoadFactor, this.maxLoadFactor));
+      if (newCapacity <= mask) {
+        rehash(newCapacity);
+      } else {
+        // rounding up to a power of two gave back the current capacity; wait until half of it is enough
+        this.lowWaterMark = chooseLowWaterMark(newCapacity >> 1, this.minLoadFactor);
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Frees slot <tt>pos</tt> by moving back later entries of the same run whose probe sequence passes over it.
+   */
+  private void shiftKeys(int pos) {
+    ${keyType}[] tab = table;
+    int last;
+    int slot;
+    ${keyType} k;
+    while (true) {
+      last = pos;
+      pos = (pos + 1) & mask;
+      while (true) {
+        if (isFree(k = tab[pos])) {
+          tab[last] = 0;
+          return;
+        }
+        slot = mix(HashFunctions.hash(k)) & mask;
+        // the entry at pos may move to last unless its home slot lies cyclically in (last, pos]
+        if (last <= pos ? last >= slot || slot > pos : last >= slot && slot > pos) {
+          break;
+        }
+        pos = (pos + 1) & mask;
+      }
+      tab[last] = k;
+      values[last] = values[pos];
+    }
+  }
+
+  /**
+   * Initializes the receiver.
+   *
+   * @param initialCapacity the initial capacity of the receiver.
+   * @param minLoadFactor   the minLoadFactor of the receiver.
+   * @param maxLoadFactor   the maxLoadFactor of the receiver.
+   * @throws IllegalArgumentException if <tt>initialCapacity < 0 || (minLoadFactor < 0.0 || minLoadFactor >= 1.0) ||
+   *                                  (maxLoadFactor <= 0.0 || maxLoadFactor >= 1.0) || (minLoadFactor >=
+   *                                  maxLoadFactor)</tt>.
+   */
+  @Override
+  final protected void setUp(int initialCapacity, double minLoadFactor, double maxLoadFactor) {
+    super.setUp(initialCapacity, minLoadFactor, maxLoadFactor);
+    int capacity = tableSize(initialCapacity);
+
+    this.table = new ${keyType}[capacity + 1];
+    this.values = new ${valueType}[capacity + 1];
+    this.mask = capacity - 1;
+    this.containsFreeKey = false;
+
+    this.minLoadFactor = minLoadFactor;
+    this.maxLoadFactor = maxLoadFactor;
+    this.distinct = 0;
+
+    // lowWaterMark will be established upon first expansion, as in Open${keyTypeCap}${valueTypeCap}HashMap.
+    this.lowWaterMark = 0;
+    this.highWaterMark = chooseHighWaterMark(capacity, this.maxLoadFactor);
+  }
+
+  /**
+   * Trims the capacity of the receiver to be the receiver's current size. Releases any superfluous internal memory. An
+   * application can use this operation to minimize the storage of the receiver.
+   */
+  @Override
+  public void trimToSize() {
+    int newCapacity = tableSize((int) (1 + size() / maxLoadFactor));
+    if (mask + 1 > newCapacity) {
+      rehash(newCapacity);
+    }
+  }
+
+  /**
+   * Fills all values contained in the receiver into the specified list. Fills the list, starting at index 0. After this
+   * call returns the specified list has a new size that equals <tt>this.size()</tt>. Iteration order is guaranteed to
+   * be <i>identical</i> to the order used by method {@link #forEachKey(${keyTypeCap}Procedure)}.
+   *
+   * @param list the list to be filled, can have any size.
+   */
+  @Override
+  public void values(${valueTypeCap}ArrayList list) {
+    list.setSize(distinct);
+    ${valueType}[] elements = list.elements();
+
+    int j = 0;
+    if (containsFreeKey) {
+      elements[j++] = values[mask + 1];
+    }
+    for (int i = mask + 1; i-- > 0;) {
+      if (!isFree(table[i])) {
+        elements[j++] = values[i];
+      }
+    }
+  }
+
+  /**
+   * Access for unit tests.
+   * @param capacity
+   * @param minLoadFactor
+   * @param maxLoadFactor
+   */
+  protected void getInternalFactors(int[] capacity,
+      double[] minLoadFactor,
+      double[] maxLoadFactor) {
+    capacity[0] = mask + 1;
+    minLoadFactor[0] = this.minLoadFactor;
+    maxLoadFactor[0] = this.maxLoadFactor;
+  }
+}
@@ -57,6 +57,14 @@ public class DenseVector extends AbstractVector {
     this.values = new double[cardinality];
   }
 
+  /**
+   * Returns the backing array. Changes to it write through to this vector.
+   * @return double[]
+   */
+  public double[] getBackingStructure() {
+    return values;
+  }
+
   /**
    * Copy-constructor (for use in turning a sparse vector into a dense one, for example)
    * @param vector The vector to copy
@@ -381,8 +389,7 @@ public class DenseVector extends AbstractVector {
         }
 
         // Picking up the slack
-        for (
-          i = offset, j = xv.offset;
+        for ( ;
           i < untilOffset;
           ) {
           sum += thisValues[i++] * thatValues[j++];
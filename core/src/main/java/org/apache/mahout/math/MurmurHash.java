@@ -111,11 +111,138 @@ public final class MurmurHash {
 
 
   public static long hash64A(byte[] data, int seed) {
-    return hash64A(ByteBuffer.wrap(data), seed);
+    return hash64A(data, 0, data.length, seed);
   }
 
   public static long hash64A(byte[] data, int offset, int length, int seed) {
-    return hash64A(ByteBuffer.wrap(data, offset, length), seed);
+    long m = 0xc6a4a7935bd1e995L;
+    int r = 47;
+
+    long h = seed ^ (length * m);
+
+    int end = offset + (length & ~7);
+    for (int i = offset; i < end; i += 8) {
+      long k = (data[i] & 0xffL)
+          | (data[i + 1] & 0xffL) << 8
+          | (data[i + 2] & 0xffL) << 16
+          | (data[i + 3] & 0xffL) << 24
+          | (data[i + 4] & 0xffL) << 32
+          | (data[i + 5] & 0xffL) << 40
+          | (data[i + 6] & 0xffL) << 48
+          | (data[i + 7] & 0xffL) << 56;
+
+      k *= m;
+      k ^= k >>> r;
+      k *= m;
+
+      h ^= k;
+      h *= m;
+    }
+
+    int tail = length & 7;
+    if (tail > 0) {
+      long k = 0;
+      for (int i = tail - 1; i >= 0; i--) {
+        k = k << 8 | (data[end + i] & 0xffL);
+      }
+      h ^= k;
+      h *= m;
+    }
+
+    h ^= h >>> r;
+    h *= m;
+    h ^= h >>> r;
+
+    return h;
+  }
+
+  /**
+   * Hashes the UTF-8 encoding of a character sequence without materializing it.  The result is the
+   * same as that of {@link #hash64A(byte[], int)} applied to <tt>data.toString().getBytes(UTF_8)</tt>,
+   * including the replacement of unpaired surrogates by <tt>'?'</tt>.
+   * @param data The characters to hash.
+   * @param seed The seed for the hash.
+   * @return The 64 bit hash of the UTF-8 bytes of the characters.
+   */
+  public static long hash64A(CharSequence data, int seed) {
+    long m = 0xc6a4a7935bd1e995L;
+    int r = 47;
+
+    long h = seed ^ (utf8Length(data) * m);
+
+    long k = 0;
+    int filled = 0;
+    int n = data.length();
+    for (int i = 0; i < n; i++) {
+      char c = data.charAt(i);
+      // up to four bytes of the encoding of c, first byte lowest
+      int bytes;
+      int count;
+      if (c < 0x80) {
+        bytes = c;
+        count = 1;
+      } else if (c < 0x800) {
+        bytes = (0xc0 | c >>> 6) | (0x80 | c & 0x3f) << 8;
+        count = 2;
+      } else if (!Character.isSurrogate(c)) {
+        bytes = (0xe0 | c >>> 12) | (0x80 | c >>> 6 & 0x3f) << 8 | (0x80 | c & 0x3f) << 16;
+        count = 3;
+      } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(data.charAt(i + 1))) {
+        int cp = Character.toCodePoint(c, data.charAt(++i));
+        bytes = (0xf0 | cp >>> 18) | (0x80 | cp >>> 12 & 0x3f) << 8 | (0x80 | cp >>> 6 & 0x3f) << 16
+            | (0x80 | cp & 0x3f) << 24;
+        count = 4;
+      } else {
+        bytes = '?';
+        count = 1;
+      }
+
+      for (int j = 0; j < count; j++) {
+        k |= (bytes >>> (j << 3) & 0xffL) << (filled << 3);
+        if (++filled == 8) {
+          k *= m;
+          k ^= k >>> r;
+          k *= m;
+
+          h ^= k;
+          h *= m;
+
+          k = 0;
+          filled = 0;
+        }
+      }
+    }
+
+    if (filled > 0) {
+      h ^= k;
+      h *= m;
+    }
+
+    h ^= h >>> r;
+    h *= m;
+    h ^= h >>> r;
+
+    return h;
+  }
+
+  private static int utf8Length(CharSequence data) {
+    int n = data.length();
+    int length = n;
+    for (int i = 0; i < n; i++) {
+      char c = data.charAt(i);
+      if (c >= 0x800) {
+        if (!Character.isSurrogate(c)) {
+          length += 2;
+        } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(data.charAt(i + 1))) {
+          // four bytes for two chars
+          length += 2;
+          i++;
+        }
+      } else if (c >= 0x80) {
+        length++;
+      }
+    }
+    return length;
   }
 
   public static long hash64A(ByteBuffer buf, int seed) {
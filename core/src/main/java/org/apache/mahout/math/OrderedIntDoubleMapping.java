@@ -78,6 +78,19 @@ public final class OrderedIntDoubleMapping implements Serializable, Cloneable {
     return numMappings;
   }
 
+  /**
+   * Discards all mappings and makes room for {@code numMappings} new ones which the caller then fills in,
+   * in strictly increasing index order, through {@link #getIndices()} and {@link #getValues()}. Existing arrays are
+   * reused if they are large enough.
+   */
+  void reset(int numMappings) {
+    if (numMappings > indices.length) {
+      indices = new int[numMappings];
+      values = new double[numMappings];
+    }
+    this.numMappings = numMappings;
+  }
+
   private void growTo(int newCapacity) {
     if (newCapacity > indices.length) {
       int[] newIndices = new int[newCapacity];
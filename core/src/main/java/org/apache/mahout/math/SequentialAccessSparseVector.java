@@ -120,6 +120,26 @@ public class SequentialAccessSparseVector extends AbstractVector {
     return new SequentialAccessSparseVector(size(), values.clone());
   }
 
+  /**
+   * Returns the backing mapping. Only the first {@link OrderedIntDoubleMapping#getNumMappings()} entries of its
+   * index and value arrays are meaningful.
+   * @return OrderedIntDoubleMapping
+   */
+  public OrderedIntDoubleMapping getBackingStructure() {
+    return values;
+  }
+
+  /**
+   * Bulk replacement of the contents of this vector, used by serializers to fill it without per-element inserts.
+   * Returns the backing mapping with room for {@code numMappings} entries; the caller must fill the first
+   * {@code numMappings} slots of its index and value arrays in strictly increasing index order.
+   */
+  public OrderedIntDoubleMapping resetMappings(int numMappings) {
+    invalidateCachedLength();
+    values.reset(numMappings);
+    return values;
+  }
+
   @Override
   public void mergeUpdates(OrderedIntDoubleMapping updates) {
     values.merge(updates);
@@ -0,0 +1,613 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.math.decomposer.lanczos;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.base.Preconditions;
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.math.DenseMatrix;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.MatrixSlice;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.VectorIterable;
+import org.apache.mahout.math.solver.EigenDecomposition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Thick-restart Lanczos (Wu and Simon, "Thick-Restart Lanczos Method for Large Symmetric Eigenvalue Problems", 2000)
+ * for the largest eigenvalues of a symmetric corpus, or the largest singular values of any corpus through
+ * {@link VectorIterable#timesSquared(Vector)}, with the same inputs and outputs as {@link LanczosSolver}.<p>
+ *
+ * Unlike {@link LanczosSolver}, which keeps one basis vector per pass over the corpus, this keeps at most
+ * {@code maxBasisSize} of them. Once the basis is full the Ritz vectors of the largest Ritz values are kept, the rest
+ * of the basis is dropped and the iteration continues from the last residual. Memory is bounded by
+ * {@code maxBasisSize} dense vectors no matter how many passes convergence takes.<p>
+ *
+ * Orthogonality is maintained selectively. Every new vector is orthogonalized against the kept Ritz vectors, which
+ * is where Lanczos vectors lose orthogonality first. Against the Lanczos vectors of the current cycle it is only
+ * orthogonalized when the estimates of Simon's recurrence say orthogonality has dropped below the square root of
+ * machine precision.<p>
+ *
+ * Products with the corpus are computed by several threads. Rows of a {@link Matrix} are split into ranges by index.
+ * Other corpora are read with a single iterator and handed out in batches, copying rows because iterators over
+ * sequence files reuse them.
+ */
+public class ThickRestartLanczosSolver {
+
+  private static final Logger log = LoggerFactory.getLogger(ThickRestartLanczosSolver.class);
+
+  public static final double DEFAULT_TOLERANCE = 1.0e-8;
+
+  private static final double EPSILON = Math.ulp(1.0);
+  private static final double ORTHOGONALITY_THRESHOLD = Math.sqrt(EPSILON);
+  private static final double SAFE_MAX = 1.0e150;
+
+  private static final int BATCH_SIZE = 1024;
+  private static final int MIN_RANGE_SIZE = 4096;
+
+  private final int maxBasisSize;
+  private final int maxRestarts;
+  private final double tolerance;
+  private final int numThreads;
+
+  private int passes;
+  private int restarts;
+
+  public ThickRestartLanczosSolver(int maxBasisSize, int maxRestarts) {
+    this(maxBasisSize, maxRestarts, DEFAULT_TOLERANCE, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * @param maxBasisSize number of basis vectors kept in memory, at least desiredRank + 2
+   * @param maxRestarts give up after this many restarts, returning the current Ritz pairs
+   * @param tolerance a Ritz pair has converged once its residual is below this fraction of the largest Ritz value
+   * @param numThreads number of threads computing products with the corpus
+   */
+  public ThickRestartLanczosSolver(int maxBasisSize, int maxRestarts, double tolerance, int numThreads) {
+    Preconditions.checkArgument(maxBasisSize > 2, "maxBasisSize must be greater than 2");
+    Preconditions.checkArgument(maxRestarts >= 0, "maxRestarts must be non-negative");
+    Preconditions.checkArgument(tolerance > 0, "tolerance must be positive");
+    Preconditions.checkArgument(numThreads > 0, "numThreads must be greater then 0!");
+    this.maxBasisSize = maxBasisSize;
+    this.maxRestarts = maxRestarts;
+    this.tolerance = tolerance;
+    this.numThreads = numThreads;
+  }
+
+  /**
+   * Finds the desiredRank largest eigen (or singular) values and vectors, starting from basis vector 0 of the state,
+   * and stores them in the state in decreasing order.
+   */
+  @SuppressWarnings("deprecation") // LanczosState is what clustering.spectral passes in
+  public void solve(LanczosState state, int desiredRank, boolean isSymmetric) {
+    VectorIterable corpus = state.getCorpus();
+    int n = corpus.numCols();
+    int m = Math.min(maxBasisSize, n);
+    Preconditions.checkArgument(desiredRank > 0 && desiredRank <= m - 2,
+        "desiredRank must be in (0, min(maxBasisSize, numCols) - 2]");
+    log.info("Finding {} singular vectors of matrix with {} rows, via thick-restart Lanczos with {} basis vectors",
+        desiredRank, corpus.numRows(), m);
+    passes = 0;
+    restarts = 0;
+
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      Products products = new Products(corpus, isSymmetric, executor);
+
+      double[][] basis = new double[m + 1][];
+      basis[0] = toArray(state.getBasisVector(0));
+      double norm = Math.sqrt(products.dot(basis[0], basis[0]));
+      Preconditions.checkArgument(norm > 0, "initial vector must not be zero");
+      scale(basis[0], 1 / norm);
+
+      // projection of the corpus onto the basis: diagonal for the kept Ritz vectors, their coupling with the first
+      // Lanczos vector after them in row and column kept, tridiagonal from there on
+      double[][] t = new double[m][m];
+      int kept = 0;
+      double[] ritzValues;
+      double[][] ritzVectors;
+      while (true) {
+        double beta = extend(products, state, basis, t, kept, m);
+        EigenDecomposition decomposition = new EigenDecomposition(new DenseMatrix(t), true);
+        Integer[] order = decreasing(decomposition.getRealEigenvalues());
+        Matrix y = decomposition.getV();
+        ritzValues = new double[m];
+        ritzVectors = new double[m][m];
+        for (int c = 0; c < m; c++) {
+          ritzValues[c] = decomposition.getRealEigenvalues().get(order[c]);
+          for (int r = 0; r < m; r++) {
+            ritzVectors[r][c] = y.get(r, order[c]);
+          }
+        }
+
+        int converged = 0;
+        double largest = Math.abs(ritzValues[0]);
+        while (converged < desiredRank
+            && Math.abs(beta * ritzVectors[m - 1][converged]) <= tolerance * largest) {
+          converged++;
+        }
+        log.info("Restart {} after {} passes through the corpus, {} of {} Ritz pairs converged",
+            restarts, passes, converged, desiredRank);
+        if (converged == desiredRank || restarts == maxRestarts || beta == 0) {
+          break;
+        }
+
+        // keep the wanted Ritz vectors and some more for the ones that converged, continue from the residual
+        int newKept = Math.min(desiredRank + Math.min(converged, (m - desiredRank) / 2), m - 2);
+        double[][] newBasis = products.combine(basis, m, ritzVectors, newKept);
+        for (double[] row : t) {
+          Arrays.fill(row, 0);
+        }
+        for (int i = 0; i < newKept; i++) {
+          t[i][i] = ritzValues[i];
+          t[i][newKept] = beta * ritzVectors[m - 1][i];
+          t[newKept][i] = t[i][newKept];
+        }
+        Arrays.fill(basis, null);
+        System.arraycopy(newBasis, 0, basis, 0, newKept);
+        // extend() left the normalized residual in basis[m]
+        basis[newKept] = newBasis.length > newKept ? newBasis[newKept] : null;
+        kept = newKept;
+        restarts++;
+      }
+
+      double[][] vectors = products.combine(basis, m, ritzVectors, desiredRank);
+      for (int i = 0; i < desiredRank; i++) {
+        Vector v = new DenseVector(vectors[i], true);
+        state.setRightSingularVector(i, v.normalize());
+        double e = ritzValues[i] * state.getScaleFactor();
+        if (!isSymmetric) {
+          e = Math.sqrt(Math.max(e, 0));
+        }
+        log.info("Eigenvector {} found with eigenvalue {}", i, e);
+        state.setSingularValue(i, e);
+      }
+      log.info("ThickRestartLanczosSolver finished after {} passes and {} restarts.", passes, restarts);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * @return the number of products with the corpus computed by the last call to solve
+   */
+  public int getPasses() {
+    return passes;
+  }
+
+  /**
+   * @return the number of restarts of the last call to solve
+   */
+  public int getRestarts() {
+    return restarts;
+  }
+
+  /**
+   * Lanczos steps from basis vector {@code kept} up to m, filling t. The normalized residual is stored in basis[m].
+   *
+   * @return the norm of the residual, which couples the Ritz vectors to basis[m]
+   */
+  @SuppressWarnings("deprecation") // LanczosState is what clustering.spectral passes in
+  private double extend(Products products, LanczosState state, double[][] basis, double[][] t, int kept, int m) {
+    // estimates of the inner products of the current and the previous Lanczos vector with the ones of this cycle
+    double[] omega = new double[m + 1];
+    double[] previousOmega = new double[m + 1];
+    omega[kept] = 1;
+    boolean reorthogonalizeNext = false;
+    double beta = 0;
+    for (int j = kept; j < m; j++) {
+      double[] w = products.times(basis[j]);
+      passes++;
+      if (state.getScaleFactor() <= 0) {
+        state.setScaleFactor(LanczosSolver.calculateScaleFactor(new DenseVector(w, true)));
+      }
+      scale(w, 1 / state.getScaleFactor());
+
+      if (j == kept) {
+        for (int i = 0; i < kept; i++) {
+          products.axpy(-t[i][kept], basis[i], w);
+        }
+      } else {
+        products.axpy(-t[j - 1][j], basis[j - 1], w);
+      }
+      double alpha = products.dot(basis[j], w);
+      products.axpy(-alpha, basis[j], w);
+      t[j][j] = alpha;
+
+      // selective: always against the kept Ritz vectors
+      if (kept > 0) {
+        products.orthogonalize(basis, 0, kept, w);
+        products.orthogonalize(basis, 0, kept, w);
+      }
+      beta = Math.sqrt(products.dot(w, w));
+      if (outOfRange(beta) || outOfRange(alpha)) {
+        throw new IllegalStateException("Lanczos parameters out of range: alpha = " + alpha + ", beta = " + beta);
+      }
+
+      // partial: against this cycle when the estimated loss of orthogonality gets too large
+      double[] nextOmega = new double[m + 1];
+      boolean reorthogonalize = reorthogonalizeNext;
+      reorthogonalizeNext = false;
+      if (beta > 0) {
+        for (int i = kept; i < j; i++) {
+          double estimate = t[i][i + 1] * omega[i + 1] + (t[i][i] - alpha) * omega[i] - t[j - 1][j] * previousOmega[i];
+          if (i > kept) {
+            estimate += t[i - 1][i] * omega[i - 1];
+          }
+          nextOmega[i] = (estimate + Math.copySign(EPSILON * (Math.abs(alpha) + beta), estimate)) / beta;
+          reorthogonalize |= Math.abs(nextOmega[i]) > ORTHOGONALITY_THRESHOLD;
+        }
+      }
+      if (reorthogonalize || beta <= EPSILON * Math.abs(alpha)) {
+        products.orthogonalize(basis, kept, j + 1, w);
+        products.orthogonalize(basis, kept, j + 1, w);
+        beta = Math.sqrt(products.dot(w, w));
+        Arrays.fill(nextOmega, kept, j, EPSILON);
+        Arrays.fill(omega, kept, j, EPSILON);
+        // the next vector is orthogonalized as well, following Simon
+        reorthogonalizeNext = true;
+      }
+      nextOmega[j] = EPSILON;
+      nextOmega[j + 1] = 1;
+      previousOmega = omega;
+      omega = nextOmega;
+
+      if (beta <= EPSILON * Math.abs(alpha)) {
+        // the basis spans an invariant subspace, so its Ritz pairs are exact. Carry on with a random direction
+        // orthogonal to it, which is not coupled to the basis
+        log.info("Invariant subspace found after {} Lanczos vectors", j + 1);
+        beta = 0;
+        if (j + 1 == m) {
+          basis[m] = null;
+          break;
+        }
+        Random random = RandomUtils.getRandom();
+        for (int i = 0; i < w.length; i++) {
+          w[i] = random.nextGaussian();
+        }
+        products.orthogonalize(basis, 0, j + 1, w);
+        products.orthogonalize(basis, 0, j + 1, w);
+        scale(w, 1 / Math.sqrt(products.dot(w, w)));
+      } else {
+        scale(w, 1 / beta);
+      }
+      basis[j + 1] = w;
+      if (j + 1 < m) {
+        t[j][j + 1] = beta;
+        t[j + 1][j] = beta;
+      }
+    }
+    return beta;
+  }
+
+  private static boolean outOfRange(double d) {
+    return Double.isNaN(d) || d > SAFE_MAX || -d > SAFE_MAX;
+  }
+
+  private static Integer[] decreasing(final Vector values) {
+    Integer[] order = new Integer[values.size()];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer a, Integer b) {
+        return Double.compare(values.get(b), values.get(a));
+      }
+    });
+    return order;
+  }
+
+  private static double[] toArray(Vector v) {
+    double[] values = new double[v.size()];
+    for (Vector.Element e : v.nonZeroes()) {
+      values[e.index()] = e.get();
+    }
+    return values;
+  }
+
+  private static void scale(double[] v, double factor) {
+    for (int i = 0; i < v.length; i++) {
+      v[i] *= factor;
+    }
+  }
+
+  private interface Range<T> {
+    T apply(int from, int to);
+  }
+
+  /**
+   * Products with the corpus and dense operations on basis vectors, all split over threads.
+   */
+  private final class Products {
+
+    private final VectorIterable corpus;
+    private final boolean isSymmetric;
+    private final ExecutorService executor;
+    private final BlockingQueue<double[]> accumulators;
+
+    Products(VectorIterable corpus, boolean isSymmetric, ExecutorService executor) {
+      this.corpus = corpus;
+      this.isSymmetric = isSymmetric;
+      this.executor = executor;
+      this.accumulators = new ArrayBlockingQueue<>(numThreads);
+      if (!isSymmetric) {
+        for (int i = 0; i < numThreads; i++) {
+          accumulators.add(new double[corpus.numCols()]);
+        }
+      }
+    }
+
+    /**
+     * @return A v if the corpus is symmetric, A' A v otherwise
+     */
+    double[] times(double[] v) {
+      final Vector x = new DenseVector(v, true);
+      final double[] result = new double[isSymmetric ? corpus.numRows() : corpus.numCols()];
+      if (corpus instanceof Matrix) {
+        final Matrix matrix = (Matrix) corpus;
+        forEachRange(matrix.rowSize(), 1, new Range<Void>() {
+          @Override
+          public Void apply(int from, int to) {
+            List<Vector> rows = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+              rows.add(matrix.viewRow(i));
+            }
+            timesRows(rows, from, x, result);
+            return null;
+          }
+        });
+      } else {
+        forEachBatch(x, result);
+      }
+      if (!isSymmetric) {
+        for (double[] accumulator : accumulators) {
+          for (int i = 0; i < result.length; i++) {
+            result[i] += accumulator[i];
+          }
+          Arrays.fill(accumulator, 0);
+        }
+      }
+      return result;
+    }
+
+    /**
+     * Multiplies rows {@code firstIndex, firstIndex + 1, ...} (or the rows with the given indices) with x, storing
+     * the dot products into result if symmetric and adding the rows scaled by them into an accumulator otherwise.
+     */
+    private void timesRows(List<Vector> rows, int firstIndex, Vector x, double[] result) {
+      timesRows(rows, null, firstIndex, x, result);
+    }
+
+    private void timesRows(List<Vector> rows, int[] indices, int firstIndex, Vector x, double[] result) {
+      if (isSymmetric) {
+        for (int r = 0; r < rows.size(); r++) {
+          result[indices == null ? firstIndex + r : indices[r]] = rows.get(r).dot(x);
+        }
+        return;
+      }
+      double[] accumulator = accumulators.poll();
+      Preconditions.checkState(accumulator != null, "more tasks than accumulators");
+      try {
+        for (Vector row : rows) {
+          double d = row.dot(x);
+          if (d != 0) {
+            for (Vector.Element e : row.nonZeroes()) {
+              accumulator[e.index()] += d * e.get();
+            }
+          }
+        }
+      } finally {
+        accumulators.add(accumulator);
+      }
+    }
+
+    /**
+     * Reads the corpus on this thread and multiplies batches of rows on the others, with a bounded number of
+     * batches in flight.
+     */
+    private void forEachBatch(final Vector x, final double[] result) {
+      Deque<Future<?>> pending = new ArrayDeque<>();
+      try {
+        Iterator<MatrixSlice> slices = corpus.iterateAll();
+        while (slices.hasNext()) {
+          final List<Vector> rows = new ArrayList<>(BATCH_SIZE);
+          final int[] indices = new int[BATCH_SIZE];
+          while (rows.size() < BATCH_SIZE && slices.hasNext()) {
+            MatrixSlice slice = slices.next();
+            indices[rows.size()] = slice.index();
+            rows.add(slice.vector().clone());
+          }
+          pending.add(executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+              timesRows(rows, indices, 0, x, result);
+              return null;
+            }
+          }));
+          // at most numThreads batches run at once, as many accumulators as there are
+          if (pending.size() >= numThreads) {
+            pending.poll().get();
+          }
+        }
+        while (!pending.isEmpty()) {
+          pending.poll().get();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException(e);
+      } catch (ExecutionException e) {
+        throw new IllegalStateException(e.getCause());
+      }
+    }
+
+    double dot(final double[] x, final double[] y) {
+      double sum = 0;
+      for (double partial : forEachRange(x.length, MIN_RANGE_SIZE, new Range<Double>() {
+        @Override
+        public Double apply(int from, int to) {
+          double sum = 0;
+          for (int i = from; i < to; i++) {
+            sum += x[i] * y[i];
+          }
+          return sum;
+        }
+      })) {
+        sum += partial;
+      }
+      return sum;
+    }
+
+    /**
+     * y += a x
+     */
+    void axpy(final double a, final double[] x, final double[] y) {
+      forEachRange(x.length, MIN_RANGE_SIZE, new Range<Void>() {
+        @Override
+        public Void apply(int from, int to) {
+          for (int i = from; i < to; i++) {
+            y[i] += a * x[i];
+          }
+          return null;
+        }
+      });
+    }
+
+    /**
+     * One pass of classical Gram-Schmidt of w against basis vectors {@code [from, to)}.
+     */
+    void orthogonalize(final double[][] basis, final int from, final int to, final double[] w) {
+      final double[] coefficients = new double[to - from];
+      for (double[] partial : forEachRange(w.length, MIN_RANGE_SIZE, new Range<double[]>() {
+        @Override
+        public double[] apply(int start, int end) {
+          double[] partial = new double[to - from];
+          for (int b = from; b < to; b++) {
+            double[] v = basis[b];
+            double sum = 0;
+            for (int i = start; i < end; i++) {
+              sum += v[i] * w[i];
+            }
+            partial[b - from] = sum;
+          }
+          return partial;
+        }
+      })) {
+        for (int b = 0; b < coefficients.length; b++) {
+          coefficients[b] += partial[b];
+        }
+      }
+      forEachRange(w.length, MIN_RANGE_SIZE, new Range<Void>() {
+        @Override
+        public Void apply(int start, int end) {
+          for (int b = from; b < to; b++) {
+            double[] v = basis[b];
+            double c = coefficients[b - from];
+            for (int i = start; i < end; i++) {
+              w[i] -= c * v[i];
+            }
+          }
+          return null;
+        }
+      });
+    }
+
+    /**
+     * @return the first k columns of basis[0..m) times y, followed by basis[m] if it is set
+     */
+    double[][] combine(final double[][] basis, final int m, final double[][] y, final int k) {
+      final int n = basis[0].length;
+      final double[][] combined = new double[basis[m] == null ? k : k + 1][];
+      for (int c = 0; c < k; c++) {
+        combined[c] = new double[n];
+      }
+      if (basis[m] != null) {
+        combined[k] = basis[m];
+      }
+      forEachRange(n, MIN_RANGE_SIZE, new Range<Void>() {
+        @Override
+        public Void apply(int start, int end) {
+          for (int r = 0; r < m; r++) {
+            double[] v = basis[r];
+            for (int c = 0; c < k; c++) {
+              double a = y[r][c];
+              double[] u = combined[c];
+              for (int i = start; i < end; i++) {
+                u[i] += a * v[i];
+              }
+            }
+          }
+          return null;
+        }
+      });
+      return combined;
+    }
+
+    /**
+     * Splits {@code [0, size)} into ranges of at least minSize elements, a few per thread, and applies the function
+     * to them in parallel.
+     */
+    private <T> List<T> forEachRange(int size, int minSize, final Range<T> function) {
+      int numRanges = Math.max(1, Math.min(4 * numThreads, size / minSize));
+      if (numRanges == 1) {
+        return Collections.singletonList(function.apply(0, size));
+      }
+      List<Future<T>> futures = new ArrayList<>(numRanges);
+      for (int r = 0; r < numRanges; r++) {
+        final int from = (int) ((long) size * r / numRanges);
+        final int to = (int) ((long) size * (r + 1) / numRanges);
+        futures.add(executor.submit(new Callable<T>() {
+          @Override
+          public T call() {
+            return function.apply(from, to);
+          }
+        }));
+      }
+      List<T> results = new ArrayList<>(numRanges);
+      try {
+        for (Future<T> future : futures) {
+          results.add(future.get());
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException(e);
+      } catch (ExecutionException e) {
+        throw new IllegalStateException(e.getCause());
+      }
+      return results;
+    }
+  }
+}
@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.math.ssvd;
+
+import com.google.common.base.Preconditions;
+import org.apache.mahout.math.DenseMatrix;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.SingularValueDecomposition;
+import org.apache.mahout.math.Vector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * In-memory randomized SVD by block Krylov iteration (Musco and Musco, "Randomized Block Krylov Methods for Stronger
+ * and Faster Approximate Singular Value Decomposition", 2015).<p>
+ *
+ * Like {@link SequentialBigSvd} this starts from the range of A times a random block of k + p columns, but instead of
+ * replacing the block by A A' times itself in each power step, every step appends A A' times the last block to a
+ * Krylov basis. The basis is kept orthonormal by orthogonalizing each new block twice against the previous ones and
+ * orthonormalizing it on its own, dropping directions that vanish. After each step the singular values are estimated
+ * from the projection of A onto the basis and iteration stops as soon as the top k of them change by less than the
+ * tolerance relative to the largest, which usually takes far fewer passes over A than power iterations need for the
+ * same accuracy.<p>
+ *
+ * All products with A and with the tall basis are computed in parallel over blocks of rows. A is transposed once up
+ * front so that products with A' are row-wise as well, which holds a copy of A in memory while decomposing.
+ */
+public class BlockKrylovSvd {
+
+  public static final double DEFAULT_TOLERANCE = 1.0e-7;
+
+  private final Vector singularValues;
+  private final Matrix u;
+  private final Matrix v;
+  private final int iterations;
+
+  public BlockKrylovSvd(Matrix a, int k, int p, int maxIterations) {
+    this(a, k, p, maxIterations, DEFAULT_TOLERANCE, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * @param a the matrix to decompose
+   * @param k number of singular values and vectors to compute
+   * @param p oversampling, the Krylov blocks have k + p columns
+   * @param maxIterations maximum number of Krylov steps, each takes two passes over A
+   * @param tolerance stop when no top k singular value changes by more than this relative to the largest one
+   * @param numThreads number of threads to use
+   */
+  public BlockKrylovSvd(Matrix a, int k, int p, int maxIterations, double tolerance, int numThreads) {
+    int m = a.rowSize();
+    int n = a.columnSize();
+    Preconditions.checkArgument(k > 0 && k <= Math.min(m, n), "k must be in (0, min(rows, columns)]");
+    Preconditions.checkArgument(p >= 0, "p must be non-negative");
+    Preconditions.checkArgument(maxIterations >= 0, "maxIterations must be non-negative");
+    Preconditions.checkArgument(numThreads > 0, "numThreads must be greater then 0!");
+    int blockSize = Math.min(k + p, Math.min(m, n));
+
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      RowBlocks products = new RowBlocks(executor, numThreads);
+      Matrix at = RowBlocks.transpose(a);
+
+      // Krylov basis Q_0 .. Q_i of the range of A and W_j = A' Q_j
+      List<double[][]> q = new ArrayList<>();
+      List<double[][]> w = new ArrayList<>();
+      // Gram matrix of [W_0 .. W_i], its eigenvalues are the squared singular values of A projected on the basis
+      double[][] gram = new double[0][0];
+
+      double[][] y = products.times(a, RowBlocks.gaussian(n, blockSize), blockSize);
+      double[][] block = products.orthonormalize(y, q);
+      Preconditions.checkArgument(RowBlocks.width(block) > 0, "A times a random matrix is zero");
+      double[] previous = null;
+      SingularValueDecomposition ritz = null;
+      int step = 0;
+      while (true) {
+        q.add(block);
+        w.add(products.times(at, block, RowBlocks.width(block)));
+        gram = extendGram(products, gram, w);
+        ritz = new SingularValueDecomposition(new DenseMatrix(gram));
+
+        double[] current = ritz.getSingularValues();
+        if (previous != null && converged(previous, current, k, tolerance)) {
+          break;
+        }
+        previous = current;
+        if (step == maxIterations) {
+          break;
+        }
+        step++;
+
+        y = products.times(a, w.get(w.size() - 1), RowBlocks.width(block));
+        block = products.orthonormalize(y, q);
+        if (RowBlocks.width(block) == 0) {
+          // the basis spans an invariant subspace, the estimates are exact
+          break;
+        }
+      }
+      iterations = step;
+
+      int rank = Math.min(k, gram.length);
+      double[] sigma = new double[rank];
+      double[] inverseSigma = new double[rank];
+      double[] eigenvalues = ritz.getSingularValues();
+      for (int j = 0; j < rank; j++) {
+        sigma[j] = Math.sqrt(Math.max(0, eigenvalues[j]));
+        inverseSigma[j] = sigma[j] > 0 ? 1 / sigma[j] : 0;
+      }
+      double[][] ritzVectors = RowBlocks.toArray(ritz.getU());
+
+      // U = [Q_0 .. Q_i] U_g, V = [W_0 .. W_i] U_g inv(Sigma)
+      double[][] uValues = new double[m][];
+      double[][] vValues = new double[n][];
+      int offset = 0;
+      for (int j = 0; j < q.size(); j++) {
+        int width = RowBlocks.width(q.get(j));
+        double[][] part = new double[width][rank];
+        double[][] scaledPart = new double[width][rank];
+        for (int r = 0; r < width; r++) {
+          for (int c = 0; c < rank; c++) {
+            part[r][c] = ritzVectors[offset + r][c];
+            scaledPart[r][c] = ritzVectors[offset + r][c] * inverseSigma[c];
+          }
+        }
+        products.addTimes(uValues, q.get(j), part, 1);
+        products.addTimes(vValues, w.get(j), scaledPart, 1);
+        offset += width;
+      }
+      singularValues = new DenseVector(sigma);
+      u = RowBlocks.toMatrix(uValues);
+      v = RowBlocks.toMatrix(vValues);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static boolean converged(double[] previous, double[] current, int k, double tolerance) {
+    if (previous.length < k || current.length < k) {
+      return false;
+    }
+    double largest = Math.sqrt(Math.max(0, current[0]));
+    for (int j = 0; j < k; j++) {
+      double change = Math.sqrt(Math.max(0, current[j])) - Math.sqrt(Math.max(0, previous[j]));
+      if (Math.abs(change) > tolerance * largest) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the Gram matrix of all blocks of w, given the one of all but the last
+   */
+  private static double[][] extendGram(RowBlocks products, double[][] gram, List<double[][]> w) {
+    double[][] last = w.get(w.size() - 1);
+    int size = gram.length + RowBlocks.width(last);
+    double[][] extended = new double[size][size];
+    for (int r = 0; r < gram.length; r++) {
+      System.arraycopy(gram[r], 0, extended[r], 0, gram.length);
+    }
+    int offset = 0;
+    for (double[][] block : w) {
+      double[][] cross = products.transposeTimes(block, last);
+      for (int r = 0; r < cross.length; r++) {
+        for (int c = 0; c < cross[r].length; c++) {
+          extended[offset + r][gram.length + c] = cross[r][c];
+          extended[gram.length + c][offset + r] = cross[r][c];
+        }
+      }
+      offset += cross.length;
+    }
+    return extended;
+  }
+
+  public Vector getSingularValues() {
+    return singularValues;
+  }
+
+  public Matrix getU() {
+    return u;
+  }
+
+  public Matrix getV() {
+    return v;
+  }
+
+  /**
+   * @return number of Krylov steps taken after the initial random block
+   */
+  public int getIterations() {
+    return iterations;
+  }
+}
@@ -0,0 +1,301 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.math.ssvd;
+
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.math.DenseMatrix;
+import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.SequentialAccessSparseVector;
+import org.apache.mahout.math.SingularValueDecomposition;
+import org.apache.mahout.math.SparseRowMatrix;
+import org.apache.mahout.math.Vector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Products of tall matrices computed in parallel over blocks of rows. Dense tall matrices are kept as arrays of
+ * rows, small ones as plain two dimensional arrays.
+ */
+final class RowBlocks {
+
+  private static final int MIN_BLOCK_ROWS = 64;
+
+  /** Directions of a new block below this fraction of its norm before orthogonalization are dropped. */
+  private static final double DEFLATION_THRESHOLD = 1.0e-10;
+
+  /**
+   * Directions are also dropped when they are weaker than this fraction of the strongest one of the block. The Gram
+   * matrix squares the condition number, so weaker directions would be swamped by its rounding errors. Later
+   * Krylov steps pick them up again.
+   */
+  private static final double CONDITION_THRESHOLD = 1.0e-6;
+
+  private final ExecutorService executor;
+  private final int numBlocks;
+
+  RowBlocks(ExecutorService executor, int numThreads) {
+    this.executor = executor;
+    // a few blocks per thread so that uneven rows even out
+    this.numBlocks = 4 * numThreads;
+  }
+
+  private interface RowRange<T> {
+    T apply(int from, int to);
+  }
+
+  /**
+   * @return results of the task over consecutive row ranges covering [0, rows), in row order
+   */
+  private <T> List<T> forEachRange(int rows, final RowRange<T> task) {
+    int blockRows = Math.max(MIN_BLOCK_ROWS, (rows + numBlocks - 1) / numBlocks);
+    List<Future<T>> futures = new ArrayList<>();
+    for (int start = 0; start < rows; start += blockRows) {
+      final int from = start;
+      final int to = Math.min(rows, start + blockRows);
+      futures.add(executor.submit(new Callable<T>() {
+        @Override
+        public T call() {
+          return task.apply(from, to);
+        }
+      }));
+    }
+    List<T> results = new ArrayList<>(futures.size());
+    try {
+      for (Future<T> future : futures) {
+        results.add(future.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      for (Future<T> future : futures) {
+        future.cancel(true);
+      }
+    }
+    return results;
+  }
+
+  /**
+   * @return a b, with a in any representation and b dense with {@code a.columnSize()} rows
+   */
+  double[][] times(final Matrix a, final double[][] b, final int columns) {
+    final double[][] r = new double[a.rowSize()][];
+    forEachRange(a.rowSize(), new RowRange<Void>() {
+      @Override
+      public Void apply(int from, int to) {
+        for (int i = from; i < to; i++) {
+          double[] ri = new double[columns];
+          for (Vector.Element e : a.viewRow(i).nonZeroes()) {
+            double aij = e.get();
+            double[] bj = b[e.index()];
+            for (int c = 0; c < columns; c++) {
+              ri[c] += aij * bj[c];
+            }
+          }
+          r[i] = ri;
+        }
+        return null;
+      }
+    });
+    return r;
+  }
+
+  /**
+   * @return x' y for tall dense x and y
+   */
+  double[][] transposeTimes(final double[][] x, final double[][] y) {
+    final int cx = x.length == 0 ? 0 : x[0].length;
+    final int cy = y.length == 0 ? 0 : y[0].length;
+    double[][] r = new double[cx][cy];
+    for (double[][] partial : forEachRange(x.length, new RowRange<double[][]>() {
+      @Override
+      public double[][] apply(int from, int to) {
+        double[][] p = new double[cx][cy];
+        for (int i = from; i < to; i++) {
+          double[] xi = x[i];
+          double[] yi = y[i];
+          for (int j = 0; j < cx; j++) {
+            double xij = xi[j];
+            if (xij != 0) {
+              double[] pj = p[j];
+              for (int l = 0; l < cy; l++) {
+                pj[l] += xij * yi[l];
+              }
+            }
+          }
+        }
+        return p;
+      }
+    })) {
+      for (int j = 0; j < cx; j++) {
+        for (int l = 0; l < cy; l++) {
+          r[j][l] += partial[j][l];
+        }
+      }
+    }
+    return r;
+  }
+
+  /**
+   * Adds {@code factor * x c} to r, x tall dense, c small. Rows of r are allocated as needed.
+   */
+  void addTimes(final double[][] r, final double[][] x, final double[][] c, final double factor) {
+    final int cr = c.length == 0 ? 0 : c[0].length;
+    forEachRange(x.length, new RowRange<Void>() {
+      @Override
+      public Void apply(int from, int to) {
+        for (int i = from; i < to; i++) {
+          if (r[i] == null) {
+            r[i] = new double[cr];
+          }
+          double[] ri = r[i];
+          double[] xi = x[i];
+          for (int j = 0; j < c.length; j++) {
+            double xij = factor * xi[j];
+            if (xij != 0) {
+              double[] cj = c[j];
+              for (int l = 0; l < cr; l++) {
+                ri[l] += xij * cj[l];
+              }
+            }
+          }
+        }
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Orthogonalizes y against the blocks of the basis, twice, then orthonormalizes it by eigendecomposition of its Gram
+   * matrix (also twice), dropping directions that are numerically zero or too weak to orthonormalize this way.
+   *
+   * @return the new block, possibly narrower than y
+   */
+  double[][] orthonormalize(double[][] y, List<double[][]> basis) {
+    double before = largestColumnNorm(transposeTimes(y, y));
+    for (int pass = 0; pass < 2; pass++) {
+      for (double[][] block : basis) {
+        addTimes(y, block, transposeTimes(block, y), -1);
+      }
+    }
+    double threshold = DEFLATION_THRESHOLD * before;
+    for (int pass = 0; pass < 2; pass++) {
+      SingularValueDecomposition svd = new SingularValueDecomposition(new DenseMatrix(transposeTimes(y, y)));
+      double[] s = svd.getSingularValues();
+      double cutoff = Math.max(threshold, CONDITION_THRESHOLD * Math.sqrt(s[0]));
+      int rank = 0;
+      while (rank < s.length && Math.sqrt(s[rank]) > cutoff) {
+        rank++;
+      }
+      double[][] eigenvectors = RowBlocks.toArray(svd.getU());
+      double[][] transform = new double[s.length][rank];
+      for (int r = 0; r < s.length; r++) {
+        for (int c = 0; c < rank; c++) {
+          transform[r][c] = eigenvectors[r][c] / Math.sqrt(s[c]);
+        }
+      }
+      double[][] orthonormal = new double[y.length][];
+      if (rank == 0) {
+        return new double[0][];
+      }
+      addTimes(orthonormal, y, transform, 1);
+      y = orthonormal;
+      // the second pass only fixes rounding
+      threshold = DEFLATION_THRESHOLD;
+    }
+    return y;
+  }
+
+  private static double largestColumnNorm(double[][] gram) {
+    double largest = 0;
+    for (int j = 0; j < gram.length; j++) {
+      largest = Math.max(largest, gram[j][j]);
+    }
+    return Math.sqrt(largest);
+  }
+
+  /**
+   * @return a rows by columns matrix of independent standard normal entries.  The cheap hash behind
+   * RandomTrinaryMatrix leaves many of its columns linearly dependent, which caps the rank of A times it.
+   */
+  static double[][] gaussian(int rows, int columns) {
+    Random random = RandomUtils.getRandom();
+    double[][] r = new double[rows][columns];
+    for (double[] row : r) {
+      for (int c = 0; c < columns; c++) {
+        row[c] = random.nextGaussian();
+      }
+    }
+    return r;
+  }
+
+  static int width(double[][] block) {
+    return block.length == 0 ? 0 : block[0].length;
+  }
+
+  /**
+   * Copies a into its transpose, so this needs as much memory again as a. In exchange products with a' are row-wise
+   * like those with a, and each block of rows of the result is computed by one task without partial sums.
+   *
+   * @return the transpose of a, sparse unless the rows of a are dense
+   */
+  static Matrix transpose(Matrix a) {
+    if (a.rowSize() == 0 || a.viewRow(0).isDense()) {
+      return a.transpose();
+    }
+    int[] counts = new int[a.columnSize()];
+    for (int i = 0; i < a.rowSize(); i++) {
+      for (Vector.Element e : a.viewRow(i).nonZeroes()) {
+        counts[e.index()]++;
+      }
+    }
+    Vector[] columns = new Vector[a.columnSize()];
+    for (int j = 0; j < columns.length; j++) {
+      columns[j] = new SequentialAccessSparseVector(a.rowSize(), counts[j]);
+    }
+    // rows are visited in order, so each column is appended to
+    for (int i = 0; i < a.rowSize(); i++) {
+      for (Vector.Element e : a.viewRow(i).nonZeroes()) {
+        columns[e.index()].setQuick(i, e.get());
+      }
+    }
+    return new SparseRowMatrix(a.columnSize(), a.rowSize(), columns, true, false);
+  }
+
+  static double[][] toArray(Matrix m) {
+    double[][] r = new double[m.rowSize()][m.columnSize()];
+    for (int i = 0; i < r.length; i++) {
+      for (int j = 0; j < r[i].length; j++) {
+        r[i][j] = m.getQuick(i, j);
+      }
+    }
+    return r;
+  }
+
+  static Matrix toMatrix(double[][] values) {
+    return new DenseMatrix(values, true);
+  }
+}
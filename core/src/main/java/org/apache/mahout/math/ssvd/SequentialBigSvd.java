@@ -18,15 +18,20 @@
 package org.apache.mahout.math.ssvd;
 
 import org.apache.mahout.math.CholeskyDecomposition;
+import org.apache.mahout.math.DenseMatrix;
 import org.apache.mahout.math.DenseVector;
 import org.apache.mahout.math.Matrix;
 import org.apache.mahout.math.RandomTrinaryMatrix;
 import org.apache.mahout.math.SingularValueDecomposition;
 import org.apache.mahout.math.Vector;
 
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 /**
  * Implements an in-memory version of stochastic projection based SVD.  See SequentialOutOfCoreSvd
- * for algorithm notes.
+ * for algorithm notes.  See {@link BlockKrylovSvd} for a variant that converges in fewer passes over A.
  */
 public class SequentialBigSvd {
   private final Matrix y;
@@ -53,6 +58,50 @@ public class SequentialBigSvd {
     svd = new SingularValueDecomposition(cd2.getL());
   }
 
+  /**
+   * Same as {@link #SequentialBigSvd(Matrix, int)} with q power iterations, computing the products with A in
+   * parallel over blocks of rows.  Y is orthonormalized before each power iteration, so fewer than p
+   * singular values are returned if A has lower rank.  The products with A' use a transposed copy of A, so
+   * this takes as much memory again as A.
+   */
+  public SequentialBigSvd(Matrix A, int p, int q, int numThreads) {
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      RowBlocks products = new RowBlocks(executor, numThreads);
+      Matrix at = RowBlocks.transpose(A);
+
+      // Y = A * \Omega
+      double[][] yValues = products.times(A, RowBlocks.gaussian(A.columnSize(), p), p);
+
+      // Y = A A' Q where Q spans Y.  Cholesky of Y'Y would lose the weaker directions once Y is ill conditioned,
+      // so Q is found with the same orthonormalization as BlockKrylovSvd, which may drop some columns
+      for (int i = 0; i < q; i++) {
+        double[][] qValues = products.orthonormalize(yValues, Collections.<double[][]>emptyList());
+        int columns = RowBlocks.width(qValues);
+        yValues = products.times(A, products.times(at, qValues, columns), columns);
+      }
+      yValues = products.orthonormalize(yValues, Collections.<double[][]>emptyList());
+      int width = RowBlocks.width(yValues);
+      y = RowBlocks.toMatrix(yValues);
+
+      // R'R = Y' Y, which is the identity up to rounding.  Y and B have full rank here, so neither decomposition
+      // needs pivoting
+      cd1 = new CholeskyDecomposition(new DenseMatrix(products.transposeTimes(yValues, yValues)), false);
+
+      // B' = A' Q = A' Y R^{-1}
+      double[][] btValues = products.times(at, RowBlocks.toArray(cd1.solveRight(y)), width);
+      b = RowBlocks.toMatrix(btValues).transpose();
+
+      // L L' = B B'
+      cd2 = new CholeskyDecomposition(new DenseMatrix(products.transposeTimes(btValues, btValues)), false);
+
+      // U_0 D V_0' = L
+      svd = new SingularValueDecomposition(cd2.getL());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
   public Vector getSingularValues() {
     return new DenseVector(svd.getSingularValues());
   }
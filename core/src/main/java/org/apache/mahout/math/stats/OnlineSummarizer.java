@@ -17,7 +17,9 @@
 
 package org.apache.mahout.math.stats;
 
-//import com.tdunning.math.stats.TDigest;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 /**
  * Computes on-line estimates of mean, variance and all five quartiles (notably including the
@@ -30,17 +32,16 @@ package org.apache.mahout.math.stats;
  * <p/>
  * http://en.wikipedia.org/wiki/Algorithms_for_calculating_variance#On-line_algorithm
  * <p/>
- * The method used for computing the quartiles is a simplified form of the stochastic approximation
- * method described in the article "Incremental Quantile Estimation for Massive Tracking" by Chen,
- * Lambert and Pinheiro
+ * Quantiles are estimated with a {@link QuantileDigest}.
  * <p/>
- * See
- * <p/>
- * http://citeseerx.ist.psu.edu/viewdoc/summary?doi=10.1.1.105.1580
+ * Summaries computed separately, for instance by several threads or over several partitions of the
+ * data, can be combined with {@link #merge(OnlineSummarizer)}.  Mean and variance are then combined
+ * with the pairwise update of Chan, Golub and LeVeque.  {@link #write(DataOutput)} and
+ * {@link #readFields(DataInput)} provide a compact serialized form for shipping partial summaries.
  */
 public class OnlineSummarizer {
 
-//  private TDigest quantiles = TDigest.createDigest(100.0);
+  private QuantileDigest quantiles;
 
   // mean and variance estimates
   private double mean;
@@ -49,6 +50,17 @@ public class OnlineSummarizer {
   // number of samples seen so far
   private int n;
 
+  public OnlineSummarizer() {
+    this(QuantileDigest.DEFAULT_COMPRESSION);
+  }
+
+  /**
+   * @param compression accuracy of quantile estimates, see {@link QuantileDigest#QuantileDigest(double)}
+   */
+  public OnlineSummarizer(double compression) {
+    quantiles = new QuantileDigest(compression);
+  }
+
   public void add(double sample) {
     n++;
     double oldMean = mean;
@@ -56,7 +68,24 @@ public class OnlineSummarizer {
     double diff = (sample - mean) * (sample - oldMean);
     variance += (diff - variance) / n;
 
-//    quantiles.add(sample);
+    quantiles.add(sample);
+  }
+
+  /**
+   * Adds all samples summarized by {@code other} to this summary.
+   */
+  public void merge(OnlineSummarizer other) {
+    if (other.n == 0) {
+      return;
+    }
+    int total = n + other.n;
+    double delta = other.mean - mean;
+    double sumOfSquares = variance * n + other.variance * other.n + delta * delta * n / total * other.n;
+    mean += delta * other.n / total;
+    variance = sumOfSquares / total;
+    n = total;
+
+    quantiles.merge(other.quantiles);
   }
 
   public int getCount() {
@@ -71,23 +100,37 @@ public class OnlineSummarizer {
     return Math.sqrt(variance);
   }
 
-//  public double getMin() {
-//    return getQuartile(0);
-//  }
-//
-//  public double getMax() {
-//    return getQuartile(4);
-//  }
-
-//  public double getQuartile(int i) {
-//    return quantiles.quantile(0.25 * i);
-//  }
-//
-//  public double quantile(double q) {
-//    return quantiles.quantile(q);
-//  }
-
-//  public double getMedian() {
-//    return getQuartile(2);
-//  }
+  public double getMin() {
+    return getQuartile(0);
+  }
+
+  public double getMax() {
+    return getQuartile(4);
+  }
+
+  public double getQuartile(int i) {
+    return quantiles.quantile(0.25 * i);
+  }
+
+  public double quantile(double q) {
+    return quantiles.quantile(q);
+  }
+
+  public double getMedian() {
+    return getQuartile(2);
+  }
+
+  public void write(DataOutput out) throws IOException {
+    out.writeInt(n);
+    out.writeDouble(mean);
+    out.writeDouble(variance);
+    quantiles.write(out);
+  }
+
+  public void readFields(DataInput in) throws IOException {
+    n = in.readInt();
+    mean = in.readDouble();
+    variance = in.readDouble();
+    quantiles = QuantileDigest.read(in);
+  }
 }
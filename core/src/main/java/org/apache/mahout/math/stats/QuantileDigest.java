@@ -0,0 +1,347 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.mahout.math.stats;
+
+import com.google.common.base.Preconditions;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Mergeable streaming estimate of the distribution of a sequence of samples, after the merging
+ * variant of the t-digest by Dunning and Ertl.
+ * <p/>
+ * Samples are collected into a buffer which, when full, is sorted and merged with the current
+ * centroids in a single pass.  Adjacent centroids are combined as long as the combined centroid
+ * spans no more than one unit of the scale function
+ * {@code k(q) = compression / pi * asin(2q - 1)}, so centroids are small near the tails and
+ * quantiles such as the 99th percentile remain accurate.  Memory is bounded by roughly
+ * {@code 7 * compression} doubles regardless of the number of samples.
+ * <p/>
+ * Two digests are combined with {@link #merge(QuantileDigest)}, which allows partial digests
+ * built by different threads or partitions to be summarized together.  The serialized form
+ * written by {@link #write(DataOutput)} only contains the centroids.
+ */
+public final class QuantileDigest {
+
+  public static final double DEFAULT_COMPRESSION = 100;
+
+  private static final int FORMAT_VERSION = 1;
+
+  private final double compression;
+
+  private double[] mean;
+  private long[] weight;
+  private int centroids;
+
+  // unit weight samples not yet merged
+  private final double[] buffer;
+  private int buffered;
+
+  private long totalWeight;
+  private double min = Double.POSITIVE_INFINITY;
+  private double max = Double.NEGATIVE_INFINITY;
+
+  public QuantileDigest() {
+    this(DEFAULT_COMPRESSION);
+  }
+
+  /**
+   * @param compression controls the size and accuracy of the digest.  Roughly this many centroids
+   *                    are kept, and the error in quantiles away from the tails is about
+   *                    {@code 1 / compression}.
+   */
+  public QuantileDigest(double compression) {
+    Preconditions.checkArgument(compression >= 10, "compression must be at least 10: %s", compression);
+    this.compression = compression;
+    int capacity = (int) Math.ceil(compression) + 10;
+    mean = new double[capacity];
+    weight = new long[capacity];
+    buffer = new double[5 * capacity];
+  }
+
+  public void add(double sample) {
+    Preconditions.checkArgument(!Double.isNaN(sample), "Cannot add NaN");
+    if (buffered == buffer.length) {
+      flush();
+    }
+    buffer[buffered++] = sample;
+    totalWeight++;
+    min = Math.min(min, sample);
+    max = Math.max(max, sample);
+  }
+
+  /**
+   * Adds all samples summarized by another digest to this one.  The other digest is left logically
+   * unchanged.
+   */
+  public void merge(QuantileDigest other) {
+    if (other.totalWeight == 0) {
+      return;
+    }
+    flush();
+    other.flush();
+    mergeCentroids(other.mean, other.weight, other.centroids);
+    totalWeight += other.totalWeight;
+    min = Math.min(min, other.min);
+    max = Math.max(max, other.max);
+  }
+
+  public long size() {
+    return totalWeight;
+  }
+
+  public double getCompression() {
+    return compression;
+  }
+
+  /**
+   * @return the number of centroids currently used, after merging pending samples.
+   */
+  public int centroidCount() {
+    flush();
+    return centroids;
+  }
+
+  public double getMin() {
+    return totalWeight == 0 ? Double.NaN : min;
+  }
+
+  public double getMax() {
+    return totalWeight == 0 ? Double.NaN : max;
+  }
+
+  /**
+   * Estimates the value below which a fraction {@code q} of the samples fall.  Values are
+   * interpolated linearly between centroid centers, and between the outermost centroids and the
+   * exact minimum and maximum.
+   *
+   * @param q the quantile, between 0 and 1 inclusive
+   * @return the estimated quantile, or NaN if no samples were added
+   */
+  public double quantile(double q) {
+    Preconditions.checkArgument(q >= 0 && q <= 1, "q must be in [0, 1]: %s", q);
+    if (totalWeight == 0) {
+      return Double.NaN;
+    }
+    flush();
+    if (centroids == 1) {
+      return min + q * (max - min);
+    }
+
+    double index = q * totalWeight;
+    if (index <= weight[0] / 2.0) {
+      return interpolate(index, 0, weight[0] / 2.0, min, mean[0]);
+    }
+
+    // weightSoFar is the cumulative weight at the center of centroid i
+    double weightSoFar = weight[0] / 2.0;
+    for (int i = 0; i < centroids - 1; i++) {
+      double step = (weight[i] + weight[i + 1]) / 2.0;
+      if (index <= weightSoFar + step) {
+        return interpolate(index, weightSoFar, weightSoFar + step, mean[i], mean[i + 1]);
+      }
+      weightSoFar += step;
+    }
+    return interpolate(index, weightSoFar, totalWeight, mean[centroids - 1], max);
+  }
+
+  /**
+   * Estimates the fraction of samples that are less than or equal to {@code x}.  This is the inverse
+   * of {@link #quantile(double)}.
+   *
+   * @return the estimated fraction, or NaN if no samples were added
+   */
+  public double cdf(double x) {
+    if (totalWeight == 0) {
+      return Double.NaN;
+    }
+    if (x < min) {
+      return 0;
+    }
+    if (x >= max) {
+      return 1;
+    }
+    flush();
+    if (centroids == 1) {
+      return (x - min) / (max - min);
+    }
+
+    if (x <= mean[0]) {
+      return interpolate(x, min, mean[0], 0, weight[0] / 2.0) / totalWeight;
+    }
+    double weightSoFar = weight[0] / 2.0;
+    for (int i = 0; i < centroids - 1; i++) {
+      double step = (weight[i] + weight[i + 1]) / 2.0;
+      if (x < mean[i + 1]) {
+        return interpolate(x, mean[i], mean[i + 1], weightSoFar, weightSoFar + step) / totalWeight;
+      }
+      weightSoFar += step;
+    }
+    return interpolate(x, mean[centroids - 1], max, weightSoFar, totalWeight) / totalWeight;
+  }
+
+  private static double interpolate(double x, double x0, double x1, double y0, double y1) {
+    if (x1 <= x0) {
+      return (y0 + y1) / 2;
+    }
+    return y0 + (x - x0) / (x1 - x0) * (y1 - y0);
+  }
+
+  public void write(DataOutput out) throws IOException {
+    flush();
+    out.writeByte(FORMAT_VERSION);
+    out.writeDouble(compression);
+    out.writeDouble(min);
+    out.writeDouble(max);
+    out.writeInt(centroids);
+    for (int i = 0; i < centroids; i++) {
+      out.writeDouble(mean[i]);
+      writeUnsignedVarLong(out, weight[i]);
+    }
+  }
+
+  public static QuantileDigest read(DataInput in) throws IOException {
+    int version = in.readByte();
+    if (version != FORMAT_VERSION) {
+      throw new IOException("Unsupported quantile digest version: " + version);
+    }
+    QuantileDigest digest = new QuantileDigest(in.readDouble());
+    digest.min = in.readDouble();
+    digest.max = in.readDouble();
+    int n = in.readInt();
+    digest.ensureCapacity(n);
+    for (int i = 0; i < n; i++) {
+      digest.mean[i] = in.readDouble();
+      digest.weight[i] = readUnsignedVarLong(in);
+      digest.totalWeight += digest.weight[i];
+    }
+    digest.centroids = n;
+    return digest;
+  }
+
+  private static void writeUnsignedVarLong(DataOutput out, long value) throws IOException {
+    while ((value & ~0x7FL) != 0L) {
+      out.writeByte(((int) value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte((int) value);
+  }
+
+  private static long readUnsignedVarLong(DataInput in) throws IOException {
+    long value = 0L;
+    int shift = 0;
+    long b;
+    while (((b = in.readByte()) & 0x80L) != 0) {
+      value |= (b & 0x7F) << shift;
+      shift += 7;
+      if (shift > 63) {
+        throw new IOException("Variable length quantity is too long");
+      }
+    }
+    return value | (b << shift);
+  }
+
+  private void flush() {
+    if (buffered > 0) {
+      Arrays.sort(buffer, 0, buffered);
+      mergeCentroids(buffer, null, buffered);
+      buffered = 0;
+    }
+  }
+
+  private void ensureCapacity(int n) {
+    if (mean.length < n) {
+      mean = Arrays.copyOf(mean, n);
+      weight = Arrays.copyOf(weight, n);
+    }
+  }
+
+  /**
+   * Merges sorted points, with unit weight if {@code otherWeight} is null, into the centroids in a
+   * single sweep in order of increasing mean.
+   */
+  private void mergeCentroids(double[] otherMean, long[] otherWeight, int otherCount) {
+    long total = 0;
+    for (int i = 0; i < centroids; i++) {
+      total += weight[i];
+    }
+    if (otherWeight == null) {
+      total += otherCount;
+    } else {
+      for (int i = 0; i < otherCount; i++) {
+        total += otherWeight[i];
+      }
+    }
+
+    double[] newMean = new double[Math.max(mean.length, 16)];
+    long[] newWeight = new long[newMean.length];
+    int n = 0;
+
+    double normalizer = compression / Math.PI;
+    long weightSoFar = 0;
+    double weightLimit = 0;
+    int i = 0;
+    int j = 0;
+    while (i < centroids || j < otherCount) {
+      double x;
+      long w;
+      if (j == otherCount || i < centroids && mean[i] <= otherMean[j]) {
+        x = mean[i];
+        w = weight[i];
+        i++;
+      } else {
+        x = otherMean[j];
+        w = otherWeight == null ? 1 : otherWeight[j];
+        j++;
+      }
+
+      if (n > 0 && weightSoFar + newWeight[n - 1] + w <= weightLimit) {
+        long combined = newWeight[n - 1] + w;
+        newMean[n - 1] += (x - newMean[n - 1]) * w / combined;
+        newWeight[n - 1] = combined;
+      } else {
+        if (n > 0) {
+          weightSoFar += newWeight[n - 1];
+        }
+        if (n == newMean.length) {
+          newMean = Arrays.copyOf(newMean, 2 * n);
+          newWeight = Arrays.copyOf(newWeight, 2 * n);
+        }
+        newMean[n] = x;
+        newWeight[n] = w;
+        n++;
+        weightLimit = total * inverseScale(scale((double) weightSoFar / total, normalizer) + 1, normalizer);
+      }
+    }
+
+    mean = newMean;
+    weight = newWeight;
+    centroids = n;
+  }
+
+  private static double scale(double q, double normalizer) {
+    return normalizer * Math.asin(2 * q - 1);
+  }
+
+  private static double inverseScale(double k, double normalizer) {
+    double x = k / normalizer;
+    return x >= Math.PI / 2 ? 1 : (Math.sin(x) + 1) / 2;
+  }
+}
@@ -19,7 +19,7 @@ package org.apache.mahout.classifier.stats
 
 import java.text.{DecimalFormat, NumberFormat}
 import java.util
-//import org.apache.mahout.math.stats.OnlineSummarizer
+import org.apache.mahout.math.stats.OnlineSummarizer
 
 
 /**
@@ -61,7 +61,7 @@ class ClassifierResult (private var label: String = null,
 class ResultAnalyzer(private val labelSet: util.Collection[String], defaultLabel: String) {
 
   val confusionMatrix = new ConfusionMatrix(labelSet, defaultLabel)
-//  val summarizer = new OnlineSummarizer
+  val summarizer = new OnlineSummarizer
 
   private var hasLL: Boolean = false
   private var correctlyClassified: Int = 0
@@ -87,10 +87,10 @@ class ResultAnalyzer(private val labelSet: util.Collection[String], defaultLabel
       incorrectlyClassified += 1
     }
     confusionMatrix.addInstance(correctLabel, classifiedResult)
-//    if (classifiedResult.getLogLikelihood != Integer.MAX_VALUE.toDouble) {
-//      summarizer.add(classifiedResult.getLogLikelihood)
-//      hasLL = true
-//    }
+    if (classifiedResult.getLogLikelihood != Integer.MAX_VALUE.toDouble) {
+      summarizer.add(classifiedResult.getLogLikelihood)
+      hasLL = true
+    }
 
     result
   }
@@ -149,18 +149,18 @@ class ResultAnalyzer(private val labelSet: util.Collection[String], defaultLabel
     returnString.append("Weighted F1 score: \t")
                 .append(decimalFormatter.format(confusionMatrix.getWeightedF1score))
                 .append('\n')
-//    if (hasLL) {
-//      returnString.append("Log-likelihood: \t")
-//                  .append("mean      :  \t")
-//                  .append(decimalFormatter.format(summarizer.getMean))
-//                  .append('\n')
-//      returnString.append("25%-ile   :  \t")
-//                  .append(decimalFormatter.format(summarizer.getQuartile(1)))
-//                  .append('\n')
-//      returnString.append("75%-ile   :  \t")
-//                  .append(decimalFormatter.format(summarizer.getQuartile(3)))
-//                  .append('\n')
-//    }
+    if (hasLL) {
+      returnString.append("Log-likelihood: \t")
+                  .append("mean      :  \t")
+                  .append(decimalFormatter.format(summarizer.getMean))
+                  .append('\n')
+      returnString.append("25%-ile   :  \t")
+                  .append(decimalFormatter.format(summarizer.getQuartile(1)))
+                  .append('\n')
+      returnString.append("75%-ile   :  \t")
+                  .append(decimalFormatter.format(summarizer.getQuartile(3)))
+                  .append('\n')
+    }
 
     returnString.toString()
   }
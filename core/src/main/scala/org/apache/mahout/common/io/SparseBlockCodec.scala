@@ -0,0 +1,296 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.common.io
+
+import com.esotericsoftware.kryo.io.{Input, Output}
+
+/**
+ * Compressed encoding of sparse (index, value) runs with strictly increasing indices.<P>
+ *
+ * Entries are cut into blocks of [[SparseBlockCodec.BLOCK_SIZE]]. In each block, index gaps are bit-packed PFor
+ * style: every gap takes the block's chosen bit width and the few gaps that do not fit are patched afterwards.
+ * Values of a block are stored as a single constant, as two constants plus a bitmap, quantized to 8 or 16 bits with
+ * a per-block offset and scale (only if asked for, since it is lossy), or raw. Values are told apart by their bits, so
+ * NaN, infinities and -0.0 survive exactly; blocks holding non-finite values are never quantized.
+ */
+private[io] object SparseBlockCodec {
+
+  final val BLOCK_SIZE = 128
+
+  private final val VALUES_CONST = 0
+  private final val VALUES_BINARY = 1
+  private final val VALUES_QUANT8 = 2
+  private final val VALUES_QUANT16 = 3
+  private final val VALUES_RAW = 4
+  private final val VALUES_RAW_FLOAT = 5
+
+  /** Approximate cost of a patched gap (position byte plus varint high bits) when choosing bit width. */
+  private final val EXCEPTION_COST_BITS = 24
+
+  /**
+   * Write `n` entries.
+   *
+   * @param quantizationBits 0 (lossless), 8 or 16
+   * @param lax write non-quantized irregular values as floats
+   */
+  def write(output: Output, indices: Array[Int], values: Array[Double], n: Int, quantizationBits: Int,
+            lax: Boolean): Unit = {
+
+    require(quantizationBits == 0 || quantizationBits == 8 || quantizationBits == 16,
+      s"Unsupported quantization: $quantizationBits bits.")
+
+    output.writeInt(n, true)
+
+    val gaps = new Array[Int](BLOCK_SIZE)
+    val widths = new Array[Int](33)
+    var prev = -1
+    var start = 0
+    while (start < n) {
+      val m = math.min(BLOCK_SIZE, n - start)
+
+      java.util.Arrays.fill(widths, 0)
+      var i = 0
+      while (i < m) {
+        val gap = indices(start + i) - prev - 1
+        require(gap >= 0, "Indices must be strictly increasing.")
+        gaps(i) = gap
+        widths(32 - Integer.numberOfLeadingZeros(gap)) += 1
+        prev = indices(start + i)
+        i += 1
+      }
+
+      writeGaps(output, gaps, m, widths)
+      writeValues(output, values, start, m, quantizationBits, lax)
+      start += m
+    }
+  }
+
+  /** Read the number of entries that follow. */
+  def readSize(input: Input): Int = input.readInt(true)
+
+  /** Read `n` entries (as returned by [[readSize]]) into the first `n` slots of `indices` and `values`. */
+  def read(input: Input, n: Int, indices: Array[Int], values: Array[Double]): Unit = {
+    val gaps = new Array[Int](BLOCK_SIZE)
+    var prev = -1
+    var start = 0
+    while (start < n) {
+      val m = math.min(BLOCK_SIZE, n - start)
+      readGaps(input, gaps, m)
+      var i = 0
+      while (i < m) {
+        prev += gaps(i) + 1
+        indices(start + i) = prev
+        i += 1
+      }
+      readValues(input, values, start, m)
+      start += m
+    }
+  }
+
+  private def writeGaps(output: Output, gaps: Array[Int], m: Int, widths: Array[Int]): Unit = {
+
+    // Pick the width minimizing packed size plus patches. widths(w) counts gaps that need exactly w bits.
+    var b = 32
+    var bestCost = Long.MaxValue
+    var exceptions = 0
+    var w = 32
+    while (w >= 0) {
+      val cost = w.toLong * m + exceptions.toLong * EXCEPTION_COST_BITS
+      if (cost <= bestCost) {
+        bestCost = cost
+        b = w
+      }
+      exceptions += widths(w)
+      w -= 1
+    }
+
+    output.writeByte(b)
+
+    val mask = (1L << b) - 1
+    var acc = 0L
+    var nbits = 0
+    var numExceptions = 0
+    var i = 0
+    while (i < m) {
+      acc |= (gaps(i).toLong & mask) << nbits
+      nbits += b
+      while (nbits >= 8) {
+        output.writeByte(acc.toInt)
+        acc >>>= 8
+        nbits -= 8
+      }
+      if (b < 32 && (gaps(i) >>> b) != 0) numExceptions += 1
+      i += 1
+    }
+    if (nbits > 0) output.writeByte(acc.toInt)
+
+    output.writeInt(numExceptions, true)
+    if (numExceptions > 0) {
+      i = 0
+      while (i < m) {
+        if (b < 32 && (gaps(i) >>> b) != 0) {
+          output.writeByte(i)
+          output.writeInt(gaps(i) >>> b, true)
+        }
+        i += 1
+      }
+    }
+  }
+
+  private def readGaps(input: Input, gaps: Array[Int], m: Int): Unit = {
+    val b = input.readByte() & 0xff
+    val mask = (1L << b) - 1
+    var acc = 0L
+    var nbits = 0
+    var i = 0
+    while (i < m) {
+      while (nbits < b) {
+        acc |= (input.readByte() & 0xffL) << nbits
+        nbits += 8
+      }
+      gaps(i) = (acc & mask).toInt
+      acc >>>= b
+      nbits -= b
+      i += 1
+    }
+
+    var numExceptions = input.readInt(true)
+    while (numExceptions > 0) {
+      val pos = input.readByte() & 0xff
+      gaps(pos) |= input.readInt(true) << b
+      numExceptions -= 1
+    }
+  }
+
+  private def writeValues(output: Output, values: Array[Double], start: Int, m: Int, quantizationBits: Int,
+                          lax: Boolean): Unit = {
+
+    val a = values(start)
+    val aBits = java.lang.Double.doubleToLongBits(a)
+    var b = a
+    var bBits = aBits
+    var distinct = 1
+    var finite = java.lang.Double.isFinite(a)
+    var min = a
+    var max = a
+    var i = 1
+    while (i < m) {
+      val v = values(start + i)
+      val vBits = java.lang.Double.doubleToLongBits(v)
+      if (vBits != aBits && (distinct == 1 || vBits != bBits)) {
+        if (distinct == 1) {
+          b = v
+          bBits = vBits
+        }
+        distinct += 1
+      }
+      if (v < min) min = v
+      if (v > max) max = v
+      if (!java.lang.Double.isFinite(v)) finite = false
+      i += 1
+    }
+
+    if (distinct == 1) {
+      output.writeByte(VALUES_CONST)
+      output.writeDouble(a)
+    } else if (distinct == 2) {
+      output.writeByte(VALUES_BINARY)
+      output.writeDouble(a)
+      output.writeDouble(b)
+      var acc = 0
+      i = 0
+      while (i < m) {
+        if (java.lang.Double.doubleToLongBits(values(start + i)) == bBits) acc |= 1 << (i & 7)
+        if ((i & 7) == 7 || i == m - 1) {
+          output.writeByte(acc)
+          acc = 0
+        }
+        i += 1
+      }
+    } else if (quantizationBits > 0 && finite && java.lang.Double.isFinite(max - min)) {
+      val levels = (1 << quantizationBits) - 1
+      val scale = (max - min) / levels
+      output.writeByte(if (quantizationBits == 8) VALUES_QUANT8 else VALUES_QUANT16)
+      output.writeDouble(min)
+      output.writeDouble(scale)
+      i = 0
+      while (i < m) {
+        val code = if (scale == 0.0) 0 else math.round((values(start + i) - min) / scale).toInt
+        if (quantizationBits == 8) output.writeByte(code) else output.writeShort(code)
+        i += 1
+      }
+    } else if (lax) {
+      output.writeByte(VALUES_RAW_FLOAT)
+      i = 0
+      while (i < m) {
+        output.writeFloat(values(start + i).toFloat)
+        i += 1
+      }
+    } else {
+      output.writeByte(VALUES_RAW)
+      i = 0
+      while (i < m) {
+        output.writeDouble(values(start + i))
+        i += 1
+      }
+    }
+  }
+
+  private def readValues(input: Input, values: Array[Double], start: Int, m: Int): Unit = {
+    var i = 0
+    input.readByte().toInt match {
+      case VALUES_CONST ⇒
+        java.util.Arrays.fill(values, start, start + m, input.readDouble())
+      case VALUES_BINARY ⇒
+        val a = input.readDouble()
+        val b = input.readDouble()
+        var acc = 0
+        while (i < m) {
+          if ((i & 7) == 0) acc = input.readByte()
+          values(start + i) = if ((acc & (1 << (i & 7))) != 0) b else a
+          i += 1
+        }
+      case VALUES_QUANT8 ⇒
+        val min = input.readDouble()
+        val scale = input.readDouble()
+        while (i < m) {
+          values(start + i) = min + (input.readByte() & 0xff) * scale
+          i += 1
+        }
+      case VALUES_QUANT16 ⇒
+        val min = input.readDouble()
+        val scale = input.readDouble()
+        while (i < m) {
+          values(start + i) = min + (input.readShort() & 0xffff) * scale
+          i += 1
+        }
+      case VALUES_RAW_FLOAT ⇒
+        while (i < m) {
+          values(start + i) = input.readFloat()
+          i += 1
+        }
+      case VALUES_RAW ⇒
+        while (i < m) {
+          values(start + i) = input.readDouble()
+          i += 1
+        }
+      case kind ⇒ throw new IllegalArgumentException(s"Unknown sparse block value encoding $kind.")
+    }
+  }
+
+}
@@ -24,6 +24,7 @@ import org.apache.mahout.math._
 import org.apache.mahout.math.scalabindings.RLikeOps._
 
 import scala.collection.JavaConversions._
+import scala.collection.mutable
 
 
 object VectorKryoSerializer {
@@ -33,11 +34,42 @@ object VectorKryoSerializer {
   final val FLAG_NAMED: Int = 0x04
   final val FLAG_LAX_PRECISION: Int = 0x08
 
+  /**
+   * Payload is a bulk block: dense values as one array, or (for sequential sparse vectors) a count, delta-coded
+   * indices and then all values as one array. Vectors backed by plain arrays are always written this way.
+   */
+  final val FLAG_BULK: Int = 0x10
+
+  /** Sparse payload is in [[SparseBlockCodec]] encoding. */
+  final val FLAG_COMPRESSED: Int = 0x20
+
+  /** Set to "true" to make registered serializers write sparse vectors as compressed blocks. */
+  final val PROPERTY_COMPRESS_SPARSE = "mahout.math.kryo.compressSparse"
+
+  /** 0, 8 or 16. Non-zero enables lossy quantization of irregular values in compressed sparse blocks. */
+  final val PROPERTY_QUANTIZATION_BITS = "mahout.math.kryo.quantizationBits"
+
   private final implicit val log = getLog(classOf[VectorKryoSerializer])
 
+  /** Serializer configured by [[PROPERTY_COMPRESS_SPARSE]] and [[PROPERTY_QUANTIZATION_BITS]]. */
+  def fromSystemProperties(): VectorKryoSerializer = new VectorKryoSerializer(
+    compressSparse = System.getProperty(PROPERTY_COMPRESS_SPARSE, "false").toBoolean,
+    quantizationBits = System.getProperty(PROPERTY_QUANTIZATION_BITS, "0").toInt
+  )
+
 }
 
-class VectorKryoSerializer(val laxPrecision: Boolean = false) extends Serializer[Vector] {
+/**
+ * @param laxPrecision write values as floats
+ * @param compressSparse write sparse vectors as compressed blocks (bit-packed index gaps; constant, two-valued or
+ *                       optionally quantized value blocks), see [[SparseBlockCodec]]
+ * @param quantizationBits 0 (lossless), 8 or 16; only applies to compressed sparse blocks
+ */
+class VectorKryoSerializer(val laxPrecision: Boolean = false, val compressSparse: Boolean = false,
+                           val quantizationBits: Int = 0) extends Serializer[Vector] {
+
+  require(quantizationBits == 0 || quantizationBits == 8 || quantizationBits == 16,
+    s"Unsupported quantization: $quantizationBits bits.")
 
   import VectorKryoSerializer._
 
@@ -70,22 +102,115 @@ class VectorKryoSerializer(val laxPrecision: Boolean = false) extends Serializer
 
     if (laxPrecision) flag |= FLAG_LAX_PRECISION
 
+    // Array-backed vectors go out as bulk blocks, unless compressed.
+    val backing = if (named) vector.asInstanceOf[NamedVector].getDelegate else vector
+    val compressed = compressSparse && !dense
+    if (compressed) flag |= FLAG_COMPRESSED
+    else backing match {
+      case _: DenseVector | _: SequentialAccessSparseVector ⇒ flag |= FLAG_BULK
+      case _ ⇒
+    }
+
     // Write flags
     output.writeByte(flag)
 
     // Write name if needed
     if (named) output.writeString(vector.asInstanceOf[NamedVector].getName)
 
+    if (compressed) writeCompressed(output, backing)
+    else backing match {
+      case v: DenseVector ⇒ writeDenseBulk(output, v.getBackingStructure, len)
+      case v: SequentialAccessSparseVector ⇒ writeSequentialBulk(output, v.getBackingStructure)
+      case _ ⇒ writeElementwise(output, backing, dense, sequential)
+    }
+  }
+
+  private def writeCompressed(output: Output, vector: Vector): Unit = vector match {
+    case v: SequentialAccessSparseVector ⇒
+      val mapping = v.getBackingStructure
+      SparseBlockCodec.write(output, mapping.getIndices, mapping.getValues, mapping.getNumMappings,
+        quantizationBits, laxPrecision)
+    case _ ⇒
+      // Gather non-zeros in index order.
+      val ib = new mutable.ArrayBuilder.ofInt
+      val it = vector.nonZeroes.iterator
+      while (it.hasNext) {
+        val el = it.next()
+        if (el.get != 0.0) ib += el.index
+      }
+      val indices = ib.result()
+      java.util.Arrays.sort(indices)
+      val values = new Array[Double](indices.length)
+      var i = 0
+      while (i < indices.length) {
+        values(i) = vector.getQuick(indices(i))
+        i += 1
+      }
+      SparseBlockCodec.write(output, indices, values, indices.length, quantizationBits, laxPrecision)
+  }
+
+  private def writeDenseBulk(output: Output, values: Array[Double], len: Int): Unit = {
+    if (laxPrecision) {
+      var i = 0
+      while (i < len) {
+        output.writeFloat(values(i).toFloat)
+        i += 1
+      }
+    } else {
+      output.writeDoubles(values)
+    }
+  }
+
+  private def writeSequentialBulk(output: Output, mapping: OrderedIntDoubleMapping): Unit = {
+    val nnz = mapping.getNumMappings
+    val indices = mapping.getIndices
+    val values = mapping.getValues
+    output.writeInt(nnz, true)
+
+    var i = 0
+    var idx = 0
+    while (i < nnz) {
+      output.writeInt(indices(i) - idx, true)
+      idx = indices(i)
+      i += 1
+    }
+
+    i = 0
+    if (laxPrecision) {
+      while (i < nnz) {
+        output.writeFloat(values(i).toFloat)
+        i += 1
+      }
+    } else if (values.length == nnz) {
+      output.writeDoubles(values)
+    } else {
+      while (i < nnz) {
+        output.writeDouble(values(i))
+        i += 1
+      }
+    }
+  }
+
+  private def writeElementwise(output: Output, vector: Vector, dense: Boolean, sequential: Boolean): Unit = {
+
     dense match {
 
       // Dense vector.
       case true =>
 
+        val len = vector.length
+        var i = 0
         laxPrecision match {
           case true =>
-            for (i <- 0 until vector.length) output.writeFloat(vector(i).toFloat)
+            while (i < len) {
+              output.writeFloat(vector.getQuick(i).toFloat)
+              i += 1
+            }
           case _ =>
-            for (i <- 0 until vector.length) output.writeDouble(vector(i))
+            while (i < len) {
+              output.writeDouble(vector.getQuick(i))
+              i += 1
+            }
         }
       case _ =>
 
@@ -153,8 +278,77 @@ class VectorKryoSerializer(val laxPrecision: Boolean = false) extends Serializer
     val flags = input.readByte().toInt
     val name = if ((flags & FLAG_NAMED) != 0) Some(input.readString()) else None
 
+    val lax = (flags & FLAG_LAX_PRECISION) != 0
+
     val vec: Vector = flags match {
 
+      // Compressed sparse blocks
+      case _: Int if (flags & FLAG_COMPRESSED) != 0 =>
+
+        trace(s"Deserializing compressed sparse vector.")
+
+        val n = SparseBlockCodec.readSize(input)
+        if ((flags & FLAG_SEQUENTIAL) != 0) {
+          val v = new SequentialAccessSparseVector(len, n)
+          val mapping = v.resetMappings(n)
+          SparseBlockCodec.read(input, n, mapping.getIndices, mapping.getValues)
+          v
+        } else {
+          val indices = new Array[Int](n)
+          val values = new Array[Double](n)
+          SparseBlockCodec.read(input, n, indices, values)
+          val v = new RandomAccessSparseVector(len, n)
+          var i = 0
+          while (i < n) {
+            v.setQuick(indices(i), values(i))
+            i += 1
+          }
+          v
+        }
+
+      // Dense, bulk
+      case _: Int if (flags & (FLAG_DENSE | FLAG_BULK)) == (FLAG_DENSE | FLAG_BULK) =>
+
+        trace(s"Deserializing dense vector block.")
+
+        if (lax) {
+          val values = new Array[Double](len)
+          var i = 0
+          while (i < len) {
+            values(i) = input.readFloat()
+            i += 1
+          }
+          new DenseVector(values, true)
+        } else {
+          new DenseVector(input.readDoubles(len), true)
+        }
+
+      // Sequential sparse, bulk
+      case _: Int if (flags & FLAG_BULK) != 0 =>
+
+        trace(s"Deserializing sequential sparse vector block.")
+
+        val nnz = input.readInt(true)
+        val v = new SequentialAccessSparseVector(len, nnz)
+        val mapping = v.resetMappings(nnz)
+        val indices = mapping.getIndices
+        val values = mapping.getValues
+
+        var i = 0
+        var idx = 0
+        while (i < nnz) {
+          idx += input.readInt(true)
+          indices(i) = idx
+          i += 1
+        }
+
+        i = 0
+        while (i < nnz) {
+          values(i) = if (lax) input.readFloat() else input.readDouble()
+          i += 1
+        }
+        v
+
       // Dense
       case _: Int if (flags & FLAG_DENSE) != 0 =>
 
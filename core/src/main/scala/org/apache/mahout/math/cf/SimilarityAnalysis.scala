@@ -17,8 +17,9 @@
 
 package org.apache.mahout.math.cf
 
+import org.apache.mahout.logging._
 import org.apache.mahout.math._
-import org.apache.mahout.math.indexeddataset.IndexedDataset
+import org.apache.mahout.math.indexeddataset.{BiDictionary, IndexedDataset}
 import scalabindings._
 import RLikeOps._
 import drm._
@@ -41,6 +42,8 @@ import scala.util.Random
  */
 object SimilarityAnalysis extends Serializable {
 
+  private final implicit val log = getLog(SimilarityAnalysis.getClass)
+
   /** Compares (Int,Double) pairs by the second value */
   private val orderByScore = Ordering.fromLessThan[(Int, Double)] { case ((_, score1), (_, score2)) => score1 > score2}
 
@@ -163,13 +166,15 @@ object SimilarityAnalysis extends Serializable {
     *                 is contained in each dataset in the array and applies to the model calculation of A' with
     *                 the dataset. Todo: ignoring absolute threshold for now.
     * @param randomSeed use default to make repeatable, otherwise pass in system time or some randomizing seed
-    * @param parOpts partitioning params for drm.par(...)
+    * @param lshOpts if defined, compute LLR only for candidate pairs found by MinHash banding instead of the
+    *                exact A'A, A'B etc. See [[cooccurrencesApprox]].
     * @return a list of [[org.apache.mahout.math.indexeddataset.IndexedDataset]] containing downsampled
     *         IndexedDatasets for cooccurrence and cross-cooccurrence
     */
   def crossOccurrenceDownsampled(
     datasets: List[DownsamplableCrossOccurrenceDataset],
-    randomSeed: Int = 0xdeadbeef):
+    randomSeed: Int = 0xdeadbeef,
+    lshOpts: Option[LshOpts] = None):
     List[IndexedDataset] = {
 
 
@@ -192,13 +197,23 @@ object SimilarityAnalysis extends Serializable {
     // Compute & broadcast the number of interactions per thing in A
     val bcastInteractionsPerItemA = drmBroadcast(drmA.numNonZeroElementsPerColumn)
 
-    // Compute cooccurrence matrix A'A
-    val drmAtA = drmA.t %*% drmA
-
-    // Compute loglikelihood scores and sparsify the resulting matrix to get the similarity matrix
-    val drmSimilarityAtA = computeSimilarities(drmAtA, numUsers, primaryDataset.maxInterestingElements,
-      bcastInteractionsPerItemA, bcastInteractionsPerItemA, crossCooccurrence = false,
-      minLLROpt = primaryDataset.minLLROpt)
+    val drmSimilarityAtA = lshOpts match {
+      case Some(lsh) =>
+        val (drmSimilarity, recall) = approximateSimilarities(drmA, drmA, numUsers,
+          primaryDataset.maxInterestingElements, bcastInteractionsPerItemA, bcastInteractionsPerItemA,
+          crossCooccurrence = false, primaryDataset.minLLROpt, lsh, randomSeed)
+        recall.foreach(r => info(s"Estimated A'A LLR top-k recall: $r."))
+        drmSimilarity
+
+      case None =>
+        // Compute cooccurrence matrix A'A
+        val drmAtA = drmA.t %*% drmA
+
+        // Compute loglikelihood scores and sparsify the resulting matrix to get the similarity matrix
+        computeSimilarities(drmAtA, numUsers, primaryDataset.maxInterestingElements,
+          bcastInteractionsPerItemA, bcastInteractionsPerItemA, crossCooccurrence = false,
+          minLLROpt = primaryDataset.minLLROpt)
+    }
 
     var similarityMatrices = List(drmSimilarityAtA)
 
@@ -214,11 +229,21 @@ object SimilarityAnalysis extends Serializable {
       // Compute & broadcast the number of interactions per thing in B
       val bcastInteractionsPerThingB = drmBroadcast(drmB.numNonZeroElementsPerColumn)
 
-      // Compute cross-cooccurrence matrix A'B
-      val drmAtB = drmA.t %*% drmB
+      val drmSimilarityAtB = lshOpts match {
+        case Some(lsh) =>
+          val (drmSimilarity, recall) = approximateSimilarities(drmA, drmB, numUsers,
+            dataset.maxInterestingElements, bcastInteractionsPerItemA, bcastInteractionsPerThingB,
+            crossCooccurrence = true, dataset.minLLROpt, lsh, randomSeed)
+          recall.foreach(r => info(s"Estimated A'B LLR top-k recall: $r."))
+          drmSimilarity
+
+        case None =>
+          // Compute cross-cooccurrence matrix A'B
+          val drmAtB = drmA.t %*% drmB
 
-      val drmSimilarityAtB = computeSimilarities(drmAtB, numUsers, dataset.maxInterestingElements,
-        bcastInteractionsPerItemA, bcastInteractionsPerThingB, minLLROpt = dataset.minLLROpt)
+          computeSimilarities(drmAtB, numUsers, dataset.maxInterestingElements,
+            bcastInteractionsPerItemA, bcastInteractionsPerThingB, minLLROpt = dataset.minLLROpt)
+      }
 
       similarityMatrices = similarityMatrices :+ drmSimilarityAtB
 
@@ -237,6 +262,600 @@ object SimilarityAnalysis extends Serializable {
 
   }
 
+  /**
+   * Approximate version of [[cooccurrences]] for very large numbers of items. Instead of computing A'A, A'B,
+   * ... exactly, candidate item pairs are generated by MinHash signatures of the item (column) interaction
+   * sets, banded into LSH buckets. Items sharing at least one bucket become candidates, and exact
+   * cooccurrence counts and LLR are then computed for the candidates only.
+   * <P>
+   *
+   * Recall is tuned with [[LshOpts]]: a pair with Jaccard similarity J becomes a candidate with probability
+   * 1 - (1 - J^rowsPerBand)^numBands. If [[LshOpts.recallSampleSize]] is positive, recall of the exact LLR
+   * top-k of a random sample of A items is estimated against an exact computation for that sample.
+   *
+   * @param drmARaw Primary interaction matrix
+   * @param randomSeed when kept to a constant will make repeatable downsampling and hashing
+   * @param maxInterestingItemsPerThing number of similar items to return per item, default: 50
+   * @param maxNumInteractions max number of interactions after downsampling, default: 500
+   * @param drmBs secondary interaction matrices for cross-cooccurrence
+   * @param lshOpts candidate generation parameters
+   * @param parOpts partitioning params for drm.par(...)
+   * @return similarity and cross-similarity matrices, together with estimated recall of each one
+   */
+  def cooccurrencesApprox(
+    drmARaw: DrmLike[Int],
+    randomSeed: Int = 0xdeadbeef,
+    maxInterestingItemsPerThing: Int = 50,
+    maxNumInteractions: Int = 500,
+    drmBs: Array[DrmLike[Int]] = Array(),
+    lshOpts: LshOpts = LshOpts(),
+    parOpts: ParOpts = defaultParOpts)
+    : ApproximateSimilarities = {
+
+    implicit val distributedContext = drmARaw.context
+
+    drmARaw.par(min = parOpts.minPar, exact = parOpts.exactPar, auto = parOpts.autoPar)
+
+    // Apply selective downsampling, pin resulting matrix
+    val drmA = sampleDownAndBinarize(drmARaw, randomSeed, maxNumInteractions).checkpoint()
+
+    val numUsers = drmA.nrow.toInt
+
+    val bcastInteractionsPerItemA = drmBroadcast(drmA.numNonZeroElementsPerColumn)
+
+    var results = List(approximateSimilarities(drmA, drmA, numUsers, maxInterestingItemsPerThing,
+      bcastInteractionsPerItemA, bcastInteractionsPerItemA, crossCooccurrence = false, minLLROpt = None,
+      lshOpts, randomSeed))
+
+    for (drmBRaw <- drmBs) {
+
+      val drmB = sampleDownAndBinarize(drmBRaw, randomSeed, maxNumInteractions).checkpoint()
+
+      val bcastInteractionsPerThingB = drmBroadcast(drmB.numNonZeroElementsPerColumn)
+
+      results :+= approximateSimilarities(drmA, drmB, numUsers, maxInterestingItemsPerThing,
+        bcastInteractionsPerItemA, bcastInteractionsPerThingB, crossCooccurrence = true, minLLROpt = None,
+        lshOpts, randomSeed)
+    }
+
+    ApproximateSimilarities(results.map(_._1), results.map(_._2))
+  }
+
+  /**
+   * LLR similarities of A'B, computed only for candidate pairs sharing an LSH bucket. A and B must be binary and
+   * pinned, as they are passed over several times.
+   *
+   * @return similarity matrix and, if requested, its estimated top-k recall
+   */
+  private def approximateSimilarities(
+    drmA: DrmLike[Int],
+    drmB: DrmLike[Int],
+    numUsers: Int,
+    maxInterestingItemsPerThing: Int,
+    bcastInteractionsPerItemA: BCast[Vector],
+    bcastInteractionsPerThingB: BCast[Vector],
+    crossCooccurrence: Boolean,
+    minLLROpt: Option[Double],
+    lshOpts: LshOpts,
+    seed: Int): (DrmLike[Int], Option[Double]) = {
+
+    implicit val distributedContext = drmA.context
+
+    require(lshOpts.numBands.toLong * lshOpts.bucketsPerBand <= Int.MaxValue, "Too many LSH buckets")
+    require(lshOpts.verifyPairsPerPass > 0, "Invalid number of candidate pairs per verification pass")
+
+    val nA = drmA.ncol
+    val nB = drmB.ncol
+
+    // Item-wise interaction sets (items x users)
+    val drmAt = drmA.t.checkpoint()
+    val drmBt = if (crossCooccurrence) drmB.t.checkpoint() else drmAt
+
+    // Candidate pairs: the number of LSH bands two items share. This product only has numBands non-zeros per
+    // item on either side, hence is much cheaper than A'B.
+    val drmBucketsA = lshBuckets(drmAt, lshOpts, seed)
+    val drmBucketsB = if (crossCooccurrence) lshBuckets(drmBt, lshOpts, seed) else drmBucketsA
+    val drmCandidates = (drmBucketsA %*% drmBucketsB.t).checkpoint()
+
+    // Number the candidate pairs densely, by A item and then by B item. Each block starts numbering after the pairs
+    // of the blocks holding smaller keys, so the driver only sees one pair count per block.
+    val pairsPerBlock = drmCandidates.allreduceBlock({
+      case (keys, block) =>
+        val numBlockPairs = keys.indices.map(index =>
+          candidatesOf(keys(index), block(index, ::), crossCooccurrence).length).sum
+        dense((if (keys.isEmpty) -1 else keys.min, numBlockPairs))
+    }, _ rbind _)
+
+    val blocks = (0 until pairsPerBlock.nrow).map(row => pairsPerBlock(row, 0).toInt -> pairsPerBlock(row, 1).toLong)
+      .filter(_._1 >= 0).sortBy(_._1)
+    val blockOffsets = blocks.map(_._1).zip(blocks.scanLeft(0L)(_ + _._2)).toMap
+    val numPairs = blocks.map(_._2).sum
+
+    // Number + 1 of each candidate pair at its (a, b) cell, keyed by A item and, transposed, by B item.
+    val drmPairIds = drmCandidates.mapBlock() {
+      case (keys, block) =>
+        val pairIds = new SparseRowMatrix(block.nrow, block.ncol)
+        if (keys.nonEmpty) {
+          var pair = blockOffsets(keys.min)
+          for (index <- keys.indices.sortBy(keys(_));
+               b <- candidatesOf(keys(index), block(index, ::), crossCooccurrence)) {
+            pair += 1
+            pairIds(index, b) = pair
+          }
+        }
+        keys -> pairIds
+    }.checkpoint()
+    val drmPairIdsT = drmPairIds.t.checkpoint()
+
+    val drmAtKeyed = withKeyColumn(drmAt)
+    val drmBtKeyed = if (crossCooccurrence) withKeyColumn(drmBt) else drmAtKeyed
+
+    // Exact cooccurrence counts of the candidates: both interaction sets are joined onto each pair by item key,
+    // intersected, and summed back into the row of the A item. Passes only bound the size of each join, they all
+    // end up in the same plan.
+    val drmCounts = (0L until numPairs by lshOpts.verifyPairsPerPass.toLong).map { start =>
+
+      val pairs = (numPairs - start min lshOpts.verifyPairsPerPass).toInt
+
+      val drmPairsAt = selectPairs(drmPairIds, start, pairs).t %*% drmAtKeyed
+      val drmPairsBt = selectPairs(drmPairIdsT, start, pairs).t %*% drmBtKeyed
+
+      // Pairs x (A items, B items): the A item of the pair and its cooccurrence count at the B item.
+      val drmPairCounts = (drmPairsAt cbind drmPairsBt).mapBlock(ncol = nA + nB) {
+        case (keys, block) =>
+          val counts = new SparseRowMatrix(block.nrow, nA + nB)
+
+          for (index <- 0 until keys.size) {
+            val row = block(index, ::)
+            val usersA = nonZeroIndices(row(0 until numUsers))
+            val usersB = nonZeroIndices(row(numUsers + 1 until 2 * numUsers + 1))
+
+            counts(index, row(numUsers).toInt - 1) = 1
+            val cooccurrences = intersectionSize(usersA, usersB)
+            if (cooccurrences > 0) counts(index, nA + row(2 * numUsers + 1).toInt - 1) = cooccurrences
+          }
+
+          keys -> counts
+      }.checkpoint()
+
+      drmPairCounts(::, 0 until nA).t %*% drmPairCounts(::, nA until nA + nB)
+    }.reduceOption(_ + _).getOrElse(drmCandidates.mapBlock() {
+      case (keys, block) => keys -> new SparseRowMatrix(block.nrow, block.ncol)
+    })
+
+    val drmSimilarity = computeSimilarities(drmCounts, numUsers, maxInterestingItemsPerThing,
+      bcastInteractionsPerItemA, bcastInteractionsPerThingB, crossCooccurrence, minLLROpt).checkpoint()
+
+    val recall = if (lshOpts.recallSampleSize > 0) {
+      Some(estimateRecall(drmA, drmB, drmSimilarity, numUsers, maxInterestingItemsPerThing,
+        bcastInteractionsPerItemA, bcastInteractionsPerThingB, crossCooccurrence, minLLROpt,
+        lshOpts.recallSampleSize, seed))
+    } else None
+
+    drmSimilarity -> recall
+  }
+
+  /** Candidate B items of an A item, without the item itself for self-cooccurrence. */
+  private def candidatesOf(item: Int, candidates: Vector, crossCooccurrence: Boolean): Array[Int] =
+    nonZeroIndices(candidates).filter(crossCooccurrence || _ != item)
+
+  /** A 1 at (item, pair - start) for each candidate pair of the item numbered within start until start + pairs. */
+  private def selectPairs(drmPairIds: DrmLike[Int], start: Long, pairs: Int): DrmLike[Int] =
+    drmPairIds.mapBlock(ncol = pairs) {
+      case (keys, block) =>
+        val selection = new SparseRowMatrix(block.nrow, pairs)
+        for (index <- 0 until keys.size; elem <- block(index, ::).nonZeroes()) {
+          val pair = elem.get.toLong - 1 - start
+          if (pair >= 0 && pair < pairs) selection(index, pair.toInt) = 1
+        }
+        keys -> selection
+    }
+
+  /** Appends key + 1 to each row, so that a row joined onto another key still tells which item it belongs to. */
+  private def withKeyColumn(drm: DrmLike[Int]): DrmLike[Int] =
+    drm.mapBlock(ncol = drm.ncol + 1) {
+      case (keys, block) =>
+        val keyed = new SparseRowMatrix(block.nrow, block.ncol + 1)
+        for (index <- 0 until keys.size) {
+          keyed(index, 0 until block.ncol) := block(index, ::)
+          keyed(index, block.ncol) = keys(index) + 1
+        }
+        keys -> keyed
+    }
+
+  /**
+   * MinHash signatures of each row of the item x user matrix, banded and hashed into numBands * bucketsPerBand
+   * buckets. Each row of the result has a single non-zero per band.
+   */
+  private def lshBuckets(drmXt: DrmLike[Int], lshOpts: LshOpts, seed: Int): DrmLike[Int] = {
+
+    val numBands = lshOpts.numBands
+    val rowsPerBand = lshOpts.rowsPerBand
+    val bucketsPerBand = lshOpts.bucketsPerBand
+
+    drmXt.mapBlock(ncol = numBands * bucketsPerBand) {
+      case (keys, block) =>
+        val buckets = new SparseRowMatrix(block.nrow, numBands * bucketsPerBand)
+        val signature = new Array[Int](rowsPerBand)
+
+        for (index <- 0 until keys.size) {
+          val users = nonZeroIndices(block(index, ::))
+
+          if (users.nonEmpty) for (band <- 0 until numBands) {
+            java.util.Arrays.fill(signature, Int.MaxValue)
+            for (user <- users; h <- 0 until rowsPerBand) {
+              signature(h) = signature(h) min MurmurHash.hash(user, seed + band * rowsPerBand + h)
+            }
+            val bucket = (java.util.Arrays.hashCode(signature) & Int.MaxValue) % bucketsPerBand
+            buckets(index, band * bucketsPerBand + bucket) = 1
+          }
+        }
+
+        keys -> buckets
+    }
+  }
+
+  /**
+   * Estimate which share of the exact LLR top-k items of a random sample of A items made it into the
+   * approximate similarity matrix.
+   */
+  private def estimateRecall(
+    drmA: DrmLike[Int],
+    drmB: DrmLike[Int],
+    drmSimilarity: DrmLike[Int],
+    numUsers: Int,
+    maxInterestingItemsPerThing: Int,
+    bcastInteractionsPerItemA: BCast[Vector],
+    bcastInteractionsPerThingB: BCast[Vector],
+    crossCooccurrence: Boolean,
+    minLLROpt: Option[Double],
+    sampleSize: Int,
+    seed: Int): Double = {
+
+    implicit val distributedContext = drmA.context
+
+    val random = new Random(seed)
+    val nA = drmA.ncol
+    val sampled = mutable.HashSet[Int]()
+    while (sampled.size < (sampleSize min nA)) sampled += random.nextInt(nA)
+    val sample = sampled.toArray.sorted
+
+    // Exact cooccurrences of sampled A items only.
+    val drmAs = drmA.mapBlock(ncol = sample.length) {
+      case (keys, block) =>
+        val sampled = new SparseRowMatrix(block.nrow, sample.length)
+        for (col <- sample.indices) sampled(::, col) := block(::, sample(col))
+        keys -> sampled
+    }
+
+    val inCoreExact = computeSimilarities(drmAs.t %*% drmB, numUsers, maxInterestingItemsPerThing,
+      bcastInteractionsPerItemA, bcastInteractionsPerThingB, crossCooccurrence, minLLROpt,
+      rowThingsOpt = Some(sample)).collect
+
+    // This is only sampleSize x maxInterestingItemsPerThing, so it is fine to ship it with the closure.
+    val exactTopK = sample.indices.map(i => sample(i) -> nonZeroIndices(inCoreExact(i, ::))).toMap
+
+    val found = drmSimilarity.mapBlock(ncol = 2) {
+      case (keys, block) =>
+        val counts = new DenseMatrix(block.nrow, 2)
+        for (index <- 0 until keys.size; exact <- exactTopK.get(keys(index))) {
+          val approx = block(index, ::)
+          counts(index, 0) = exact.count(approx(_) != 0.0)
+          counts(index, 1) = exact.length
+        }
+        keys -> counts
+    }.colSums()
+
+    if (found(1) > 0) found(0) / found(1) else 1.0
+  }
+
+  /** Ascending indices of non-zero elements of a vector. */
+  private def nonZeroIndices(v: Vector): Array[Int] = {
+    val indices = v.nonZeroes().map(_.index).toArray
+    java.util.Arrays.sort(indices)
+    indices
+  }
+
+  /** Size of intersection of two ascending index arrays. */
+  private def intersectionSize(a: Array[Int], b: Array[Int]): Int = {
+    var i = 0
+    var j = 0
+    var count = 0
+    while (i < a.length && j < b.length) {
+      if (a(i) < b(j)) i += 1
+      else if (a(i) > b(j)) j += 1
+      else {
+        count += 1
+        i += 1
+        j += 1
+      }
+    }
+    count
+  }
+
+  /**
+   * Computes LLR cooccurrence indicators of A'A like [[cooccurrences]] does, but keeps everything needed to later
+   * update them incrementally with [[cooccurrencesIncremental]]: the downsampled binary interactions, the raw
+   * cooccurrence counts and the per-item interaction counts. Per-user interaction counts are the row non-zero
+   * counts of the kept interactions.
+   *
+   * @param drmARaw Primary interaction matrix
+   * @param randomSeed when kept to a constant will make repeatable downsampling
+   * @param maxInterestingItemsPerThing number of similar items to return per item, default: 50
+   * @param maxNumInteractions max number of interactions after downsampling, default: 500
+   * @param parOpts partitioning params for drm.par(...)
+   * @return cooccurrence state, its `indicators` are the same as the first matrix [[cooccurrences]] returns
+   */
+  def cooccurrenceState(
+    drmARaw: DrmLike[Int],
+    randomSeed: Int = 0xdeadbeef,
+    maxInterestingItemsPerThing: Int = 50,
+    maxNumInteractions: Int = 500,
+    parOpts: ParOpts = defaultParOpts): CooccurrenceState = {
+
+    implicit val distributedContext = drmARaw.context
+
+    drmARaw.par(min = parOpts.minPar, exact = parOpts.exactPar, auto = parOpts.autoPar)
+
+    val drmA = sampleDownAndBinarize(drmARaw, randomSeed, maxNumInteractions).checkpoint()
+
+    val interactionsPerItem = drmA.numNonZeroElementsPerColumn
+    val drmAtA = (drmA.t %*% drmA).checkpoint()
+
+    val drmIndicators = computeSimilarities(drmAtA, drmA.nrow.toInt, maxInterestingItemsPerThing,
+      drmBroadcast(interactionsPerItem), drmBroadcast(interactionsPerItem), crossCooccurrence = false)
+
+    CooccurrenceState(drmA, drmAtA, interactionsPerItem, drmIndicators.checkpoint())
+  }
+
+  /**
+   * Updates a [[CooccurrenceState]] with new interactions. Only users present in the delta contribute to the
+   * update of the cooccurrence counts, and LLR is recomputed only for items whose counts changed, and for items
+   * with an LLR score against an item whose number of interactions changed that moves by more than
+   * `llrTolerance`. Other indicator rows are carried over as they are, even though growth of the number of users
+   * shifts their LLR slightly; a periodic full recomputation takes care of that.
+   * <P>
+   *
+   * Previous interactions are joined with the delta by user and passed over once. Count changes come from X'X and
+   * Y'Y over the changed users, and only the previous count rows of recomputed items are read. Counts and indicators
+   * are spliced by key: rows of unchanged items are left as they are, and only the recomputed row keys reach the
+   * driver.
+   * <P>
+   *
+   * The delta is binarized and capped so that no user or item goes over `maxNumInteractions`. It has to use the
+   * same item (column) space as the state; it may have more rows if new users appeared.
+   *
+   * @param state cooccurrence state of the previous run
+   * @param drmDeltaRaw new interactions
+   * @param randomSeed when kept to a constant will make repeatable downsampling
+   * @param maxInterestingItemsPerThing number of similar items to return per item, default: 50
+   * @param maxNumInteractions max number of interactions per user or item, default: 500
+   * @param llrTolerance LLR shift against a changed item above which an item with unchanged counts is recomputed,
+   *                     default: 1.0
+   * @return the updated state, the changed indicator rows (other rows empty) and the keys of the changed rows
+   */
+  def cooccurrencesIncremental(
+    state: CooccurrenceState,
+    drmDeltaRaw: DrmLike[Int],
+    randomSeed: Int = 0xdeadbeef,
+    maxInterestingItemsPerThing: Int = 50,
+    maxNumInteractions: Int = 500,
+    llrTolerance: Double = 1.0): IncrementalCooccurrences = {
+
+    implicit val distributedContext = drmDeltaRaw.context
+
+    val n = state.interactionsPerItem.length
+    require(drmDeltaRaw.ncol == n, "Delta interactions must have the same items as the cooccurrence state")
+    require(llrTolerance >= 0, "LLR tolerance must not be negative")
+
+    // Align number of users; the delta may bring new ones.
+    val previousNumUsers = safeToNonNegInt(state.interactions.nrow)
+    val numUsers = safeToNonNegInt(state.interactions.nrow max drmDeltaRaw.nrow)
+    val drmOld = state.interactions.checkpoint().newRowCardinality(numUsers)
+    val drmDelta = drmDeltaRaw.checkpoint().newRowCardinality(numUsers)
+
+    val bcastInteractionsPerItem = drmBroadcast(state.interactionsPerItem)
+
+    // For each user: [new interactions | previous interactions if user changed | changed flag]
+    val drmUpdate = (drmOld cbind drmDelta).mapBlock(ncol = 2 * n + 1) {
+      case (keys, block) =>
+        val interactionsPerItem: Vector = bcastInteractionsPerItem
+        val random = new Random(MurmurHash.hash(keys(0), randomSeed))
+        val updateBlock = new SparseRowMatrix(block.nrow, 2 * n + 1)
+
+        for (index <- 0 until keys.size) {
+          val oldRow = block(index, 0 until n)
+          val newRow = updateBlock(index, 0 until n)
+          newRow := oldRow
+
+          var numUserInteractions = oldRow.getNumNonZeroElements
+          var changed = false
+          block(index, n until 2 * n).nonZeroes().foreach { elem =>
+            val numItemInteractions = interactionsPerItem(elem.index)
+            val itemSampleRate = math.min(maxNumInteractions, numItemInteractions + 1) / (numItemInteractions + 1)
+            if (oldRow(elem.index) == 0 && numUserInteractions < maxNumInteractions &&
+              random.nextDouble() <= itemSampleRate) {
+              newRow(elem.index) = 1
+              numUserInteractions += 1
+              changed = true
+            }
+          }
+
+          if (changed) {
+            updateBlock(index, n until 2 * n) := oldRow
+            updateBlock(index, 2 * n) = 1
+          }
+        }
+
+        keys -> updateBlock
+    }.checkpoint()
+
+    val drmNew = drmUpdate(::, 0 until n).checkpoint()
+
+    // New and previous interactions of changed users only.
+    val drmX = drmUpdate.mapBlock(ncol = n) {
+      case (keys, block) =>
+        val xBlock = new SparseRowMatrix(block.nrow, n)
+        for (index <- 0 until keys.size if block(index, 2 * n) != 0) xBlock(index, ::) := block(index, 0 until n)
+        keys -> xBlock
+    }
+    val drmY = drmUpdate(::, n until 2 * n)
+
+    // [items of changed users, whose counts change | change of the number of interactions per item], sparse
+    val itemChanges = drmUpdate.allreduceBlock {
+      case (keys, block) =>
+        val changes = new SparseRowMatrix(2, n)
+        for (index <- 0 until keys.size if block(index, 2 * n) != 0) {
+          block(index, 0 until n).nonZeroes().foreach { elem =>
+            changes(0, elem.index) = 1
+            changes(1, elem.index) = changes(1, elem.index) + 1
+          }
+          block(index, n until 2 * n).nonZeroes().foreach { elem =>
+            changes(0, elem.index) = 1
+            changes(1, elem.index) = changes(1, elem.index) - 1
+          }
+        }
+        changes
+    }
+
+    val countChangedItems = nonZeroIndices(itemChanges(0, ::))
+    val interactionsPerItem = state.interactionsPerItem + itemChanges(1, ::)
+
+    // Count changes, only non-empty in the rows of countChangedItems, and the updated counts of those rows.
+    val drmCountDelta = ((drmX.t %*% drmX) - (drmY.t %*% drmY)).checkpoint()
+    val bcastCountChangedItems = drmBroadcast(keySet(n, countChangedItems))
+    val drmChangedCounts = (selectRows(state.cooccurrences, bcastCountChangedItems) + drmCountDelta).checkpoint()
+
+    // Items with unchanged counts whose LLR against an item with a changed number of interactions moves by more than
+    // the tolerance. Counts are symmetric, so these are found in the rows of the changed items.
+    val bcastInteractionsPerItemNew = drmBroadcast(interactionsPerItem)
+    val shifted = drmChangedCounts.allreduceBlock {
+      case (keys, block) =>
+        val before: Vector = bcastInteractionsPerItem
+        val after: Vector = bcastInteractionsPerItemNew
+        val countChanged: Vector = bcastCountChangedItems
+        val shiftedBlock = new SparseRowMatrix(1, n)
+
+        for (index <- 0 until keys.size if before(keys(index)) != after(keys(index))) {
+          val changedItem = keys(index)
+          block(index, ::).nonZeroes().foreach { elem =>
+            if (countChanged(elem.index) == 0) {
+              val llrBefore = logLikelihoodRatio(before(elem.index).toLong, before(changedItem).toLong,
+                elem.get.toLong, previousNumUsers)
+              val llrAfter = logLikelihoodRatio(after(elem.index).toLong, after(changedItem).toLong,
+                elem.get.toLong, numUsers)
+              if (math.abs(llrAfter - llrBefore) > llrTolerance) shiftedBlock(0, elem.index) = 1
+            }
+          }
+        }
+
+        shiftedBlock
+    }
+    val shiftedItems = nonZeroIndices(shifted(0, ::))
+
+    val drmRecomputedCounts = if (shiftedItems.isEmpty) drmChangedCounts else {
+      drmChangedCounts + selectRows(state.cooccurrences, drmBroadcast(keySet(n, shiftedItems)))
+    }
+    val drmChanged = computeSimilarities(drmRecomputedCounts, numUsers, maxInterestingItemsPerThing,
+      bcastInteractionsPerItemNew, bcastInteractionsPerItemNew, crossCooccurrence = false).checkpoint()
+
+    // Splice recomputed rows and count changes into the previous state by key.
+    val changedRows = (countChangedItems ++ shiftedItems).sorted
+    val drmIndicators = (withoutRows(state.indicators, drmBroadcast(keySet(n, changedRows))) + drmChanged)
+      .checkpoint()
+    val drmCooccurrences = (state.cooccurrences + drmCountDelta).checkpoint()
+
+    drmUpdate.uncache()
+
+    IncrementalCooccurrences(
+      CooccurrenceState(drmNew, drmCooccurrences, interactionsPerItem, drmIndicators),
+      drmChanged, changedRows)
+  }
+
+  /** A 0/1 vector of length n with ones at the given keys, sparse so that broadcasting it is cheap. */
+  private def keySet(n: Int, keys: Array[Int]): Vector = {
+    val set = new RandomAccessSparseVector(n, keys.length)
+    keys.foreach(set(_) = 1)
+    set
+  }
+
+  /** Rows with keys in the broadcast key set, other rows empty. */
+  private def selectRows(drm: DrmLike[Int], bcastKeys: BCast[Vector]): DrmLike[Int] =
+    drm.mapBlock() {
+      case (keys, block) =>
+        val keySet: Vector = bcastKeys
+        val selected = new SparseRowMatrix(block.nrow, block.ncol)
+        for (index <- 0 until keys.size if keySet(keys(index)) != 0) selected(index, ::) := block(index, ::)
+        keys -> selected
+    }
+
+  /** Rows with keys in the broadcast key set emptied; blocks without such rows are passed on as they are. */
+  private def withoutRows(drm: DrmLike[Int], bcastKeys: BCast[Vector]): DrmLike[Int] =
+    drm.mapBlock() {
+      case (keys, block) =>
+        val keySet: Vector = bcastKeys
+        val dropped = (0 until keys.size).filter(index => keySet(keys(index)) != 0)
+        if (dropped.isEmpty) keys -> block else {
+          val kept = block.cloned
+          dropped.foreach(kept(_, ::) := 0)
+          keys -> kept
+        }
+    }
+
+  /**
+   * [[cooccurrencesIncremental]] for IndexedDatasets. Delta rows are matched to the users of the previous
+   * interactions by their IDs, unknown users are appended. Delta items are matched by their IDs too; interactions
+   * with items unknown to the state are dropped until the next full computation, since they do not have a row in
+   * the cooccurrence state yet.
+   *
+   * @param state cooccurrence state of the previous run
+   * @param interactions the previous interactions, only used for their row and column IDs
+   * @param delta new interactions
+   * @param randomSeed when kept to a constant will make repeatable downsampling
+   * @param maxInterestingItemsPerThing number of similar items to return per item, default: 50
+   * @param maxNumInteractions max number of interactions per user or item, default: 500
+   * @param llrTolerance LLR shift above which an item with unchanged counts is recomputed, default: 1.0
+   * @return updated state, the new row IDs, and the changed indicator rows as an IndexedDataset
+   */
+  def cooccurrencesIDSIncremental(
+    state: CooccurrenceState,
+    interactions: IndexedDataset,
+    delta: IndexedDataset,
+    randomSeed: Int = 0xdeadbeef,
+    maxInterestingItemsPerThing: Int = 50,
+    maxNumInteractions: Int = 500,
+    llrTolerance: Double = 1.0): (CooccurrenceState, BiDictionary, IndexedDataset) = {
+
+    implicit val distributedContext = delta.matrix.context
+
+    val deltaRowKeys = delta.rowIDs.inverse
+    val deltaColumnKeys = delta.columnIDs.inverse
+    val rowIDs = interactions.rowIDs.merge(delta.rowIDs.toSeq.map(_._1))
+    val n = interactions.columnIDs.size
+
+    // Delta index -> state index maps; -1 for unknown items.
+    val rowMap = Array.tabulate(delta.rowIDs.size)(i => rowIDs(deltaRowKeys(i)))
+    val columnMap = Array.tabulate(delta.columnIDs.size)(j => interactions.columnIDs.getOrElse(deltaColumnKeys(j), -1))
+
+    val numDropped = columnMap.count(_ < 0)
+    if (numDropped > 0) warn(s"$numDropped new items ignored by the incremental cooccurrence update.")
+
+    val drmDelta = delta.matrix.mapBlock(ncol = n, identicallyPartitioned = false) {
+      case (keys, block) =>
+        val remapped = new SparseRowMatrix(block.nrow, n)
+        for (index <- 0 until keys.size; elem <- block(index, ::).nonZeroes() if columnMap(elem.index) >= 0) {
+          remapped(index, columnMap(elem.index)) = elem.get
+        }
+        keys.map(rowMap(_)) -> remapped
+    }.checkpoint().newRowCardinality(rowIDs.size)
+
+    val update = cooccurrencesIncremental(state, drmDelta, randomSeed, maxInterestingItemsPerThing,
+      maxNumInteractions, llrTolerance)
+
+    (update.state, rowIDs,
+      interactions.create(update.changedIndicators.checkpoint(), interactions.columnIDs, interactions.columnIDs))
+  }
+
   /**
    * Calculates row-wise similarity using the log-likelihood ratio on AA' and returns a DRM of rows and similar rows
    *
@@ -316,7 +935,8 @@ object SimilarityAnalysis extends Serializable {
     bcastNumInteractionsB: BCast[Vector],
     bcastNumInteractionsA: BCast[Vector],
     crossCooccurrence: Boolean = true,
-    minLLROpt: Option[Double] = None) = {
+    minLLROpt: Option[Double] = None,
+    rowThingsOpt: Option[Array[Int]] = None) = {
 
     //val minLLR = minLLROpt.getOrElse(0.0d) // accept all values if not specified
 
@@ -325,13 +945,14 @@ object SimilarityAnalysis extends Serializable {
     drm.mapBlock() {
       case (keys, block) =>
 
-        val llrBlock = block.like()
+        // If rows are a subset of things, the output is kept sparse no matter how dense the input is.
+        val llrBlock = if (rowThingsOpt.isDefined) new SparseRowMatrix(block.nrow, block.ncol) else block.like()
         val numInteractionsB: Vector = bcastNumInteractionsB
         val numInteractionsA: Vector = bcastNumInteractionsA
 
         for (index <- 0 until keys.size) {
 
-          val thingB = keys(index)
+          val thingB = rowThingsOpt.map(_(keys(index))).getOrElse(keys(index))
 
           // PriorityQueue to select the top-k items
           val topItemsPerThing = new mutable.PriorityQueue[(Int, Double)]()(orderByScore)
@@ -413,16 +1034,20 @@ object SimilarityAnalysis extends Serializable {
 
           val numInteractionsPerRow = interactionsInRow.getNumNonZeroElements()
 
-          val perRowSampleRate = math.min(maxNumInteractions, numInteractionsPerRow) / numInteractionsPerRow
+          // Empty rows (such as users without interactions yet in incremental updates) have nothing to sample.
+          if (numInteractionsPerRow > 0) {
+
+            val perRowSampleRate = math.min(maxNumInteractions, numInteractionsPerRow) / numInteractionsPerRow
 
-          interactionsInRow.nonZeroes().foreach { elem =>
-            val numInteractionsWithThing = numInteractions(elem.index)
-            val perThingSampleRate = math.min(maxNumInteractions, numInteractionsWithThing) / numInteractionsWithThing
+            interactionsInRow.nonZeroes().foreach { elem =>
+              val numInteractionsWithThing = numInteractions(elem.index)
+              val perThingSampleRate = math.min(maxNumInteractions, numInteractionsWithThing) / numInteractionsWithThing
 
-            if (random.nextDouble() <= math.min(perRowSampleRate, perThingSampleRate)) {
-              // We ignore the original interaction value and create a binary 0-1 matrix
-              // as we only consider whether interactions happened or did not happen
-              downsampledBlock(rowIndex, elem.index) = 1
+              if (random.nextDouble() <= math.min(perRowSampleRate, perThingSampleRate)) {
+                // We ignore the original interaction value and create a binary 0-1 matrix
+                // as we only consider whether interactions happened or did not happen
+                downsampledBlock(rowIndex, elem.index) = 1
+              }
             }
           }
         }
@@ -437,6 +1062,59 @@ object SimilarityAnalysis extends Serializable {
   }
 }
 
+/**
+ * Everything needed to incrementally update cooccurrence indicators of a primary interaction matrix.
+ *
+ * @param interactions binary, downsampled interactions, users x items
+ * @param cooccurrences cooccurrence counts A'A
+ * @param interactionsPerItem number of interactions per item, i.e. column marginals of interactions
+ * @param indicators LLR indicator matrix
+ */
+case class CooccurrenceState(
+  interactions: DrmLike[Int],
+  cooccurrences: DrmLike[Int],
+  interactionsPerItem: Vector,
+  indicators: DrmLike[Int]) {
+
+  /** Persist the state in the given directory so that the next run can pick it up. */
+  def dfsWrite(path: String)(implicit dc: DistributedContext): Unit = {
+    interactions.dfsWrite(path + "/interactions")
+    cooccurrences.dfsWrite(path + "/cooccurrences")
+    indicators.dfsWrite(path + "/indicators")
+    drmParallelize(interactionsPerItem.toColMatrix).dfsWrite(path + "/interactionsPerItem")
+  }
+}
+
+object CooccurrenceState {
+
+  /** Load a state persisted with [[CooccurrenceState.dfsWrite]]. */
+  def dfsRead(path: String)(implicit dc: DistributedContext): CooccurrenceState = {
+    def read(name: String) = drmDfsRead(path + "/" + name).asInstanceOf[CheckpointedDrm[Int]]
+    val inCoreInteractionsPerItem = read("interactionsPerItem").collect
+    CooccurrenceState(read("interactions"), read("cooccurrences"), inCoreInteractionsPerItem(::, 0),
+      read("indicators"))
+  }
+}
+
+/* Result of an incremental cooccurrence update */
+case class IncrementalCooccurrences(
+  state: CooccurrenceState, // updated state to pass to the next run
+  changedIndicators: DrmLike[Int], // recomputed indicator rows, all others are empty
+  changedRows: Array[Int]) // keys of the recomputed indicator rows, sorted
+
+/* Used to pass in parameters of MinHash/LSH candidate generation for approximate cooccurrence */
+case class LshOpts(
+  numBands: Int = 20, // more bands raise recall and the number of candidates
+  rowsPerBand: Int = 4, // more MinHash rows per band lower the candidate rate of dissimilar pairs
+  bucketsPerBand: Int = 1 << 20, // hash buckets per band, should be well above the number of items per bucket
+  verifyPairsPerPass: Int = 1 << 30, // candidate pairs joined with their interactions at once for exact counts
+  recallSampleSize: Int = 0) // if positive, number of items sampled to estimate recall against exact computation
+
+/* Result of approximate cooccurrence: similarity matrices and their estimated recall, if requested */
+case class ApproximateSimilarities(
+  similarityMatrices: List[DrmLike[Int]],
+  estimatedRecall: List[Option[Double]])
+
 case class ParOpts( // this will contain the default `par` params except for auto = true
   minPar: Int = -1,
   exactPar: Int = -1,
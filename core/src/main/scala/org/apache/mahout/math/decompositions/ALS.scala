@@ -24,6 +24,8 @@ import RLikeDrmOps._
 import RLikeOps._
 import org.apache.log4j.Logger
 import math._
+import scala.reflect.ClassTag
+import scala.collection.JavaConversions._
 import org.apache.mahout.common.RandomUtils
 
 /** Simple ALS factorization algotithm. To solve, use train() method. */
@@ -137,5 +139,333 @@ private[math] object ALS {
     new Result(drmU, drmV, rmseIterations)
   }
 
+  /**
+   * Run distributed weighted ALS over the observed (non-zero) entries of a sparse input only.
+   * <P>
+   *
+   * Unlike [[dals]], missing entries of A are not treated as zeros. Each row of U (and V) is a
+   * regularized least squares solution over the observed entries of that row (column) only. In the
+   * implicit feedback mode, observations r are turned into preferences p = 1 with confidence
+   * c = 1 + alpha * r, and all entries take part in the loss with unobserved ones having c = 1 and
+   * p = 0, exactly as `ImplicitFeedbackAlternatingLeastSquaresSolver` does in-core.
+   * <P>
+   *
+   * Each row is solved inside a single `mapBlock` over A (or A' for V). Its k x k normal
+   * equations are accumulated in scratch space from the row's non-zero entries and the rows of the
+   * other factor routed to it, so no per-row Gram matrix is ever materialized as a DRM. Rows of the
+   * other factor are routed as A %*% [I | diag(Y(::, 0)) | ... | diag(Y(::, k - 1))], which for Int
+   * row keys is computed as A'B over the already transposed A: rows of the other factor are joined
+   * with the rows of A' (or A) that refer to them by key. Every row of A thus receives the factor
+   * rows of its own observations only (k + 1 doubles per observation), and no factor row goes
+   * through the driver.
+   * <P>
+   *
+   * Solving the rows of V needs A' as an Int-keyed DRM, which exists for Int-keyed A only. For other
+   * row keys, the V-step falls back to assembling the per-column normal equations with the product
+   * of A' and the packed upper triangles of U's row outer products, which materializes
+   * k(k+1)/2 + 1 doubles per column of A, and the rows of V reach the rows of A through the
+   * engine's A %*% B.
+   * <P>
+   *
+   * The RMSE, if requested, is computed over the observed entries only, from the residuals of the
+   * observed entries of each row, without forming U %*% V'. In the implicit mode it is measured
+   * against preferences.
+   *
+   * @param drmA The input matrix; zero elements are considered unobserved
+   * @param k required rank of decomposition (number of cols in U and V results)
+   * @param lambda regularization rate. In the explicit mode it is scaled by the number of
+   *               observations in the row being solved (ALS-WR).
+   * @param maxIterations maximum iterations to run regardless of convergence
+   * @param convergenceThreshold stop sooner if (rmse[i-1] - rmse[i])/rmse[i - 1] is less than this
+   *                             value. If <=0 then we won't compute RMSE and use convergence test.
+   * @param implicitFeedback if true, use implicit feedback confidence weighting
+   * @param alpha confidence growth rate for the implicit feedback mode
+   * @tparam K row key type of the input
+   * @return { @link org.apache.mahout.math.drm.decompositions.ALS.Result}
+   */
+  def dwals[K](
+      drmA: DrmLike[K],
+      k: Int = 50,
+      lambda: Double = 0.065,
+      maxIterations: Int = 10,
+      convergenceThreshold: Double = 0.10,
+      implicitFeedback: Boolean = false,
+      alpha: Double = 40.0
+      ): Result[K] = {
+
+    assert(convergenceThreshold < 1.0, "convergenceThreshold")
+    assert(maxIterations >= 1, "maxIterations")
+    assert(!implicitFeedback || lambda > 0, "implicit feedback requires lambda > 0")
+
+    implicit val ktag = drmA.keyClassTag
+    implicit val ctx = drmA.context
+
+    val m = drmA.nrow
+    val n = drmA.ncol
+    assert((k + 1).toLong * n + k <= Int.MaxValue, "too many columns to route the rows of V")
+
+    val weights = new ObservationWeights(implicitFeedback, alpha)
+
+    // Routing rows of V to the rows of A joins them with A' by key, and routing rows of U to the
+    // rows of A' joins them with A. A' only exists for Int row keys.
+    val drmAt: Option[DrmLike[Int]] =
+      if (ktag == ClassTag.Int) Some(drmA.asInstanceOf[DrmLike[Int]].t.checkpoint()) else None
+    val routeU = drmAt.isDefined && (k + 1).toLong * m <= Int.MaxValue
+
+    // Initialize U so that it is identically distributed to A
+    var drmU = drmA.mapBlock(ncol = k) {
+      case (keys, block) =>
+        val rnd = RandomUtils.getRandom()
+        val uBlock = Matrices.symmetricUniformView(block.nrow, k, rnd.nextInt()) * 0.01
+        keys -> uBlock
+    }.checkpoint()
+
+    var drmV: DrmLike[Int] = null
+    var rmseIterations: List[Double] = Nil
+
+    var stop = false
+    var i = 0
+    while (!stop && i < maxIterations) {
+
+      // V-step: each column of A against U.
+      if (drmV != null) drmV.uncache()
+      drmV = drmAt match {
+        case Some(_) if routeU =>
+          val drmUi = drmU.asInstanceOf[DrmLike[Int]]
+          val drmRoutedU = drmA.asInstanceOf[DrmLike[Int]].t %*% routingFactor(drmUi, k)
+          solveObserved(drmRoutedU, safeToNonNegInt(m), k, lambda, weights, gram(drmUi, weights)).checkpoint()
+        case _ => solvePacked(drmA, drmU, k, lambda, weights).checkpoint()
+      }
+
+      // U-step: each row of A against V.
+      val drmVd = routingFactor(drmV, k)
+      val drmRoutedV = drmAt match {
+        case Some(at) => (at.t %*% drmVd).asInstanceOf[DrmLike[K]].checkpoint()
+        case None => (drmA %*% drmVd).checkpoint()
+      }
+      drmU.uncache()
+      drmU = solveObserved(drmRoutedV, n, k, lambda, weights, gram(drmV, weights)).checkpoint()
+
+      if (convergenceThreshold > 0) {
+
+        val rmse = observedRmse(drmRoutedV, drmU, n, k, weights)
+
+        if (i > 0) {
+          val rmsePrev = rmseIterations.last
+          val convergence = (rmsePrev - rmse) / rmsePrev
+
+          if (convergence < 0) {
+            log.warn("Rmse increase of %f. Should not happen.".format(convergence))
+            stop = true
+          } else if (convergence < convergenceThreshold) {
+            stop = true
+          }
+        }
+        rmseIterations :+= rmse
+      }
+      drmRoutedV.uncache()
+
+      i += 1
+    }
+
+    drmAt.foreach(_.uncache())
+    new Result(drmU, drmV, rmseIterations)
+  }
+
+  /**
+   * Normal equation weights of an observation a. Left-hand side weights are (c - 1) for implicit
+   * feedback (the rest of the confidence is covered by the Y'Y term) and 1 otherwise. Right-hand
+   * side weights are c * p for implicit feedback, and the ratings themselves otherwise.
+   */
+  private class ObservationWeights(val implicitFeedback: Boolean, alpha: Double) extends Serializable {
+
+    def lhs(a: Double): Double = if (implicitFeedback) alpha * a else 1.0
+
+    def rhs(a: Double): Double = if (implicitFeedback) 1.0 + alpha * a else a
+
+    /** The value the factorization should reproduce for an observation. */
+    def target(a: Double): Double = if (implicitFeedback) 1.0 else a
+  }
+
+  /**
+   * [I | diag(Y(::, 0)) | ... | diag(Y(::, k - 1))] for a factor Y with n rows: row j holds 1 at
+   * column j and Y(j, d) at column (d + 1) * n + j. A times this puts a_ij at column j of row i and
+   * a_ij * Y(j, d) at column (d + 1) * n + j, i.e. routes row j of Y to the rows of A observing it.
+   */
+  private def routingFactor(drmY: DrmLike[Int], k: Int): DrmLike[Int] = {
+    val n = safeToNonNegInt(drmY.nrow)
+    drmY.mapBlock(ncol = (k + 1) * n) {
+      case (keys, block) =>
+        val rBlock = new SparseRowMatrix(block.nrow, (k + 1) * n)
+        for (r <- 0 until block.nrow) {
+          val j = keys(r)
+          rBlock(r, j) = 1.0
+          for (d <- 0 until k) rBlock(r, (d + 1) * n + j) = block(r, d)
+        }
+        keys -> rBlock
+    }
+  }
+
+  /** Y'Y, which implicit feedback adds to every left-hand side. Only this k x k matrix is collected. */
+  private def gram(drmY: DrmLike[Int], weights: ObservationWeights): Option[BCast[Matrix]] =
+    if (weights.implicitFeedback) Some(drmBroadcast((drmY.t %*% drmY).collect)(drmY.context)) else None
+
+  /**
+   * Solves each row of A against the rows of Y at its observed (non-zero) entries, from the rows of
+   * A %*% [[routingFactor]](Y): row j of Y is read at the observations a_ij off columns
+   * (d + 1) * n + j, divided by a_ij. Both sides of the row's normal equations are accumulated in
+   * k x k and k scratch arrays, reused for all rows of a block. If Y'Y is given (implicit feedback),
+   * it is added to every left-hand side and lambda is not scaled by the observation count. Rows with
+   * no observations stay at zero.
+   */
+  private def solveObserved[R: ClassTag](drmRouted: DrmLike[R], n: Int, k: Int, lambda: Double,
+      weights: ObservationWeights, gram: Option[BCast[Matrix]]): DrmLike[R] =
+    drmRouted.mapBlock(ncol = k) {
+      case (keys, block) =>
+        val gramY = gram.map(_.value)
+        val y = new Array[Double](k)
+        val g = new Array[Double](k * k)
+        val b = new Array[Double](k)
+        val mxG = new DenseMatrix(k, k)
+        val xBlock = new DenseMatrix(block.nrow, k)
+        for (r <- 0 until block.nrow) {
+          val row = block(r, ::)
+          java.util.Arrays.fill(g, 0.0)
+          java.util.Arrays.fill(b, 0.0)
+          var nu = 0
+          for (el <- row(0 until n).nonZeroes()) if (el.get != 0.0) {
+            routedRow(row, n, el.index, el.get, y)
+            val lw = weights.lhs(el.get)
+            val rw = weights.rhs(el.get)
+            var d = 0
+            while (d < k) {
+              val wy = lw * y(d)
+              // upper triangle only
+              var e = d
+              while (e < k) {
+                g(d * k + e) += wy * y(e)
+                e += 1
+              }
+              b(d) += rw * y(d)
+              d += 1
+            }
+            nu += 1
+          }
+
+          if (nu > 0) {
+            for (d <- 0 until k; e <- d until k) {
+              mxG(d, e) = g(d * k + e)
+              mxG(e, d) = g(d * k + e)
+            }
+            gramY.foreach(mxG += _)
+            val reg = if (gramY.isDefined) lambda else lambda * nu
+            for (d <- 0 until k) mxG(d, d) += reg
+            xBlock(r, ::) := solve(mxG, dvec(b))
+          }
+        }
+        keys -> xBlock
+    }
+
+  /** Copies row `j` of the factor, routed to a row with observation `a` at column `j`, into `y`. */
+  private def routedRow(row: Vector, n: Int, j: Int, a: Double, y: Array[Double]): Unit = {
+    var d = 0
+    while (d < y.length) {
+      y(d) = row.getQuick((d + 1) * n + j) / a
+      d += 1
+    }
+  }
+
+  /**
+   * Solves each column of A against U for row keys other than Int, where A' only exists as part of
+   * a product: per-column normal equations are A' times the packed upper triangles of U's row outer
+   * products (with the total weight appended), and A' U for the right-hand sides.
+   */
+  private def solvePacked[K](drmA: DrmLike[K], drmU: DrmLike[K], k: Int, lambda: Double,
+      weights: ObservationWeights): DrmLike[Int] = {
+
+    implicit val ktag = drmA.keyClassTag
+    implicit val ctx = drmA.context
+
+    val kk = k * (k + 1) / 2
+
+    val drmLw = drmA(weights.lhs _, AutoBooleanEnum.FALSE)
+    val drmRw = drmA(weights.rhs _, AutoBooleanEnum.FALSE)
+    val drmPacked = drmU.mapBlock(ncol = kk) {
+      case (keys, block) =>
+        val wBlock = new DenseMatrix(block.nrow, kk)
+        for (r <- 0 until block.nrow) {
+          val u = block(r, ::)
+          val w = wBlock(r, ::)
+          var l = 0
+          for (i <- 0 until k; j <- i until k) {
+            w(l) = u(i) * u(j)
+            l += 1
+          }
+        }
+        keys -> wBlock
+    }
+    val gramU = if (weights.implicitFeedback) Some(drmBroadcast((drmU.t %*% drmU).collect)) else None
+
+    ((drmLw.t %*% (drmPacked cbind 1.0)) cbind (drmRw.t %*% drmU)).mapBlock(ncol = k) {
+      case (keys, block) =>
+        val xBlock = new DenseMatrix(block.nrow, k)
+        for (r <- 0 until block.nrow) {
+          val row = block(r, ::)
+          val nu = row(kk)
+
+          if (nu > 0) {
+            val mxG: Matrix = new DenseMatrix(k, k) := new DenseSymmetricMatrix(row(0 until kk))
+            gramU.foreach(mxG += _.value)
+            val reg = if (gramU.isDefined) lambda else lambda * nu
+            for (d <- 0 until k) mxG(d, d) += reg
+            xBlock(r, ::) := solve(mxG, row(kk + 1 until kk + 1 + k))
+          }
+        }
+        keys -> xBlock
+    }
+  }
+
+  /**
+   * RMSE of U %*% V' over non-zero elements of A only, against the ratings or, for implicit
+   * feedback, the preferences. The residuals of each row are computed from its observed entries,
+   * its row of U and the rows of V routed to it.
+   */
+  private def observedRmse[K](drmRoutedV: DrmLike[K], drmU: DrmLike[K], n: Int, k: Int,
+      weights: ObservationWeights): Double = {
+
+    implicit val ktag = drmU.keyClassTag
+
+    val nr = drmRoutedV.ncol
+
+    val drmErr = (drmRoutedV cbind drmU).mapBlock(ncol = 2) {
+      case (keys, block) =>
+        val v = new Array[Double](k)
+        val err = new DenseMatrix(block.nrow, 2)
+        for (r <- 0 until block.nrow) {
+          val row = block(r, ::)
+          val u = row(nr until nr + k)
+          var sse = 0.0
+          var count = 0
+          for (el <- row(0 until n).nonZeroes()) if (el.get != 0.0) {
+            routedRow(row, n, el.index, el.get, v)
+            var prediction = 0.0
+            var d = 0
+            while (d < k) {
+              prediction += u.getQuick(d) * v(d)
+              d += 1
+            }
+            val residual = weights.target(el.get) - prediction
+            sse += residual * residual
+            count += 1
+          }
+          err(r, 0) = sse
+          err(r, 1) = count
+        }
+        keys -> err
+    }
+
+    val sums = drmErr.checkpoint(CacheHint.NONE).colSums()
+    if (sums(1) > 0) sqrt(sums(0) / sums(1)) else 0.0
+  }
 
 }
@@ -19,6 +19,7 @@ package org.apache.mahout.math.decompositions
 
 import scala.math._
 import org.apache.mahout.math.{Matrices, Matrix}
+import org.apache.mahout.math.ssvd.BlockKrylovSvd
 import org.apache.mahout.common.RandomUtils
 import org.apache.log4j.Logger
 import org.apache.mahout.math.scalabindings._
@@ -76,6 +77,23 @@ private[math] object SSVD {
     (u(::, 0 until k), v(::, 0 until k), s(0 until k))
   }
 
+  /**
+   * In-core randomized SVD by block Krylov iterations, see [[BlockKrylovSvd]]. Products with A run in parallel over
+   * blocks of rows, and iterations stop early once the top k singular values settle.
+   *
+   * @param a input matrix A
+   * @param k request SVD rank
+   * @param p oversampling parameter
+   * @param q maximum number of Krylov steps
+   * @param tolerance convergence threshold on singular values, relative to the largest one
+   * @param numThreads number of threads
+   * @return (U,V,s)
+   */
+  def bksvd(a: Matrix, k: Int, p: Int, q: Int, tolerance: Double, numThreads: Int) = {
+    val svd = new BlockKrylovSvd(a, k, p, q, tolerance, numThreads)
+    (svd.getU, svd.getV, svd.getSingularValues)
+  }
+
   /**
    * PCA based on SSVD that runs without forming an always-dense A-(colMeans(A)) input for SVD. This
    * follows the solution outlined in MAHOUT-817. For in-core version it, for most part, is supposed
@@ -19,6 +19,7 @@ package org.apache.mahout.math
 
 import scala.reflect.ClassTag
 import org.apache.mahout.math.drm.DrmLike
+import org.apache.mahout.math.ssvd.BlockKrylovSvd
 
 /**
  * This package holds all decomposition and factorization-like methods, all that we were able to make
@@ -39,6 +40,22 @@ package object decompositions {
    */
   def ssvd(a: Matrix, k: Int, p: Int = 15, q: Int = 0) = SSVD.ssvd(a, k, p, q)
 
+  /**
+   * In-core randomized SVD by block Krylov iterations. Reaches the accuracy of [[ssvd]] with many power iterations
+   * in fewer passes over A, and runs the products with A on several threads.
+   *
+   * @param a input matrix A
+   * @param k request SVD rank
+   * @param p oversampling parameter
+   * @param q maximum number of Krylov steps
+   * @param tolerance stop once no top k singular value changes by more than this, relative to the largest one
+   * @param numThreads number of threads
+   * @return (U,V,s)
+   */
+  def bksvd(a: Matrix, k: Int, p: Int = 15, q: Int = 10, tolerance: Double = BlockKrylovSvd.DEFAULT_TOLERANCE,
+            numThreads: Int = Runtime.getRuntime.availableProcessors()) =
+    SSVD.bksvd(a, k, p, q, tolerance, numThreads)
+
   /**
    * PCA based on SSVD that runs without forming an always-dense A-(colMeans(A)) input for SVD. This
    * follows the solution outlined in MAHOUT-817. For in-core version it, for most part, is supposed
@@ -138,4 +155,30 @@ package object decompositions {
       ): FactorizationResult[K] =
     ALS.dals(drmA, k, lambda, maxIterations, convergenceThreshold)
 
+  /**
+   * Run weighted ALS over the observed (non-zero) entries of A only, optionally with implicit
+   * feedback confidence weighting. See [[ALS.dwals]] for details.
+   *
+   * @param drmA The input matrix; zero elements are considered unobserved
+   * @param k required rank of decomposition (number of cols in U and V results)
+   * @param lambda regularization rate
+   * @param maxIterations maximum iterations to run regardless of convergence
+   * @param convergenceThreshold stop sooner if (rmse[i-1] - rmse[i])/rmse[i - 1] is less than this
+   *                             value. If <=0 then we won't compute RMSE and use convergence test.
+   * @param implicitFeedback if true, treat A as implicit feedback with confidence 1 + alpha * a
+   * @param alpha confidence growth rate for the implicit feedback mode
+   * @tparam K row key type of the input
+   * @return { @link org.apache.mahout.math.drm.decompositions.ALS.Result}
+   */
+  def dwals[K: ClassTag](
+      drmA: DrmLike[K],
+      k: Int = 50,
+      lambda: Double = 0.065,
+      maxIterations: Int = 10,
+      convergenceThreshold: Double = 0.10,
+      implicitFeedback: Boolean = false,
+      alpha: Double = 40.0
+      ): FactorizationResult[K] =
+    ALS.dwals(drmA, k, lambda, maxIterations, convergenceThreshold, implicitFeedback, alpha)
+
 }
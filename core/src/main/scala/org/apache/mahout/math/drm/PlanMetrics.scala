@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.math.drm
+
+import java.io.{File, FileOutputStream, OutputStreamWriter}
+import java.nio.charset.StandardCharsets
+
+import scala.collection.mutable
+
+/**
+ * Snapshot of execution metrics of a single physical operator of a checkpointed plan.
+ *
+ * @param id operator id, unique within the collector lifetime
+ * @param operator operator name (e.g. "OpAtB")
+ * @param parentId id of the enclosing operator or checkpoint, -1 for roots
+ * @param nrow logical row cardinality of the operator result
+ * @param ncol logical column cardinality of the operator result
+ * @param planTimeMs driver time spent translating the operator, including any eager sub-jobs
+ * @param execTimeMs wall time of engine stages attributed to the operator
+ * @param taskTimeMs sum of task run times of engine stages attributed to the operator
+ * @param rows number of rows (or block rows) produced by the operator
+ * @param blocks number of blocks produced by the operator, 0 if it produced row-wise output
+ * @param bytesShuffledRead shuffle bytes read by stages attributed to the operator
+ * @param bytesShuffledWritten shuffle bytes written by stages attributed to the operator
+ * @param bytesBroadcast estimated size of values broadcast while the operator was translated
+ */
+case class OperatorMetrics(
+    id: Int,
+    operator: String,
+    parentId: Int,
+    nrow: Long,
+    ncol: Int,
+    planTimeMs: Long,
+    execTimeMs: Long,
+    taskTimeMs: Long,
+    rows: Long,
+    blocks: Long,
+    bytesShuffledRead: Long,
+    bytesShuffledWritten: Long,
+    bytesBroadcast: Long) {
+
+  /** Driver plus engine time attributed to this operator. */
+  def wallTimeMs: Long = planTimeMs + execTimeMs
+
+  def toJson: String =
+    "{\"id\":%d,\"operator\":\"%s\",\"parentId\":%d,\"nrow\":%d,\"ncol\":%d,\"planTimeMs\":%d,\"execTimeMs\":%d,"
+      .format(id, operator.replace("\\", "\\\\").replace("\"", "\\\""), parentId, nrow, ncol, planTimeMs,
+        execTimeMs) +
+      "\"taskTimeMs\":%d,\"rows\":%d,\"blocks\":%d,\"bytesShuffledRead\":%d,\"bytesShuffledWritten\":%d,"
+        .format(taskTimeMs, rows, blocks, bytesShuffledRead, bytesShuffledWritten) +
+      "\"bytesBroadcast\":%d}".format(bytesBroadcast)
+
+  override def toString: String =
+    "#%d %s(%dx%d) parent=%d wall=%dms (plan=%dms, exec=%dms, tasks=%dms) rows=%d blocks=%d shuffle r/w=%d/%d bcast=%d"
+      .format(id, operator, nrow, ncol, parentId, wallTimeMs, planTimeMs, execTimeMs, taskTimeMs, rows, blocks,
+        bytesShuffledRead, bytesShuffledWritten, bytesBroadcast)
+}
+
+/** Row/block counters an engine attaches to an operator; read lazily since engines update them asynchronously. */
+trait OperatorCounters {
+  def rows: Long
+
+  def blocks: Long
+}
+
+/**
+ * Engine-neutral collector of per-operator execution metrics of Samsara plans.<P>
+ *
+ * Collection is off by default and is switched on either with [[PlanMetrics.enable]] or by setting
+ * [[PlanMetrics.PROPERTY_PLAN_METRICS]] system property to "true". Every checkpoint is recorded as a root
+ * entry timing optimizer rewrite and physical translation. Physical engines add an entry per operator by wrapping
+ * translation of each operator into [[PlanMetrics.operator]] and then attribute engine statistics (stage times,
+ * shuffle and broadcast sizes, row and block counts) to the returned id.<P>
+ *
+ * Since distributed plans are lazily evaluated, execution statistics keep accumulating after the checkpoint; call
+ * [[PlanMetrics.report]] after the actions of interest have run. Translation is assumed to happen on a single
+ * driver thread at a time.
+ */
+object PlanMetrics {
+
+  /** Set to "true" to collect plan metrics from the start. */
+  final val PROPERTY_PLAN_METRICS = "mahout.math.planMetrics"
+
+  /** If set, a json report is written to this file every time [[dumpJson()]] is called without arguments. */
+  final val PROPERTY_PLAN_METRICS_FILE = "mahout.math.planMetrics.file"
+
+  @volatile private var _enabled = System.getProperty(PROPERTY_PLAN_METRICS, "false").toBoolean
+
+  private class Record(val id: Int, val operator: String, val parentId: Int, val nrow: Long, val ncol: Int) {
+    var planTimeMs = 0L
+    var execTimeMs = 0L
+    var taskTimeMs = 0L
+    var bytesShuffledRead = 0L
+    var bytesShuffledWritten = 0L
+    var bytesBroadcast = 0L
+    var counters: Option[OperatorCounters] = None
+  }
+
+  private val records = new mutable.LinkedHashMap[Int, Record]
+  private var nextId = 0
+  private val releaseHooks = new mutable.ArrayBuffer[() ⇒ Unit]
+  private val stack = new ThreadLocal[List[Int]] {
+    override def initialValue(): List[Int] = Nil
+  }
+
+  def enabled: Boolean = _enabled
+
+  def enable(): Unit = _enabled = true
+
+  /** Stop collecting. Engines release their bookkeeping (and listeners); already collected records are kept. */
+  def disable(): Unit = {
+    _enabled = false
+    release()
+  }
+
+  /** Drop everything collected so far, including engine side bookkeeping. */
+  def reset(): Unit = {
+    synchronized {
+      records.clear()
+      nextId = 0
+    }
+    release()
+  }
+
+  /**
+   * Register `hook` to drop engine side state (such as attribution tables or engine listeners) on [[reset]] and
+   * [[disable]]. Engines set it up again the next time they track an operator.
+   */
+  def onRelease(hook: () ⇒ Unit): Unit = synchronized {
+    if (!releaseHooks.exists(_ eq hook)) releaseHooks += hook
+  }
+
+  private def release(): Unit = synchronized(releaseHooks.toList).foreach(_ ())
+
+  /** Id of the operator currently being translated on this thread, if any. */
+  def currentOperator: Option[Int] = stack.get.headOption
+
+  /**
+   * Record translation of `op` performed by `body`. Nested calls become children of the enclosing operator.
+   * Returns the result of `body` along with the operator id, or id -1 if collection is disabled.
+   */
+  def operator[T](op: DrmLike[_], name: String = null)(body: ⇒ T): (T, Int) =
+    if (!_enabled) body → -1
+    else {
+      val opName = Option(name).getOrElse(op.getClass.getSimpleName)
+      val id = register(opName, op.nrow, op.ncol)
+      stack.set(id :: stack.get)
+      val start = System.nanoTime()
+      try {
+        body → id
+      } finally {
+        val elapsed = (System.nanoTime() - start) / 1000000L
+        stack.set(stack.get.tail)
+        update(id)(_.planTimeMs += elapsed)
+      }
+    }
+
+  private def register(name: String, nrow: Long, ncol: Int): Int = synchronized {
+    val id = nextId
+    nextId += 1
+    records += id → new Record(id, name, currentOperator.getOrElse(-1), nrow, ncol)
+    id
+  }
+
+  private def update(id: Int)(f: Record ⇒ Unit): Unit = if (id >= 0) synchronized {
+    records.get(id).foreach(f)
+  }
+
+  def attachCounters(id: Int, counters: OperatorCounters): Unit = update(id)(_.counters = Some(counters))
+
+  def addExecTime(id: Int, wallMs: Long, taskMs: Long): Unit = update(id) { r ⇒
+    r.execTimeMs += wallMs
+    r.taskTimeMs += taskMs
+  }
+
+  def addShuffle(id: Int, bytesRead: Long, bytesWritten: Long): Unit = update(id) { r ⇒
+    r.bytesShuffledRead += bytesRead
+    r.bytesShuffledWritten += bytesWritten
+  }
+
+  /** Attribute a broadcast to the operator currently being translated, if any. */
+  def addBroadcast(bytes: Long): Unit = currentOperator.foreach(id ⇒ update(id)(_.bytesBroadcast += bytes))
+
+  /** Snapshot of all operators recorded so far, in translation order. */
+  def report: Seq[OperatorMetrics] = synchronized {
+    records.values.map { r ⇒
+      OperatorMetrics(id = r.id, operator = r.operator, parentId = r.parentId, nrow = r.nrow, ncol = r.ncol,
+        planTimeMs = r.planTimeMs, execTimeMs = r.execTimeMs, taskTimeMs = r.taskTimeMs,
+        rows = r.counters.map(_.rows).getOrElse(0L), blocks = r.counters.map(_.blocks).getOrElse(0L),
+        bytesShuffledRead = r.bytesShuffledRead, bytesShuffledWritten = r.bytesShuffledWritten,
+        bytesBroadcast = r.bytesBroadcast)
+    }.toList
+  }
+
+  def toJson: String = report.map(_.toJson).mkString("[", ",\n", "]")
+
+  /** Write json report to `path`. */
+  def dumpJson(path: String): Unit = {
+    val w = new OutputStreamWriter(new FileOutputStream(new File(path)), StandardCharsets.UTF_8)
+    try w.write(toJson) finally w.close()
+  }
+
+  /** Write json report to the file named by [[PROPERTY_PLAN_METRICS_FILE]], if set. */
+  def dumpJson(): Unit = Option(System.getProperty(PROPERTY_PLAN_METRICS_FILE)).foreach(dumpJson(_))
+
+}
@@ -37,8 +37,10 @@ abstract class CheckpointAction[K] extends DrmLike[K] {
   def checkpoint(cacheHint: CacheHint.CacheHint): CheckpointedDrm[K] = cp match {
     case None =>
       implicit val cpTag = this.keyClassTag
-      val plan = context.optimizerRewrite(this)
-      val physPlan = context.toPhysical(plan, cacheHint)
+      val (physPlan, _) = PlanMetrics.operator(this, "checkpoint") {
+        val plan = context.optimizerRewrite(this)
+        context.toPhysical(plan, cacheHint)
+      }
       cp = Some(physPlan)
       physPlan
     case Some(cp) => cp
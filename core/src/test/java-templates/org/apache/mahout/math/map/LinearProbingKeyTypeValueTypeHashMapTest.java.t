@@ -0,0 +1,522 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+ 
+#if (${keyTypeFloating} == 'true')
+#set ($keyEpsilon = ", (${keyType})0.000001")
+#else 
+#set ($keyEpsilon = "")
+#end
+#if (${valueTypeFloating} == 'true')
+#set ($valueEpsilon = ", (${valueType})0.000001")
+#else 
+#set ($valueEpsilon = "")
+#end
+  
+ package org.apache.mahout.math.map;
+ 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.math.function.${keyTypeCap}${valueTypeCap}Procedure;
+import org.apache.mahout.math.function.${keyTypeCap}Procedure;
+import org.apache.mahout.math.list.${keyTypeCap}ArrayList;
+#if (${keyType} != ${valueType})
+import org.apache.mahout.math.list.${valueTypeCap}ArrayList;
+#end
+import org.apache.mahout.math.set.AbstractSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LinearProbing${keyTypeCap}${valueTypeCap}HashMapTest extends Assert {
+
+  
+  @Test
+  public void testConstructors() {
+    LinearProbing${keyTypeCap}${valueTypeCap}HashMap map = new LinearProbing${keyTypeCap}${valueTypeCap}HashMap();
+    int[] capacity = new int[1];
+    double[] minLoadFactor = new double[1];
+    double[] maxLoadFactor = new double[1];
+    
+    map.getInternalFactors(capacity, minLoadFactor, maxLoadFactor);
+    assertEquals(512, capacity[0]);
+    assertEquals(AbstractSet.DEFAULT_MAX_LOAD_FACTOR, maxLoadFactor[0], 0.001);
+    assertEquals(AbstractSet.DEFAULT_MIN_LOAD_FACTOR, minLoadFactor[0], 0.001);
+    map = new LinearProbing${keyTypeCap}${valueTypeCap}HashMap(1024);
+    
+    map.getInternalFactors(capacity, minLoadFactor, maxLoadFactor);
+    assertEquals(1024, capacity[0]);
+    assertEquals(AbstractSet.DEFAULT_MAX_LOAD_FACTOR, maxLoadFactor[0], 0.001);
+    assertEquals(AbstractSet.DEFAULT_MIN_LOAD_FACTOR, minLoadFactor[0], 0.001);
+    
+    map = new LinearProbing${keyTypeCap}${valueTypeCap}HashMap(907, 0.4, 0.8);
+    map.getInternalFactors(capacity, minLoadFactor, maxLoadFactor);
+    assertEquals(1024, capacity[0]);
+    assertEquals(0.4, minLoadFactor[0], 0.001);
+    assertEquals(0.8, maxLoadFactor[0], 0.001);
+  }
+  
+  @Test
+  public void testEnsureCapacity() {
+    LinearProbing${keyTypeCap}${valueTypeCap}HashMap map = new LinearProbing${keyTypeCap}${valueTypeCap}HashMap();
+    map.ensureCapacity(907);
+    int[] capacity = new int[1];
+    double[] minLoadFactor = new double[1];
+    double[] maxLoadFactor = new double[1];
+    
+    map.getInternalFactors(capacity, minLoadFactor, maxLoadFactor);
+    assertEquals(1024, capacity[0]);
+  }
+  
+  @Test
+  public void testClear() {
+    LinearProbing${keyTypeCap}${valueTypeCap}HashMap map = new LinearProbing${keyTypeCap}${valueTypeCap}HashMap();
+    map.put((${keyType}) 11, (${valueType}) 22);
+    assertEquals(1, map.size());
+    map.clear();
+    assertEquals(0, map.size());
+    assertEquals(0, map.get((${keyType}) 11), 0.0000001);
+  }
+  
+  @Test
+  public void testClone() {
+    LinearProbing${keyTypeCap}${valueTypeCap}HashMap map = new LinearProbing${keyTypeCap}${valueTypeCap}HashMap();
+    map.put((${keyType}) 11, (${valueType}) 22);
+    LinearProbing${keyTypeCap}${valueTypeCap}HashMap map2 = (LinearProbing${keyTypeCap}${valueTypeCap}HashMap) map.clone();
+    map.clear();
+    assertEquals(1, map2.size());
+  }
+  
+  @Test
+  public void testContainsKey() {
+    LinearProbing${keyTypeCap}${valueTypeCap}HashMap map = new LinearProbing${keyTypeCap}${valueTypeCap}HashMap();
+    map.put(($keyType) 11, (${valueType}) 22);
+    assertTrue(map.containsKey(($keyType) 11));
+    assertFalse(map.containsKey(($keyType) 12));
+  }
+  
+  @Test
+  public void testContainValue() {
+    LinearProbing${keyTypeCap}${valueTypeCap}HashMap map = new LinearProbing${keyTypeCap}${valueTypeCap}HashMap();
+    map.put(($keyType) 11, (${valueType}) 22);
+    assertTrue(map.containsValue((${valueType}) 22));
+    assertFalse(map.containsValue((${valueType}) 23));
+  }
+  
+  @Test
+  public void testForEachKey() {
+    final ${keyTypeCap}ArrayList keys = new ${keyTypeCap}ArrayList();
+    LinearProbing${keyTypeCap}${valueTypeCap}HashMap map = new LinearProbing${keyTypeCap}${valueTypeCap}HashMap();
+    map.put(($keyType) 11, (${valueType}) 22);
+    map.put(($keyType) 12, (${valueType}) 23);
+    map.put(($keyType) 13, (${valueType}) 24);
+    map.put(($keyType) 14, (${valueType}) 25);
+    map.removeKey(($keyType) 13);
+    map.forEachKey(new ${keyTypeCap}Procedure() {
+      
+      @Override
+      public boolean apply(${keyType} element) {
+        keys.add(element);
+        return true;
+      }
+    });
+    
+    ${keyType}[] keysArray = keys.toArray(new ${keyType}[keys.size()]);
+    Arrays.sort(keysArray);
+    
+    assertArrayEquals(new ${keyType}[] {11, 12, 14}, keysArray ${keyEpsilon});
+  }
+  
+  private static class Pair implements Comparable<Pair> {
+    ${keyType} k;
+    ${valueType} v;
+    
+    Pair(${keyType} k, ${valueType} v) {
+      this.k = k;
+      this.v = v;
+    }
+    
+    @Override
+    public int compareTo(Pair o) {
+      if (k < o.k) {
+        return -1;
+      } else if (k == o.k) {
+        return 0;
+      } else {
+        return 1;
+      }
+    }
+  }
+  
+  @Test
+  public void testForEachPair() {
+    final List<Pair> pairs = new ArrayList<Pair>();
+    LinearProbing${keyTypeCap}${valueTypeCap}HashMap map = new LinearProbing${keyTypeCap}${valueTypeCap}HashMap();
+    map.put(($keyType) 11, (${valueType}) 22);
+    map.put(($keyType) 12, (${valueType}) 23);
+    map.put(($keyType) 13, (${valueType}) 24);
+    map.put(($keyType) 14, (${valueType}) 25);
+    map.removeKey(($keyType) 13);
+    map.forEachPair(new ${keyTypeCap}${valueTypeCap}Procedure() {
+      
+      @Override
+      public boolean apply(${keyType} first, ${valueType} second) {
+        pairs.add(new Pair(first, second));
+        return true;
+      }
+    });
+    
+    Collections.sort(pairs);
+    assertEquals(3, pairs.size());
+    assertEquals(($keyType) 11, pairs.get(0).k ${keyEpsilon});
+    assertEquals((${valueType}) 22, pairs.get(0).v ${valueEpsilon});
+    assertEquals(($keyType) 12, pairs.get(1).k ${keyEpsilon});
+    assertEquals((${valueType}) 23, pairs.get(1).v ${valueEpsilon});
+    assertEquals(($keyType) 14, pairs.get(2).k ${keyEpsilon});
+    assertEquals((${valueType}) 25, pairs.get(2).v ${valueEpsilon});
+    
+    pairs.clear();
+    map.forEachPair(new ${keyTypeCap}${valueTypeCap}Procedure() {
+      int count = 0;
+      
+      @Override
+      public boolean apply(${keyType} first, ${valueType} second) {
+        pairs.add(new Pair(first, second));
+        count++;
+        return count < 2;
+      }
+    });
+    
+    assertEquals(2, pairs.size());
+  }
+  
+  @Test
+  public void testGet() {
+    LinearProbing${keyTypeCap}${valueTypeCap}HashMap map = new LinearProbing${keyTypeCap}${valueTypeCap}HashMap();
+    map.put(($keyType) 11, (${valueType}) 22);
+    map.put(($keyType) 12, (${valueType}) 23);
+    assertEquals(22, map.get(($keyType)11) ${valueEpsilon});
+    assertEquals(0, map.get(($keyType)0) ${valueEpsilon});
+  }
+  
+  @Test
+  public void testAdjustOrPutValue() {
+   LinearProbing${keyTypeCap}${valueTypeCap}HashMap map = new LinearProbing${keyTypeCap}${valueTypeCap}HashMap();
+    map.put(($keyType) 11, (${valueType}) 22);
+    map.put(($keyType) 12, (${valueType}) 23);
+    map.put(($keyType) 13, (${valueType}) 24);
+    map.put(($keyType) 14, (${valueType}) 25);
+    map.adjustOrPutValue((${keyType})11, (${valueType})1, (${valueType})3);
+    assertEquals(25, map.get((${keyType})11) ${valueEpsilon});
+    map.adjustOrPutValue((${keyType})15, (${valueType})1, (${valueType})3);
+    assertEquals(1, map.get((${keyType})15) ${valueEpsilon});
+  }
+  
+  @Test
+  public void testKeys() {
+    LinearProbing${keyTypeCap}${valueTypeCap}HashMap map = new LinearProbing${keyTypeCap}${valueTypeCap}HashMap();
+    map.put(($keyType) 11, (${valueType}) 22);
+    map.put(($keyType) 12, (${valueType}) 22);
+    ${keyTypeCap}ArrayList keys = new ${keyTypeCap}ArrayList();
+    map.keys(keys);
+    keys.sort();
+    assertEquals(11, keys.get(0) ${keyEpsilon});
+    assertEquals(12, keys.get(1) ${keyEpsilon});
+    ${keyTypeCap}ArrayList k2 = map.keys();
+    k2.sort();
+    assertEquals(keys, k2);
+  }
+  
+  @Test
+  public void testPairsMatching() {
+    ${keyTypeCap}ArrayList keyList = new ${keyTypeCap}ArrayList();
+    ${valueTypeCap}ArrayList valueList = new ${valueTypeCap}ArrayList();
+    LinearProbing${keyTypeCap}${valueTypeCap}HashMap map = new LinearProbing${keyTypeCap}${valueTypeCap}HashMap();
+    map.put(($keyType) 11, (${valueType}) 22);
+    map.put(($keyType) 12, (${valueType}) 23);
+    map.put(($keyType) 13, (${valueType}) 24);
+    map.put(($keyType) 14, (${valueType}) 25);
+    map.removeKey(($keyType) 13);
+    map.pairsMatching(new ${keyTypeCap}${valueTypeCap}Procedure() {
+
+      @Override
+      public boolean apply(${keyType} first, ${valueType} second) {
+        return (first % 2) == 0;
+      }},
+        keyList, valueList);
+    keyList.sort();
+    valueList.sort();
+    assertEquals(2, keyList.size());
+    assertEquals(2, valueList.size());
+    assertEquals(12, keyList.get(0) ${keyEpsilon});
+    assertEquals(14, keyList.get(1) ${keyEpsilon});
+    assertEquals(23, valueList.get(0) ${valueEpsilon});
+    assertEquals(25, valueList.get(1) ${valueEpsilon});
+  }
+  
+  @Test
+  public void testValues() {
+    LinearProbing${keyTypeCap}${valueTypeCap}HashMap map = new LinearProbing${keyTypeCap}${valueTypeCap}HashMap();
+    map.put(($keyType) 11, (${valueType}) 22);
+    map.put(($keyType) 12, (${valueType}) 23);
+    map.put(($keyType) 13, (${valueType}) 24);
+    map.put(($keyType) 14, (${valueType}) 25);
+    map.removeKey(($keyType) 13);
+    ${valueTypeCap}ArrayList values = new ${valueTypeCap}ArrayList(100);
+    map.values(values);
+    assertEquals(3, values.size());
+    values.sort();
+    assertEquals(22, values.get(0) ${valueEpsilon});
+    assertEquals(23, values.get(1) ${valueEpsilon});
+    assertEquals(25, values.get(2) ${valueEpsilon});
+  }
+  
+  // tests of the code in the abstract class
+  
+  @Test
+  public void testCopy() {
+    LinearProbing${keyTypeCap}${valueTypeCap}HashMap map = new LinearProbing${keyTypeCap}${valueTypeCap}HashMap();
+    map.put(($keyType) 11, (${valueType}) 22);
+    LinearProbing${keyTypeCap}${valueTypeCap}HashMap map2 = (LinearProbing${keyTypeCap}${valueTypeCap}HashMap) map.copy();
+    map.clear();
+    assertEquals(1, map2.size());
+  }
+  
+  @Test
+  public void testEquals() {
+    // since there are no other subclasses of 
+    // Abstractxxx available, we have to just test the
+    // obvious.
+    LinearProbing${keyTypeCap}${valueTypeCap}HashMap map = new LinearProbing${keyTypeCap}${valueTypeCap}HashMap();
+    map.put(($keyType) 11, (${valueType}) 22);
+    map.put(($keyType) 12, (${valueType}) 23);
+    map.put(($keyType) 13, (${valueType}) 24);
+    map.put(($keyType) 14, (${valueType}) 25);
+    map.removeKey(($keyType) 13);
+    LinearProbing${keyTypeCap}${valueTypeCap}HashMap map2 = (LinearProbing${keyTypeCap}${valueTypeCap}HashMap) map.copy();
+    assertEquals(map, map2);
+    assertTrue(map2.equals(map));
+    assertFalse("Hello Sailor".equals(map));
+    assertFalse(map.equals("hello sailor"));
+    map2.removeKey(($keyType) 11);
+    assertFalse(map.equals(map2));
+    assertFalse(map2.equals(map));
+  }
+  
+  // keys() tested in testKeys
+  
+  @Test
+  public void testKeysSortedByValue() {
+    LinearProbing${keyTypeCap}${valueTypeCap}HashMap map = new LinearProbing${keyTypeCap}${valueTypeCap}HashMap();
+    map.put(($keyType) 11, (${valueType}) 22);
+    map.put(($keyType) 12, (${valueType}) 23);
+    map.put(($keyType) 13, (${valueType}) 24);
+    map.put(($keyType) 14, (${valueType}) 25);
+    map.removeKey(($keyType) 13);
+    ${keyTypeCap}ArrayList keys = new ${keyTypeCap}ArrayList();
+    map.keysSortedByValue(keys);
+    ${keyType}[] keysArray = keys.toArray(new ${keyType}[keys.size()]);
+    assertArrayEquals(new ${keyType}[] {11, 12, 14},
+        keysArray ${keyEpsilon});
+  }
+  
+  @Test
+  public void testPairsSortedByKey() {
+    LinearProbing${keyTypeCap}${valueTypeCap}HashMap map = new LinearProbing${keyTypeCap}${valueTypeCap}HashMap();
+    map.put(($keyType) 11, (${valueType}) 100);
+    map.put(($keyType) 12, (${valueType}) 70);
+    map.put(($keyType) 13, (${valueType}) 30);
+    map.put(($keyType) 14, (${valueType}) 3);
+    
+    ${keyTypeCap}ArrayList keys = new ${keyTypeCap}ArrayList();
+    ${valueTypeCap}ArrayList values = new ${valueTypeCap}ArrayList();
+    map.pairsSortedByKey(keys, values);
+    
+    assertEquals(4, keys.size());
+    assertEquals(4, values.size());
+    assertEquals(($keyType) 11, keys.get(0) ${keyEpsilon});
+    assertEquals((${valueType}) 100, values.get(0) ${valueEpsilon});
+    assertEquals(($keyType) 12, keys.get(1) ${keyEpsilon});
+    assertEquals((${valueType}) 70, values.get(1) ${valueEpsilon});
+    assertEquals(($keyType) 13, keys.get(2) ${keyEpsilon});
+    assertEquals((${valueType}) 30, values.get(2) ${valueEpsilon});
+    assertEquals(($keyType) 14, keys.get(3) ${keyEpsilon});
+    assertEquals((${valueType}) 3, values.get(3) ${valueEpsilon});
+    keys.clear();
+    values.clear();
+    map.pairsSortedByValue(keys, values);
+    assertEquals(($keyType) 11, keys.get(3) ${keyEpsilon});
+    assertEquals((${valueType}) 100, values.get(3) ${valueEpsilon});
+    assertEquals(($keyType) 12, keys.get(2) ${keyEpsilon});
+    assertEquals((${valueType}) 70, values.get(2) ${valueEpsilon});
+    assertEquals(($keyType) 13, keys.get(1) ${keyEpsilon});
+    assertEquals((${valueType}) 30, values.get(1) ${valueEpsilon});
+    assertEquals(($keyType) 14, keys.get(0) ${keyEpsilon});
+    assertEquals(($valueType) 3, values.get(0) ${valueEpsilon});
+  }
+
+  @Test
+  public void testZeroKey() {
+    LinearProbing${keyTypeCap}${valueTypeCap}HashMap map = new LinearProbing${keyTypeCap}${valueTypeCap}HashMap();
+    map.put(($keyType) 11, (${valueType}) 22);
+    assertFalse(map.containsKey(($keyType) 0));
+    assertTrue(map.put(($keyType) 0, (${valueType}) 7));
+    assertFalse(map.put(($keyType) 0, (${valueType}) 8));
+    assertEquals(2, map.size());
+    assertTrue(map.containsKey(($keyType) 0));
+    assertTrue(map.containsValue((${valueType}) 8));
+    assertEquals(8, map.get(($keyType) 0) ${valueEpsilon});
+    ${keyTypeCap}ArrayList keys = map.keys();
+    keys.sort();
+    assertEquals(0, keys.get(0) ${keyEpsilon});
+    assertEquals(11, keys.get(1) ${keyEpsilon});
+    assertTrue(map.removeKey(($keyType) 0));
+    assertFalse(map.removeKey(($keyType) 0));
+    assertEquals(1, map.size());
+    assertEquals(0, map.get(($keyType) 0) ${valueEpsilon});
+  }
+
+  @Test
+  public void testZeroKeySurvivesRehash() {
+    LinearProbing${keyTypeCap}${valueTypeCap}HashMap map = new LinearProbing${keyTypeCap}${valueTypeCap}HashMap(0);
+    map.put(($keyType) 0, (${valueType}) 7);
+    for (int i = 1; i < 100; i++) {
+      map.put((${keyType}) i, (${valueType}) 1);
+    }
+    assertTrue(map.containsKey(($keyType) 0));
+    assertEquals(7, map.get(($keyType) 0) ${valueEpsilon});
+    for (int i = 1; i < 100; i++) {
+      map.removeKey((${keyType}) i);
+    }
+    assertEquals(1, map.size());
+    assertEquals(7, map.get(($keyType) 0) ${valueEpsilon});
+    assertEquals(0, map.keys().get(0) ${keyEpsilon});
+  }
+
+#if (${keyTypeFloating} == 'true')
+  @Test
+  public void testNegativeZeroAndNaNKeys() {
+    LinearProbing${keyTypeCap}${valueTypeCap}HashMap map = new LinearProbing${keyTypeCap}${valueTypeCap}HashMap();
+    map.put(($keyType) 0, (${valueType}) 1);
+    assertFalse(map.containsKey(-(${keyType}) 0));
+    assertTrue(map.put(-(${keyType}) 0, (${valueType}) 2));
+    assertTrue(map.put(${keyObjectType}.NaN, (${valueType}) 3));
+    assertEquals(3, map.size());
+    assertEquals(1, map.get(($keyType) 0) ${valueEpsilon});
+    assertEquals(2, map.get(-(${keyType}) 0) ${valueEpsilon});
+    assertEquals(3, map.get(${keyObjectType}.NaN) ${valueEpsilon});
+    assertTrue(map.removeKey(($keyType) 0));
+    assertEquals(2, map.get(-(${keyType}) 0) ${valueEpsilon});
+    assertTrue(map.removeKey(${keyObjectType}.NaN));
+    assertFalse(map.containsKey(${keyObjectType}.NaN));
+    assertEquals(1, map.size());
+  }
+
+#end
+  @Test
+  public void testIterator() {
+    LinearProbing${keyTypeCap}${valueTypeCap}HashMap map = new LinearProbing${keyTypeCap}${valueTypeCap}HashMap();
+    map.put(($keyType) 0, (${valueType}) 1);
+    map.put(($keyType) 11, (${valueType}) 22);
+    map.put(($keyType) 12, (${valueType}) 23);
+    final List<Pair> pairs = new ArrayList<Pair>();
+    Iterator<LinearProbing${keyTypeCap}${valueTypeCap}HashMap.MapElement> it = map.iterator();
+    while (it.hasNext()) {
+      LinearProbing${keyTypeCap}${valueTypeCap}HashMap.MapElement element = it.next();
+      pairs.add(new Pair(element.index(), element.get()));
+      element.set((${valueType}) (element.get() + 1));
+    }
+    Collections.sort(pairs);
+    assertEquals(3, pairs.size());
+    assertEquals(0, pairs.get(0).k ${keyEpsilon});
+    assertEquals(23, pairs.get(2).v ${valueEpsilon});
+    assertEquals(24, map.get(($keyType) 12) ${valueEpsilon});
+  }
+
+  /**
+   * Applies the same random operations to this map and to {@link Open${keyTypeCap}${valueTypeCap}HashMap}. Removals
+   * shift entries back, so the table must not need to grow under steady churn.
+   */
+  @Test
+  public void testAgainstOpenHashMap() {
+    Random random = RandomUtils.getRandom();
+    LinearProbing${keyTypeCap}${valueTypeCap}HashMap map = new LinearProbing${keyTypeCap}${valueTypeCap}HashMap();
+    Open${keyTypeCap}${valueTypeCap}HashMap reference = new Open${keyTypeCap}${valueTypeCap}HashMap();
+    for (int i = 0; i < 20000; i++) {
+      ${keyType} key = (${keyType}) random.nextInt(100);
+      ${valueType} value = (${valueType}) random.nextInt(100);
+      switch (random.nextInt(4)) {
+        case 0:
+          assertEquals(reference.put(key, value), map.put(key, value));
+          break;
+        case 1:
+          assertEquals(reference.removeKey(key), map.removeKey(key));
+          break;
+        case 2:
+          assertEquals(reference.adjustOrPutValue(key, value, (${valueType}) 1),
+              map.adjustOrPutValue(key, value, (${valueType}) 1) ${valueEpsilon});
+          break;
+        default:
+          assertEquals(reference.containsKey(key), map.containsKey(key));
+          assertEquals(reference.get(key), map.get(key) ${valueEpsilon});
+          break;
+      }
+      assertEquals(reference.size(), map.size());
+    }
+    assertEquals(reference, map);
+    assertEquals(map, reference);
+
+    int[] capacity = new int[1];
+    map.getInternalFactors(capacity, new double[1], new double[1]);
+    assertTrue(capacity[0] <= 512);
+  }
+
+  @Test
+  public void testGrowAndShrink() {
+    LinearProbing${keyTypeCap}${valueTypeCap}HashMap map = new LinearProbing${keyTypeCap}${valueTypeCap}HashMap(0);
+    int n = (int) Math.min(10000, ${keyObjectType}.MAX_VALUE);
+    for (int i = 0; i < n; i++) {
+      map.put((${keyType}) i, (${valueType}) i);
+    }
+    assertEquals(n, map.size());
+    for (int i = 0; i < n; i++) {
+      assertEquals((${valueType}) i, map.get((${keyType}) i) ${valueEpsilon});
+    }
+    for (int i = 0; i < n; i += 2) {
+      assertTrue(map.removeKey((${keyType}) i));
+    }
+    for (int i = 0; i < n; i++) {
+      assertEquals(i % 2 == 1, map.containsKey((${keyType}) i));
+    }
+    for (int i = 1; i < n; i += 2) {
+      assertTrue(map.removeKey((${keyType}) i));
+    }
+    assertTrue(map.isEmpty());
+
+    int[] capacity = new int[1];
+    map.getInternalFactors(capacity, new double[1], new double[1]);
+    assertTrue(capacity[0] < 512);
+  }
+
+}
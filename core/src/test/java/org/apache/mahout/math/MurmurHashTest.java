@@ -41,6 +41,26 @@ public class MurmurHashTest extends org.apache.mahout.math.MahoutTestCase {
     Assert.assertEquals(0xcd37895736a81cbcL, MurmurHash.hash64A("abc def ghi jkl moreGoo".getBytes(Charsets.UTF_8), 0));
   }
 
+  @Test
+  public void testHash64Offset() {
+    byte[] data = "xxabc def ghi jkl moreGooyy".getBytes(Charsets.UTF_8);
+    Assert.assertEquals(0xcd37895736a81cbcL, MurmurHash.hash64A(data, 2, data.length - 4, 0));
+  }
+
+  @Test
+  public void testHash64CharSequence() {
+    String[] strings = {"", "a", "abc", "abcdefg", "abcdefgh", "abc def ghi jkl moreGoo", "caf\u00e9 na\u00efve",
+      "\u65e5\u672c\u8a9e\u306e\u30c6\u30ad\u30b9\u30c8", "smile \ud83d\ude00 now", "\ud83d\ude00",
+      "lone \ud800 high", "lone \udc00 low", "trailing \ud800", "\ud800\ud800\udc00", "\u07ff\u0800\uffff"};
+    for (String s : strings) {
+      for (int seed = 0; seed < 3; seed++) {
+        long expected = MurmurHash.hash64A(s.getBytes(Charsets.UTF_8), seed);
+        Assert.assertEquals(s, expected, MurmurHash.hash64A(s, seed));
+        Assert.assertEquals(s, expected, MurmurHash.hash64A(new StringBuilder(s), seed));
+      }
+    }
+  }
+
   @Test
   public void testForLotsOfChange32() throws UnsupportedEncodingException {
     int h1 = MurmurHash.hash("abc".getBytes(Charsets.UTF_8), 0);
@@ -44,4 +44,18 @@ public final class TestDenseVector extends AbstractVectorTest<DenseVector> {
   public void testToString() {
     super.testToString();
   }
+
+  @Test
+  public void testDotOfViews() {
+    Vector v = vectorToTest(27);
+    // Lengths that are not a multiple of the unrolled step, from the same and from different vectors
+    for (int length = 1; length <= 9; length++) {
+      Vector x = v.viewPart(3, length);
+      Vector y = v.viewPart(16, length);
+      Vector z = vectorToTest(length + 2).viewPart(2, length);
+      assertEquals(new DenseVector(x).dot(new DenseVector(y)), x.dot(y), EPSILON);
+      assertEquals(new DenseVector(x).dot(new DenseVector(z)), x.dot(z), EPSILON);
+      assertEquals(new DenseVector(x).dot(new DenseVector(y)), x.dot(new DenseVector(y)), EPSILON);
+    }
+  }
 }
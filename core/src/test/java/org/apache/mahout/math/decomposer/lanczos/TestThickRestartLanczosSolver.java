@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.math.decomposer.lanczos;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.MatrixSlice;
+import org.apache.mahout.math.SingularValueDecomposition;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.VectorIterable;
+import org.apache.mahout.math.decomposer.SolverTest;
+import org.apache.mahout.math.solver.EigenDecomposition;
+import org.junit.Test;
+
+public final class TestThickRestartLanczosSolver extends SolverTest {
+
+  @Test
+  public void testSymmetric() {
+    Matrix corpus = randomSymmetricSparseMatrix(400);
+    int rank = 6;
+    LanczosState state = new LanczosState(corpus, rank, startVector(400));
+    ThickRestartLanczosSolver solver = new ThickRestartLanczosSolver(20, 500, 1.0e-10, 2);
+    solver.solve(state, rank, true);
+
+    Vector decomposition = new EigenDecomposition(corpus, true).getRealEigenvalues();
+    double[] eigenvalues = new double[decomposition.size()];
+    for (int i = 0; i < eigenvalues.length; i++) {
+      eigenvalues[i] = decomposition.get(i);
+    }
+    Arrays.sort(eigenvalues);
+    double largest = Math.max(Math.abs(eigenvalues[0]), eigenvalues[eigenvalues.length - 1]);
+    // clustered spectrum, so the basis cannot hold the answer without restarts
+    assertTrue(solver.getRestarts() > 0);
+    for (int i = 0; i < rank; i++) {
+      assertEquals(eigenvalues[eigenvalues.length - 1 - i], state.getSingularValue(i), 1.0e-8 * largest);
+      Vector v = state.getRightSingularVector(i);
+      Vector residual = corpus.times(v).minus(v.times(state.getSingularValue(i)));
+      assertEquals(0, residual.norm(2), 1.0e-6 * largest);
+      for (int j = 0; j < i; j++) {
+        assertEquals(0, v.dot(state.getRightSingularVector(j)), 1.0e-8);
+      }
+    }
+  }
+
+  @Test
+  public void testSingularValues() {
+    Matrix corpus = randomHierarchicalMatrix(400, 300, false);
+    int rank = 10;
+    LanczosState state = new LanczosState(corpus, rank, startVector(300));
+    ThickRestartLanczosSolver solver = new ThickRestartLanczosSolver(25, 100, 1.0e-10, 4);
+    solver.solve(state, rank, false);
+
+    double[] singularValues = new SingularValueDecomposition(corpus).getSingularValues();
+    for (int i = 0; i < rank; i++) {
+      assertEquals(singularValues[i], state.getSingularValue(i), 1.0e-6 * singularValues[i]);
+      assertEigen(i, state.getRightSingularVector(i), corpus, 1.0e-8, false);
+    }
+  }
+
+  @Test
+  public void testStreamedCorpus() {
+    Matrix corpus = randomSymmetricSparseMatrix(300);
+    int rank = 4;
+    LanczosState inMemory = new LanczosState(corpus, rank, startVector(300));
+    new ThickRestartLanczosSolver(15, 500, 1.0e-10, 1).solve(inMemory, rank, false);
+    LanczosState streamed = new LanczosState(new RowStream(corpus), rank, startVector(300));
+    new ThickRestartLanczosSolver(15, 500, 1.0e-10, 3).solve(streamed, rank, false);
+
+    for (int i = 0; i < rank; i++) {
+      assertEquals(inMemory.getSingularValue(i), streamed.getSingularValue(i), 1.0e-8 * inMemory.getSingularValue(0));
+      assertEquals(1, Math.abs(inMemory.getRightSingularVector(i).dot(streamed.getRightSingularVector(i))), 1.0e-6);
+    }
+  }
+
+  private static Vector startVector(int size) {
+    return new DenseVector(size).assign(1.0 / Math.sqrt(size));
+  }
+
+  private static Matrix randomSymmetricSparseMatrix(int size) {
+    Matrix m = randomSequentialAccessSparseMatrix(size, size, size, 5, 1.0);
+    return m.plus(m.transpose());
+  }
+
+  /**
+   * Hides that the corpus is a matrix, so that rows are read through its iterator.
+   */
+  private static final class RowStream implements VectorIterable {
+    private final Matrix matrix;
+
+    private RowStream(Matrix matrix) {
+      this.matrix = matrix;
+    }
+
+    @Override
+    public Iterator<MatrixSlice> iterateAll() {
+      return matrix.iterateAll();
+    }
+
+    @Override
+    public Iterator<MatrixSlice> iterateNonEmpty() {
+      return matrix.iterateNonEmpty();
+    }
+
+    @Override
+    public Iterator<MatrixSlice> iterator() {
+      return matrix.iterator();
+    }
+
+    @Override
+    public int numSlices() {
+      return matrix.numSlices();
+    }
+
+    @Override
+    public int numRows() {
+      return matrix.numRows();
+    }
+
+    @Override
+    public int numCols() {
+      return matrix.numCols();
+    }
+
+    @Override
+    public Vector times(Vector v) {
+      return matrix.times(v);
+    }
+
+    @Override
+    public Vector timesSquared(Vector v) {
+      return matrix.timesSquared(v);
+    }
+  }
+}
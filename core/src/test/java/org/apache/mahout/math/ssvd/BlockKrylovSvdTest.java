@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.math.ssvd;
+
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.DiagonalMatrix;
+import org.apache.mahout.math.MahoutTestCase;
+import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.RandomTrinaryMatrix;
+import org.apache.mahout.math.SingularValueDecomposition;
+import org.apache.mahout.math.SparseRowMatrix;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.function.Functions;
+import org.junit.Test;
+
+import java.util.Random;
+
+public final class BlockKrylovSvdTest extends MahoutTestCase {
+
+  @Test
+  public void testLowRank() {
+    Matrix u = new RandomTrinaryMatrix(1, 20, 4, false);
+    Matrix d = new DiagonalMatrix(new double[]{5, 3, 1, 0.5});
+    Matrix v = new RandomTrinaryMatrix(2, 23, 4, false);
+    Matrix a = u.times(d).times(v.transpose());
+
+    BlockKrylovSvd s = new BlockKrylovSvd(a, 4, 2, 5, BlockKrylovSvd.DEFAULT_TOLERANCE, 2);
+    SingularValueDecomposition svd = new SingularValueDecomposition(a);
+
+    Vector reference = new DenseVector(svd.getSingularValues()).viewPart(0, 4);
+    assertEquals(0, reference.minus(s.getSingularValues()).aggregate(Functions.MAX, Functions.ABS), 1.0e-10);
+    Matrix reconstructed = s.getU().times(new DiagonalMatrix(s.getSingularValues())).times(s.getV().transpose());
+    assertEquals(0, a.minus(reconstructed).aggregate(Functions.MAX, Functions.ABS), 1.0e-10);
+  }
+
+  @Test
+  public void testSparseDecayingSpectrum() {
+    Random random = RandomUtils.getRandom();
+    int rows = 400;
+    int columns = 300;
+    Matrix a = new SparseRowMatrix(rows, columns);
+    for (int i = 0; i < rows; i++) {
+      for (int j = 0; j < columns; j++) {
+        if (random.nextDouble() < 0.05) {
+          // heavier columns first make for a slowly decaying spectrum
+          a.setQuick(i, j, random.nextGaussian() * 10 / (1 + j / 10.0));
+        }
+      }
+    }
+
+    int k = 10;
+    BlockKrylovSvd s = new BlockKrylovSvd(a, k, 5, 20, 1.0e-9, 3);
+    SingularValueDecomposition svd = new SingularValueDecomposition(a);
+    Vector reference = new DenseVector(svd.getSingularValues()).viewPart(0, k);
+
+    assertTrue(s.getIterations() < 20);
+    assertEquals(0, reference.minus(s.getSingularValues()).aggregate(Functions.MAX, Functions.ABS),
+        1.0e-6 * reference.get(0));
+
+    // singular vectors are orthonormal and A v = sigma u
+    Matrix identity = new DiagonalMatrix(1, k);
+    assertEquals(0, s.getU().transpose().times(s.getU()).minus(identity).aggregate(Functions.MAX, Functions.ABS),
+        1.0e-10);
+    assertEquals(0, s.getV().transpose().times(s.getV()).minus(identity).aggregate(Functions.MAX, Functions.ABS),
+        1.0e-6);
+    Matrix av = a.times(s.getV());
+    Matrix us = s.getU().times(new DiagonalMatrix(s.getSingularValues()));
+    assertEquals(0, av.minus(us).aggregate(Functions.MAX, Functions.ABS), 1.0e-5 * reference.get(0));
+  }
+}
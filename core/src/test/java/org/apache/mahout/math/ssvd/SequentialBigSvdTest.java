@@ -76,6 +76,21 @@ public final class SequentialBigSvdTest extends MahoutTestCase {
     assertEquals(v1, v2);
   }
 
+  @Test
+  public void testPowerIterations() {
+    Matrix A = lowRankMatrix();
+
+    SequentialBigSvd s = new SequentialBigSvd(A, 6, 2, 3);
+    SingularValueDecomposition svd = new SingularValueDecomposition(A);
+
+    Vector reference = new DenseVector(svd.getSingularValues()).viewPart(0, 4);
+    assertEquals(reference, s.getSingularValues().viewPart(0, 4));
+
+    Matrix v1 = svd.getV().viewPart(0, 20, 0, 3).assign(Functions.ABS);
+    Matrix v2 = s.getV().viewPart(0, 20, 0, 3).assign(Functions.ABS);
+    assertEquals(v1, v2);
+  }
+
   private static Matrix lowRankMatrix() {
     Matrix u = new RandomTrinaryMatrix(1, 20, 4, false);
     Matrix d = new DiagonalMatrix(new double[]{5, 3, 1, 0.5});
@@ -23,6 +23,11 @@ import org.apache.mahout.math.jet.random.AbstractContinousDistribution;
 import org.apache.mahout.math.jet.random.Gamma;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Random;
 
@@ -66,16 +71,75 @@ public final class OnlineSummarizerTest extends MahoutTestCase {
 
     Arrays.sort(samples);
 
-//    for (int i = 0; i < 5; i++) {
-//      int index = Math.abs(Arrays.binarySearch(samples, s.getQuartile(i)));
-//      assertEquals("quartile " + i, i * (samples.length - 1) / 4.0, index, 10);
-//    }
-//    assertEquals(s.getQuartile(2), s.getMedian(), 0);
+    // quartiles must be within half a percent in rank, min and max are exact
+    for (int i = 0; i < 5; i++) {
+      int index = Math.abs(Arrays.binarySearch(samples, s.getQuartile(i)));
+      assertEquals("quartile " + i, i * (samples.length - 1) / 4.0, index, i % 4 == 0 ? 0 : 50);
+    }
+    assertEquals(s.getQuartile(2), s.getMedian(), 0);
+    assertEquals(samples[0], s.getMin(), 0);
+    assertEquals(samples[samples.length - 1], s.getMax(), 0);
 
     assertEquals("mean", s.getMean(), mean, 0);
     assertEquals("sd", s.getSD(), sd, 1e-8);
   }
 
+  @Test
+  public void testMerge() throws IOException {
+    double[] samples = exp(10000);
+    OnlineSummarizer all = new OnlineSummarizer();
+    OnlineSummarizer[] parts = new OnlineSummarizer[7];
+    for (int i = 0; i < parts.length; i++) {
+      parts[i] = new OnlineSummarizer();
+    }
+    for (int i = 0; i < samples.length; i++) {
+      all.add(samples[i]);
+      parts[i % parts.length].add(samples[i]);
+    }
+
+    // partial summaries travel in serialized form
+    OnlineSummarizer merged = new OnlineSummarizer();
+    merged.merge(new OnlineSummarizer());
+    for (OnlineSummarizer part : parts) {
+      merged.merge(roundTrip(part));
+    }
+
+    assertEquals(all.getCount(), merged.getCount());
+    assertEquals(all.getMean(), merged.getMean(), 1.0e-12);
+    assertEquals(all.getSD(), merged.getSD(), 1.0e-12);
+    assertEquals(all.getMin(), merged.getMin(), 0);
+    assertEquals(all.getMax(), merged.getMax(), 0);
+
+    Arrays.sort(samples);
+    for (double q : new double[] {0.01, 0.25, 0.5, 0.75, 0.99}) {
+      int index = Math.abs(Arrays.binarySearch(samples, merged.quantile(q)));
+      assertEquals("quantile " + q, q * (samples.length - 1), index, 50);
+    }
+  }
+
+  @Test
+  public void testSerialization() throws IOException {
+    OnlineSummarizer s = new OnlineSummarizer();
+    for (double x : gamma(1000, 0.1)) {
+      s.add(x);
+    }
+    OnlineSummarizer copy = roundTrip(s);
+    assertEquals(s.getCount(), copy.getCount());
+    assertEquals(s.getMean(), copy.getMean(), 0);
+    assertEquals(s.getSD(), copy.getSD(), 0);
+    for (int i = 0; i < 5; i++) {
+      assertEquals(s.getQuartile(i), copy.getQuartile(i), 0);
+    }
+  }
+
+  private static OnlineSummarizer roundTrip(OnlineSummarizer s) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    s.write(new DataOutputStream(bytes));
+    OnlineSummarizer r = new OnlineSummarizer();
+    r.readFields(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    return r;
+  }
+
   private static double[] normal(int n) {
     double[] r = new double[n];
     Random gen = RandomUtils.getRandom(1L);
@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.mahout.math.stats;
+
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.math.MahoutTestCase;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+public final class QuantileDigestTest extends MahoutTestCase {
+
+  @Test
+  public void testEmpty() throws IOException {
+    QuantileDigest digest = new QuantileDigest();
+    assertEquals(0, digest.size());
+    assertTrue(Double.isNaN(digest.quantile(0.5)));
+    assertTrue(Double.isNaN(digest.cdf(0)));
+    assertTrue(Double.isNaN(roundTrip(digest).quantile(0.5)));
+  }
+
+  @Test
+  public void testSmall() {
+    QuantileDigest digest = new QuantileDigest();
+    digest.add(3);
+    assertEquals(3, digest.quantile(0.5), 0);
+    assertEquals(0, digest.cdf(2), 0);
+    assertEquals(1, digest.cdf(3), 0);
+
+    // few samples are kept exactly
+    digest = new QuantileDigest();
+    for (int i = 10; i >= 1; i--) {
+      digest.add(i);
+    }
+    assertEquals(10, digest.centroidCount());
+    assertEquals(1, digest.quantile(0), 0);
+    assertEquals(5.5, digest.quantile(0.5), 0);
+    assertEquals(10, digest.quantile(1), 0);
+    assertEquals(0.5, digest.cdf(5.5), 0);
+  }
+
+  @Test
+  public void testTails() {
+    Random gen = RandomUtils.getRandom();
+    QuantileDigest digest = new QuantileDigest();
+    double[] samples = new double[100000];
+    for (int i = 0; i < samples.length; i++) {
+      samples[i] = Math.exp(gen.nextGaussian());
+      digest.add(samples[i]);
+    }
+    Arrays.sort(samples);
+
+    // memory stays bounded
+    assertTrue(digest.centroidCount() <= 2 * digest.getCompression());
+
+    for (double q : new double[] {0.0001, 0.001, 0.01, 0.05, 0.5, 0.95, 0.99, 0.999, 0.9999}) {
+      // extreme quantiles are more accurate
+      double error = Math.min(q, 1 - q) < 0.005 ? 2.0e-4 : 1.0e-3;
+      int index = Math.abs(Arrays.binarySearch(samples, digest.quantile(q)));
+      assertEquals("quantile " + q, q, (double) index / samples.length, error);
+      assertEquals("cdf " + q, q, digest.cdf(samples[(int) (q * samples.length)]), error);
+    }
+  }
+
+  @Test
+  public void testMerge() throws IOException {
+    Random gen = RandomUtils.getRandom();
+    QuantileDigest all = new QuantileDigest();
+    QuantileDigest merged = new QuantileDigest();
+    for (int part = 0; part < 10; part++) {
+      QuantileDigest digest = new QuantileDigest();
+      for (int i = 0; i < 10000; i++) {
+        double x = gen.nextGaussian() + part;
+        digest.add(x);
+        all.add(x);
+      }
+      merged.merge(roundTrip(digest));
+    }
+
+    assertEquals(all.size(), merged.size());
+    assertEquals(all.getMin(), merged.getMin(), 0);
+    assertEquals(all.getMax(), merged.getMax(), 0);
+    assertTrue(merged.centroidCount() <= 2 * merged.getCompression());
+    for (double q : new double[] {0.001, 0.01, 0.25, 0.5, 0.75, 0.99, 0.999}) {
+      assertEquals("quantile " + q, q, all.cdf(merged.quantile(q)), 0.002);
+    }
+  }
+
+  @Test
+  public void testSerialization() throws IOException {
+    QuantileDigest digest = new QuantileDigest(50);
+    Random gen = RandomUtils.getRandom();
+    for (int i = 0; i < 5000; i++) {
+      digest.add(gen.nextDouble());
+    }
+    QuantileDigest copy = roundTrip(digest);
+    assertEquals(digest.getCompression(), copy.getCompression(), 0);
+    assertEquals(digest.size(), copy.size());
+    assertEquals(digest.centroidCount(), copy.centroidCount());
+    for (int i = 0; i <= 100; i++) {
+      assertEquals(digest.quantile(i / 100.0), copy.quantile(i / 100.0), 0);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNaN() {
+    new QuantileDigest().add(Double.NaN);
+  }
+
+  private static QuantileDigest roundTrip(QuantileDigest digest) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    digest.write(new DataOutputStream(bytes));
+    return QuantileDigest.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+  }
+}
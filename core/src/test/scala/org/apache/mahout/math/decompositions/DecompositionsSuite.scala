@@ -63,6 +63,29 @@ class DecompositionsSuite extends FunSuite with MahoutSuite {
     (v.norm - vControl(::, 0 until rank).norm).abs should be < 1E-7
   }
 
+  test("bksvd") {
+
+    val rnd = RandomUtils.getRandom
+
+    // Sparse input with a decaying spectrum.
+    val a = new SparseRowMatrix(300, 120) := ((r, c, v) =>
+      if (rnd.nextDouble() < 0.1) rnd.nextGaussian() / (1 + c / 10.0) else 0.0)
+
+    val rank = 10
+    val (u, v, s) = bksvd(a, k = rank, q = 20, tolerance = 1e-10, numThreads = 3)
+
+    val (uControl, vControl, sControl) = svd(a)
+
+    printf("Sigma:\n%s\n", s)
+    printf("Sigma-control:\n%s\n", sControl(0 until rank))
+
+    (s - sControl(0 until rank)).norm(2) should be < 1E-7
+
+    (u.t %*% u - eye(rank)).norm should be < 1E-10
+    (v.t %*% v - eye(rank)).norm should be < 1E-10
+    (a %*% v - u %*%: diagv(s)).norm should be < 1E-7
+  }
+
   test("spca") {
 
     import math._
@@ -26,6 +26,7 @@ import RLikeDrmOps._
 import org.scalatest.{FunSuite, Matchers}
 import org.apache.mahout.common.RandomUtils
 import math._
+import scala.collection.JavaConversions._
 
 /**
  * ==Common distributed code to run against each distributed engine support.==
@@ -216,4 +217,50 @@ trait DistributedDecompositionsSuiteBase extends DistributedMahoutSuite with Mat
 
   }
 
+  test("dwals") {
+
+    val m = 300
+    val n = 200
+
+    // Low-rank ratings, of which only about a third is observed.
+    val inCoreFull = Matrices.symmetricUniformView(m, 5, 1234) %*% Matrices.symmetricUniformView(n, 5, 2345).t
+    val rnd = RandomUtils.getRandom
+    val inCoreA = new SparseRowMatrix(m, n)
+    for (r <- 0 until m; c <- 0 until n if rnd.nextDouble() < 0.3) inCoreA(r, c) = inCoreFull(r, c) + 3.0
+    val drmA = drmParallelize(inCoreA, numPartitions = 2)
+
+    // Rows of both factors are routed through A'B joins on Int keys.
+    val (drmU, drmV, rmse) = dwals(drmA = drmA, k = 5, lambda = 1e-3, maxIterations = 15,
+      convergenceThreshold = 1e-3).toTuple
+    val predict = drmU.collect %*% drmV.collect.t
+
+    // RMSE over observed entries, computed in-core.
+    var sse = 0.0
+    var nnz = 0
+    for (r <- 0 until m; el <- inCoreA(r, ::).nonZeroes()) {
+      sse += (el.get - predict(r, el.index)) * (el.get - predict(r, el.index))
+      nnz += 1
+    }
+    val controlRmse = sqrt(sse / nnz)
+    printf("train iteration rmses: %s, control %f\n", rmse, controlRmse)
+
+    rmse.last should be(controlRmse +- 1e-6)
+    controlRmse should be < 0.1
+
+    // Non-Int row keys solve V through the packed A' product.
+    val drmAs = drmA.mapBlock() { case (keys, block) => keys.map(_.toString) -> block }
+    val (_, _, rmseStringKeys) = dwals(drmA = drmAs, k = 5, lambda = 1e-3, maxIterations = 15,
+      convergenceThreshold = 1e-3).toTuple
+    rmseStringKeys.last should be < 0.1
+
+    // Implicit feedback flavor: predictions of observed cells should gravitate towards 1.
+    val (drmUi, drmVi, rmseImplicit) = dwals(drmA = drmA, k = 5, lambda = 0.1, maxIterations = 5,
+      implicitFeedback = true, alpha = 1.0).toTuple
+    printf("implicit train iteration rmses: %s\n", rmseImplicit)
+    val predictImplicit = drmUi.collect %*% drmVi.collect.t
+    predictImplicit.nrow shouldBe m
+    predictImplicit.ncol shouldBe n
+    rmseImplicit.last should be < 1.0
+  }
+
 }
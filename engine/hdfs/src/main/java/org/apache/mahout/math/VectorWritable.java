@@ -18,6 +18,9 @@ package org.apache.mahout.math;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
 import java.util.Iterator;
 
 import org.apache.hadoop.conf.Configured;
@@ -34,8 +37,13 @@ public final class VectorWritable extends Configured implements Writable {
   public static final int FLAG_LAX_PRECISION = 0x08;
   public static final int NUM_FLAGS = 4;
 
+  /** Size (in doubles) of the scratch buffer dense values are streamed through. */
+  private static final int BULK_CHUNK = 1024;
+
   private Vector vector;
   private boolean writesLaxPrecision;
+  private boolean readsInPlace;
+  private byte[] scratch;
 
   public VectorWritable() {}
 
@@ -77,9 +85,33 @@ public final class VectorWritable extends Configured implements Writable {
     this.writesLaxPrecision = writesLaxPrecision;
   }
 
+  /**
+   * @return true if {@link #readFields(DataInput)} fills the currently held vector in place whenever it is a
+   *  {@link DenseVector} or {@link SequentialAccessSparseVector} of the same type and cardinality as the one being
+   *  read, instead of allocating a new one. Vectors returned by {@link #get()} are then only valid until the next read.
+   */
+  public boolean isReadsInPlace() {
+    return readsInPlace;
+  }
+
+  public void setReadsInPlace(boolean readsInPlace) {
+    this.readsInPlace = readsInPlace;
+  }
+
+  /** Scratch buffer for streaming {@code length} dense values, grown on demand up to the bulk chunk size. */
+  private byte[] scratch(int length) {
+    int bytes = Math.min(Math.max(length, 1), BULK_CHUNK) * Double.BYTES;
+    if (scratch == null || scratch.length < bytes) {
+      scratch = new byte[bytes];
+    }
+    return scratch;
+  }
+
   @Override
   public void write(DataOutput out) throws IOException {
-    writeVector(out, this.vector, this.writesLaxPrecision);
+    byte flags = flags(vector, writesLaxPrecision);
+    writeVectorFlagsAndSize(out, flags, vector.size());
+    writeVectorContents(out, vector, flags, isBulkDense(vector, flags) ? scratch(vector.size()) : null);
   }
 
   @Override
@@ -97,28 +129,42 @@ public final class VectorWritable extends Configured implements Writable {
     boolean named = (flags & FLAG_NAMED) != 0;
     boolean laxPrecision = (flags & FLAG_LAX_PRECISION) != 0;
 
+    Vector reusable = readsInPlace ? reusableVector(dense, sequential, size) : null;
+
     Vector v;
     if (dense) {
-      double[] values = new double[size];
-      for (int i = 0; i < size; i++) {
-        values[i] = laxPrecision ? in.readFloat() : in.readDouble();
+      DenseVector dv = reusable == null ? new DenseVector(size) : (DenseVector) reusable;
+      double[] values = dv.getBackingStructure();
+      if (laxPrecision) {
+        for (int i = 0; i < size; i++) {
+          values[i] = in.readFloat();
+        }
+      } else {
+        readDoubles(in, values, size, scratch(size));
       }
-      v = new DenseVector(values);
+      dv.invalidateCachedLength();
+      v = dv;
     } else {
       int numNonDefaultElements = Varint.readUnsignedVarInt(in);
-      v = sequential
-          ? new SequentialAccessSparseVector(size, numNonDefaultElements)
-          : new RandomAccessSparseVector(size, numNonDefaultElements);
       if (sequential) {
+        SequentialAccessSparseVector sv = reusable == null
+            ? new SequentialAccessSparseVector(size, numNonDefaultElements)
+            : (SequentialAccessSparseVector) reusable;
+        // Indices are delta-coded in increasing order, so the backing arrays can be filled directly.
+        OrderedIntDoubleMapping mapping = sv.resetMappings(numNonDefaultElements);
+        int[] indices = mapping.getIndices();
+        double[] values = mapping.getValues();
         int lastIndex = 0;
         for (int i = 0; i < numNonDefaultElements; i++) {
           int delta = Varint.readUnsignedVarInt(in);
           int index = lastIndex + delta;
           lastIndex = index;
-          double value = laxPrecision ? in.readFloat() : in.readDouble();
-          v.setQuick(index, value);
+          indices[i] = index;
+          values[i] = laxPrecision ? in.readFloat() : in.readDouble();
         }
+        v = sv;
       } else {
+        v = new RandomAccessSparseVector(size, numNonDefaultElements);
         for (int i = 0; i < numNonDefaultElements; i++) {
           int index = Varint.readUnsignedVarInt(in);
           double value = laxPrecision ? in.readFloat() : in.readDouble();
@@ -128,11 +174,27 @@ public final class VectorWritable extends Configured implements Writable {
     }
     if (named) {
       String name = in.readUTF();
-      v = new NamedVector(v, name);
+      if (reusable != null && vector instanceof NamedVector && name.equals(((NamedVector) vector).getName())) {
+        v = vector;
+      } else {
+        v = new NamedVector(v, name);
+      }
     }
     vector = v;
   }
 
+  /** The currently held vector (or its named delegate) if it can receive the next one in place, otherwise null. */
+  private Vector reusableVector(boolean dense, boolean sequential, int size) {
+    Vector current = vector instanceof NamedVector ? ((NamedVector) vector).getDelegate() : vector;
+    if (current == null || current.size() != size) {
+      return null;
+    }
+    if (dense) {
+      return current instanceof DenseVector ? current : null;
+    }
+    return sequential && current instanceof SequentialAccessSparseVector ? current : null;
+  }
+
   /** Write the vector to the output */
   public static void writeVector(DataOutput out, Vector vector) throws IOException {
     writeVector(out, vector, false);
@@ -165,13 +227,48 @@ public final class VectorWritable extends Configured implements Writable {
 
   /** Write out contents of the vector */
   public static void writeVectorContents(DataOutput out, Vector vector, byte flags) throws IOException {
+    writeVectorContents(out, vector, flags, null);
+  }
+
+  /** Whether the values of the vector are streamed in bulk from a dense backing array. */
+  private static boolean isBulkDense(Vector vector, byte flags) {
+    Vector backing = (flags & FLAG_NAMED) != 0 ? ((NamedVector) vector).getDelegate() : vector;
+    return (flags & FLAG_DENSE) != 0 && (flags & FLAG_LAX_PRECISION) == 0 && backing instanceof DenseVector;
+  }
+
+  private static void writeVectorContents(DataOutput out, Vector vector, byte flags, byte[] scratch)
+    throws IOException {
 
     boolean dense = (flags & FLAG_DENSE) != 0;
     boolean sequential = (flags & FLAG_SEQUENTIAL) != 0;
     boolean named = (flags & FLAG_NAMED) != 0;
     boolean laxPrecision = (flags & FLAG_LAX_PRECISION) != 0;
 
-    if (dense) {
+    Vector backing = named ? ((NamedVector) vector).getDelegate() : vector;
+
+    if (isBulkDense(vector, flags)) {
+      writeDoubles(out, ((DenseVector) backing).getBackingStructure(), backing.size(), scratch);
+    } else if (!dense && sequential && backing instanceof SequentialAccessSparseVector) {
+      // Same encoding as below, straight off the backing arrays.
+      OrderedIntDoubleMapping mapping = ((SequentialAccessSparseVector) backing).getBackingStructure();
+      int numMappings = mapping.getNumMappings();
+      int[] indices = mapping.getIndices();
+      double[] values = mapping.getValues();
+      Varint.writeUnsignedVarInt(backing.getNumNonZeroElements(), out);
+      int lastIndex = 0;
+      for (int i = 0; i < numMappings; i++) {
+        if (values[i] == 0) {
+          continue;
+        }
+        Varint.writeUnsignedVarInt(indices[i] - lastIndex, out);
+        lastIndex = indices[i];
+        if (laxPrecision) {
+          out.writeFloat((float) values[i]);
+        } else {
+          out.writeDouble(values[i]);
+        }
+      }
+    } else if (dense) {
       for (Element element : vector.all()) {
         if (laxPrecision) {
           out.writeFloat((float) element.get());
@@ -221,6 +318,34 @@ public final class VectorWritable extends Configured implements Writable {
     }
   }
 
+  /**
+   * Writes {@code length} values in the same big-endian layout as {@link DataOutput#writeDouble(double)}, but in
+   * blocks through a byte buffer view rather than one call per value.
+   */
+  private static void writeDoubles(DataOutput out, double[] values, int length, byte[] scratch) throws IOException {
+    byte[] buffer = scratch == null ? new byte[Math.min(length, BULK_CHUNK) * Double.BYTES] : scratch;
+    DoubleBuffer view = ByteBuffer.wrap(buffer).asDoubleBuffer();
+    int chunk = buffer.length / Double.BYTES;
+    for (int offset = 0; offset < length; offset += chunk) {
+      int n = Math.min(chunk, length - offset);
+      ((Buffer) view).clear();
+      view.put(values, offset, n);
+      out.write(buffer, 0, n * Double.BYTES);
+    }
+  }
+
+  /** Counterpart of {@link #writeDoubles(DataOutput, double[], int, byte[])}. */
+  private static void readDoubles(DataInput in, double[] values, int length, byte[] scratch) throws IOException {
+    DoubleBuffer view = ByteBuffer.wrap(scratch).asDoubleBuffer();
+    int chunk = scratch.length / Double.BYTES;
+    for (int offset = 0; offset < length; offset += chunk) {
+      int n = Math.min(chunk, length - offset);
+      in.readFully(scratch, 0, n * Double.BYTES);
+      ((Buffer) view).clear();
+      view.get(values, offset, n);
+    }
+  }
+
   public static Vector readVector(DataInput in) throws IOException {
     VectorWritable v = new VectorWritable();
     v.readFields(in);
@@ -87,6 +87,36 @@ public final class VectorWritableTest extends RandomizedTest {
     doTestVectorWritableEquals(v);
   }
 
+  @Test
+  @Repeat(iterations = 20)
+  public void testReadsInPlace() throws Exception {
+    VectorWritable reader = new VectorWritable();
+    reader.setReadsInPlace(true);
+
+    Vector dense = new DenseVector(MAX_VECTOR_SIZE);
+    createRandom(dense);
+    writeAndRead(new VectorWritable(dense), reader);
+    Vector target = reader.get();
+    assertEquals(dense, target);
+
+    createRandom(dense);
+    writeAndRead(new VectorWritable(dense), reader);
+    assertSame(target, reader.get());
+    assertEquals(dense, target);
+
+    Vector sparse = new SequentialAccessSparseVector(MAX_VECTOR_SIZE);
+    createRandom(sparse);
+    writeAndRead(new VectorWritable(sparse), reader);
+    target = reader.get();
+    assertEquals(sparse, target);
+
+    Vector sparse2 = new SequentialAccessSparseVector(MAX_VECTOR_SIZE);
+    createRandom(sparse2);
+    writeAndRead(new VectorWritable(sparse2), reader);
+    assertSame(target, reader.get());
+    assertEquals(sparse2, target);
+  }
+
   private static void doTestVectorWritableEquals(Vector v) throws IOException {
     Writable vectorWritable = new VectorWritable(v);
     VectorWritable vectorWritable2 = new VectorWritable();
@@ -27,9 +27,10 @@ import org.apache.mahout.math.indexeddataset.{BiDictionary, DefaultIndexedDatase
 import org.apache.mahout.math.scalabindings.RLikeOps._
 import org.apache.mahout.math.scalabindings._
 import org.apache.mahout.sparkbindings.blas._
-import org.apache.mahout.sparkbindings.drm.{CheckpointedDrmSpark, DrmRddInput, cpDrmGeneric2DrmRddInput}
+import org.apache.mahout.sparkbindings.drm.{CheckpointedDrmSpark, DrmRddInput, SparkPlanMetrics, cpDrmGeneric2DrmRddInput}
 import org.apache.mahout.sparkbindings.indexeddataset.IndexedDatasetSpark
 import org.apache.spark.storage.StorageLevel
+import org.apache.spark.util.SizeEstimator
 
 import scala.collection.JavaConversions._
 import scala.collection._
@@ -44,7 +45,7 @@ object SparkEngine extends DistributedEngine {
   def colSums[K](drm: CheckpointedDrm[K]): Vector = {
     val n = drm.ncol
 
-    drm.rdd
+    val partials = drm.rdd
 
       // Throw away keys
       .map(_._2)
@@ -55,15 +56,15 @@ object SparkEngine extends DistributedEngine {
       Iterator(acc)
     })
 
-      // Since we preallocated new accumulator vector per partition, this must not cause any side
-      // effects now.
-      .reduce(_ += _)
+    // Since we preallocated new accumulator vector per partition, this must not cause any side
+    // effects now.
+    treeReduceRdd[Vector](partials, _ += _)
   }
 
   def numNonZeroElementsPerColumn[K](drm: CheckpointedDrm[K]): Vector = {
     val n = drm.ncol
 
-    drm.rdd
+    val partials = drm.rdd
 
       // Throw away keys
       .map(_._2)
@@ -76,9 +77,9 @@ object SparkEngine extends DistributedEngine {
       }
       Iterator(acc)
     })
-      // Since we preallocated new accumulator vector per partition, this must not cause any side
-      // effects now.
-      .reduce(_ += _)
+    // Since we preallocated new accumulator vector per partition, this must not cause any side
+    // effects now.
+    treeReduceRdd[Vector](partials, _ += _)
   }
 
   /** Engine-specific colMeans implementation based on a checkpoint. */
@@ -97,7 +98,7 @@ object SparkEngine extends DistributedEngine {
   /** Optional engine-specific all reduce tensor operation. */
   override def allreduceBlock[K](drm: CheckpointedDrm[K], bmf: BlockMapFunc2[K], rf:
   BlockReduceFunc): Matrix = {
-    drm.asBlockified(ncol = drm.ncol).map(bmf(_)).reduce(rf)
+    treeReduceRdd[Matrix](drm.asBlockified(ncol = drm.ncol).map(bmf(_)), rf)
   }
 
   /**
@@ -126,10 +127,16 @@ object SparkEngine extends DistributedEngine {
   }
 
   /** Broadcast support */
-  def drmBroadcast(v: Vector)(implicit dc: DistributedContext): BCast[Vector] = dc.broadcast(v)
+  def drmBroadcast(v: Vector)(implicit dc: DistributedContext): BCast[Vector] = {
+    if (PlanMetrics.enabled) PlanMetrics.addBroadcast(SizeEstimator.estimate(v))
+    dc.broadcast(v)
+  }
 
   /** Broadcast support */
-  def drmBroadcast(m: Matrix)(implicit dc: DistributedContext): BCast[Matrix] = dc.broadcast(m)
+  def drmBroadcast(m: Matrix)(implicit dc: DistributedContext): BCast[Matrix] = {
+    if (PlanMetrics.enabled) PlanMetrics.addBroadcast(SizeEstimator.estimate(m))
+    dc.broadcast(m)
+  }
 
   /**
     * Load DRM from hdfs (as in Mahout DRM format)
@@ -306,8 +313,16 @@ object SparkEngine extends DistributedEngine {
     case CacheHint.MEMORY_AND_DISK_SER_2 ⇒ StorageLevel.MEMORY_AND_DISK_SER_2
   }
 
-  /** Translate previously optimized physical plan */
-  private def tr2phys[K](oper: DrmLike[K]): DrmRddInput[K] = {
+  /** Translate previously optimized physical plan, recording per-operator metrics if these are enabled. */
+  private def tr2phys[K](oper: DrmLike[K]): DrmRddInput[K] = oper match {
+    case _: CheckpointedDrm[K] ⇒ tr2physOp(oper)
+    case _ if PlanMetrics.enabled ⇒
+      val (rddInput, opId) = PlanMetrics.operator(oper)(tr2physOp(oper))
+      SparkPlanMetrics.track(opId, rddInput)(oper.keyClassTag)
+    case _ ⇒ tr2physOp(oper)
+  }
+
+  private def tr2physOp[K](oper: DrmLike[K]): DrmRddInput[K] = {
     // I do explicit evidence propagation here since matching via case classes seems to be loosing
     // it and subsequently may cause something like DrmRddInput[Any] instead of [Int] or [String].
     // Hence you see explicit evidence attached to all recursive exec() calls.
@@ -72,7 +72,7 @@ object AtA {
 
     val ncol = operator.ncol
     // Compute backing vector of tiny-upper-triangular accumulator accross all the data.
-    val resSym = srcRdd.mapPartitions(pIter => {
+    val partials = srcRdd.mapPartitions(pIter => {
 
       val ut = new UpperTriangular(ncol)
 
@@ -119,7 +119,11 @@ object AtA {
       })
 
       Iterator(dvec(ddata = ut.getData): Vector)
-    }).collect().reduce(_ += _)
+    })
+
+    // Partials are packed upper-triangular, so each one is only n(n+1)/2 long. Merge them over an
+    // aggregation tree rather than collecting them all to the driver at once.
+    val resSym = treeReduceRdd[Vector](partials, _ += _)
 
     new DenseSymmetricMatrix(resSym)
   }
@@ -32,8 +32,31 @@ import scala.collection._
  */
 package object blas {
 
+  /**
+   * Depth of the aggregation tree used for reductions that bring per-partition partial results back
+   * to the driver (slim A'A, colSums, allreduceBlock etc.). Depth 1 means a plain driver-side reduce.
+   */
+  final val PROPERTY_TREE_REDUCE_DEPTH = "mahout.math.treeReduceDepth"
+  final val PROPERTY_TREE_REDUCE_DEPTH_DEFAULT = "2"
+
   implicit def drmRdd2ops[K](rdd: DrmRdd[K]): DrmRddOps[K] = new DrmRddOps[K](rdd)
 
+  /** Currently configured aggregation tree depth for driver-bound reductions. */
+  private[sparkbindings] def treeReduceDepth: Int =
+    System.getProperty(PROPERTY_TREE_REDUCE_DEPTH, PROPERTY_TREE_REDUCE_DEPTH_DEFAULT).toInt
+      .ensuring(_ > 0, "Invalid tree reduce depth setting")
+
+  /**
+   * Reduce partial per-partition results via an aggregation tree of configured depth, so that the
+   * driver only merges a handful of partials instead of one per partition.
+   *
+   * @param rdd partial results, usually one per partition
+   * @param rf reduce function. It is allowed to update its left argument in place.
+   * @param depth depth of the aggregation tree
+   */
+  private[sparkbindings] def treeReduceRdd[T](rdd: RDD[T], rf: (T, T) ⇒ T, depth: Int = treeReduceDepth): T =
+    if (depth <= 1) rdd.reduce(rf) else rdd.treeReduce(rf, depth)
+
   /**
    * Rekey matrix dataset keys to consecutive int keys.
    * @param rdd incoming matrix row-wise dataset
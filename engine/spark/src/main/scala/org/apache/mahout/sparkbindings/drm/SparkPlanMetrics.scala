@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.sparkbindings.drm
+
+import org.apache.mahout.math.drm.{OperatorCounters, PlanMetrics}
+import org.apache.mahout.sparkbindings._
+import org.apache.spark.SparkContext
+import org.apache.spark.scheduler._
+import org.apache.spark.util.LongAccumulator
+
+import scala.collection.mutable
+import scala.reflect.ClassTag
+
+/**
+ * Spark side of [[PlanMetrics]]. Each translated operator owns the contiguous range of RDD ids created since the
+ * previously translated operator (physical translation is post-order, so this is exactly what the operator itself
+ * created on top of its inputs). Stages are attributed to the operator owning the latest RDD of the stage; row and
+ * block counts come from accumulators on the operator output (recomputed partitions are counted again).<P>
+ *
+ * Only the latest [[MAX_RANGES]] operators are kept for attribution, and a stage is forgotten once it completes.
+ * [[PlanMetrics.reset]], [[PlanMetrics.disable]] and stopping the context drop all of it and detach the listener.
+ */
+private[sparkbindings] object SparkPlanMetrics {
+
+  private class Counters(val rowAcc: LongAccumulator, val blockAcc: LongAccumulator) extends OperatorCounters {
+    def rows: Long = rowAcc.value
+
+    def blocks: Long = blockAcc.value
+  }
+
+  /** Number of operators whose RDDs stages are attributed to; stages of older operators are not attributed. */
+  final val MAX_RANGES = 10000
+
+  // Upper RDD id of the range -> operator id. Ranges are contiguous, so the lower bound is the previous key.
+  private val ranges = new java.util.TreeMap[Integer, Integer]
+  private val stageOps = new mutable.HashMap[Int, Int]
+  private var listenerContext: Option[SparkContext] = None
+  private val releaseHook: () ⇒ Unit = () ⇒ release()
+
+  private object Listener extends SparkListener {
+
+    override def onStageSubmitted(stageSubmitted: SparkListenerStageSubmitted): Unit = {
+      val info = stageSubmitted.stageInfo
+      if (info.rddInfos.nonEmpty) ownerOf(info.rddInfos.map(_.id).max).foreach { opId ⇒
+        SparkPlanMetrics.synchronized(stageOps += info.stageId → opId)
+      }
+    }
+
+    override def onTaskEnd(taskEnd: SparkListenerTaskEnd): Unit = Option(taskEnd.taskMetrics).foreach { tm ⇒
+      SparkPlanMetrics.synchronized(stageOps.get(taskEnd.stageId)).foreach { opId ⇒
+        PlanMetrics.addExecTime(opId, wallMs = 0, taskMs = tm.executorRunTime)
+        PlanMetrics.addShuffle(opId, tm.shuffleReadMetrics.totalBytesRead, tm.shuffleWriteMetrics.bytesWritten)
+      }
+    }
+
+    override def onStageCompleted(stageCompleted: SparkListenerStageCompleted): Unit = {
+      val info = stageCompleted.stageInfo
+      SparkPlanMetrics.synchronized(stageOps.remove(info.stageId)).foreach { opId ⇒
+        for (start ← info.submissionTime; end ← info.completionTime)
+          PlanMetrics.addExecTime(opId, wallMs = end - start, taskMs = 0)
+      }
+    }
+
+    // The bus is stopping anyway; removing the listener from its own thread would wait for itself.
+    override def onApplicationEnd(applicationEnd: SparkListenerApplicationEnd): Unit = forget()
+  }
+
+  private def ownerOf(rddId: Int): Option[Int] = synchronized {
+    Option(ranges.ceilingEntry(rddId)).map(_.getValue.intValue)
+  }
+
+  private def ensureListener(sc: SparkContext): Unit =
+    if (!synchronized(listenerContext.exists(_ eq sc))) {
+      release()
+      sc.addSparkListener(Listener)
+      synchronized(listenerContext = Some(sc))
+      PlanMetrics.onRelease(releaseHook)
+    }
+
+  /**
+   * Detach the listener and forget all attribution state. Removing a listener waits for the events queued for it,
+   * so this must not hold the lock the listener takes.
+   */
+  private def release(): Unit = forget().foreach(_.removeSparkListener(Listener))
+
+  /** Forget all attribution state. Returns the context the listener was attached to, if any. */
+  private def forget(): Option[SparkContext] = synchronized {
+    val sc = listenerContext
+    listenerContext = None
+    ranges.clear()
+    stageOps.clear()
+    sc
+  }
+
+  /** Number of operators and running stages currently kept for attribution. */
+  private[sparkbindings] def trackedSizes: (Int, Int) = synchronized(ranges.size → stageOps.size)
+
+  private[sparkbindings] def listenerAttached: Boolean = synchronized(listenerContext.isDefined)
+
+  /**
+   * Attach counters to the output of operator `opId` and claim the RDDs created for it. Returns the input unchanged
+   * if metrics are disabled.
+   */
+  def track[K](opId: Int, input: DrmRddInput[K])(implicit ktag: ClassTag[K]): DrmRddInput[K] =
+    if (opId < 0) input
+    else {
+      val sc = input.sparkContext
+      ensureListener(sc)
+
+      val rowAcc = sc.longAccumulator("mahout.op%d.rows".format(opId))
+      val blockAcc = sc.longAccumulator("mahout.op%d.blocks".format(opId))
+      PlanMetrics.attachCounters(opId, new Counters(rowAcc, blockAcc))
+
+      val tracked = if (input.isBlockified) {
+        val rdd = input.asBlockified(ncol = 0).mapPartitions(_.map { b ⇒
+          rowAcc.add(b._2.rowSize)
+          blockAcc.add(1)
+          b
+        }, preservesPartitioning = true)
+        rdd.setName("mahout:op%d".format(opId))
+        new DrmRddInput[K](Right(rdd))
+      } else {
+        val rdd = input.asRowWise().mapPartitions(_.map { r ⇒
+          rowAcc.add(1)
+          r
+        }, preservesPartitioning = true)
+        rdd.setName("mahout:op%d".format(opId))
+        new DrmRddInput[K](Left(rdd))
+      }
+
+      synchronized {
+        ranges.put(tracked.backingRdd.id, opId)
+        while (ranges.size > MAX_RANGES) ranges.pollFirstEntry()
+      }
+      tracked
+    }
+
+}
@@ -32,7 +32,8 @@ object MahoutKryoRegistrator {
     trace("Registering mahout classes.")
 
     kryo.register(classOf[SparseColumnMatrix], new UnsupportedSerializer)
-    kryo.addDefaultSerializer(classOf[Vector], new VectorKryoSerializer())
+    // Sparse block compression is configured with system properties (mahoutSparkContext forwards them to executors).
+    kryo.addDefaultSerializer(classOf[Vector], VectorKryoSerializer.fromSystemProperties())
     kryo.addDefaultSerializer(classOf[Matrix], new GenericMatrixKryoSerializer)
 
     Seq(
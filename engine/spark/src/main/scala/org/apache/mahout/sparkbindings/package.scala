@@ -20,6 +20,7 @@ package org.apache.mahout
 import java.io._
 
 import org.apache.log4j.Logger
+import org.apache.mahout.common.io.VectorKryoSerializer
 import org.apache.mahout.logging._
 import org.apache.mahout.math.drm._
 import org.apache.mahout.math.{Matrix, MatrixWritable, Vector, VectorWritable}
@@ -95,6 +96,14 @@ package object sparkbindings {
         "org.apache.spark.serializer.KryoSerializer").set("spark.kryo.registrator",
           "org.apache.mahout.sparkbindings.io.MahoutKryoRegistrator")
 
+      // Serializers on executors are configured by system properties; forward what is set on the driver.
+      val kryoOpts = Seq(VectorKryoSerializer.PROPERTY_COMPRESS_SPARSE, VectorKryoSerializer.PROPERTY_QUANTIZATION_BITS)
+        .flatMap(p ⇒ Option(System.getProperty(p)).map(v ⇒ s"-D$p=$v"))
+      if (kryoOpts.nonEmpty) {
+        sparkConf.set("spark.executor.extraJavaOptions",
+          (sparkConf.getOption("spark.executor.extraJavaOptions").toSeq ++ kryoOpts).mkString(" "))
+      }
+
       if (System.getenv("SPARK_HOME") != null) {
         sparkConf.setSparkHome(System.getenv("SPARK_HOME"))
       }
@@ -17,7 +17,8 @@
 
 package org.apache.mahout.cf
 
-import org.apache.mahout.math.cf.{DownsamplableCrossOccurrenceDataset, SimilarityAnalysis}
+import org.apache.mahout.math.SparseRowMatrix
+import org.apache.mahout.math.cf.{DownsamplableCrossOccurrenceDataset, LshOpts, SimilarityAnalysis}
 import org.apache.mahout.math.drm._
 import org.apache.mahout.math.indexeddataset.BiDictionary
 import org.apache.mahout.math.scalabindings.{MatrixOps, _}
@@ -30,6 +31,9 @@ import org.apache.spark.SparkContext
 import org.apache.spark.rdd.RDD
 import org.scalatest.FunSuite
 
+import scala.collection.JavaConversions._
+import scala.util.Random
+
 /* values 
 A =
 1	1	0	0	0
@@ -103,6 +107,163 @@ class SimilarityAnalysisSuite extends FunSuite with MahoutSuite with Distributed
 
   }
 
+  test("Approximate cross-occurrence [A'A], [B'A] boolean data using LLR") {
+    val a = dense(
+        (1, 1, 0, 0, 0),
+        (0, 0, 1, 1, 0),
+        (0, 0, 0, 0, 1),
+        (1, 0, 0, 1, 0))
+
+    val b = dense(
+        (1, 1, 1, 1, 0),
+        (1, 1, 1, 1, 0),
+        (0, 0, 1, 0, 1),
+        (1, 1, 0, 1, 0))
+
+    val drmA = drmParallelize(m = a, numPartitions = 2)
+    val drmB = drmParallelize(m = b, numPartitions = 2)
+
+    // With single-row bands, any pair with a common user is a candidate with near certainty.
+    val lshOpts = LshOpts(numBands = 50, rowsPerBand = 1, bucketsPerBand = 1024, verifyPairsPerPass = 3,
+      recallSampleSize = 5)
+    val approx = SimilarityAnalysis.cooccurrencesApprox(drmARaw = drmA, randomSeed = 1, drmBs = Array(drmB),
+      lshOpts = lshOpts)
+
+    val matrixSelfCooc = approx.similarityMatrices(0).checkpoint().collect
+    var n = (new MatrixOps(m = matrixSelfCooc.minus(matrixLLRCoocAtAControl))).norm
+    n should be < 1E-10
+
+    val matrixCrossCooc = approx.similarityMatrices(1).checkpoint().collect
+    n = (new MatrixOps(m = matrixCrossCooc.minus(matrixLLRCoocAtBControl))).norm
+    n should be < 1E-10
+
+    approx.estimatedRecall shouldBe List(Some(1.0), Some(1.0))
+
+    // Counts are summed across verification passes before the top-k is taken.
+    val top1 = SimilarityAnalysis.cooccurrencesApprox(drmARaw = drmA, randomSeed = 1, maxInterestingItemsPerThing = 1,
+      lshOpts = lshOpts.copy(verifyPairsPerPass = 1, recallSampleSize = 0)).similarityMatrices(0).checkpoint().collect
+    for (r <- 0 until top1.numRows()) {
+      top1.viewRow(r).getNumNonZeroElements should be <= 1
+      top1.viewRow(r).maxValue shouldBe matrixLLRCoocAtAControl.viewRow(r).maxValue +- 1e-10
+    }
+  }
+
+  test("Incremental cooccurrence update matches full computation") {
+    val a = dense(
+        (1, 1, 0, 0, 0),
+        (0, 0, 1, 1, 0),
+        (0, 0, 0, 0, 1),
+        (1, 0, 0, 1, 0))
+
+    // Previous run did not see the interactions of the last user yet.
+    val aPrevious = dense(
+        (1, 1, 0, 0, 0),
+        (0, 0, 1, 1, 0),
+        (0, 0, 0, 0, 1),
+        (0, 0, 0, 0, 0))
+    val delta = a.minus(aPrevious)
+
+    val state = SimilarityAnalysis.cooccurrenceState(drmARaw = drmParallelize(m = aPrevious, numPartitions = 2),
+      randomSeed = 1)
+    val update = SimilarityAnalysis.cooccurrencesIncremental(state, drmParallelize(m = delta, numPartitions = 2),
+      randomSeed = 1, llrTolerance = 0)
+
+    val matrixSelfCooc = update.state.indicators.checkpoint().collect
+    val n = (new MatrixOps(m = matrixSelfCooc.minus(matrixLLRCoocAtAControl))).norm
+    n should be < 1E-10
+
+    // Items 0 and 3 have new counts, items 1 and 2 cooccur with them; no tolerance recomputes both.
+    update.changedRows shouldBe Array(0, 1, 2, 3)
+    update.state.interactionsPerItem shouldBe dvec(2, 1, 1, 2, 1)
+  }
+
+  test("Incremental cooccurrence update recomputes few rows for a 1% delta") {
+    val numUsers = 1000
+    val numItems = 500
+    val random = new Random(1234)
+
+    val a = new SparseRowMatrix(numUsers, numItems)
+    for (user <- 0 until numUsers; _ <- 0 until 5) a.setQuick(user, random.nextInt(numItems), 1)
+
+    // One new interaction for each of 1% of the users.
+    val changedUsers = 0 until numUsers by 100
+    val delta = new SparseRowMatrix(numUsers, numItems)
+    for (user <- changedUsers) {
+      var item = random.nextInt(numItems)
+      while (a.getQuick(user, item) != 0) item = random.nextInt(numItems)
+      delta.setQuick(user, item, 1)
+    }
+    val aNew = a.plus(delta)
+
+    val itemsOfChangedUsers = changedUsers.flatMap(user => aNew.viewRow(user).nonZeroes().map(_.index)).toSet
+
+    val state = SimilarityAnalysis.cooccurrenceState(drmARaw = drmParallelize(m = a, numPartitions = 2),
+      randomSeed = 1)
+    val drmDelta = drmParallelize(m = delta, numPartitions = 2)
+
+    // Without tolerance for LLR shifts, exactly the rows whose counts changed are recomputed.
+    val countsOnly = SimilarityAnalysis.cooccurrencesIncremental(state, drmDelta, randomSeed = 1,
+      llrTolerance = Double.PositiveInfinity)
+    countsOnly.changedRows.toSet shouldBe itemsOfChangedUsers
+
+    val update = SimilarityAnalysis.cooccurrencesIncremental(state, drmDelta, randomSeed = 1)
+    val numRecomputed = update.changedRows.length
+    numRecomputed should be >= itemsOfChangedUsers.size
+    numRecomputed should be < numItems / 4
+
+    // Recomputed rows are exact.
+    val matrixFull = SimilarityAnalysis.cooccurrenceState(drmARaw = drmParallelize(m = aNew, numPartitions = 2),
+      randomSeed = 1).indicators.checkpoint().collect
+    val matrixIncremental = update.state.indicators.checkpoint().collect
+    for (row <- update.changedRows) {
+      matrixIncremental.viewRow(row).minus(matrixFull.viewRow(row)).norm(2) should be < 1E-10
+    }
+  }
+
+  test("Incremental cooccurrence update of IndexedDatasets matches full computation") {
+    val sc = dc2sc(mahoutCtx)
+
+    val a = dense(
+      (1, 1, 0, 0, 0),
+      (0, 0, 1, 1, 0),
+      (0, 0, 0, 0, 1),
+      (1, 0, 0, 1, 0))
+
+    val items = new BiDictionary(Seq("a1", "a2", "a3", "a4", "a5"))
+    val previousUsers = new BiDictionary(Seq("u1", "u2", "u3"))
+    val previousID = new IndexedDatasetSpark(drmParallelize(m = a.viewPart(0, 3, 0, 5), numPartitions = 2),
+      previousUsers, items)
+
+    // New user u4 with a new item a6, which has no row in the state yet and is dropped. The delta has its own
+    // dictionaries, so its rows and columns have to be matched to the previous ones by ID.
+    val pairsDelta = Seq(("u4", "a4"), ("u4", "a6"), ("u4", "a1"))
+    val deltaID = IndexedDatasetSpark(sc.parallelize(pairsDelta, 2))(sc)
+
+    val state = SimilarityAnalysis.cooccurrenceState(drmARaw = previousID.matrix, randomSeed = 1)
+    val (newState, rowIDs, changedID) = SimilarityAnalysis.cooccurrencesIDSIncremental(state, previousID, deltaID,
+      randomSeed = 1, llrTolerance = 0)
+
+    rowIDs.size shouldBe 4
+    Seq("u1", "u2", "u3").foreach(user => rowIDs(user) shouldBe previousUsers(user))
+    rowIDs("u4") shouldBe 3
+    changedID.columnIDs.contains("a6") shouldBe false
+    newState.interactionsPerItem shouldBe dvec(2, 1, 1, 2, 1)
+
+    val allUsers = new BiDictionary(Seq("u1", "u2", "u3", "u4"))
+    val fullID = new IndexedDatasetSpark(drmParallelize(m = a, numPartitions = 2), allUsers, items)
+    val matrixFull = SimilarityAnalysis.cooccurrencesIDSs(Array(fullID), randomSeed = 1).head.matrix.collect
+
+    val matrixIncremental = newState.indicators.checkpoint().collect
+    (new MatrixOps(m = matrixIncremental.minus(matrixFull))).norm should be < 1E-10
+
+    // Items 0 and 3 have new counts, items 1 and 2 cooccur with them; other rows of the IndexedDataset are empty.
+    val matrixChanged = changedID.matrix.collect
+    for (row <- 0 until matrixChanged.rowSize) {
+      val expected = if (Set(0, 1, 2, 3).contains(row)) matrixFull.viewRow(row) else matrixFull.viewRow(row).like()
+      matrixChanged.viewRow(row).minus(expected).norm(2) should be < 1E-10
+    }
+  }
+
   test("Cross-occurrence [A'A], [B'A] double data using LLR") {
     val a = dense(
         (100000.0D, 1.0D,  0.0D,  0.0D,     0.0D),
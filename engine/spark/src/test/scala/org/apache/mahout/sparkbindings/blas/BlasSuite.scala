@@ -144,6 +144,28 @@ class BlasSuite extends FunSuite with DistributedSparkSuite {
 
   }
 
+  test("AtA slim, tree reduce") {
+
+    val inCoreA = dense((1, 2, 3), (2, 3, 4), (3, 4, 5), (4, 5, 6), (5, 6, 7), (6, 7, 8))
+    val drmA = drmParallelize(inCoreA, numPartitions = 6)
+
+    val operator = new OpAtA[Int](A = drmA)
+    val expectedAtA = inCoreA.t %*% inCoreA
+
+    val depth = System.getProperty(PROPERTY_TREE_REDUCE_DEPTH)
+    try {
+      for (d <- 1 to 3) {
+        System.setProperty(PROPERTY_TREE_REDUCE_DEPTH, d.toString)
+        val inCoreAtA = AtA.at_a_slim(operator = operator, srcRdd = drmA.rdd)
+        assert((inCoreAtA - expectedAtA).norm < 1e-10)
+        assert((drmA.colSums() - inCoreA.colSums()).norm(1) < 1e-10)
+      }
+    } finally {
+      if (depth == null) System.clearProperty(PROPERTY_TREE_REDUCE_DEPTH)
+      else System.setProperty(PROPERTY_TREE_REDUCE_DEPTH, depth)
+    }
+  }
+
   test("At") {
     val inCoreA = dense((1, 2, 3), (2, 3, 4), (3, 4, 5))
     val drmA = drmParallelize(m = inCoreA, numPartitions = 2)
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.sparkbindings.drm
+
+import java.io.File
+
+import org.apache.mahout.math._
+import org.apache.mahout.math.drm._
+import org.apache.mahout.math.drm.RLikeDrmOps._
+import org.apache.mahout.math.scalabindings._
+import org.apache.mahout.math.scalabindings.RLikeOps._
+import org.apache.mahout.sparkbindings._
+import org.apache.mahout.sparkbindings.test.DistributedSparkSuite
+import org.scalatest.{FunSuite, Matchers}
+
+import scala.io.Source
+
+class PlanMetricsSuite extends FunSuite with DistributedSparkSuite with Matchers {
+
+  test("per-operator metrics of A'B + A'x plan") {
+
+    val inCoreA = dense((1, 2, 3), (2, 3, 4), (3, 4, 5), (4, 5, 6))
+    val drmA = drmParallelize(inCoreA, numPartitions = 2)
+    val x = dvec(1, 1, 1)
+
+    PlanMetrics.reset()
+    PlanMetrics.enable()
+    try {
+      val inCoreC = (drmA.t %*% (drmA + 1.0)).collect
+      val inCoreY = (drmA %*% x).collect
+
+      (inCoreC - inCoreA.t %*% (inCoreA + 1.0)).norm should be < 1e-10
+      (inCoreY(::, 0) - inCoreA %*% x).norm(1) should be < 1e-10
+
+      val report = PlanMetrics.report
+      report.foreach(m ⇒ info(m.toString))
+
+      report.count(_.operator == "checkpoint") should be >= 2
+      val ops = report.filterNot(_.operator == "checkpoint")
+      ops.map(_.operator).toSet should contain allOf("OpAtB", "OpAewUnaryFunc", "OpAx")
+      ops.foreach { m ⇒
+        m.parentId should be >= 0
+        m.wallTimeMs should be >= 0L
+      }
+
+      // A + 1 sees every row of A at least once.
+      ops.find(_.operator == "OpAewUnaryFunc").get.rows should be >= inCoreA.nrow.toLong
+
+      // A %*% x broadcasts x.
+      ops.find(_.operator == "OpAx").get.bytesBroadcast should be > 0L
+
+      val f = File.createTempFile("plan-metrics", ".json")
+      try {
+        PlanMetrics.dumpJson(f.getAbsolutePath)
+        val json = Source.fromFile(f).mkString
+        json should startWith("[")
+        json should include("\"operator\":\"OpAtB\"")
+      } finally f.delete()
+
+      SparkPlanMetrics.listenerAttached shouldBe true
+      SparkPlanMetrics.trackedSizes._1 should be > 0
+
+      // Reset drops the spark side attribution state along with the records and detaches the listener.
+      PlanMetrics.reset()
+      PlanMetrics.report shouldBe empty
+      SparkPlanMetrics.trackedSizes shouldBe (0 → 0)
+      SparkPlanMetrics.listenerAttached shouldBe false
+
+      // Tracking picks up again with the next plan, and disabling detaches once more.
+      (drmA %*% x).collect
+      SparkPlanMetrics.listenerAttached shouldBe true
+      PlanMetrics.disable()
+      SparkPlanMetrics.listenerAttached shouldBe false
+
+    } finally {
+      PlanMetrics.disable()
+      PlanMetrics.reset()
+    }
+  }
+
+}
@@ -27,6 +27,7 @@ import scalabindings._
 import RLikeOps._
 
 import org.apache.mahout.common.RandomUtils
+import org.apache.mahout.common.io.{GenericMatrixKryoSerializer, VectorKryoSerializer}
 import org.apache.mahout.test.MahoutSuite
 import org.scalatest.FunSuite
 
@@ -104,6 +105,108 @@ class IOSuite extends FunSuite with MahoutSuite {
     vec2.isInstanceOf[SequentialAccessSparseVector] shouldBe true
   }
 
+  test("Named, view and lax precision vectors kryo") {
+
+    val rnd = RandomUtils.getRandom
+    val vecD = new DenseVector(1500) := { _ => rnd.nextDouble()}
+    val vecS = new SequentialAccessSparseVector(1500) := { _ => if (rnd.nextDouble() < 0.3) rnd.nextDouble() else 0}
+
+    // Bulk blocks for named array-backed vectors, element-wise encoding for views.
+    val ret = kryoClone(new NamedVector(vecD, "d"), new NamedVector(vecS, "s"), vecD.viewPart(10, 100))
+    ret.head.asInstanceOf[NamedVector].getName shouldBe "d"
+    ret.head === vecD shouldBe true
+    ret(1).asInstanceOf[NamedVector].getDelegate.isInstanceOf[SequentialAccessSparseVector] shouldBe true
+    ret(1) === vecS shouldBe true
+    ret(2) === vecD.viewPart(10, 100) shouldBe true
+
+    val kryo = new Kryo()
+    val ser = new VectorKryoSerializer(laxPrecision = true)
+    Seq(vecD, vecS).foreach { vec ⇒
+      val baos = new ByteArrayOutputStream()
+      val output = new Output(baos)
+      ser.write(kryo, output, vec)
+      output.close()
+      val vec2 = ser.read(kryo, new Input(new ByteArrayInputStream(baos.toByteArray)), classOf[Vector])
+      vec2.getClass shouldBe vec.getClass
+      (vec2 - vec).norm(Double.PositiveInfinity) should be < 1e-6
+    }
+  }
+
+  test("Compressed sparse blocks kryo") {
+
+    val rnd = RandomUtils.getRandom
+
+    def roundTrip(ser: VectorKryoSerializer, vec: Vector): (Vector, Int) = {
+      val kryo = new Kryo()
+      val baos = new ByteArrayOutputStream()
+      val output = new Output(baos)
+      ser.write(kryo, output, vec)
+      output.close()
+      ser.read(kryo, new Input(new ByteArrayInputStream(baos.toByteArray)), classOf[Vector]) → baos.size()
+    }
+
+    val plain = new VectorKryoSerializer()
+    val compressed = new VectorKryoSerializer(compressSparse = true)
+
+    // Constant, two-valued and irregular value blocks.
+    val vecB = new SequentialAccessSparseVector(100000) := { _ ⇒ if (rnd.nextDouble() < 0.05) 1.0 else 0.0 }
+    val vecT = new RandomAccessSparseVector(100000) := { _ ⇒
+      if (rnd.nextDouble() < 0.05) (if (rnd.nextBoolean()) 1.0 else 2.0) else 0.0
+    }
+    val vecR = new SequentialAccessSparseVector(100000) := { i ⇒
+      if (i % 997 == 0 || rnd.nextDouble() < 0.01) rnd.nextDouble() + 0.1 else 0.0
+    }
+
+    for (vec ← Seq(vecB, vecT, vecR)) {
+      val (vec2, size) = roundTrip(compressed, vec)
+      vec2 === vec shouldBe true
+      vec2.getClass shouldBe vec.getClass
+      size should be <= roundTrip(plain, vec)._2
+    }
+
+    // Constant blocks should shrink to a fraction.
+    roundTrip(compressed, vecB)._2 * 3 should be < roundTrip(plain, vecB)._2
+
+    // Lossy quantization.
+    for (bits ← Seq(8, 16)) {
+      val (vec2, _) = roundTrip(new VectorKryoSerializer(compressSparse = true, quantizationBits = bits), vecR)
+      vec2.getNumNondefaultElements shouldBe vecR.getNumNondefaultElements
+      (vec2 - vecR).norm(Double.PositiveInfinity) should be <= 1.0 / (1 << bits)
+    }
+
+    // Non-finite values come back exactly, with and without quantization, in constant, two-valued and irregular
+    // blocks.
+    val special = Array(Double.NaN, Double.PositiveInfinity, Double.NegativeInfinity)
+    val vecS = new SequentialAccessSparseVector(100000)
+    for (i ← 0 until 100000 by 50) vecS(i) = if (i % 3 == 0) special(i / 50 % 3) else rnd.nextDouble() + 0.1
+    for (i ← 60000 until 70000 by 50) vecS(i) = Double.NaN
+    for (i ← 70000 until 80000 by 50) vecS(i) = if (i % 7 == 0) Double.NaN else 1.0
+    for (bits ← Seq(0, 8, 16); lax ← Seq(false, true)) {
+      val ser = new VectorKryoSerializer(laxPrecision = lax, compressSparse = true, quantizationBits = bits)
+      val (vecS2, _) = roundTrip(ser, vecS)
+      for (i ← 0 until 100000 by 50) {
+        val v = vecS(i)
+        if (!java.lang.Double.isFinite(v)) {
+          java.lang.Double.doubleToLongBits(vecS2(i)) shouldBe java.lang.Double.doubleToLongBits(v)
+        } else if (!lax && bits == 0) {
+          vecS2(i) shouldBe v
+        }
+      }
+    }
+
+    // Rows of sparse matrices pick the encoding up through the vector serializer.
+    val kryo = new Kryo()
+    kryo.addDefaultSerializer(classOf[Vector], compressed)
+    kryo.addDefaultSerializer(classOf[Matrix], new GenericMatrixKryoSerializer)
+    val mxA = new SparseRowMatrix(50, 1000) := { _ ⇒ if (rnd.nextDouble() < 0.1) 1.0 else 0.0 }
+    val baos = new ByteArrayOutputStream()
+    val output = new Output(baos)
+    kryo.writeClassAndObject(output, mxA)
+    output.close()
+    val mxAA = kryo.readClassAndObject(new Input(new ByteArrayInputStream(baos.toByteArray))).asInstanceOf[Matrix]
+    mxAA === mxA shouldBe true
+  }
+
   test("kryo matrix tests") {
     val rnd = new Random()
 